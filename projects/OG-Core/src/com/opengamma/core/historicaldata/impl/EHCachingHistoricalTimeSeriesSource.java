@@ -225,7 +225,8 @@ public class EHCachingHistoricalTimeSeriesSource implements HistoricalTimeSeries
     ArgumentChecker.notNull(identifierSet, "identifierSet");
     Map<IdentifierBundle, HistoricalTimeSeries> result = new HashMap<IdentifierBundle, HistoricalTimeSeries>();
     Set<IdentifierBundle> remainingIdentifiers = new HashSet<IdentifierBundle>();
-    // caching works individually but all misses can be passed to underlying as one request
+    // caching works individually but all misses are passed to underlying as one request
+    // the full series are fetched and cached, sharing entries with the single bundle lookups
     for (IdentifierBundle identifiers : identifierSet) {
       HistoricalTimeSeriesKey key = new HistoricalTimeSeriesKey(null, null, identifiers, dataSource, dataProvider, dataField);
       HistoricalTimeSeries hts = getFromCache(key);
@@ -238,10 +239,16 @@ public class EHCachingHistoricalTimeSeriesSource implements HistoricalTimeSeries
     }
     if (remainingIdentifiers.size() > 0) {
       Map<IdentifierBundle, HistoricalTimeSeries> remainingTsResults =
-        _underlying.getHistoricalTimeSeries(remainingIdentifiers, dataSource, dataProvider, dataField, start, inclusiveStart, end, exclusiveEnd);
+        _underlying.getHistoricalTimeSeries(remainingIdentifiers, dataSource, dataProvider, dataField, null, true, null, false);
       for (Map.Entry<IdentifierBundle, HistoricalTimeSeries> tsResult : remainingTsResults.entrySet()) {
         IdentifierBundle identifiers = tsResult.getKey();
         HistoricalTimeSeries hts = tsResult.getValue();
+        if (hts != null) {
+          s_logger.debug("Caching time-series {}", hts);
+          HistoricalTimeSeriesKey key = new HistoricalTimeSeriesKey(null, null, identifiers, dataSource, dataProvider, dataField);
+          _cache.put(new Element(key, hts.getUniqueId()));
+          _cache.put(new Element(hts.getUniqueId(), hts));
+        }
         hts = getSubSeries(hts, start, inclusiveStart, end, exclusiveEnd);
         result.put(identifiers, hts);
       }
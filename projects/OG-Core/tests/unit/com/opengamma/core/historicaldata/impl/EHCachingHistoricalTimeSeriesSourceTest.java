@@ -11,6 +11,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.AssertJUnit.assertEquals;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
 import javax.time.calendar.LocalDate;
 
 import net.sf.ehcache.CacheManager;
@@ -20,6 +24,8 @@ import org.testng.annotations.Test;
 
 import com.opengamma.core.historicaldata.HistoricalTimeSeries;
 import com.opengamma.core.historicaldata.HistoricalTimeSeriesSource;
+import com.opengamma.id.Identifier;
+import com.opengamma.id.IdentifierBundle;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.ehcache.EHCacheUtils;
 import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
@@ -61,4 +67,29 @@ public class EHCachingHistoricalTimeSeriesSourceTest {
     verify(_underlyingSource, times(1)).getHistoricalTimeSeries(UID);
   }
 
+  public void getHistoricalTimeSeries_multiple() {
+    IdentifierBundle bundle = IdentifierBundle.of(Identifier.of("C", "D"));
+    Set<IdentifierBundle> bundles = Collections.singleton(bundle);
+    LocalDate[] dates = {LocalDate.of(2011, 6, 29), LocalDate.of(2011, 6, 30)};
+    double[] values = {12.34d, 12.45d};
+    ArrayLocalDateDoubleTimeSeries timeSeries = new ArrayLocalDateDoubleTimeSeries(dates, values);
+    HistoricalTimeSeries series = new HistoricalTimeSeriesImpl(UID, timeSeries);
+    Map<IdentifierBundle, HistoricalTimeSeries> underlyingResult = Collections.singletonMap(bundle, series);
+    
+    when(_underlyingSource.getHistoricalTimeSeries(bundles, "S", "P", "F", null, true, null, false)).thenReturn(underlyingResult);
+    
+    Map<IdentifierBundle, HistoricalTimeSeries> result1 = _cachingSource.getHistoricalTimeSeries(
+        bundles, "S", "P", "F", dates[1], true, null, false);
+    Map<IdentifierBundle, HistoricalTimeSeries> result2 = _cachingSource.getHistoricalTimeSeries(
+        bundles, "S", "P", "F", null, true, null, false);
+    HistoricalTimeSeries single = _cachingSource.getHistoricalTimeSeries(bundle, "S", "P", "F");
+    assertEquals(1, result1.get(bundle).getTimeSeries().size());
+    assertEquals(12.45d, result1.get(bundle).getTimeSeries().getValue(dates[1]), 0.0001d);
+    assertEquals(timeSeries, result2.get(bundle).getTimeSeries());
+    assertEquals(series, single);
+    
+    verify(_underlyingSource, times(1)).getHistoricalTimeSeries(bundles, "S", "P", "F", null, true, null, false);
+    verify(_underlyingSource, times(0)).getHistoricalTimeSeries(bundle, null, "S", "P", "F");
+  }
+
 }
@@ -13,12 +13,21 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.ComputationTargetResolver;
 import com.opengamma.engine.function.CompiledFunctionDefinition;
@@ -33,7 +42,14 @@ import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.tuple.Pair;
 
 /**
- * 
+ * Builds a dependency graph that will satisfy a set of terminal value requirements.
+ * <p>
+ * If an executor service is set, each batch of requirements passed to {@link #addTarget(Set)} is resolved
+ * in parallel into its own partial graph. The partial graphs are merged into the main graph in the order the
+ * batches were added. A partial graph is only merged if none of the requirements resolved to build it could
+ * have been satisfied by a node already in the main graph, other than a market data node producing the same
+ * value, so the result is the graph a sequential build would have produced. Any other batch is resolved again
+ * directly against the main graph. The resolvers and functions used must be safe to call concurrently.
  */
 public class DependencyGraphBuilder {
   private static final Logger s_logger = LoggerFactory.getLogger(DependencyGraphBuilder.class);
@@ -43,8 +59,12 @@ public class DependencyGraphBuilder {
   private ComputationTargetResolver _targetResolver;
   private CompiledFunctionResolver _functionResolver;
   private FunctionCompilationContext _compilationContext;
+  private ExecutorService _executorService;
   // State:
   private DependencyGraph _graph;
+  private final Queue<Pair<Set<ValueRequirement>, Future<DependencyGraphBuilder>>> _pendingBatches = new LinkedList<Pair<Set<ValueRequirement>, Future<DependencyGraphBuilder>>>();
+  // Requirements considered when building a partial graph, null when building the main graph
+  private Set<ValueRequirement> _resolvedRequirements;
 
   /**
    * @return the calculationConfigurationName
@@ -117,6 +137,20 @@ public class DependencyGraphBuilder {
     _compilationContext = compilationContext;
   }
 
+  /**
+   * @return the executor service used to resolve requirements in parallel, or {@code null} to resolve sequentially
+   */
+  public ExecutorService getExecutorService() {
+    return _executorService;
+  }
+
+  /**
+   * @param executorService the executor service to resolve requirements in parallel with, or {@code null} to resolve sequentially
+   */
+  public void setExecutorService(ExecutorService executorService) {
+    _executorService = executorService;
+  }
+
   protected void checkInjectedInputs() {
     ArgumentChecker.notNullInjected(getMarketDataAvailabilityProvider(), "marketDataAvailabilityProvider");
     ArgumentChecker.notNullInjected(getFunctionResolver(), "functionResolver");
@@ -131,6 +165,24 @@ public class DependencyGraphBuilder {
   public void addTarget(Set<ValueRequirement> requirements) {
     ArgumentChecker.notNull(requirements, "Value requirements");
     checkInjectedInputs();
+    if (getExecutorService() == null) {
+      addTargetsImpl(requirements);
+    } else {
+      final Set<ValueRequirement> batch = new LinkedHashSet<ValueRequirement>(requirements);
+      final DependencyGraphBuilder partialBuilder = createPartialBuilder();
+      final Future<DependencyGraphBuilder> future = getExecutorService().submit(new Callable<DependencyGraphBuilder>() {
+        @Override
+        public DependencyGraphBuilder call() {
+          partialBuilder.addTargetsImpl(batch);
+          return partialBuilder;
+        }
+      });
+      _pendingBatches.add(Pair.of(batch, future));
+      mergePartialGraphs(false);
+    }
+  }
+
+  private void addTargetsImpl(final Set<ValueRequirement> requirements) {
     for (ValueRequirement requirement : requirements) {
       try {
         addTargetImpl(requirement);
@@ -141,6 +193,107 @@ public class DependencyGraphBuilder {
     }
   }
 
+  private DependencyGraphBuilder createPartialBuilder() {
+    final DependencyGraphBuilder builder = new DependencyGraphBuilder();
+    builder.setCalculationConfigurationName(getCalculationConfigurationName());
+    builder.setMarketDataAvailabilityProvider(getMarketDataAvailabilityProvider());
+    builder.setTargetResolver(getTargetResolver());
+    builder.setFunctionResolver(getFunctionResolver());
+    builder.setCompilationContext(getCompilationContext());
+    builder._resolvedRequirements = new HashSet<ValueRequirement>();
+    return builder;
+  }
+
+  /**
+   * Merges the partial graphs of completed batches into the main graph, in the order the batches were added.
+   * 
+   * @param wait true to wait for all outstanding batches, false to merge only those already complete
+   */
+  private void mergePartialGraphs(final boolean wait) {
+    Pair<Set<ValueRequirement>, Future<DependencyGraphBuilder>> batch = _pendingBatches.peek();
+    while ((batch != null) && (wait || batch.getSecond().isDone())) {
+      _pendingBatches.remove();
+      DependencyGraphBuilder partialBuilder = null;
+      try {
+        partialBuilder = batch.getSecond().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new OpenGammaRuntimeException("Interrupted while building dependency graph", e);
+      } catch (ExecutionException e) {
+        s_logger.warn("Parallel resolution of {} failed; resolving sequentially", batch.getFirst());
+        s_logger.debug("Problem building partial dep-graph", e);
+      }
+      if ((partialBuilder == null) || !mergePartialGraph(partialBuilder)) {
+        addTargetsImpl(batch.getFirst());
+      }
+      batch = _pendingBatches.peek();
+    }
+  }
+
+  /**
+   * Merges a partial graph into the main graph. A sequential build would only have differed from the partial
+   * build where a requirement it resolved was satisfied by a node already in the main graph (see
+   * {@link #resolveValueRequirement}). The only such case accepted is a market data requirement satisfied by a
+   * single market data node in each graph, producing the same value, in which case the partial node is replaced
+   * by the existing one. Copies of all other partial nodes are added to the main graph.
+   * 
+   * @param partialBuilder the builder of the partial graph, not {@code null}
+   * @return true if the graph was merged, false if it must be resolved against the main graph which is left unchanged
+   */
+  private boolean mergePartialGraph(final DependencyGraphBuilder partialBuilder) {
+    final DependencyGraph partialGraph = partialBuilder._graph;
+    final List<DependencyNode> partialNodes = partialGraph.getExecutionOrder();
+    if (partialNodes.size() != partialGraph.getSize()) {
+      return false;
+    }
+    final Map<DependencyNode, DependencyNode> mergedNodes = new HashMap<DependencyNode, DependencyNode>();
+    for (ValueRequirement requirement : partialBuilder._resolvedRequirements) {
+      final Collection<Pair<DependencyNode, ValueSpecification>> existing = _graph.getNodesSatisfying(requirement);
+      if (existing == null) {
+        continue;
+      }
+      final Collection<Pair<DependencyNode, ValueSpecification>> partial = partialGraph.getNodesSatisfying(requirement);
+      if ((existing.size() == 1) && (partial != null) && (partial.size() == 1) && getMarketDataAvailabilityProvider().isAvailable(requirement)) {
+        final DependencyNode existingNode = existing.iterator().next().getFirst();
+        final DependencyNode partialNode = partial.iterator().next().getFirst();
+        if ((existingNode.getRequiredMarketData() != null) && (partialNode.getRequiredMarketData() != null)
+            && existingNode.getOutputValues().equals(partialNode.getOutputValues())) {
+          mergedNodes.put(partialNode, existingNode);
+          continue;
+        }
+      }
+      s_logger.debug("{} is satisfied by the main graph", requirement);
+      return false;
+    }
+    for (DependencyNode partialNode : partialNodes) {
+      for (DependencyNode inputNode : partialNode.getInputNodes()) {
+        if (!partialGraph.containsNode(inputNode)) {
+          return false;
+        }
+      }
+    }
+    for (DependencyNode partialNode : partialNodes) {
+      if (mergedNodes.containsKey(partialNode)) {
+        continue;
+      }
+      final DependencyNode node = new DependencyNode(partialNode.getComputationTarget());
+      node.setFunction(partialNode.getFunction());
+      node.addOutputValues(partialNode.getOutputValues());
+      for (ValueSpecification input : partialNode.getInputValues()) {
+        node.addInputValue(input);
+      }
+      for (DependencyNode inputNode : partialNode.getInputNodes()) {
+        node.addInputNode(mergedNodes.get(inputNode));
+      }
+      _graph.addDependencyNode(node);
+      mergedNodes.put(partialNode, node);
+    }
+    for (ValueSpecification terminalOutput : partialGraph.getTerminalOutputSpecifications()) {
+      _graph.addTerminalOutputValue(terminalOutput);
+    }
+    return true;
+  }
+
   protected void addTargetImpl(final ValueRequirement requirement) throws UnsatisfiableDependencyGraphException {
     final ResolutionState resolutionState = resolveValueRequirement(requirement, null);
     Pair<DependencyNode, ValueSpecification> terminalNode = addTargetRequirement(resolutionState);
@@ -158,6 +311,9 @@ public class DependencyGraphBuilder {
 
   // Note the order requirements are considered can affect function choices and resultant graph construction (see [ENG-259]).
   private ResolutionState resolveValueRequirement(final ValueRequirement requirement, final DependencyNode dependent) {
+    if (_resolvedRequirements != null) {
+      _resolvedRequirements.add(requirement);
+    }
     ComputationTargetResolver targetResolver = getTargetResolver();
     final ComputationTarget target = targetResolver.resolve(requirement.getTargetSpecification());
     if (target == null) {
@@ -441,6 +597,7 @@ public class DependencyGraphBuilder {
   private static final boolean DEBUG_DUMP_DEPENDENCY_GRAPH = false;
 
   public DependencyGraph getDependencyGraph() {
+    mergePartialGraphs(true);
     if (DEBUG_DUMP_DEPENDENCY_GRAPH) {
       try {
         final PrintStream ps = new PrintStream(new FileOutputStream("/tmp/dependencyGraph.txt"));
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.fudgemsg;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeBuilder;
+import org.fudgemsg.mapping.FudgeBuilderFor;
+import org.fudgemsg.mapping.FudgeDeserializationContext;
+import org.fudgemsg.mapping.FudgeSerializationContext;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.ViewDeltaResultModel;
+import com.opengamma.engine.view.listener.CycleFragmentCompletedCall;
+
+/**
+ * Fudge message builder for {@link CycleFragmentCompletedCall}
+ */
+@FudgeBuilderFor(CycleFragmentCompletedCall.class)
+public class CycleFragmentCompletedCallBuilder implements FudgeBuilder<CycleFragmentCompletedCall> {
+
+  private static final String FULL_FRAGMENT_FIELD = "fullFragment";
+  private static final String DELTA_FRAGMENT_FIELD = "deltaFragment";
+  
+  @Override
+  public MutableFudgeMsg buildMessage(FudgeSerializationContext context, CycleFragmentCompletedCall object) {
+    MutableFudgeMsg msg = context.newMessage();
+    ViewComputationResultModel fullFragment = object.getFullFragment();
+    ViewDeltaResultModel deltaFragment = object.getDeltaFragment();
+    if (fullFragment == null && deltaFragment == null) {
+      throw new OpenGammaRuntimeException("Unexpectedly useless CycleFragmentCompletedCall");
+    }
+    context.addToMessage(msg, FULL_FRAGMENT_FIELD, null, fullFragment);
+    context.addToMessage(msg, DELTA_FRAGMENT_FIELD, null, deltaFragment);
+    return msg;
+  }
+
+  @Override
+  public CycleFragmentCompletedCall buildObject(FudgeDeserializationContext context, FudgeMsg msg) {
+    FudgeField fullFragmentField = msg.getByName(FULL_FRAGMENT_FIELD);
+    ViewComputationResultModel fullFragment = fullFragmentField != null ? context.fieldValueToObject(ViewComputationResultModel.class, fullFragmentField) : null;
+    FudgeField deltaFragmentField = msg.getByName(DELTA_FRAGMENT_FIELD);
+    ViewDeltaResultModel deltaFragment = deltaFragmentField != null ? context.fieldValueToObject(ViewDeltaResultModel.class, deltaFragmentField) : null;
+    return new CycleFragmentCompletedCall(fullFragment, deltaFragment);
+  }
+
+}
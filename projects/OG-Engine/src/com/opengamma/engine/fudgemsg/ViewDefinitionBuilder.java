@@ -43,6 +43,7 @@ public class ViewDefinitionBuilder implements FudgeBuilder<ViewDefinition> {
   private static final String MAX_DELTA_CALC_PERIOD_FIELD = "maxDeltaCalcPeriod";
   private static final String MIN_FULL_CALC_PERIOD_FIELD = "minFullCalcPeriod";
   private static final String MAX_FULL_CALC_PERIOD_FIELD = "maxFullCalcPeriod";
+  private static final String TARGET_RESULT_LATENCY_FIELD = "targetResultLatency";
   private static final String RESULT_MODEL_DEFINITION_FIELD = "resultModelDefinition";
   private static final String CALCULATION_CONFIGURATION_FIELD = "calculationConfiguration";
   private static final String PORTFOLIO_REQUIREMENTS_BY_SECURITY_TYPE_FIELD = "portfolioRequirementsBySecurityType";
@@ -86,6 +87,9 @@ public class ViewDefinitionBuilder implements FudgeBuilder<ViewDefinition> {
     if (viewDefinition.getMaxFullCalculationPeriod() != null) {
       message.add(MAX_FULL_CALC_PERIOD_FIELD, null, viewDefinition.getMaxFullCalculationPeriod());
     }
+    if (viewDefinition.getTargetResultLatency() != null) {
+      message.add(TARGET_RESULT_LATENCY_FIELD, null, viewDefinition.getTargetResultLatency());
+    }
     Map<String, ViewCalculationConfiguration> calculationConfigurations = viewDefinition.getAllCalculationConfigurationsByName();
     for (ViewCalculationConfiguration calcConfig : calculationConfigurations.values()) {
       MutableFudgeMsg calcConfigMsg = context.newMessage();
@@ -150,6 +154,9 @@ public class ViewDefinitionBuilder implements FudgeBuilder<ViewDefinition> {
     if (message.hasField(MAX_FULL_CALC_PERIOD_FIELD)) {
       viewDefinition.setMaxFullCalculationPeriod(message.getLong(MAX_FULL_CALC_PERIOD_FIELD));
     }
+    if (message.hasField(TARGET_RESULT_LATENCY_FIELD)) {
+      viewDefinition.setTargetResultLatency(message.getLong(TARGET_RESULT_LATENCY_FIELD));
+    }
     List<FudgeField> calcConfigs = message.getAllByName(CALCULATION_CONFIGURATION_FIELD);
     for (FudgeField calcConfigField : calcConfigs) {
       FudgeMsg calcConfigMsg = message.getFieldValue(FudgeMsg.class, calcConfigField);
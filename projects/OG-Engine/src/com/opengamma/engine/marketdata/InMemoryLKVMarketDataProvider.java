@@ -6,10 +6,7 @@
 package com.opengamma.engine.marketdata;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +27,16 @@ import com.opengamma.util.ArgumentChecker;
 
 /**
  * An implementation of {@link MarketDataProvider} which maintains an LKV cache of externally-provided values.
+ * <p>
+ * The values are held in a persistent map which is replaced on each update, so a snapshot is just a reference to the
+ * current version and two snapshots can report the values that changed between them without comparing every value.
  */
 public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider implements MarketDataInjector, MarketDataAvailabilityProvider {
   
   private static final Logger s_logger = LoggerFactory.getLogger(InMemoryLKVMarketDataProvider.class);
   
-  private final Map<ValueRequirement, Object> _lastKnownValues = new ConcurrentHashMap<ValueRequirement, Object>();
+  private final Object _updateLock = new Object();
+  private volatile PersistentHashMap<ValueRequirement, Object> _lastKnownValues = PersistentHashMap.empty();
   private final SecuritySource _securitySource;
   private final MarketDataPermissionProvider _permissionProvider;
 
@@ -109,7 +110,11 @@ public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider im
   //-------------------------------------------------------------------------
   @Override
   public void addValue(ValueRequirement requirement, Object value) {
-    _lastKnownValues.put(requirement, value);
+    ArgumentChecker.notNull(requirement, "requirement");
+    ArgumentChecker.notNull(value, "value");
+    synchronized (_updateLock) {
+      _lastKnownValues = _lastKnownValues.with(requirement, value);
+    }
     valueChanged(requirement);
   }
   
@@ -121,7 +126,9 @@ public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider im
 
   @Override
   public void removeValue(final ValueRequirement valueRequirement) {
-    _lastKnownValues.remove(valueRequirement);
+    synchronized (_updateLock) {
+      _lastKnownValues = _lastKnownValues.without(valueRequirement);
+    }
     valueChanged(valueRequirement);
   }
   
@@ -141,8 +148,8 @@ public class InMemoryLKVMarketDataProvider extends AbstractMarketDataProvider im
   }
   
   //-------------------------------------------------------------------------
-  /*package*/ Map<ValueRequirement, Object> doSnapshot() {
-    return new HashMap<ValueRequirement, Object>(_lastKnownValues);
+  /*package*/ PersistentHashMap<ValueRequirement, Object> doSnapshot() {
+    return _lastKnownValues;
   }
   
   private ValueRequirement resolveRequirement(Identifier identifier, String valueName) {
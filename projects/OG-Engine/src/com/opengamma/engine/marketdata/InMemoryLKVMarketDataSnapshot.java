@@ -7,7 +7,6 @@ package com.opengamma.engine.marketdata;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -19,6 +18,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.util.ArgumentChecker;
 
 /**
  * An implementation of {@link MarketDataSnapshot} backed by an {@link InMemoryLKVMarketDataProvider}.
@@ -29,7 +29,7 @@ public class InMemoryLKVMarketDataSnapshot implements MarketDataSnapshot {
   
   private final InMemoryLKVMarketDataProvider _provider;
   private Instant _snapshotTime;
-  private Map<ValueRequirement, Object> _snapshot;
+  private PersistentHashMap<ValueRequirement, Object> _snapshot;
   
   public InMemoryLKVMarketDataSnapshot(InMemoryLKVMarketDataProvider provider) {
     _provider = provider;
@@ -110,9 +110,25 @@ public class InMemoryLKVMarketDataSnapshot implements MarketDataSnapshot {
   public Set<ValueRequirement> getAllValueKeys() {
     return Collections.unmodifiableSet(getSnapshot().keySet());
   }
+
+  /**
+   * Gets the requirements whose values were added, replaced or removed between an earlier snapshot and this one. The
+   * cost is proportional to the number of updates between the snapshots rather than the number of values held.
+   * 
+   * @param previous  the earlier snapshot, not {@code null}
+   * @return the changed requirements, or {@code null} if the earlier snapshot is from a different provider
+   * @throws IllegalStateException  if either snapshot has not been initialised
+   */
+  public Set<ValueRequirement> getChangedRequirements(InMemoryLKVMarketDataSnapshot previous) {
+    ArgumentChecker.notNull(previous, "previous");
+    if (previous.getProvider() != getProvider()) {
+      return null;
+    }
+    return Collections.unmodifiableSet(getSnapshot().getChangedKeys(previous.getSnapshot()));
+  }
   
   //-------------------------------------------------------------------------
-  private Map<ValueRequirement, Object> getSnapshot() {
+  private PersistentHashMap<ValueRequirement, Object> getSnapshot() {
     if (_snapshot == null) {
       throw new IllegalStateException("Snapshot has not been initialised");
     }
@@ -5,6 +5,7 @@
  */
 package com.opengamma.engine.marketdata;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
@@ -23,8 +24,8 @@ import com.opengamma.engine.marketdata.permission.MarketDataPermissionProvider;
 import com.opengamma.engine.marketdata.spec.LiveMarketDataSpecification;
 import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
 import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.livedata.LiveDataBatchListener;
 import com.opengamma.livedata.LiveDataClient;
-import com.opengamma.livedata.LiveDataListener;
 import com.opengamma.livedata.LiveDataSpecification;
 import com.opengamma.livedata.LiveDataValueUpdate;
 import com.opengamma.livedata.UserPrincipal;
@@ -35,7 +36,7 @@ import com.opengamma.util.ArgumentChecker;
 /**
  * A {@link MarketDataProvider} for live data.
  */
-public class LiveMarketDataProvider extends AbstractMarketDataProvider implements LiveDataListener {
+public class LiveMarketDataProvider extends AbstractMarketDataProvider implements LiveDataBatchListener {
 
   /** Logger. */
   private static final Logger s_logger = LoggerFactory.getLogger(LiveMarketDataProvider.class);
@@ -187,12 +188,34 @@ public class LiveMarketDataProvider extends AbstractMarketDataProvider implement
 
   @Override
   public void valueUpdate(LiveDataValueUpdate valueUpdate) {
+    Set<ValueRequirement> valueRequirements = addValues(valueUpdate);
+    if (valueRequirements != null) {
+      super.valuesChanged(valueRequirements);
+    }
+  }
+
+  @Override
+  public void valueUpdates(Collection<LiveDataValueUpdate> valueUpdates) {
+    // Listeners are told about the whole batch at once rather than once per update
+    Set<ValueRequirement> changed = new HashSet<ValueRequirement>();
+    for (LiveDataValueUpdate valueUpdate : valueUpdates) {
+      Set<ValueRequirement> valueRequirements = addValues(valueUpdate);
+      if (valueRequirements != null) {
+        changed.addAll(valueRequirements);
+      }
+    }
+    if (!changed.isEmpty()) {
+      super.valuesChanged(changed);
+    }
+  }
+
+  private Set<ValueRequirement> addValues(LiveDataValueUpdate valueUpdate) {
     s_logger.debug("Update received {}", valueUpdate);
     
     Set<ValueRequirement> valueRequirements = _liveDataSpec2ValueRequirements.get(valueUpdate.getSpecification());
     if (valueRequirements == null) {
       s_logger.warn("Received value update for which no corresponding set of value requirements was found: {}", valueUpdate.getSpecification());
-      return;            
+      return null;
     }
     
     s_logger.debug("Corresponding value requirements are {}", valueRequirements);
@@ -208,8 +231,7 @@ public class LiveMarketDataProvider extends AbstractMarketDataProvider implement
       }
       getUnderlyingProvider().addValue(valueRequirement, value);
     }
-    
-    super.valuesChanged(valueRequirements);
+    return valueRequirements;
   }
 
 }
@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable hash array mapped trie. Each update returns a new map sharing all but the path to the updated entry
+ * with the original, so holding on to an earlier version of the map is a consistent snapshot that costs nothing to
+ * take. The keys that differ between two versions can be found by walking only the parts of the trie that are not
+ * shared.
+ * <p>
+ * Null keys and values are not supported.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+/* package */final class PersistentHashMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<Object, Object>(null, 0);
+
+  private abstract static class Node {
+
+    abstract int getHash();
+
+    abstract void collectLeaves(Map<Object, Leaf> leaves);
+
+  }
+
+  private static final class Leaf extends Node {
+
+    private final int _hash;
+    private final Object _key;
+    private final Object _value;
+
+    Leaf(final int hash, final Object key, final Object value) {
+      _hash = hash;
+      _key = key;
+      _value = value;
+    }
+
+    @Override
+    int getHash() {
+      return _hash;
+    }
+
+    @Override
+    void collectLeaves(final Map<Object, Leaf> leaves) {
+      leaves.put(_key, this);
+    }
+
+  }
+
+  /**
+   * Entries whose keys have the same hash.
+   */
+  private static final class Collision extends Node {
+
+    private final int _hash;
+    private final Leaf[] _leaves;
+
+    Collision(final int hash, final Leaf[] leaves) {
+      _hash = hash;
+      _leaves = leaves;
+    }
+
+    @Override
+    int getHash() {
+      return _hash;
+    }
+
+    @Override
+    void collectLeaves(final Map<Object, Leaf> leaves) {
+      for (Leaf leaf : _leaves) {
+        leaves.put(leaf._key, leaf);
+      }
+    }
+
+  }
+
+  private static final class Branch extends Node {
+
+    private final int _bitmap;
+    private final Node[] _children;
+
+    Branch(final int bitmap, final Node[] children) {
+      _bitmap = bitmap;
+      _children = children;
+    }
+
+    @Override
+    int getHash() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    void collectLeaves(final Map<Object, Leaf> leaves) {
+      for (Node child : _children) {
+        child.collectLeaves(leaves);
+      }
+    }
+
+    Node getChild(final int bit) {
+      if ((_bitmap & bit) == 0) {
+        return null;
+      }
+      return _children[Integer.bitCount(_bitmap & (bit - 1))];
+    }
+
+  }
+
+  private final Node _root;
+  private final int _size;
+
+  private PersistentHashMap(final Node root, final int size) {
+    _root = root;
+    _size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> empty() {
+    return (PersistentHashMap<K, V>) EMPTY;
+  }
+
+  private static int hash(final Object key) {
+    // Spread the bits as HashMap does so that poor hash codes still use the upper levels of the trie
+    int h = key.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  private static int bit(final int hash, final int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  public boolean isEmpty() {
+    return _size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(final K key) {
+    final int hash = hash(key);
+    Node node = _root;
+    int shift = 0;
+    while (node != null) {
+      if (node instanceof Branch) {
+        node = ((Branch) node).getChild(bit(hash, shift));
+        shift += BITS;
+      } else if (node instanceof Leaf) {
+        final Leaf leaf = (Leaf) node;
+        return ((leaf._hash == hash) && leaf._key.equals(key)) ? (V) leaf._value : null;
+      } else {
+        final Collision collision = (Collision) node;
+        if (collision._hash == hash) {
+          for (Leaf leaf : collision._leaves) {
+            if (leaf._key.equals(key)) {
+              return (V) leaf._value;
+            }
+          }
+        }
+        return null;
+      }
+    }
+    return null;
+  }
+
+  public boolean containsKey(final K key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Returns a map with the given entry added or replaced.
+   *
+   * @param key the key, not null
+   * @param value the value, not null
+   * @return the updated map, not null
+   */
+  public PersistentHashMap<K, V> with(final K key, final V value) {
+    final boolean[] added = new boolean[1];
+    final Node root = insert(_root, 0, new Leaf(hash(key), key, value), added);
+    if (root == _root) {
+      return this;
+    }
+    return new PersistentHashMap<K, V>(root, added[0] ? _size + 1 : _size);
+  }
+
+  /**
+   * Returns a map with the given entry removed.
+   *
+   * @param key the key, not null
+   * @return the updated map, not null
+   */
+  public PersistentHashMap<K, V> without(final K key) {
+    final Node root = remove(_root, 0, hash(key), key);
+    if (root == _root) {
+      return this;
+    }
+    if (root == null) {
+      return empty();
+    }
+    return new PersistentHashMap<K, V>(root, _size - 1);
+  }
+
+  /**
+   * Returns the keys in the map. This walks the whole trie.
+   *
+   * @return the keys, not null
+   */
+  @SuppressWarnings("unchecked")
+  public Set<K> keySet() {
+    final Map<Object, Leaf> leaves = new HashMap<Object, Leaf>((_size * 4 + 2) / 3);
+    if (_root != null) {
+      _root.collectLeaves(leaves);
+    }
+    return (Set<K>) leaves.keySet();
+  }
+
+  /**
+   * Returns the keys that were added, replaced or removed between an earlier version of this map and this one. A
+   * replaced value is reported as a change even if it is equal to the value it replaced.
+   *
+   * @param previous an earlier version of this map, not null
+   * @return the keys that differ, not null
+   */
+  @SuppressWarnings("unchecked")
+  public Set<K> getChangedKeys(final PersistentHashMap<K, V> previous) {
+    final Set<Object> changed = new HashSet<Object>();
+    diff(_root, previous._root, changed);
+    return (Set<K>) changed;
+  }
+
+  //-------------------------------------------------------------------------
+  private static Node insert(final Node node, final int shift, final Leaf leaf, final boolean[] added) {
+    if (node == null) {
+      added[0] = true;
+      return leaf;
+    }
+    if (node instanceof Branch) {
+      final Branch branch = (Branch) node;
+      final int bit = bit(leaf._hash, shift);
+      final int index = Integer.bitCount(branch._bitmap & (bit - 1));
+      if ((branch._bitmap & bit) == 0) {
+        added[0] = true;
+        final Node[] children = new Node[branch._children.length + 1];
+        System.arraycopy(branch._children, 0, children, 0, index);
+        children[index] = leaf;
+        System.arraycopy(branch._children, index, children, index + 1, branch._children.length - index);
+        return new Branch(branch._bitmap | bit, children);
+      }
+      final Node child = branch._children[index];
+      final Node newChild = insert(child, shift + BITS, leaf, added);
+      if (newChild == child) {
+        return branch;
+      }
+      final Node[] children = branch._children.clone();
+      children[index] = newChild;
+      return new Branch(branch._bitmap, children);
+    }
+    if (node.getHash() != leaf._hash) {
+      added[0] = true;
+      return merge(node, leaf, shift);
+    }
+    if (node instanceof Leaf) {
+      final Leaf existing = (Leaf) node;
+      if (existing._key.equals(leaf._key)) {
+        return (existing._value == leaf._value) ? existing : leaf;
+      }
+      added[0] = true;
+      return new Collision(leaf._hash, new Leaf[] {existing, leaf });
+    }
+    final Collision collision = (Collision) node;
+    for (int i = 0; i < collision._leaves.length; i++) {
+      if (collision._leaves[i]._key.equals(leaf._key)) {
+        if (collision._leaves[i]._value == leaf._value) {
+          return collision;
+        }
+        final Leaf[] leaves = collision._leaves.clone();
+        leaves[i] = leaf;
+        return new Collision(leaf._hash, leaves);
+      }
+    }
+    added[0] = true;
+    final Leaf[] leaves = new Leaf[collision._leaves.length + 1];
+    System.arraycopy(collision._leaves, 0, leaves, 0, collision._leaves.length);
+    leaves[collision._leaves.length] = leaf;
+    return new Collision(leaf._hash, leaves);
+  }
+
+  /**
+   * Creates the branches needed to hold two leaf or collision nodes with different hashes.
+   */
+  private static Node merge(final Node a, final Node b, final int shift) {
+    final int aIndex = (a.getHash() >>> shift) & MASK;
+    final int bIndex = (b.getHash() >>> shift) & MASK;
+    if (aIndex == bIndex) {
+      return new Branch(1 << aIndex, new Node[] {merge(a, b, shift + BITS) });
+    }
+    return new Branch((1 << aIndex) | (1 << bIndex), (aIndex < bIndex) ? new Node[] {a, b } : new Node[] {b, a });
+  }
+
+  private static Node remove(final Node node, final int shift, final int hash, final Object key) {
+    if (node == null) {
+      return null;
+    }
+    if (node instanceof Branch) {
+      final Branch branch = (Branch) node;
+      final int bit = bit(hash, shift);
+      if ((branch._bitmap & bit) == 0) {
+        return branch;
+      }
+      final int index = Integer.bitCount(branch._bitmap & (bit - 1));
+      final Node child = branch._children[index];
+      final Node newChild = remove(child, shift + BITS, hash, key);
+      if (newChild == child) {
+        return branch;
+      }
+      if (newChild == null) {
+        if (branch._children.length == 1) {
+          return null;
+        }
+        if ((branch._children.length == 2) && !(branch._children[1 - index] instanceof Branch)) {
+          // A lone leaf can move up; lookups compare the full hash
+          return branch._children[1 - index];
+        }
+        final Node[] children = new Node[branch._children.length - 1];
+        System.arraycopy(branch._children, 0, children, 0, index);
+        System.arraycopy(branch._children, index + 1, children, index, children.length - index);
+        return new Branch(branch._bitmap & ~bit, children);
+      }
+      if ((branch._children.length == 1) && !(newChild instanceof Branch)) {
+        return newChild;
+      }
+      final Node[] children = branch._children.clone();
+      children[index] = newChild;
+      return new Branch(branch._bitmap, children);
+    }
+    if (node.getHash() != hash) {
+      return node;
+    }
+    if (node instanceof Leaf) {
+      return ((Leaf) node)._key.equals(key) ? null : node;
+    }
+    final Collision collision = (Collision) node;
+    for (int i = 0; i < collision._leaves.length; i++) {
+      if (collision._leaves[i]._key.equals(key)) {
+        if (collision._leaves.length == 2) {
+          return collision._leaves[1 - i];
+        }
+        final Leaf[] leaves = new Leaf[collision._leaves.length - 1];
+        System.arraycopy(collision._leaves, 0, leaves, 0, i);
+        System.arraycopy(collision._leaves, i + 1, leaves, i, leaves.length - i);
+        return new Collision(hash, leaves);
+      }
+    }
+    return collision;
+  }
+
+  /**
+   * Finds the keys that differ between two nodes at the same position in the trie. Shared nodes are skipped so the
+   * cost is proportional to the number of updates between the versions rather than the size of the map.
+   */
+  private static void diff(final Node current, final Node previous, final Collection<Object> changed) {
+    if (current == previous) {
+      return;
+    }
+    if ((current instanceof Branch) && (previous instanceof Branch)) {
+      final Branch a = (Branch) current;
+      final Branch b = (Branch) previous;
+      int bits = a._bitmap | b._bitmap;
+      while (bits != 0) {
+        final int bit = Integer.lowestOneBit(bits);
+        bits &= ~bit;
+        diff(a.getChild(bit), b.getChild(bit), changed);
+      }
+      return;
+    }
+    // Leaves have moved between levels, or one side is empty; compare the entries directly
+    final Map<Object, Leaf> currentLeaves = new HashMap<Object, Leaf>();
+    if (current != null) {
+      current.collectLeaves(currentLeaves);
+    }
+    final Map<Object, Leaf> previousLeaves = new HashMap<Object, Leaf>();
+    if (previous != null) {
+      previous.collectLeaves(previousLeaves);
+    }
+    for (Map.Entry<Object, Leaf> entry : currentLeaves.entrySet()) {
+      if (previousLeaves.remove(entry.getKey()) != entry.getValue()) {
+        changed.add(entry.getKey());
+      }
+    }
+    changed.addAll(previousLeaves.keySet());
+  }
+
+}
@@ -21,6 +21,7 @@ import com.opengamma.engine.view.compilation.CompiledViewDefinition;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
 import com.opengamma.engine.view.listener.CycleCompletedCall;
 import com.opengamma.engine.view.listener.CycleExecutionFailedCall;
+import com.opengamma.engine.view.listener.CycleFragmentCompletedCall;
 import com.opengamma.engine.view.listener.ProcessCompletedCall;
 import com.opengamma.engine.view.listener.ProcessTerminatedCall;
 import com.opengamma.engine.view.listener.ViewDefinitionCompilationFailedCall;
@@ -55,6 +56,10 @@ public class TestViewResultListener implements ViewResultListener {
     return expectNextCall(ViewDefinitionCompiledCall.class, timeoutMillis);
   }
   
+  public CycleFragmentCompletedCall getCycleFragmentCompleted(long timeoutMillis) throws InterruptedException {
+    return expectNextCall(CycleFragmentCompletedCall.class, timeoutMillis);
+  }
+
   public CycleCompletedCall getCycleCompleted(long timeoutMillis) throws InterruptedException {
     return expectNextCall(CycleCompletedCall.class, timeoutMillis);
   }
@@ -195,6 +200,11 @@ public class TestViewResultListener implements ViewResultListener {
     callReceived(new ViewDefinitionCompilationFailedCall(valuationTime, exception));
   }
 
+  @Override
+  public void cycleFragmentCompleted(ViewComputationResultModel fullFragment, ViewDeltaResultModel deltaFragment) {
+    callReceived(new CycleFragmentCompletedCall(fullFragment, deltaFragment));
+  }
+
   @Override
   public void cycleCompleted(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
     callReceived(new CycleCompletedCall(fullResult, deltaResult));
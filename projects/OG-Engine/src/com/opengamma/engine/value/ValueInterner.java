@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.value;
+
+import java.util.Set;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Canonicalizes {@link ValueProperties}, {@link ValueRequirement} and {@link ValueSpecification} instances.
+ * <p>
+ * Equal objects passed to an interner all resolve to the same canonical instance so that a large dependency graph
+ * holds only one copy of each distinct value, target and property set. Canonical instances compare by identity
+ * before falling back to a full comparison, and their hash codes are calculated once. Property sets are stored
+ * compactly with their names, values and value sets shared between all of the canonical property sets that use them.
+ * <p>
+ * Canonical instances, including the property names and values, are held weakly and are discarded once no longer
+ * referenced elsewhere. Strings are not passed to {@link String#intern()}, which would keep every property value
+ * ever seen in the permanent generation.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ValueInterner {
+
+  private static final ValueInterner s_instance = new ValueInterner();
+
+  private final Interner<String> _strings = Interners.newWeakInterner();
+  private final Interner<Set<String>> _valueSets = Interners.newWeakInterner();
+  private final Interner<ValueProperties> _properties = Interners.newWeakInterner();
+  private final Interner<ComputationTargetSpecification> _targets = Interners.newWeakInterner();
+  private final Interner<ValueRequirement> _requirements = Interners.newWeakInterner();
+  private final Interner<ValueSpecification> _specifications = Interners.newWeakInterner();
+
+  /**
+   * Returns the shared interner.
+   *
+   * @return the interner, not null
+   */
+  public static ValueInterner getInstance() {
+    return s_instance;
+  }
+
+  /**
+   * Returns the canonical instance of a property set.
+   *
+   * @param properties  the property set, not null
+   * @return the canonical instance, not null
+   */
+  public ValueProperties intern(final ValueProperties properties) {
+    ArgumentChecker.notNull(properties, "properties");
+    return _properties.intern(properties.compact(_strings, _valueSets));
+  }
+
+  /**
+   * Returns the canonical instance of a target specification.
+   *
+   * @param targetSpecification  the target specification, not null
+   * @return the canonical instance, not null
+   */
+  public ComputationTargetSpecification intern(final ComputationTargetSpecification targetSpecification) {
+    ArgumentChecker.notNull(targetSpecification, "targetSpecification");
+    return _targets.intern(targetSpecification);
+  }
+
+  /**
+   * Returns the canonical instance of a value requirement. The target specification and constraints of the canonical
+   * instance are also canonical.
+   *
+   * @param requirement  the value requirement, not null
+   * @return the canonical instance, not null
+   */
+  public ValueRequirement intern(final ValueRequirement requirement) {
+    ArgumentChecker.notNull(requirement, "requirement");
+    final ComputationTargetSpecification targetSpecification = intern(requirement.getTargetSpecification());
+    final ValueProperties constraints = intern(requirement.getConstraints());
+    if ((targetSpecification == requirement.getTargetSpecification()) && (constraints == requirement.getConstraints())) {
+      return _requirements.intern(requirement);
+    }
+    return _requirements.intern(new ValueRequirement(requirement.getValueName(), targetSpecification, constraints));
+  }
+
+  /**
+   * Returns the canonical instance of a value specification. The target specification and properties of the canonical
+   * instance are also canonical.
+   *
+   * @param specification  the value specification, not null
+   * @return the canonical instance, not null
+   */
+  public ValueSpecification intern(final ValueSpecification specification) {
+    ArgumentChecker.notNull(specification, "specification");
+    final ComputationTargetSpecification targetSpecification = intern(specification.getTargetSpecification());
+    final ValueProperties properties = intern(specification.getProperties());
+    if ((targetSpecification == specification.getTargetSpecification()) && (properties == specification.getProperties())) {
+      return _specifications.intern(specification);
+    }
+    return _specifications.intern(new ValueSpecification(specification.getValueName(), targetSpecification, properties));
+  }
+
+}
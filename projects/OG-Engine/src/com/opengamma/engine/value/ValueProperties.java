@@ -20,6 +20,7 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 
+import com.google.common.collect.Interner;
 import com.google.common.collect.Sets;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.PublicAPI;
@@ -226,6 +227,14 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
      * The optional properties.
      */
     private final Set<String> _optional;
+    /**
+     * The hash code, calculated on first use.
+     */
+    private transient int _hashCode;
+    /**
+     * Whether this instance was created by {@link #compact}.
+     */
+    private transient boolean _compact;
 
     /**
      * Creates an instance.
@@ -419,12 +428,56 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
         return false;
       }
       final ValuePropertiesImpl other = (ValuePropertiesImpl) o;
+      if ((_hashCode != 0) && (other._hashCode != 0) && (_hashCode != other._hashCode)) {
+        return false;
+      }
       return _properties.equals(other._properties) && ObjectUtils.equals(_optional, other._optional);
     }
 
     @Override
     public int hashCode() {
-      return _properties.hashCode();
+      int result = _hashCode;
+      if (result == 0) {
+        result = _properties.hashCode();
+        _hashCode = result;
+      }
+      return result;
+    }
+
+    @Override
+    /* package */ValueProperties compact(final Interner<String> strings, final Interner<Set<String>> valueSets) {
+      if (_compact) {
+        return this;
+      }
+      final Map<String, Set<String>> properties;
+      if (_properties.size() == 1) {
+        final Map.Entry<String, Set<String>> property = _properties.entrySet().iterator().next();
+        properties = Collections.singletonMap(strings.intern(property.getKey()), compact(property.getValue(), strings, valueSets));
+      } else {
+        properties = new HashMap<String, Set<String>>((_properties.size() * 4 + 2) / 3);
+        for (Map.Entry<String, Set<String>> property : _properties.entrySet()) {
+          properties.put(strings.intern(property.getKey()), compact(property.getValue(), strings, valueSets));
+        }
+      }
+      final ValuePropertiesImpl compacted = new ValuePropertiesImpl(Collections.unmodifiableMap(properties), compact(_optional, strings, valueSets));
+      compacted._hashCode = _hashCode;
+      compacted._compact = true;
+      return compacted;
+    }
+
+    private static Set<String> compact(final Set<String> values, final Interner<String> strings, final Interner<Set<String>> valueSets) {
+      switch (values.size()) {
+        case 0:
+          return Collections.emptySet();
+        case 1:
+          return valueSets.intern(Collections.singleton(strings.intern(values.iterator().next())));
+        default:
+          final Set<String> copy = new HashSet<String>((values.size() * 4 + 2) / 3);
+          for (String value : values) {
+            copy.add(strings.intern(value));
+          }
+          return valueSets.intern(Collections.unmodifiableSet(copy));
+      }
     }
 
     @Override
@@ -1107,6 +1160,19 @@ public abstract class ValueProperties implements Serializable, Comparable<ValueP
   public ValueProperties withoutAny(final String propertyName) {
     return copy().withoutAny(propertyName).get();
   }
+
+  /**
+   * Returns an equal property set using the least memory, with the property names and values interned and value sets
+   * shared with other property sets. This is used by {@link ValueInterner} and returns this object if it is already
+   * compact.
+   * 
+   * @param strings  the interner for the property names and values, not null
+   * @param valueSets  the interner for the value sets, not null
+   * @return the compacted property set, not null
+   */
+  /* package */ValueProperties compact(final Interner<String> strings, final Interner<Set<String>> valueSets) {
+    return this;
+  }
   
   /**
    * Returns a simple string representation of the {@link ValueProperties} instance. This simple representation omits
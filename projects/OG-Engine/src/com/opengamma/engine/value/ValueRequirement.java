@@ -47,6 +47,10 @@ public final class ValueRequirement implements Serializable {
    * For example, a currency constraint.
    */
   private final ValueProperties _constraints;
+  /**
+   * The hash code, calculated on first use.
+   */
+  private transient int _hashCode;
 
   /**
    * Creates a requirement with no value constraints.
@@ -211,6 +215,9 @@ public final class ValueRequirement implements Serializable {
     }
     if (obj instanceof ValueRequirement) {
       ValueRequirement other = (ValueRequirement) obj;
+      if ((_hashCode != 0) && (other._hashCode != 0) && (_hashCode != other._hashCode)) {
+        return false;
+      }
       return _valueName == other._valueName && // values are interned
           _targetSpecification.equals(other._targetSpecification) &&
           _constraints.equals(other._constraints);
@@ -220,11 +227,15 @@ public final class ValueRequirement implements Serializable {
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + _valueName.hashCode();
-    result = prime * result + _targetSpecification.hashCode();
-    result = prime * result + _constraints.hashCode();
+    int result = _hashCode;
+    if (result == 0) {
+      final int prime = 31;
+      result = 1;
+      result = prime * result + _valueName.hashCode();
+      result = prime * result + _targetSpecification.hashCode();
+      result = prime * result + _constraints.hashCode();
+      _hashCode = result;
+    }
     return result;
   }
 
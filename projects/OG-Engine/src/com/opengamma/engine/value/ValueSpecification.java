@@ -50,6 +50,10 @@ public class ValueSpecification implements Serializable {
    * This property set will satisfy the constraints of all {@link ValueRequirement}s satisfied by this specification.
    */
   private final ValueProperties _properties;
+  /**
+   * The hash code, calculated on first use.
+   */
+  private transient int _hashCode;
 
   /**
    * Obtains a {@code ValueSpecification} from a target, building the target specification
@@ -312,6 +316,9 @@ public class ValueSpecification implements Serializable {
     }
     if (obj instanceof ValueSpecification) {
       final ValueSpecification other = (ValueSpecification) obj;
+      if ((_hashCode != 0) && (other._hashCode != 0) && (_hashCode != other._hashCode)) {
+        return false;
+      }
       // valueName is interned
       return (_valueName == other._valueName) &&
         ObjectUtils.equals(_targetSpecification, other._targetSpecification) &&
@@ -322,11 +329,15 @@ public class ValueSpecification implements Serializable {
 
   @Override
   public int hashCode() {
-    final int prime = 37;
-    int result = 1;
-    result = (result * prime) + _valueName.hashCode();
-    result = (result * prime) + _targetSpecification.hashCode();
-    result = (result * prime) + _properties.hashCode();
+    int result = _hashCode;
+    if (result == 0) {
+      final int prime = 37;
+      result = 1;
+      result = (result * prime) + _valueName.hashCode();
+      result = (result * prime) + _targetSpecification.hashCode();
+      result = (result * prime) + _properties.hashCode();
+      _hashCode = result;
+    }
     return result;
   }
 
@@ -48,6 +48,7 @@ public class ViewDefinition implements Serializable, UniqueIdentifiable, Mutable
 
   private Long _minFullCalculationPeriod;
   private Long _maxFullCalculationPeriod;
+  private Long _targetResultLatency;
   private Currency _defaultCurrency;
 
   private final Map<String, ViewCalculationConfiguration> _calculationConfigurationsByName = new TreeMap<String, ViewCalculationConfiguration>();
@@ -386,6 +387,30 @@ public class ViewDefinition implements Serializable, UniqueIdentifiable, Mutable
     _maxFullCalculationPeriod = maxFullCalculationPeriod;
   }
 
+  /**
+   * Gets the target time, in milliseconds, from a relevant market data change to the publication of results which
+   * reflect it. If set, a cycle triggered by market data is not started as soon as it is eligible but delayed so that
+   * further changes arriving meanwhile are coalesced into it, starting just early enough, given the expected cost of
+   * the cycle, to meet the target. The minimum and maximum calculation periods still apply.
+   * 
+   * @return the target result latency, in milliseconds, or <code>null</code> to start cycles as soon as they are
+   *         eligible
+   */
+  public Long getTargetResultLatency() {
+    return _targetResultLatency;
+  }
+
+  /**
+   * Sets the target time, in milliseconds, from a relevant market data change to the publication of results which
+   * reflect it. See {@link #getTargetResultLatency()}.
+   *
+   * @param targetResultLatency  the target result latency, in milliseconds, or <code>null</code> to start cycles as
+   *                             soon as they are eligible
+   */
+  public void setTargetResultLatency(Long targetResultLatency) {
+    _targetResultLatency = targetResultLatency;
+  }
+
   // -------------------------------------------------------------------------
   /**
    * Returns the result model definition, describing how the results should be constructed and returned after execution
@@ -446,6 +471,7 @@ public class ViewDefinition implements Serializable, UniqueIdentifiable, Mutable
         && ObjectUtils.equals(getResultModelDefinition(), other.getResultModelDefinition()) && ObjectUtils.equals(getMarketDataUser(), other.getMarketDataUser())
         && ObjectUtils.equals(_minDeltaCalculationPeriod, other._minDeltaCalculationPeriod) && ObjectUtils.equals(_maxDeltaCalculationPeriod, other._maxDeltaCalculationPeriod)
         && ObjectUtils.equals(_minFullCalculationPeriod, other._minFullCalculationPeriod) && ObjectUtils.equals(_maxFullCalculationPeriod, other._maxFullCalculationPeriod)
+        && ObjectUtils.equals(_targetResultLatency, other._targetResultLatency)
         && ObjectUtils.equals(_dumpComputationCacheToDisk, other._dumpComputationCacheToDisk) && ObjectUtils.equals(getAllCalculationConfigurationNames(), other.getAllCalculationConfigurationNames())
         && ObjectUtils.equals(_defaultCurrency, other._defaultCurrency);
     if (!basicPropertiesEqual) {
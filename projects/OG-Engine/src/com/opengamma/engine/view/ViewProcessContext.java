@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.view;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import com.opengamma.core.position.PositionSource;
 import com.opengamma.core.security.SecuritySource;
 import com.opengamma.engine.CachingComputationTargetResolver;
@@ -23,12 +26,18 @@ import com.opengamma.engine.view.calcnode.ViewProcessorQueryReceiver;
 import com.opengamma.engine.view.compilation.ViewCompilationServices;
 import com.opengamma.engine.view.permission.ViewPermissionProvider;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
 
 /**
  * Encapsulates the context required by a view process.
  */
 public class ViewProcessContext {
 
+  /**
+   * The default executor for computing deltas, shared by all processes which are not given their own.
+   */
+  private static ExecutorService s_defaultDeltaExecutorService;
+
   private final ViewPermissionProvider _viewPermissionProvider;
   private final CompiledFunctionService _functionCompilationService;
   private final FunctionResolver _functionResolver;
@@ -42,6 +51,8 @@ public class ViewProcessContext {
   private final GraphExecutorStatisticsGathererProvider _graphExecutorStatisticsGathererProvider;
   private final MarketDataInjector _liveDataOverrideInjector;
   private final MarketDataProviderResolver _marketDataProviderResolver;
+  private ExecutorService _deltaExecutorService;
+  private ExecutorService _graphBuildingExecutorService;
 
   public ViewProcessContext(
       ViewPermissionProvider viewPermissionProvider,
@@ -195,6 +206,54 @@ public class ViewProcessContext {
     return _graphExecutorStatisticsGathererProvider;
   }
 
+  /**
+   * Gets the executor used to spread the computation of deltas between cycles over several threads. This covers
+   * both the market data delta used to skip unchanged nodes and the delta result model sent to listeners. It is
+   * kept apart from the function compilation executor so that compilations and cycles do not hold each other up.
+   * 
+   * @return the delta executor service, not null
+   */
+  public ExecutorService getDeltaExecutorService() {
+    if (_deltaExecutorService == null) {
+      return getDefaultDeltaExecutorService();
+    }
+    return _deltaExecutorService;
+  }
+
+  /**
+   * Sets the executor used to spread the computation of deltas between cycles over several threads.
+   * 
+   * @param deltaExecutorService  the delta executor service, null to use a default pool shared by all processes
+   */
+  public void setDeltaExecutorService(ExecutorService deltaExecutorService) {
+    _deltaExecutorService = deltaExecutorService;
+  }
+
+  /**
+   * Gets the executor used to build the dependency graphs of a view definition in parallel.
+   * 
+   * @return the graph building executor service, null if graphs are built sequentially
+   */
+  public ExecutorService getGraphBuildingExecutorService() {
+    return _graphBuildingExecutorService;
+  }
+
+  /**
+   * Sets the executor used to build the dependency graphs of a view definition in parallel.
+   * 
+   * @param graphBuildingExecutorService  the graph building executor service, null to build graphs sequentially
+   */
+  public void setGraphBuildingExecutorService(ExecutorService graphBuildingExecutorService) {
+    _graphBuildingExecutorService = graphBuildingExecutorService;
+  }
+
+  private static synchronized ExecutorService getDefaultDeltaExecutorService() {
+    if (s_defaultDeltaExecutorService == null) {
+      s_defaultDeltaExecutorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadPoolFactory("ViewDelta"));
+    }
+    return s_defaultDeltaExecutorService;
+  }
+
   // -------------------------------------------------------------------------
   /**
    * Uses this context to form a {@code ViewCompliationServices} instance.
@@ -204,7 +263,7 @@ public class ViewProcessContext {
    */
   public ViewCompilationServices asCompilationServices(MarketDataAvailabilityProvider marketDataAvailabilityProvider) {
     return new ViewCompilationServices(marketDataAvailabilityProvider, getFunctionResolver(), getFunctionCompilationService().getFunctionCompilationContext(), getComputationTargetResolver(),
-        getFunctionCompilationService().getExecutorService(), getSecuritySource(), getPositionSource());
+        getFunctionCompilationService().getExecutorService(), getSecuritySource(), getPositionSource(), getGraphBuildingExecutorService());
   }
 
 }
@@ -5,6 +5,7 @@
  */
 package com.opengamma.engine.view;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
@@ -137,6 +138,18 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
   public void triggerCycle() {
     getComputationJob().triggerCycle();
   }
+
+  /**
+   * Notifies the view process that portfolios, positions or securities have changed.
+   * 
+   * @param changedIdentifiers the object identifiers of the changed items, not null
+   */
+  public void targetsChanged(Collection<ObjectIdentifier> changedIdentifiers) {
+    final ViewComputationJob computationJob = getComputationJob();
+    if (computationJob != null) {
+      computationJob.targetsChanged(changedIdentifiers);
+    }
+  }
   
   //-------------------------------------------------------------------------
   // Lifecycle
@@ -232,6 +245,25 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
     }   
   }
   
+  public void cycleFragmentCompleted(ViewCycle cycle, ViewComputationResultModel fragment) {
+    // Caller MUST NOT hold the semaphore
+    s_logger.debug("View cycle {} fragment completed on view process {}", cycle.getUniqueId(), getUniqueId());
+    lock();
+    try {
+      // The latest result is not swapped until the whole cycle completes
+      ViewDeltaResultModel deltaFragment = computeDeltaModel(_latestResult.get(), fragment);
+      for (ViewResultListener listener : _listeners) {
+        try {
+          listener.cycleFragmentCompleted(fragment, deltaFragment);
+        } catch (Exception e) {
+          logListenerError(listener, e);
+        }
+      }
+    } finally {
+      unlock();
+    }
+  }
+
   public void cycleCompleted(ViewCycle cycle) {
     // Caller MUST NOT hold the semaphore
     s_logger.debug("View cycle {} completed on view process {}", cycle.getUniqueId(), getUniqueId());
@@ -257,7 +289,7 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
     ViewComputationResultModel previousResult = _latestResult.get();
     _latestResult.set(result);
     
-    ViewDeltaResultModel deltaResult = ViewDeltaResultCalculator.computeDeltaModel(getDefinition(), previousResult, result);
+    ViewDeltaResultModel deltaResult = computeDeltaModel(previousResult, result);
     for (ViewResultListener listener : _listeners) {
       try {
         listener.cycleCompleted(result, deltaResult);
@@ -267,6 +299,11 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
     }
   }
   
+  private ViewDeltaResultModel computeDeltaModel(ViewComputationResultModel previousResult, ViewComputationResultModel result) {
+    // Computed once here and shared by every client of the process
+    return ViewDeltaResultCalculator.computeDeltaModel(getDefinition(), previousResult, result, getProcessContext().getDeltaExecutorService());
+  }
+  
   public void cycleExecutionFailed(ViewCycleExecutionOptions executionOptions, Exception exception) {
     s_logger.error("Cycle execution failed for " + executionOptions + ": ", exception);
     for (ViewResultListener listener : _listeners) {
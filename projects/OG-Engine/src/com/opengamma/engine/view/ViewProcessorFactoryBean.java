@@ -5,6 +5,8 @@
  */
 package com.opengamma.engine.view;
 
+import java.util.concurrent.ExecutorService;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +54,8 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
   private DependencyGraphExecutorFactory<?> _dependencyGraphExecutorFactory;
   private GraphExecutorStatisticsGathererProvider _graphExecutionStatistics = new DiscardingGraphStatisticsGathererProvider();
   private ViewPermissionProvider _viewPermissionProvider;
+  private ExecutorService _deltaExecutorService;
+  private ExecutorService _graphBuildingExecutorService;
   
   //-------------------------------------------------------------------------
   public Long getId() {
@@ -166,6 +170,27 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
     _viewPermissionProvider = viewPermissionProvider;
   }
 
+  public ExecutorService getDeltaExecutorService() {
+    return _deltaExecutorService;
+  }
+
+  public void setDeltaExecutorService(ExecutorService deltaExecutorService) {
+    _deltaExecutorService = deltaExecutorService;
+  }
+
+  public ExecutorService getGraphBuildingExecutorService() {
+    return _graphBuildingExecutorService;
+  }
+
+  /**
+   * Sets the executor used to build dependency graphs in parallel. The view processor shuts it down when stopped.
+   * 
+   * @param graphBuildingExecutorService  the graph building executor service, null to build graphs sequentially
+   */
+  public void setGraphBuildingExecutorService(ExecutorService graphBuildingExecutorService) {
+    _graphBuildingExecutorService = graphBuildingExecutorService;
+  }
+
   //-------------------------------------------------------------------------
   protected void checkInjectedInputs() {
     s_logger.debug("Checking injected inputs.");
@@ -190,7 +215,7 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
   @Override
   public ViewProcessor createObject() {
     checkInjectedInputs();
-    return new ViewProcessorImpl(
+    final ViewProcessorImpl viewProcessor = new ViewProcessorImpl(
         UniqueIdentifier.of(VIEW_PROCESSOR_ID_SCHEME, getId().toString()),
         getViewDefinitionRepository(),
         getSecuritySource(),
@@ -205,6 +230,9 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
         getDependencyGraphExecutorFactory(),
         getGraphExecutionStatistics(),
         getViewPermissionProvider());
+    viewProcessor.setDeltaExecutorService(getDeltaExecutorService());
+    viewProcessor.setGraphBuildingExecutorService(getGraphBuildingExecutorService());
+    return viewProcessor;
   }
 
 }
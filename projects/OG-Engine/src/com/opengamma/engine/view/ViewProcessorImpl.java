@@ -89,6 +89,8 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
   private final DependencyGraphExecutorFactory<?> _dependencyGraphExecutorFactory;
   private final GraphExecutorStatisticsGathererProvider _graphExecutionStatistics;
   private final ViewPermissionProvider _viewPermissionProvider;
+  private ExecutorService _deltaExecutorService;
+  private ExecutorService _graphBuildingExecutorService;
   
   // State
   /**
@@ -140,6 +142,46 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
     _viewPermissionProvider = viewPermissionProvider;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the executor used by the view processes to compute deltas between cycles.
+   * 
+   * @return the delta executor service, null if the processes use a default pool
+   */
+  public ExecutorService getDeltaExecutorService() {
+    return _deltaExecutorService;
+  }
+
+  /**
+   * Sets the executor used by the view processes to compute deltas between cycles. This only affects processes
+   * created after it is set.
+   * 
+   * @param deltaExecutorService  the delta executor service, null to use a default pool
+   */
+  public void setDeltaExecutorService(ExecutorService deltaExecutorService) {
+    _deltaExecutorService = deltaExecutorService;
+  }
+
+  /**
+   * Gets the executor used by the view processes to build dependency graphs in parallel.
+   * 
+   * @return the graph building executor service, null if graphs are built sequentially
+   */
+  public ExecutorService getGraphBuildingExecutorService() {
+    return _graphBuildingExecutorService;
+  }
+
+  /**
+   * Sets the executor used by the view processes to build dependency graphs in parallel. This only affects processes
+   * created after it is set. The view processor owns the executor and shuts it down when it is stopped; graphs are
+   * then built sequentially unless another executor is set.
+   * 
+   * @param graphBuildingExecutorService  the graph building executor service, null to build graphs sequentially
+   */
+  public void setGraphBuildingExecutorService(ExecutorService graphBuildingExecutorService) {
+    _graphBuildingExecutorService = graphBuildingExecutorService;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public UniqueIdentifier getUniqueId() {
@@ -483,7 +525,7 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
   }
   
   private ViewProcessContext createViewProcessContext() {
-    return new ViewProcessContext(
+    final ViewProcessContext context = new ViewProcessContext(
         _viewPermissionProvider,
         _marketDataProviderFactoryResolver,
         _functionCompilationService,
@@ -496,6 +538,9 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
         _viewProcessorQueryReceiver,
         _dependencyGraphExecutorFactory,
         _graphExecutionStatistics);
+    context.setDeltaExecutorService(_deltaExecutorService);
+    context.setGraphBuildingExecutorService(_graphBuildingExecutorService);
+    return context;
   }
   
   private String generateIdValue(AtomicLong source) {
@@ -588,6 +633,14 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
     }
   }
 
+  @Override
+  public void targetsChanged(final Collection<ObjectIdentifier> changedIdentifiers) {
+    ArgumentChecker.notNull(changedIdentifiers, "changedIdentifiers");
+    for (ViewProcessImpl viewProcess : _allProcessesById.values()) {
+      viewProcess.targetsChanged(changedIdentifiers);
+    }
+  }
+
   @Override
   public void stop() {
     _processLock.lock();
@@ -608,6 +661,11 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
       }
       _allClientsById.clear();
       
+      if (_graphBuildingExecutorService != null) {
+        _graphBuildingExecutorService.shutdown();
+        _graphBuildingExecutorService = null;
+      }
+      
       _isStarted = false;
       
       // REVIEW Andrew 2010-03-25 -- It might be coincidence, but if this gets called during undeploy/stop within a container the Bloomberg API explodes with a ton of NPEs.
@@ -14,6 +14,7 @@ import org.springframework.context.Lifecycle;
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.view.client.ViewClient;
 import com.opengamma.engine.view.event.ViewProcessorEventListenerRegistry;
+import com.opengamma.id.ObjectIdentifier;
 
 /**
  * Exposes engine-level access to a view processor, including access to data structures which should not be available
@@ -62,5 +63,14 @@ public interface ViewProcessorInternal extends ViewProcessor, Lifecycle {
    *         when processing can resume, not null
    */
   Future<Runnable> suspend(ExecutorService executorService);
+
+  /**
+   * Notifies the view processor that portfolios, positions or securities have changed. Any view process whose
+   * portfolio references one of them will update its compiled view definition, recompiling only the affected parts
+   * where possible, and run a new cycle.
+   * 
+   * @param changedIdentifiers the object identifiers of the changed portfolios, positions or securities, not null
+   */
+  void targetsChanged(Collection<ObjectIdentifier> changedIdentifiers);
   
 }
@@ -15,6 +15,7 @@ import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.collect.MapMaker;
+import com.opengamma.engine.value.ValueInterner;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ArgumentChecker;
 
@@ -98,7 +99,8 @@ public class CachingIdentifierMap implements IdentifierMap {
     if (spec != null) {
       return spec;
     }
-    spec = getUnderlying().getValueSpecification(identifier);
+    // Decoded specifications are interned so that all of the cached values share one instance of each
+    spec = ValueInterner.getInstance().intern(getUnderlying().getValueSpecification(identifier));
     _specificationToIdentifier.put(spec, identifier);
     _identifierToSpecification.put(identifier, spec);
     return spec;
@@ -122,13 +124,14 @@ public class CachingIdentifierMap implements IdentifierMap {
     if (cacheMisses != null) {
       if (cacheMisses.size() == 1) {
         final Long identifier = cacheMisses.get(0);
-        final ValueSpecification specification = getUnderlying().getValueSpecification(identifier);
+        final ValueSpecification specification = ValueInterner.getInstance().intern(getUnderlying().getValueSpecification(identifier));
         _specificationToIdentifier.put(specification, identifier);
         _identifierToSpecification.put(identifier, specification);
         specifications.put(identifier, specification);
       } else {
         final Map<Long, ValueSpecification> values = getUnderlying().getValueSpecifications(cacheMisses);
         for (Map.Entry<Long, ValueSpecification> value : values.entrySet()) {
+          value.setValue(ValueInterner.getInstance().intern(value.getValue()));
           _specificationToIdentifier.put(value.getValue(), value.getKey());
           _identifierToSpecification.put(value.getKey(), value.getValue());
         }
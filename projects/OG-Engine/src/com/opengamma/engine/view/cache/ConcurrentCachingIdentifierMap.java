@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Caches value identifiers on top of another identifier source using bounded, non-blocking tables.
+ * <p>
+ * Unlike {@link CachingIdentifierMap} there is no monitor on the lookup path and identifiers are held
+ * as primitive {@code long} values. Each table is a fixed size two-way set associative array; when both
+ * slots for a hash are occupied the older entry is evicted. Concurrent writers may occasionally evict
+ * each other's entries, which only costs a further call to the underlying map.
+ * <p>
+ * This class is internally synchronized.
+ */
+public class ConcurrentCachingIdentifierMap implements IdentifierMap {
+
+  /**
+   * Default number of entries that can be cached.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 1 << 18;
+
+  /**
+   * Cached association between a specification and its identifier. Instances are immutable and shared
+   * by both tables.
+   */
+  private static final class Entry {
+
+    private final ValueSpecification _specification;
+    private final int _specificationHash;
+    private final long _identifier;
+
+    private Entry(final ValueSpecification specification, final int specificationHash, final long identifier) {
+      _specification = specification;
+      _specificationHash = specificationHash;
+      _identifier = identifier;
+    }
+
+  }
+
+  private final IdentifierMap _underlying;
+  private final AtomicReferenceArray<Entry> _specificationToIdentifier;
+  private final AtomicReferenceArray<Entry> _identifierToSpecification;
+  private final int _mask;
+
+  public ConcurrentCachingIdentifierMap(final IdentifierMap underlying) {
+    this(underlying, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * @param underlying the underlying source of identifiers, not {@code null}
+   * @param maxEntries the maximum number of entries to cache, rounded up to a power of two
+   */
+  public ConcurrentCachingIdentifierMap(final IdentifierMap underlying, final int maxEntries) {
+    ArgumentChecker.notNull(underlying, "Underlying source");
+    ArgumentChecker.isTrue(maxEntries > 1, "maxEntries");
+    _underlying = underlying;
+    int size = 2;
+    while ((size < maxEntries) && (size < (1 << 30))) {
+      size <<= 1;
+    }
+    _specificationToIdentifier = new AtomicReferenceArray<Entry>(size);
+    _identifierToSpecification = new AtomicReferenceArray<Entry>(size);
+    _mask = size - 1;
+  }
+
+  /**
+   * Gets the underlying source.
+   * @return the underlying
+   */
+  public IdentifierMap getUnderlying() {
+    return _underlying;
+  }
+
+  /**
+   * Returns the number of entries the cache can hold.
+   *
+   * @return the capacity
+   */
+  public int getMaxEntries() {
+    return _mask + 1;
+  }
+
+  private static int spread(int h) {
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  private static int hash(final long identifier) {
+    return spread((int) (identifier ^ (identifier >>> 32)));
+  }
+
+  private Entry findBySpecification(final ValueSpecification specification, final int hash) {
+    final int index = hash & _mask;
+    Entry e = _specificationToIdentifier.get(index);
+    if ((e != null) && (e._specificationHash == hash) && specification.equals(e._specification)) {
+      return e;
+    }
+    e = _specificationToIdentifier.get(index ^ 1);
+    if ((e != null) && (e._specificationHash == hash) && specification.equals(e._specification)) {
+      return e;
+    }
+    return null;
+  }
+
+  private Entry findByIdentifier(final long identifier) {
+    final int index = hash(identifier) & _mask;
+    Entry e = _identifierToSpecification.get(index);
+    if ((e != null) && (e._identifier == identifier)) {
+      return e;
+    }
+    e = _identifierToSpecification.get(index ^ 1);
+    if ((e != null) && (e._identifier == identifier)) {
+      return e;
+    }
+    return null;
+  }
+
+  /**
+   * Writes the entry to its primary slot, demoting any different entry that was there to the secondary slot
+   * and so evicting whatever the secondary slot held.
+   */
+  private static void store(final AtomicReferenceArray<Entry> table, final int index, final Entry entry, final boolean bySpecification) {
+    final Entry previous = table.getAndSet(index, entry);
+    if (previous != null) {
+      final boolean same = bySpecification
+          ? ((previous._specificationHash == entry._specificationHash) && previous._specification.equals(entry._specification))
+          : (previous._identifier == entry._identifier);
+      if (!same) {
+        table.set(index ^ 1, previous);
+      }
+    }
+  }
+
+  private void cache(final ValueSpecification specification, final int hash, final long identifier) {
+    final Entry entry = new Entry(specification, hash, identifier);
+    store(_specificationToIdentifier, hash & _mask, entry, true);
+    store(_identifierToSpecification, hash(identifier) & _mask, entry, false);
+  }
+
+  @Override
+  public long getIdentifier(final ValueSpecification spec) {
+    final int hash = spread(spec.hashCode());
+    final Entry e = findBySpecification(spec, hash);
+    if (e != null) {
+      return e._identifier;
+    }
+    final long identifier = getUnderlying().getIdentifier(spec);
+    cache(spec, hash, identifier);
+    return identifier;
+  }
+
+  @Override
+  public Map<ValueSpecification, Long> getIdentifiers(final Collection<ValueSpecification> specs) {
+    final Map<ValueSpecification, Long> identifiers = new HashMap<ValueSpecification, Long>();
+    List<ValueSpecification> cacheMisses = null;
+    for (ValueSpecification spec : specs) {
+      final Entry e = findBySpecification(spec, spread(spec.hashCode()));
+      if (e != null) {
+        identifiers.put(spec, e._identifier);
+      } else {
+        if (cacheMisses == null) {
+          cacheMisses = new ArrayList<ValueSpecification>();
+        }
+        cacheMisses.add(spec);
+      }
+    }
+    if (cacheMisses != null) {
+      if (cacheMisses.size() == 1) {
+        final ValueSpecification spec = cacheMisses.get(0);
+        identifiers.put(spec, getIdentifier(spec));
+      } else {
+        final Map<ValueSpecification, Long> values = getUnderlying().getIdentifiers(cacheMisses);
+        for (Map.Entry<ValueSpecification, Long> value : values.entrySet()) {
+          cache(value.getKey(), spread(value.getKey().hashCode()), value.getValue());
+        }
+        identifiers.putAll(values);
+      }
+    }
+    return identifiers;
+  }
+
+  /**
+   * Batch form of {@link #getIdentifier} which avoids boxing the identifiers.
+   *
+   * @param specs the specifications to lookup or allocate identifiers for, not {@code null}
+   * @param identifiers the array to receive the identifiers, in the same order as {@code specs}, not {@code null}
+   */
+  public void getIdentifiers(final ValueSpecification[] specs, final long[] identifiers) {
+    ArgumentChecker.isTrue(identifiers.length >= specs.length, "identifiers array too small");
+    List<ValueSpecification> cacheMisses = null;
+    int[] missIndices = null;
+    int misses = 0;
+    for (int i = 0; i < specs.length; i++) {
+      final Entry e = findBySpecification(specs[i], spread(specs[i].hashCode()));
+      if (e != null) {
+        identifiers[i] = e._identifier;
+      } else {
+        if (cacheMisses == null) {
+          cacheMisses = new ArrayList<ValueSpecification>();
+          missIndices = new int[specs.length - i];
+        }
+        cacheMisses.add(specs[i]);
+        missIndices[misses++] = i;
+      }
+    }
+    if (cacheMisses != null) {
+      if (misses == 1) {
+        identifiers[missIndices[0]] = getIdentifier(cacheMisses.get(0));
+      } else {
+        final Map<ValueSpecification, Long> values = getUnderlying().getIdentifiers(cacheMisses);
+        for (int i = 0; i < misses; i++) {
+          final ValueSpecification spec = cacheMisses.get(i);
+          final long identifier = values.get(spec);
+          cache(spec, spread(spec.hashCode()), identifier);
+          identifiers[missIndices[i]] = identifier;
+        }
+      }
+    }
+  }
+
+  @Override
+  public ValueSpecification getValueSpecification(final long identifier) {
+    final Entry e = findByIdentifier(identifier);
+    if (e != null) {
+      return e._specification;
+    }
+    final ValueSpecification spec = getUnderlying().getValueSpecification(identifier);
+    if (spec != null) {
+      cache(spec, spread(spec.hashCode()), identifier);
+    }
+    return spec;
+  }
+
+  @Override
+  public Map<Long, ValueSpecification> getValueSpecifications(final Collection<Long> identifiers) {
+    final Map<Long, ValueSpecification> specifications = new HashMap<Long, ValueSpecification>();
+    List<Long> cacheMisses = null;
+    for (Long identifier : identifiers) {
+      final Entry e = findByIdentifier(identifier);
+      if (e != null) {
+        specifications.put(identifier, e._specification);
+      } else {
+        if (cacheMisses == null) {
+          cacheMisses = new ArrayList<Long>();
+        }
+        cacheMisses.add(identifier);
+      }
+    }
+    if (cacheMisses != null) {
+      if (cacheMisses.size() == 1) {
+        final Long identifier = cacheMisses.get(0);
+        specifications.put(identifier, getValueSpecification(identifier));
+      } else {
+        final Map<Long, ValueSpecification> values = getUnderlying().getValueSpecifications(cacheMisses);
+        for (Map.Entry<Long, ValueSpecification> value : values.entrySet()) {
+          if (value.getValue() != null) {
+            cache(value.getValue(), spread(value.getValue().hashCode()), value.getKey());
+          }
+        }
+        specifications.putAll(values);
+      }
+    }
+    return specifications;
+  }
+
+  /**
+   * Batch form of {@link #getValueSpecification} which avoids boxing the identifiers.
+   *
+   * @param identifiers the identifiers to look up, not {@code null}
+   * @param specs the array to receive the specifications, in the same order as {@code identifiers}, not {@code null}
+   */
+  public void getValueSpecifications(final long[] identifiers, final ValueSpecification[] specs) {
+    ArgumentChecker.isTrue(specs.length >= identifiers.length, "specs array too small");
+    List<Long> cacheMisses = null;
+    int[] missIndices = null;
+    int misses = 0;
+    for (int i = 0; i < identifiers.length; i++) {
+      final Entry e = findByIdentifier(identifiers[i]);
+      if (e != null) {
+        specs[i] = e._specification;
+      } else {
+        if (cacheMisses == null) {
+          cacheMisses = new ArrayList<Long>();
+          missIndices = new int[identifiers.length - i];
+        }
+        cacheMisses.add(identifiers[i]);
+        missIndices[misses++] = i;
+      }
+    }
+    if (cacheMisses != null) {
+      if (misses == 1) {
+        specs[missIndices[0]] = getValueSpecification(identifiers[missIndices[0]]);
+      } else {
+        final Map<Long, ValueSpecification> values = getUnderlying().getValueSpecifications(cacheMisses);
+        for (int i = 0; i < misses; i++) {
+          final long identifier = identifiers[missIndices[i]];
+          final ValueSpecification spec = values.get(identifier);
+          if (spec != null) {
+            cache(spec, spread(spec.hashCode()), identifier);
+          }
+          specs[missIndices[i]] = spec;
+        }
+      }
+    }
+  }
+
+}
@@ -5,7 +5,9 @@
  */
 package com.opengamma.engine.view.cache;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -19,6 +21,8 @@ import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.mapping.FudgeDeserializationContext;
 import org.fudgemsg.mapping.FudgeSerializationContext;
+import org.fudgemsg.wire.FudgeDataOutputStreamWriter;
+import org.fudgemsg.wire.FudgeEncoded;
 import org.fudgemsg.wire.FudgeSize;
 
 import com.opengamma.engine.value.ComputedValue;
@@ -366,6 +370,97 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     return context.fudgeMsgToObject(message);
   }
 
+  /**
+   * Copies values from the shared data store of another cache into the shared data store of this one. The
+   * encoded messages are passed directly between the stores and are never deserialized. Any values not in the
+   * other cache's shared data store are looked up as for {@link #getValues(Collection)} and written to the
+   * shared data store of this cache.
+   * 
+   * @param previous the cache to copy values from, not {@code null}
+   * @param specifications the values to copy, not {@code null}
+   */
+  public void inheritSharedValues(final DefaultViewComputationCache previous, final Collection<ValueSpecification> specifications) {
+    ArgumentChecker.notNull(previous, "previous");
+    ArgumentChecker.notNull(specifications, "specifications");
+    if (specifications.isEmpty()) {
+      return;
+    }
+    final Map<ValueSpecification, Long> identifiers = previous.getIdentifierMap().getIdentifiers(specifications);
+    final Map<Long, FudgeMsg> values = previous.getSharedDataStore().get(identifiers.values());
+    final Map<ValueSpecification, Long> newIdentifiers = (previous.getIdentifierMap() == getIdentifierMap()) ? identifiers : getIdentifierMap().getIdentifiers(specifications);
+    final Map<Long, FudgeMsg> newValues = new HashMap<Long, FudgeMsg>();
+    List<ValueSpecification> missing = null;
+    for (Map.Entry<ValueSpecification, Long> identifier : identifiers.entrySet()) {
+      final FudgeMsg value = values.get(identifier.getValue());
+      if (value != null) {
+        newValues.put(newIdentifiers.get(identifier.getKey()), value);
+        final Integer size = previous._valueSizeCache.get(identifier.getKey());
+        if (size != null) {
+          _valueSizeCache.put(identifier.getKey(), size);
+        }
+      } else {
+        if (missing == null) {
+          missing = new ArrayList<ValueSpecification>();
+        }
+        missing.add(identifier.getKey());
+      }
+    }
+    if (!newValues.isEmpty()) {
+      getSharedDataStore().put(newValues);
+    }
+    if (missing != null) {
+      final Collection<ComputedValue> missingValues = new ArrayList<ComputedValue>(missing.size());
+      for (Pair<ValueSpecification, Object> value : previous.getValues(missing)) {
+        if (value.getSecond() != null) {
+          missingValues.add(new ComputedValue(value.getFirst(), value.getSecond()));
+        }
+      }
+      putSharedValues(missingValues);
+    }
+  }
+
+  /**
+   * Compares the shared values in this cache with those in another cache by their encoded forms. The values
+   * are never deserialized so this is considerably cheaper than comparing the objects returned by
+   * {@link #getValues}. Values which encode differently but would deserialize to equal objects will be
+   * reported as changed.
+   * 
+   * @param specifications the values to compare, not {@code null}
+   * @param other the cache to compare against, not {@code null}
+   * @return the specifications whose encoded values differ, or are only present in one of the caches
+   */
+  public Collection<ValueSpecification> getChangedSharedValues(final Collection<ValueSpecification> specifications, final DefaultViewComputationCache other) {
+    ArgumentChecker.notNull(specifications, "specifications");
+    ArgumentChecker.notNull(other, "other");
+    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
+    final Map<ValueSpecification, Long> otherIdentifiers = (other.getIdentifierMap() == getIdentifierMap()) ? identifiers : other.getIdentifierMap().getIdentifiers(specifications);
+    final Map<Long, FudgeMsg> values = getSharedDataStore().get(identifiers.values());
+    final Map<Long, FudgeMsg> otherValues = other.getSharedDataStore().get(otherIdentifiers.values());
+    final Collection<ValueSpecification> changed = new ArrayList<ValueSpecification>();
+    for (Map.Entry<ValueSpecification, Long> identifier : identifiers.entrySet()) {
+      final FudgeMsg value = values.get(identifier.getValue());
+      final FudgeMsg otherValue = otherValues.get(otherIdentifiers.get(identifier.getKey()));
+      if (value == null) {
+        if (otherValue != null) {
+          changed.add(identifier.getKey());
+        }
+      } else if ((otherValue == null) || !Arrays.equals(encode(value), other.encode(otherValue))) {
+        changed.add(identifier.getKey());
+      }
+    }
+    return changed;
+  }
+
+  private byte[] encode(final FudgeMsg message) {
+    if (message instanceof FudgeEncoded) {
+      return ((FudgeEncoded) message).getFudgeEncoded();
+    }
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(getFudgeContext(), baos);
+    writer.writeFields(message);
+    return baos.toByteArray();
+  }
+
   @Override
   public Integer estimateValueSize(final ComputedValue value) {
     return _valueSizeCache.get(value.getSpecification());
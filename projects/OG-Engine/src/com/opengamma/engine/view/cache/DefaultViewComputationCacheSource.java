@@ -106,6 +106,16 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     return new DefaultViewComputationCache(identifierMap, dataStore, dataStore, getFudgeContext());
   }
 
+  @Override
+  public void inheritSharedValues(final UniqueIdentifier previousViewCycleId, final UniqueIdentifier viewCycleId, final String calculationConfigurationName,
+      final Collection<ValueSpecification> specifications) {
+    final DefaultViewComputationCache previousCache = findCache(previousViewCycleId, calculationConfigurationName);
+    if (previousCache == null) {
+      throw new IllegalArgumentException("No cache for view cycle " + previousViewCycleId + ", configuration " + calculationConfigurationName);
+    }
+    getCache(viewCycleId, calculationConfigurationName).inheritSharedValues(previousCache, specifications);
+  }
+
   @Override
   public DefaultViewComputationCache getCache(UniqueIdentifier viewCycleId, String calculationConfigurationName) {
     return getCache(new ViewComputationCacheKey(viewCycleId, calculationConfigurationName));
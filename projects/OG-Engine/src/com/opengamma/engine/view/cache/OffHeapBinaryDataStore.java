@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * An implementation of {@link BinaryDataStore} that holds the data outside of the Java heap.
+ * <p>
+ * Values are appended to fixed size segments which are either direct buffers or memory mapped
+ * files. A primitive map from identifier to segment and offset locates each value. No per-value
+ * objects are retained on the heap so the garbage collector does not have to trace or copy the
+ * cached data. Replacing a value appends a new copy; the space used by the old one is only
+ * reclaimed when the whole store is deleted at the end of the cycle. Any segment files are
+ * removed when the store is deleted, so a store must always be deleted once finished with.
+ * <p>
+ * This class is internally synchronized.
+ */
+public class OffHeapBinaryDataStore extends AbstractBinaryDataStore implements BinaryDataStore {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStore.class);
+
+  /**
+   * Default size of each segment, in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * Size of the length written before each value, in bytes.
+   */
+  static final int LENGTH_PREFIX = 4;
+
+  /**
+   * Set once explicit release of buffers has failed, after which it is no longer attempted.
+   */
+  private static volatile boolean s_releaseUnsupported;
+
+  private final int _segmentSize;
+  private final File _mappedFilePrefix;
+  private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+  private final Long2LongMap _index = new Long2LongOpenHashMap();
+  private final List<ByteBuffer> _segments = new ArrayList<ByteBuffer>();
+  private final List<File> _mappedFiles = new ArrayList<File>();
+  private ByteBuffer _currentSegment;
+  private int _currentSegmentIndex;
+  private boolean _deleted;
+
+  /**
+   * Creates a store backed by direct buffers.
+   *
+   * @param segmentSize the size of each segment in bytes
+   */
+  public OffHeapBinaryDataStore(final int segmentSize) {
+    this(segmentSize, null);
+  }
+
+  /**
+   * Creates a store backed by memory mapped files, or direct buffers if the prefix is {@code null}.
+   *
+   * @param segmentSize the size of each segment in bytes
+   * @param mappedFilePrefix the path prefix to create segment files with, or {@code null} to use direct buffers
+   */
+  public OffHeapBinaryDataStore(final int segmentSize, final File mappedFilePrefix) {
+    ArgumentChecker.isTrue(segmentSize > LENGTH_PREFIX, "segmentSize");
+    _segmentSize = segmentSize;
+    _mappedFilePrefix = mappedFilePrefix;
+    _index.defaultReturnValue(-1L);
+  }
+
+  public int getSegmentSize() {
+    return _segmentSize;
+  }
+
+  public boolean isMemoryMapped() {
+    return _mappedFilePrefix != null;
+  }
+
+  /**
+   * Returns the number of bytes currently reserved outside of the heap.
+   *
+   * @return the reserved size in bytes
+   */
+  public long getReservedBytes() {
+    _lock.readLock().lock();
+    try {
+      long size = 0;
+      for (ByteBuffer segment : _segments) {
+        size += segment.capacity();
+      }
+      return size;
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  private static long location(final int segment, final int offset) {
+    return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+  }
+
+  private static int segment(final long location) {
+    return (int) (location >>> 32);
+  }
+
+  private static int offset(final long location) {
+    return (int) location;
+  }
+
+  private ByteBuffer allocateSegment(final int size) {
+    if (_mappedFilePrefix == null) {
+      return ByteBuffer.allocateDirect(size);
+    }
+    final File file = new File(_mappedFilePrefix.getPath() + "-" + _segments.size() + ".dat");
+    try {
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        final FileChannel channel = raf.getChannel();
+        // The mapping remains valid after the channel is closed
+        final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        _mappedFiles.add(file);
+        return buffer;
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      if (!_mappedFiles.contains(file) && file.exists() && !file.delete()) {
+        s_logger.warn("Couldn't delete unmapped segment file {}", file);
+      }
+      throw new OpenGammaRuntimeException("Couldn't map segment file " + file, e);
+    }
+  }
+
+  /**
+   * Returns the index of a segment with at least the requested space remaining. Must be called with the write lock held.
+   */
+  private int reserve(final int required) {
+    if ((_currentSegment != null) && (_currentSegment.remaining() >= required)) {
+      return _currentSegmentIndex;
+    }
+    if (required > _segmentSize) {
+      // Oversize values get a segment of their own; the current segment continues to be filled
+      _segments.add(allocateSegment(required));
+      return _segments.size() - 1;
+    }
+    _currentSegment = allocateSegment(_segmentSize);
+    _segments.add(_currentSegment);
+    _currentSegmentIndex = _segments.size() - 1;
+    return _currentSegmentIndex;
+  }
+
+  private byte[] read(final long location) {
+    final ByteBuffer buffer = _segments.get(segment(location)).duplicate();
+    final int offset = offset(location);
+    final byte[] data = new byte[buffer.getInt(offset)];
+    buffer.position(offset + LENGTH_PREFIX);
+    buffer.get(data);
+    return data;
+  }
+
+  @Override
+  public byte[] get(final long identifier) {
+    _lock.readLock().lock();
+    try {
+      final long location = _index.get(identifier);
+      if (location < 0) {
+        return null;
+      }
+      return read(location);
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Map<Long, byte[]> get(final Collection<Long> identifiers) {
+    final Map<Long, byte[]> result = new HashMap<Long, byte[]>();
+    _lock.readLock().lock();
+    try {
+      for (Long identifier : identifiers) {
+        final long location = _index.get(identifier.longValue());
+        if (location >= 0) {
+          result.put(identifier, read(location));
+        }
+      }
+    } finally {
+      _lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  private void write(final long identifier, final byte[] data) {
+    if (_deleted) {
+      throw new IllegalStateException("Data store has been deleted");
+    }
+    final int segment = reserve(data.length + LENGTH_PREFIX);
+    final ByteBuffer buffer = _segments.get(segment);
+    final int offset = buffer.position();
+    buffer.putInt(data.length);
+    buffer.put(data);
+    _index.put(identifier, location(segment, offset));
+  }
+
+  @Override
+  public void put(final long identifier, final byte[] data) {
+    ArgumentChecker.notNull(data, "data");
+    _lock.writeLock().lock();
+    try {
+      write(identifier, data);
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(final Map<Long, byte[]> data) {
+    _lock.writeLock().lock();
+    try {
+      for (Map.Entry<Long, byte[]> entry : data.entrySet()) {
+        ArgumentChecker.notNull(entry.getValue(), "data");
+        write(entry.getKey(), entry.getValue());
+      }
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void delete() {
+    _lock.writeLock().lock();
+    try {
+      _deleted = true;
+      _index.clear();
+      for (ByteBuffer segment : _segments) {
+        release(segment);
+      }
+      _segments.clear();
+      _currentSegment = null;
+      for (File file : _mappedFiles) {
+        if (!file.delete()) {
+          s_logger.warn("Couldn't delete segment file {}", file);
+        }
+      }
+      _mappedFiles.clear();
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Releases the native memory (or mapping) behind a buffer immediately rather than waiting for
+   * the buffer to be garbage collected. If the JVM does not allow this, as from Java 9, the memory
+   * will be freed when the buffer becomes unreachable; the first failure is logged and no further
+   * attempts are made.
+   */
+  private static void release(final ByteBuffer buffer) {
+    if (!buffer.isDirect() || s_releaseUnsupported) {
+      return;
+    }
+    try {
+      final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      final Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        final Method cleanMethod = cleaner.getClass().getMethod("clean");
+        cleanMethod.setAccessible(true);
+        cleanMethod.invoke(cleaner);
+      }
+    } catch (Exception e) {
+      if (!s_releaseUnsupported) {
+        s_releaseUnsupported = true;
+        s_logger.warn("Couldn't release buffers explicitly, off-heap memory will be freed by the garbage collector - {}", e.toString());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Creates {@link OffHeapBinaryDataStore} objects. If a folder is set, the segments will be memory
+ * mapped files within it, otherwise direct buffers are used.
+ */
+public class OffHeapBinaryDataStoreFactory implements BinaryDataStoreFactory {
+
+  private int _segmentSize = OffHeapBinaryDataStore.DEFAULT_SEGMENT_SIZE;
+  private File _mappedFileFolder;
+
+  public OffHeapBinaryDataStoreFactory() {
+  }
+
+  public OffHeapBinaryDataStoreFactory(final File mappedFileFolder) {
+    setMappedFileFolder(mappedFileFolder);
+  }
+
+  /**
+   * Sets the size of each segment. This must be larger than the length written before each value.
+   *
+   * @param segmentSize the segment size in bytes
+   */
+  public void setSegmentSize(final int segmentSize) {
+    ArgumentChecker.isTrue(segmentSize > OffHeapBinaryDataStore.LENGTH_PREFIX, "segmentSize");
+    _segmentSize = segmentSize;
+  }
+
+  public int getSegmentSize() {
+    return _segmentSize;
+  }
+
+  public void setMappedFileFolder(final File mappedFileFolder) {
+    if (mappedFileFolder != null) {
+      mappedFileFolder.mkdirs();
+    }
+    _mappedFileFolder = mappedFileFolder;
+  }
+
+  public File getMappedFileFolder() {
+    return _mappedFileFolder;
+  }
+
+  @Override
+  public BinaryDataStore createDataStore(ViewComputationCacheKey cacheKey) {
+    final File folder = getMappedFileFolder();
+    if (folder == null) {
+      return new OffHeapBinaryDataStore(getSegmentSize());
+    }
+    final String name = cacheKey.getViewCycleId().toString().replaceAll("[^A-Za-z0-9_\\-]", "_") + "-"
+        + cacheKey.getCalculationConfigurationName().replaceAll("[^A-Za-z0-9_\\-]", "_");
+    return new OffHeapBinaryDataStore(getSegmentSize(), new File(folder, name));
+  }
+
+}
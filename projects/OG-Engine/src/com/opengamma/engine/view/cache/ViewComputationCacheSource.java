@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.view.cache;
 
+import java.util.Collection;
+
+import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.id.UniqueIdentifier;
 
 /**
@@ -21,6 +24,19 @@ public interface ViewComputationCacheSource {
    */
   ViewComputationCache getCache(UniqueIdentifier viewCycleId, String calculationConfigurationName);
   
+  /**
+   * Copies values from the shared data store of one view cycle's cache into the shared data store of another,
+   * for example to carry forward values from the previous cycle that cannot have changed. The values are
+   * transferred in their encoded form and are never deserialized.
+   * 
+   * @param previousViewCycleId  the unique identifier of the view cycle to copy values from, not {@code null}
+   * @param viewCycleId  the unique identifier of the view cycle to copy values to, not {@code null}
+   * @param calculationConfigurationName  the name of the view calculation configuration, not {@code null}
+   * @param specifications  the values to copy, not {@code null}
+   */
+  void inheritSharedValues(UniqueIdentifier previousViewCycleId, UniqueIdentifier viewCycleId, String calculationConfigurationName,
+      Collection<ValueSpecification> specifications);
+
   // REVIEW kirk 2010-08-07 -- This might be better suited with another method. It's not currently
   // being called by anything.
   /**
@@ -189,8 +189,11 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
   }
 
   public void putValues(final Collection<ComputedValue> values, final DeferredInvocationStatistics statistics) {
-    _pendingStatistics.add(statistics);
-    putValues(values);
+    // Statistics are matched to values in the order they were queued, so the two must be queued together
+    synchronized (_pendingStatistics) {
+      _pendingStatistics.add(statistics);
+      putValues(values);
+    }
   }
 
   /**
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+/**
+ * Decides when to start a computation cycle for market data changes.
+ * <p>
+ * Relevant market data changes ("ticks") are counted until a cycle starts. Rather than starting a cycle as soon as the
+ * first tick arrives, which under bursty ticking leads to a run of back-to-back cycles each reflecting only a few
+ * changes, the start is delayed so that later ticks are coalesced into the same cycle. The cycle is started just early
+ * enough, given the expected cost of the cycle estimated from the durations of the last cycles, for its results to be
+ * available within a target latency of the first tick.
+ * <p>
+ * This class is thread-safe.
+ */
+/* package */class AdaptiveCycleTrigger {
+
+  /**
+   * Weight given to the most recent cycle duration in the cost estimates.
+   */
+  private static final double SMOOTHING = 0.25;
+
+  private int _ticks;
+  private long _firstTickNanos;
+  private double _deltaCycleNanos = Double.NaN;
+  private double _fullCycleNanos = Double.NaN;
+
+  /**
+   * Records relevant market data changes.
+   *
+   * @param ticks the number of changes
+   * @param nowNanos the current time, from {@link System#nanoTime}
+   */
+  public synchronized void ticksReceived(final int ticks, final long nowNanos) {
+    if (_ticks == 0) {
+      _firstTickNanos = nowNanos;
+    }
+    _ticks += ticks;
+  }
+
+  public synchronized int getTicks() {
+    return _ticks;
+  }
+
+  /**
+   * Returns the time the first tick not yet reflected in a cycle arrived.
+   *
+   * @return the time, from {@link System#nanoTime}, undefined if there are no ticks
+   */
+  public synchronized long getFirstTickNanos() {
+    return _firstTickNanos;
+  }
+
+  /**
+   * Returns the expected duration of a cycle, from the durations of the last cycles of that type.
+   *
+   * @param full true for a full cycle, false for a delta cycle
+   * @return the expected duration in nanoseconds, or 0 if there is no history
+   */
+  public synchronized long getEstimatedDurationNanos(final boolean full) {
+    double estimate = full ? _fullCycleNanos : _deltaCycleNanos;
+    if (Double.isNaN(estimate)) {
+      // A delta cycle should cost no more than a full one; a full one at least as much as a delta
+      estimate = full ? _deltaCycleNanos : _fullCycleNanos;
+      if (Double.isNaN(estimate)) {
+        return 0;
+      }
+    }
+    return (long) estimate;
+  }
+
+  /**
+   * Returns the time to start the next cycle to reflect the ticks received.
+   *
+   * @param full true if the cycle will be a full cycle, false for a delta cycle
+   * @param targetLatencyMillis the target time from the first tick to the results, in milliseconds, or null to start
+   *        immediately
+   * @return the start time, from {@link System#nanoTime}, or {@link Long#MAX_VALUE} if there are no ticks
+   */
+  public synchronized long getStartNanos(final boolean full, final Long targetLatencyMillis) {
+    if (_ticks == 0) {
+      return Long.MAX_VALUE;
+    }
+    if (targetLatencyMillis == null) {
+      return _firstTickNanos;
+    }
+    // If the cycle is expected to take longer than the target then start immediately
+    return _firstTickNanos + Math.max(targetLatencyMillis * 1000000L - getEstimatedDurationNanos(full), 0);
+  }
+
+  /**
+   * Clears the ticks once a cycle that reflects them has started.
+   *
+   * @return the number of ticks cleared
+   */
+  public synchronized int cycleStarted() {
+    final int ticks = _ticks;
+    _ticks = 0;
+    return ticks;
+  }
+
+  /**
+   * Updates the cost estimates with the duration of a completed cycle.
+   *
+   * @param full true if it was a full cycle, false for a delta cycle
+   * @param durationNanos the duration of the cycle, in nanoseconds
+   */
+  public synchronized void cycleCompleted(final boolean full, final long durationNanos) {
+    if (full) {
+      _fullCycleNanos = Double.isNaN(_fullCycleNanos) ? durationNanos : (_fullCycleNanos * (1.0 - SMOOTHING) + durationNanos * SMOOTHING);
+    } else {
+      _deltaCycleNanos = Double.isNaN(_deltaCycleNanos) ? durationNanos : (_deltaCycleNanos * (1.0 - SMOOTHING) + durationNanos * SMOOTHING);
+    }
+  }
+
+}
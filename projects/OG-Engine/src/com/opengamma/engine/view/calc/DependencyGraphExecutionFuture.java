@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.util.concurrent.Future;
+
+/**
+ * A {@link Future} returned by a {@link DependencyGraphExecutor} that can notify a listener when the graph
+ * has finished executing, so that a caller need not block or poll on each graph in turn.
+ * 
+ * @param <T> Type of return information from the executor
+ */
+public interface DependencyGraphExecutionFuture<T> extends Future<T> {
+
+  /**
+   * Receives notification of graph completion.
+   */
+  interface Listener {
+
+    /**
+     * Called when execution of the graph has finished, successfully or otherwise. Calling
+     * {@link Future#get} on the future will not block and will report any error.
+     * 
+     * @param calculationConfiguration the calculation configuration of the graph
+     */
+    void graphCompleted(String calculationConfiguration);
+
+  }
+
+  /**
+   * Sets the listener to notify on completion. If the graph has already completed the listener is notified
+   * immediately from the calling thread.
+   * 
+   * @param listener the listener, not {@code null}
+   */
+  void setListener(Listener listener);
+
+}
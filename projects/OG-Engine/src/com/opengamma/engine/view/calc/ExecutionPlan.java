@@ -0,0 +1,359 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
+import com.opengamma.engine.view.calcnode.stats.FunctionCostsPerConfiguration;
+import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * A description of an execution plan that is independent of the dependency graph instance it was created for.
+ * <p>
+ * Nodes are identified by a fingerprint of their target, function, inputs and outputs so that the plan can be restored
+ * against any structurally identical graph, for example one compiled after a restart. The function costs the plan was
+ * created from are recorded so that it can be discarded when they drift.
+ */
+/* package */final class ExecutionPlan implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ExecutionPlan.class);
+
+  /**
+   * Snapshot of the function costs an execution plan was created from.
+   */
+  /* package */static final class FunctionCostsSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String[] _functionIds;
+    private final double[] _invocationCosts;
+    private final double[] _dataInputCosts;
+    private final double[] _dataOutputCosts;
+
+    private FunctionCostsSnapshot(final Collection<FunctionInvocationStatistics> statistics) {
+      final int count = statistics.size();
+      _functionIds = new String[count];
+      _invocationCosts = new double[count];
+      _dataInputCosts = new double[count];
+      _dataOutputCosts = new double[count];
+      int i = 0;
+      for (FunctionInvocationStatistics statistic : statistics) {
+        _functionIds[i] = statistic.getFunctionId();
+        _invocationCosts[i] = statistic.getInvocationCost();
+        _dataInputCosts[i] = statistic.getDataInputCost();
+        _dataOutputCosts[i] = statistic.getDataOutputCost();
+        i++;
+      }
+    }
+
+    /**
+     * Takes a snapshot of the current costs of the functions used by a graph.
+     *
+     * @param context  the context the graph is being planned in
+     * @return the snapshot
+     */
+    public static FunctionCostsSnapshot of(final GraphFragmentContext context) {
+      final Map<String, FunctionInvocationStatistics> statistics = new HashMap<String, FunctionInvocationStatistics>();
+      for (DependencyNode node : context.getGraph().getDependencyNodes()) {
+        final String functionId = node.getFunction().getFunction().getFunctionDefinition().getUniqueId();
+        if (!statistics.containsKey(functionId)) {
+          statistics.put(functionId, context.getFunctionStatistics(node.getFunction().getFunction()));
+        }
+      }
+      return new FunctionCostsSnapshot(statistics.values());
+    }
+
+    private static double getDrift(final double previous, final double current) {
+      final double scale = Math.max(Math.abs(previous), Math.abs(current));
+      if (scale == 0) {
+        return 0;
+      }
+      return Math.abs(current - previous) / scale;
+    }
+
+    /**
+     * Returns the largest relative change of any function cost since the snapshot was taken. A value of 0 means no
+     * change and a value of 0.5 means a cost has halved or doubled.
+     *
+     * @param costs  the current costs
+     * @return the drift, between 0 and 1
+     */
+    public double getDrift(final FunctionCostsPerConfiguration costs) {
+      double drift = 0;
+      for (int i = 0; i < _functionIds.length; i++) {
+        final FunctionInvocationStatistics statistics = costs.getStatistics(_functionIds[i]);
+        drift = Math.max(drift, getDrift(_invocationCosts[i], statistics.getInvocationCost()));
+        drift = Math.max(drift, getDrift(_dataInputCosts[i], statistics.getDataInputCost()));
+        drift = Math.max(drift, getDrift(_dataOutputCosts[i], statistics.getDataOutputCost()));
+      }
+      return drift;
+    }
+
+  }
+
+  private final int _minimumJobItems;
+  private final int _maximumJobItems;
+  private final long _minimumJobCost;
+  private final long _maximumJobCost;
+  private final int _maximumConcurrency;
+  private final FunctionCostsSnapshot _functionCosts;
+  /**
+   * Node fingerprints for each fragment, in execution order. The logical root is always the first fragment.
+   */
+  private final long[][] _fragmentNodes;
+  private final int[][] _inputFragments;
+  private final int[][] _tailFragments;
+  private final int[] _executionIds;
+
+  /**
+   * The most recently executed plan, if it is still in memory, and the identity of the nodes it was for.
+   */
+  private transient RootGraphFragment _fragment;
+  private transient long _fragmentIdentity;
+
+  private ExecutionPlan(final MultipleNodeExecutor executor, final FunctionCostsSnapshot functionCosts, final long[][] fragmentNodes, final int[][] inputFragments,
+      final int[][] tailFragments, final int[] executionIds) {
+    _minimumJobItems = executor.getMinJobItems();
+    _maximumJobItems = executor.getMaxJobItems();
+    _minimumJobCost = executor.getMinJobCost();
+    _maximumJobCost = executor.getMaxJobCost();
+    _maximumConcurrency = executor.getMaxConcurrency();
+    _functionCosts = functionCosts;
+    _fragmentNodes = fragmentNodes;
+    _inputFragments = inputFragments;
+    _tailFragments = tailFragments;
+    _executionIds = executionIds;
+  }
+
+  /**
+   * Creates a description of an execution plan.
+   *
+   * @param cache  the cache holding node fingerprints
+   * @param root  the logical root of the plan
+   * @return the description, or null if the nodes could not be uniquely identified
+   */
+  public static ExecutionPlan of(final ExecutionPlanCache cache, final RootGraphFragment root) {
+    final List<GraphFragment> fragments = new ArrayList<GraphFragment>();
+    final Map<GraphFragment, Integer> fragmentIndices = new HashMap<GraphFragment, Integer>();
+    fragments.add(root);
+    fragmentIndices.put(root, 0);
+    for (int i = 0; i < fragments.size(); i++) {
+      for (GraphFragment input : fragments.get(i).getInputFragments()) {
+        if (!fragmentIndices.containsKey(input)) {
+          fragmentIndices.put(input, fragments.size());
+          fragments.add(input);
+        }
+      }
+    }
+    final int count = fragments.size();
+    final long[][] fragmentNodes = new long[count][];
+    final int[][] inputFragments = new int[count][];
+    final int[][] tailFragments = new int[count][];
+    final int[] executionIds = new int[count];
+    final Set<Long> nodeFingerprints = new HashSet<Long>();
+    for (int i = 0; i < count; i++) {
+      final GraphFragment fragment = fragments.get(i);
+      final long[] nodes = new long[fragment.getNodes().size()];
+      int j = 0;
+      for (DependencyNode node : fragment.getNodes()) {
+        nodes[j] = cache.getFingerprint(node);
+        if (!nodeFingerprints.add(nodes[j])) {
+          s_logger.warn("Fingerprint collision on {} in {}", node, root.getContext().getGraph());
+          return null;
+        }
+        j++;
+      }
+      fragmentNodes[i] = nodes;
+      inputFragments[i] = getIndices(fragmentIndices, fragment.getInputFragments());
+      tailFragments[i] = getIndices(fragmentIndices, fragment.getTail());
+      if ((inputFragments[i] == null) || (tailFragments[i] == null)) {
+        s_logger.warn("Fragment {} references one not reachable from the root", fragment);
+        return null;
+      }
+      executionIds[i] = fragment.getExecutionId();
+    }
+    return new ExecutionPlan(root.getContext().getExecutor(), root.getContext().getFunctionCostsSnapshot(), fragmentNodes, inputFragments, tailFragments, executionIds);
+  }
+
+  private static int[] getIndices(final Map<GraphFragment, Integer> fragmentIndices, final Collection<GraphFragment> fragments) {
+    if (fragments == null) {
+      return new int[0];
+    }
+    final int[] indices = new int[fragments.size()];
+    int i = 0;
+    for (GraphFragment fragment : fragments) {
+      final Integer index = fragmentIndices.get(fragment);
+      if (index == null) {
+        return null;
+      }
+      indices[i++] = index;
+    }
+    return indices;
+  }
+
+  /**
+   * Tests whether the plan was created with the same job size and concurrency limits as an executor would use.
+   *
+   * @param executor  the executor
+   * @return true if the executor would have created the same plan
+   */
+  public boolean isCompatible(final MultipleNodeExecutor executor) {
+    return (_minimumJobItems == executor.getMinJobItems()) && (_maximumJobItems == executor.getMaxJobItems()) && (_minimumJobCost == executor.getMinJobCost())
+        && (_maximumJobCost == executor.getMaxJobCost()) && (_maximumConcurrency == executor.getMaxConcurrency());
+  }
+
+  public FunctionCostsSnapshot getFunctionCosts() {
+    return _functionCosts;
+  }
+
+  /**
+   * Returns the fragments of this plan, as last executed, if they were for the same node instances.
+   *
+   * @param identity  the identity fingerprint of the graph nodes
+   * @return the root fragment, or null if not available
+   */
+  public synchronized RootGraphFragment getFragment(final long identity) {
+    if (_fragmentIdentity == identity) {
+      return _fragment;
+    }
+    return null;
+  }
+
+  public synchronized void setFragment(final RootGraphFragment fragment, final long identity) {
+    _fragment = fragment;
+    _fragmentIdentity = identity;
+  }
+
+  /**
+   * Creates graph fragments for a structurally identical graph from this description. The fragments have their block
+   * counts initialized, ready for the leaves to be executed.
+   *
+   * @param cache  the cache holding node fingerprints
+   * @param context  the context for the new fragments
+   * @param statistics  the statistics gatherer for the root fragment
+   * @return the root fragment, or null if the graph does not match the description
+   */
+  public RootGraphFragment restore(final ExecutionPlanCache cache, final GraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
+    final DependencyGraph graph = context.getGraph();
+    final Map<Long, DependencyNode> nodes = new HashMap<Long, DependencyNode>((graph.getSize() * 4) / 3);
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      if (nodes.put(cache.getFingerprint(node), node) != null) {
+        s_logger.warn("Fingerprint collision on {} in {}", node, graph);
+        return null;
+      }
+    }
+    final int count = _fragmentNodes.length;
+    final GraphFragment[] fragments = new GraphFragment[count];
+    final Map<DependencyNode, GraphFragment> node2fragment = new HashMap<DependencyNode, GraphFragment>((graph.getSize() * 4) / 3);
+    for (int i = 0; i < count; i++) {
+      final List<DependencyNode> fragmentNodes = new ArrayList<DependencyNode>(_fragmentNodes[i].length);
+      for (long fingerprint : _fragmentNodes[i]) {
+        final DependencyNode node = nodes.remove(fingerprint);
+        if (node == null) {
+          s_logger.debug("Node {} from plan not in {}", fingerprint, graph);
+          return null;
+        }
+        fragmentNodes.add(node);
+      }
+      final GraphFragment fragment;
+      if (i == 0) {
+        if (fragmentNodes.isEmpty()) {
+          fragment = new RootGraphFragment(context, statistics);
+        } else {
+          fragment = new RootGraphFragment(context, statistics, fragmentNodes);
+        }
+      } else {
+        fragment = new GraphFragment(context, fragmentNodes);
+      }
+      for (DependencyNode node : fragmentNodes) {
+        node2fragment.put(node, fragment);
+      }
+      fragments[i] = fragment;
+    }
+    if (!nodes.isEmpty()) {
+      s_logger.debug("{} nodes from {} not in plan", nodes.size(), graph);
+      return null;
+    }
+    for (int i = 0; i < count; i++) {
+      final GraphFragment fragment = fragments[i];
+      for (int input : _inputFragments[i]) {
+        fragment.getInputFragments().add(fragments[input]);
+        fragments[input].getOutputFragments().add(fragment);
+      }
+      for (int tail : _tailFragments[i]) {
+        fragment.addTail(fragments[tail]);
+      }
+      fragment.setExecutionId(_executionIds[i]);
+    }
+    for (GraphFragment fragment : fragments) {
+      fragment.restoreValues(node2fragment);
+      if (!fragment.getInputFragments().isEmpty()) {
+        fragment.initBlockCount();
+      }
+    }
+    context.allocateFragmentMap(count);
+    context.setFunctionCostsSnapshot(_functionCosts);
+    return (RootGraphFragment) fragments[0];
+  }
+
+  //-------------------------------------------------------------------------
+  // Fingerprints must be stable between JVM instances so are built from the hash codes of strings rather than enums or
+  // object identities
+
+  /* package */static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static long getFingerprint(final ComputationTargetType type, final UniqueIdentifier uniqueId) {
+    return mix(((long) type.name().hashCode() << 32) + ObjectUtils.hashCode(uniqueId));
+  }
+
+  /* package */static long getFingerprint(final ValueSpecification value) {
+    long hash = mix(value.getValueName().hashCode());
+    hash = mix(hash + getFingerprint(value.getTargetSpecification().getType(), value.getTargetSpecification().getUniqueId()));
+    return mix(hash + value.getProperties().hashCode());
+  }
+
+  /* package */static long getFingerprint(final DependencyNode node) {
+    long hash = mix(node.getFunction().getFunction().getFunctionDefinition().getUniqueId().hashCode());
+    hash = mix(hash + getFingerprint(node.getComputationTarget().getType(), node.getComputationTarget().getUniqueId()));
+    long values = 0;
+    for (ValueSpecification input : node.getInputValues()) {
+      values += getFingerprint(input);
+    }
+    hash = mix(hash + values);
+    values = 0;
+    for (ValueSpecification output : node.getOutputValues()) {
+      values += getFingerprint(output);
+    }
+    return mix(hash + values);
+  }
+
+}
@@ -1,58 +1,271 @@
 /**
  * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
- * 
+ *
  * Please see distribution for license.
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
 import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.tuple.Pair;
 
+/**
+ * Caches execution plans keyed by a fingerprint of the dependency graph structure.
+ * <p>
+ * If a disk store path is given, the plans are persisted so that the first cycles after a restart can use them. The
+ * persistent cache has a cache manager of its own so that its disk store is kept in that directory. It is written to
+ * disk at most every {@link #FLUSH_INTERVAL_MILLIS} milliseconds as plans are added, and when the cache is shut down.
+ * A plan is discarded if the function costs it was created from drift past a threshold.
+ */
 /* package */class ExecutionPlanCache {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(ExecutionPlanCache.class);
+
   private static final String CACHE_NAME = "executionPlans";
+  private static final String PERSISTENT_CACHE_NAME = "persistentExecutionPlans";
+
+  /**
+   * The default cost drift threshold; a plan is discarded when any function cost has halved or doubled.
+   */
+  public static final double DEFAULT_COST_DRIFT_THRESHOLD = 0.5;
+
+  /**
+   * The minimum time between writes of the persistent cache to disk as plans are added.
+   */
+  public static final long FLUSH_INTERVAL_MILLIS = 60000;
 
   private final Cache _cache;
+  private final boolean _persistent;
+  /**
+   * The cache manager created for the persistent cache, null if the cache is held in memory only.
+   */
+  private final CacheManager _persistentManager;
+  private final AtomicLong _lastFlush = new AtomicLong(System.currentTimeMillis());
+  /**
+   * Node fingerprints; the executable graphs are rebuilt each cycle but the nodes within them are not.
+   */
+  private final ConcurrentMap<DependencyNode, Long> _nodeFingerprints = new MapMaker().weakKeys().makeMap();
+  private volatile double _costDriftThreshold = DEFAULT_COST_DRIFT_THRESHOLD;
 
   public ExecutionPlanCache(final CacheManager manager, final int cacheSize) {
+    this(manager, cacheSize, null);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param manager  the cache manager for a cache held in memory only, not null
+   * @param cacheSize  the number of plans to hold in memory, 0 to disable caching
+   * @param diskStorePath  the directory to persist plans to, null to hold them in memory only
+   */
+  public ExecutionPlanCache(final CacheManager manager, final int cacheSize, final String diskStorePath) {
     if (cacheSize > 0) {
-      EHCacheUtils.addCache(manager, CACHE_NAME, cacheSize, MemoryStoreEvictionPolicy.LRU, false, null, true, 1800, 300, false, 0, null);
-      _cache = EHCacheUtils.getCacheFromManager(manager, CACHE_NAME);
+      if (diskStorePath != null) {
+        _persistentManager = EHCacheUtils.createCacheManager(diskStorePath);
+        EHCacheUtils.addCache(_persistentManager, PERSISTENT_CACHE_NAME, cacheSize, MemoryStoreEvictionPolicy.LRU, true, diskStorePath, true, 0, 0, true, 120, null);
+        _cache = EHCacheUtils.getCacheFromManager(_persistentManager, PERSISTENT_CACHE_NAME);
+        _persistent = true;
+      } else {
+        EHCacheUtils.addCache(manager, CACHE_NAME, cacheSize, MemoryStoreEvictionPolicy.LRU, false, null, true, 1800, 300, false, 0, null);
+        _cache = EHCacheUtils.getCacheFromManager(manager, CACHE_NAME);
+        _persistentManager = null;
+        _persistent = false;
+      }
     } else {
       _cache = null;
+      _persistentManager = null;
+      _persistent = false;
     }
   }
 
+  /**
+   * Sets the relative change in any function cost, between 0 and 1, beyond which a plan is discarded.
+   *
+   * @param costDriftThreshold  the threshold
+   */
+  public void setCostDriftThreshold(final double costDriftThreshold) {
+    _costDriftThreshold = costDriftThreshold;
+  }
+
+  public double getCostDriftThreshold() {
+    return _costDriftThreshold;
+  }
+
   public void clear() {
     if (_cache != null) {
       _cache.removeAll();
+      if (_persistent) {
+        flush();
+      }
     }
   }
 
-  public RootGraphFragment getCachedExecutionPlan(final DependencyGraph graph) {
-    if (_cache != null) {
-      final Element element = _cache.get(graph.getDependencyNodes());
-      if (element != null) {
-        return (RootGraphFragment) element.getObjectValue();
+  /**
+   * Writes the persistent cache to disk.
+   */
+  public void flush() {
+    if (_persistent) {
+      _lastFlush.set(System.currentTimeMillis());
+      _cache.flush();
+    }
+  }
+
+  /**
+   * Writes the persistent cache to disk and releases it. The cache must not be used after this.
+   */
+  public void shutdown() {
+    if (_persistentManager != null) {
+      s_logger.info("Writing execution plans to disk");
+      flush();
+      _persistentManager.shutdown();
+    }
+  }
+
+  private void flushIfDue() {
+    final long lastFlush = _lastFlush.get();
+    final long now = System.currentTimeMillis();
+    if ((now - lastFlush >= FLUSH_INTERVAL_MILLIS) && _lastFlush.compareAndSet(lastFlush, now)) {
+      _cache.flush();
+    }
+  }
+
+  /**
+   * Returns the fingerprint of a node. Nodes must not be modified once they have been executed.
+   *
+   * @param node  the node
+   * @return the fingerprint
+   */
+  public long getFingerprint(final DependencyNode node) {
+    Long fingerprint = _nodeFingerprints.get(node);
+    if (fingerprint == null) {
+      fingerprint = ExecutionPlan.getFingerprint(node);
+      _nodeFingerprints.put(node, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Returns the fingerprints of a graph. The first is of the graph structure and is the same for any structurally
+   * identical graph, including ones created in other processes. The second identifies the node instances so that plans
+   * held in memory can be reused directly.
+   *
+   * @param graph  the graph
+   * @return the structure and identity fingerprints
+   */
+  public Pair<Long, Long> getFingerprint(final DependencyGraph graph) {
+    long structure = 0;
+    long identity = 0;
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      structure += getFingerprint(node);
+      identity += ExecutionPlan.mix(System.identityHashCode(node));
+    }
+    for (ValueSpecification terminalOutput : graph.getTerminalOutputSpecifications()) {
+      structure += ExecutionPlan.mix(ExecutionPlan.getFingerprint(terminalOutput));
+    }
+    structure = ExecutionPlan.mix(ExecutionPlan.mix(structure + graph.getCalculationConfigurationName().hashCode()) + graph.getSize());
+    identity = ExecutionPlan.mix(identity + graph.getSize());
+    return Pair.of((Long) structure, (Long) identity);
+  }
+
+  /**
+   * Returns a plan for a graph that is ready for its leaf fragments to be executed.
+   *
+   * @param executor  the executor that will run the plan
+   * @param graph  the graph to execute
+   * @param statistics  the statistics gatherer for the execution
+   * @return the root fragment of the plan, or null if there is no valid plan
+   */
+  public RootGraphFragment getCachedExecutionPlan(final MultipleNodeExecutor executor, final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
+    if (_cache == null) {
+      return null;
+    }
+    final Pair<Long, Long> fingerprint = getFingerprint(graph);
+    final Element element = _cache.get(fingerprint.getFirst());
+    if (element == null) {
+      return null;
+    }
+    final ExecutionPlan plan = (ExecutionPlan) element.getObjectValue();
+    if (!plan.isCompatible(executor)) {
+      s_logger.info("Discarding execution plan for {} created with different job limits", graph);
+      _cache.remove(fingerprint.getFirst());
+      return null;
+    }
+    final double drift = plan.getFunctionCosts().getDrift(executor.getFunctionCosts().getStatistics(graph.getCalculationConfigurationName()));
+    if (drift > getCostDriftThreshold()) {
+      s_logger.info("Discarding execution plan for {} after function costs drifted by {}", graph, drift);
+      _cache.remove(fingerprint.getFirst());
+      return null;
+    }
+    RootGraphFragment execution = plan.getFragment(fingerprint.getSecond());
+    if (execution != null) {
+      if (execution.getFunctionInitializationTimestamp() != executor.getFunctionInitId()) {
+        s_logger.debug("Restoring execution plan for {} due to re-initialization", graph);
       } else {
-        return null;
+        if (execution.reset(executor, new HashSet<GraphFragment>())) {
+          s_logger.info("Using cached execution plan for {}", graph);
+          return execution;
+        } else {
+          s_logger.warn("Invalid cached execution plan for {}", graph);
+        }
       }
-    } else {
+    }
+    final GraphFragmentContext context = new GraphFragmentContext(executor, graph);
+    execution = plan.restore(this, context, statistics);
+    if (execution == null) {
+      s_logger.warn("Couldn't restore execution plan for {}", graph);
+      _cache.remove(fingerprint.getFirst());
       return null;
     }
+    context.setFingerprint(fingerprint);
+    s_logger.info("Using restored execution plan for {}", graph);
+    return execution;
   }
 
+  /**
+   * Caches a plan after it has been executed.
+   *
+   * @param graph  the graph the plan was for
+   * @param plan  the root fragment of the plan
+   */
   public void cacheExecutionPlan(final DependencyGraph graph, final RootGraphFragment plan) {
     if (_cache != null) {
-      _cache.put(new Element(graph.getDependencyNodes(), plan));
+      Pair<Long, Long> fingerprint = plan.getContext().getFingerprint();
+      if (fingerprint == null) {
+        fingerprint = getFingerprint(graph);
+        plan.getContext().setFingerprint(fingerprint);
+      }
+      final Element element = _cache.getQuiet(fingerprint.getFirst());
+      ExecutionPlan description;
+      if (element != null) {
+        description = (ExecutionPlan) element.getObjectValue();
+      } else {
+        description = ExecutionPlan.of(this, plan);
+        if (description == null) {
+          return;
+        }
+        _cache.put(new Element(fingerprint.getFirst(), description));
+        if (_persistent) {
+          flushIfDue();
+        }
+      }
+      description.setFragment(plan, fingerprint.getSecond());
     }
   }
 
-  // TODO [ENG-269] If the function costs change significantly, invalidate the execution plan cache.
-
 }
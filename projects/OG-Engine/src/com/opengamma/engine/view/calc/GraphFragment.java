@@ -298,6 +298,39 @@ import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
     mergeFragmentCost(fragment);
   }
 
+  /**
+   * Restores the input, output and private values of a fragment reconstructed from an {@link ExecutionPlan}. A value
+   * consumed within the fragment is not an input to it and, if it is not a terminal output or needed by any other
+   * fragment, is private to it. Costs are not adjusted as they are only used when creating a plan.
+   */
+  public void restoreValues(final Map<DependencyNode, GraphFragment> node2fragment) {
+    final Map<ValueSpecification, Boolean> sharedCacheValues = getContext().getSharedCacheValues();
+    for (DependencyNode node : getNodes()) {
+      for (ValueSpecification output : node.getOutputValues()) {
+        boolean isConsumed = false;
+        boolean isPrivate = sharedCacheValues.get(output) != Boolean.TRUE;
+        for (DependencyNode dependent : node.getDependentNodes()) {
+          final GraphFragment fragment = node2fragment.get(dependent);
+          if ((fragment == null) || !dependent.getInputValues().contains(output)) {
+            continue;
+          }
+          if (fragment == this) {
+            isConsumed = true;
+          } else {
+            isPrivate = false;
+          }
+        }
+        if (isConsumed) {
+          getInputValues().remove(output);
+          if (isPrivate) {
+            getOutputValues().remove(output);
+            getPrivateValues().add(output);
+          }
+        }
+      }
+    }
+  }
+
   public void inputCompleted() {
     // If _blockCount is null, we are a tail job that has already been dispatched
     if (_blockCount != null) {
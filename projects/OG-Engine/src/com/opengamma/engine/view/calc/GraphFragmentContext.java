@@ -26,6 +26,7 @@ import com.opengamma.engine.view.calcnode.JobResultReceiver;
 import com.opengamma.engine.view.calcnode.stats.FunctionCostsPerConfiguration;
 import com.opengamma.engine.view.calcnode.stats.FunctionInvocationStatistics;
 import com.opengamma.util.Cancellable;
+import com.opengamma.util.tuple.Pair;
 
 /* package */class GraphFragmentContext implements JobResultReceiver {
 
@@ -42,6 +43,8 @@ import com.opengamma.util.Cancellable;
   private Map<ValueSpecification, Boolean> _sharedCacheValues;
   private Map<CalculationJobSpecification, GraphFragment> _job2fragment;
   private volatile boolean _cancelled;
+  private ExecutionPlan.FunctionCostsSnapshot _functionCostsSnapshot;
+  private Pair<Long, Long> _fingerprint;
 
   public GraphFragmentContext(final MultipleNodeExecutor executor, final DependencyGraph graph) {
     _executor = executor;
@@ -126,6 +129,28 @@ import com.opengamma.util.Cancellable;
     return _functionCost.getStatistics(function.getFunctionDefinition().getUniqueId());
   }
 
+  /**
+   * Returns the function costs the plan was created from.
+   */
+  public ExecutionPlan.FunctionCostsSnapshot getFunctionCostsSnapshot() {
+    return _functionCostsSnapshot;
+  }
+
+  public void setFunctionCostsSnapshot(final ExecutionPlan.FunctionCostsSnapshot functionCostsSnapshot) {
+    _functionCostsSnapshot = functionCostsSnapshot;
+  }
+
+  /**
+   * Returns the graph fingerprints, see {@link ExecutionPlanCache#getFingerprint(DependencyGraph)}, if they have been calculated.
+   */
+  public synchronized Pair<Long, Long> getFingerprint() {
+    return _fingerprint;
+  }
+
+  public synchronized void setFingerprint(final Pair<Long, Long> fingerprint) {
+    _fingerprint = fingerprint;
+  }
+
   @Override
   public void resultReceived(final CalculationJobResult result) {
     _cancels.remove(result.getSpecification());
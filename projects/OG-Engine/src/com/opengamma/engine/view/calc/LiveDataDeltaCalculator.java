@@ -5,16 +5,28 @@
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.ObjectUtils;
 
+import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.DefaultViewComputationCache;
 import com.opengamma.engine.view.cache.ViewComputationCache;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.tuple.Pair;
@@ -23,9 +35,19 @@ import com.opengamma.util.tuple.Pair;
  * Determines which nodes in a graph have changed. A node has 'changed' if and only 
  * if its subtree contains a node for which PreviousLiveDataInput != CurrentLiveDataInput.
  * Note that this excludes changes due to passage of the system clock. 
+ * <p>
+ * The delta can either be found by walking the graph from its roots ({@link #computeDelta()}) or by
+ * starting from the market data which has changed and walking forward through the dependent nodes
+ * ({@link #computeDelta(Collection, ExecutorService)}). The latter compares the encoded market data
+ * rather than deserialized values and can spread the work over an executor.
  */
 public class LiveDataDeltaCalculator {
 
+  /**
+   * The minimum number of items of work to give to each task when using an executor.
+   */
+  private static final int MIN_BATCH_SIZE = 1024;
+
   private final DependencyGraph _graph;
   private final ViewComputationCache _cache;
   private final ViewComputationCache _previousCache;
@@ -82,6 +104,153 @@ public class LiveDataDeltaCalculator {
     _done = true;
   }
 
+  /**
+   * Computes the delta by starting from the market data that has changed and marking every node that
+   * depends on it as changed. If a set of candidate market data is given, for example from the provider's
+   * change notifications, only those values are compared; otherwise all market data used by the graph is.
+   * 
+   * @param candidateMarketData the market data that may have changed, or {@code null} to consider all market data
+   * @param executor the executor to spread the work over, or {@code null} to do it in the calling thread
+   */
+  public void computeDelta(final Collection<ValueSpecification> candidateMarketData, final ExecutorService executor) {
+    if (_done) {
+      throw new IllegalStateException("Cannot determine delta twice");
+    }
+    final Map<ValueSpecification, List<DependencyNode>> marketDataNodes = new HashMap<ValueSpecification, List<DependencyNode>>();
+    for (DependencyNode node : _graph.getDependencyNodes()) {
+      final Pair<ValueRequirement, ValueSpecification> marketData = node.getRequiredMarketData();
+      if (marketData != null) {
+        List<DependencyNode> nodes = marketDataNodes.get(marketData.getSecond());
+        if (nodes == null) {
+          nodes = new ArrayList<DependencyNode>(1);
+          marketDataNodes.put(marketData.getSecond(), nodes);
+        }
+        nodes.add(node);
+      }
+    }
+    final List<ValueSpecification> candidates;
+    if (candidateMarketData == null) {
+      candidates = new ArrayList<ValueSpecification>(marketDataNodes.keySet());
+    } else {
+      candidates = new ArrayList<ValueSpecification>(candidateMarketData.size());
+      for (ValueSpecification specification : candidateMarketData) {
+        if (marketDataNodes.containsKey(specification)) {
+          candidates.add(specification);
+        }
+      }
+    }
+    final List<DependencyNode> frontier = new ArrayList<DependencyNode>();
+    for (ValueSpecification changed : findChangedMarketData(candidates, executor)) {
+      frontier.addAll(marketDataNodes.get(changed));
+    }
+    final Set<DependencyNode> changedNodes = Collections.newSetFromMap(new ConcurrentHashMap<DependencyNode, Boolean>());
+    propagateChanges(frontier, changedNodes, executor);
+    _changedNodes.addAll(changedNodes);
+    for (DependencyNode node : _graph.getDependencyNodes()) {
+      if (!_changedNodes.contains(node)) {
+        _unchangedNodes.add(node);
+      }
+    }
+    _done = true;
+  }
+
+  private static <T> List<List<T>> partition(final List<T> items, final ExecutorService executor) {
+    if ((executor == null) || (items.size() < 2 * MIN_BATCH_SIZE)) {
+      return Collections.singletonList(items);
+    }
+    final int batches = items.size() / MIN_BATCH_SIZE;
+    final int batchSize = (items.size() + batches - 1) / batches;
+    final List<List<T>> result = new ArrayList<List<T>>(batches);
+    for (int i = 0; i < items.size(); i += batchSize) {
+      result.add(items.subList(i, Math.min(i + batchSize, items.size())));
+    }
+    return result;
+  }
+
+  private static <T> List<T> invokeAll(final List<Callable<T>> tasks, final ExecutorService executor) {
+    final List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      if (tasks.size() == 1) {
+        results.add(tasks.get(0).call());
+      } else {
+        for (Future<T> future : executor.invokeAll(tasks)) {
+          results.add(future.get());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted while computing delta", e);
+    } catch (ExecutionException e) {
+      throw new OpenGammaRuntimeException("Unable to compute delta", e.getCause());
+    } catch (Exception e) {
+      throw new OpenGammaRuntimeException("Unable to compute delta", e);
+    }
+    return results;
+  }
+
+  private Collection<ValueSpecification> findChangedMarketData(final List<ValueSpecification> candidates, final ExecutorService executor) {
+    final List<Callable<Collection<ValueSpecification>>> tasks = new ArrayList<Callable<Collection<ValueSpecification>>>();
+    for (final List<ValueSpecification> batch : partition(candidates, executor)) {
+      tasks.add(new Callable<Collection<ValueSpecification>>() {
+        @Override
+        public Collection<ValueSpecification> call() {
+          return findChangedMarketData(batch);
+        }
+      });
+    }
+    final Collection<ValueSpecification> changed = new ArrayList<ValueSpecification>();
+    for (Collection<ValueSpecification> result : invokeAll(tasks, executor)) {
+      changed.addAll(result);
+    }
+    return changed;
+  }
+
+  private Collection<ValueSpecification> findChangedMarketData(final List<ValueSpecification> candidates) {
+    if ((_cache instanceof DefaultViewComputationCache) && (_previousCache instanceof DefaultViewComputationCache)) {
+      return ((DefaultViewComputationCache) _cache).getChangedSharedValues(candidates, (DefaultViewComputationCache) _previousCache);
+    }
+    final Collection<ValueSpecification> changed = new ArrayList<ValueSpecification>();
+    for (ValueSpecification candidate : candidates) {
+      if (!ObjectUtils.equals(_previousCache.getValue(candidate), _cache.getValue(candidate))) {
+        changed.add(candidate);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Marks the frontier nodes, and everything that depends on them, as changed. Works through the graph a
+   * level at a time; each level is split into batches for the executor.
+   */
+  private void propagateChanges(List<DependencyNode> frontier, final Set<DependencyNode> changedNodes, final ExecutorService executor) {
+    while (!frontier.isEmpty()) {
+      final List<Callable<List<DependencyNode>>> tasks = new ArrayList<Callable<List<DependencyNode>>>();
+      for (final List<DependencyNode> batch : partition(frontier, executor)) {
+        tasks.add(new Callable<List<DependencyNode>>() {
+          @Override
+          public List<DependencyNode> call() {
+            final List<DependencyNode> next = new ArrayList<DependencyNode>();
+            for (DependencyNode node : batch) {
+              if (changedNodes.add(node)) {
+                for (DependencyNode dependent : node.getDependentNodes()) {
+                  if (!changedNodes.contains(dependent) && _graph.containsNode(dependent)) {
+                    next.add(dependent);
+                  }
+                }
+              }
+            }
+            return next;
+          }
+        });
+      }
+      final List<DependencyNode> next = new ArrayList<DependencyNode>();
+      for (List<DependencyNode> result : invokeAll(tasks, executor)) {
+        next.addAll(result);
+      }
+      frontier = next;
+    }
+  }
+
   private boolean computeDelta(DependencyNode node) {
     if (_changedNodes.contains(node)) {
       return true;
@@ -100,6 +100,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
   protected RootGraphFragment createExecutionPlan(final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
     final OperationTimer timer = new OperationTimer(s_logger, "Creating execution plan for {}", graph);
     final GraphFragmentContext context = new GraphFragmentContext(this, graph);
+    context.setFunctionCostsSnapshot(ExecutionPlan.FunctionCostsSnapshot.of(context));
     // writeGraphForTestingPurposes(graph);
     if (graph.getSize() <= getMinJobItems()) {
       // If the graph is too small, run it as-is
@@ -181,21 +182,10 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
 
   @Override
   public Future<Object> execute(final DependencyGraph graph, final GraphExecutorStatisticsGatherer statistics) {
-    final RootGraphFragment execution = _cache.getCachedExecutionPlan(graph);
+    final RootGraphFragment execution = _cache.getCachedExecutionPlan(this, graph, statistics);
     if (execution != null) {
-      if (execution.getFunctionInitializationTimestamp() != getCycle().getFunctionInitId()) {
-        s_logger.warn("Invalid cached execution plan for {} due to re-initialization", graph);
-      } else {
-        final Set<GraphFragment> visited = new HashSet<GraphFragment>();
-        if (execution.reset(this, visited)) {
-          s_logger.info("Using cached execution plan for {}", graph);
-          visited.clear();
-          executeLeafNodes(execution, visited);
-          return execution;
-        } else {
-          s_logger.warn("Invalid cached execution plan for {}", graph);
-        }
-      }
+      executeLeafNodes(execution, new HashSet<GraphFragment>());
+      return execution;
     }
     return createExecutionPlan(graph, statistics);
   }
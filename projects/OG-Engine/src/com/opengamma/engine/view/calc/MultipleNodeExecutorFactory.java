@@ -5,6 +5,7 @@
  */
 package com.opengamma.engine.view.calc;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
@@ -14,11 +15,14 @@ import com.opengamma.util.ehcache.EHCacheUtils;
 /**
  * 
  */
-public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFactory<Object>, InitializingBean {
+public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFactory<Object>, InitializingBean, DisposableBean {
   
   private static final int DEFAULT_EXECUTION_PLAN_CACHE = 100;
 
   private ExecutionPlanCache _executionPlanCache;
+  private int _cacheSize = DEFAULT_EXECUTION_PLAN_CACHE;
+  private String _cacheDirectory;
+  private double _costDriftThreshold = ExecutionPlanCache.DEFAULT_COST_DRIFT_THRESHOLD;
   private int _minimumJobItems = 1;
   private int _maximumJobItems = Integer.MAX_VALUE;
   private long _minimumJobCost = 1;
@@ -87,7 +91,56 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
   }
 
   public void setCacheSize(final int size) {
-    _executionPlanCache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), size);
+    _cacheSize = size;
+    createExecutionPlanCache();
+  }
+
+  public int getCacheSize() {
+    return _cacheSize;
+  }
+
+  /**
+   * Sets a directory to persist execution plans to so that they survive a restart. If not set, plans are only held
+   * in memory.
+   * 
+   * @param cacheDirectory the directory, or null for memory only
+   */
+  public void setCacheDirectory(final String cacheDirectory) {
+    _cacheDirectory = cacheDirectory;
+    createExecutionPlanCache();
+  }
+
+  public String getCacheDirectory() {
+    return _cacheDirectory;
+  }
+
+  /**
+   * Sets the relative change in any function cost, between 0 and 1, beyond which a cached execution plan is discarded
+   * and a new one created.
+   * 
+   * @param costDriftThreshold the threshold
+   */
+  public void setCostDriftThreshold(final double costDriftThreshold) {
+    ArgumentChecker.isTrue((costDriftThreshold >= 0) && (costDriftThreshold <= 1), "costDriftThreshold must be between 0 and 1");
+    _costDriftThreshold = costDriftThreshold;
+    if (_executionPlanCache != null) {
+      _executionPlanCache.setCostDriftThreshold(costDriftThreshold);
+    }
+  }
+
+  public double getCostDriftThreshold() {
+    return _costDriftThreshold;
+  }
+
+  private void createExecutionPlanCache() {
+    if (_executionPlanCache != null) {
+      // Release any disk store before another cache is created in the same directory
+      _executionPlanCache.shutdown();
+      _executionPlanCache = null;
+    }
+    final ExecutionPlanCache cache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), _cacheSize, _cacheDirectory);
+    cache.setCostDriftThreshold(_costDriftThreshold);
+    _executionPlanCache = cache;
   }
 
   @Override
@@ -113,7 +166,14 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
       setFunctionCosts(new FunctionCosts());
     }
     if (_executionPlanCache == null) {
-      setCacheSize(DEFAULT_EXECUTION_PLAN_CACHE);
+      createExecutionPlanCache();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (_executionPlanCache != null) {
+      _executionPlanCache.shutdown();
     }
   }
 
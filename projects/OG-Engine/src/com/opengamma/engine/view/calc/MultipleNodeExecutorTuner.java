@@ -34,7 +34,13 @@ import com.opengamma.util.ArgumentChecker;
  * 
  * <p>Set maximum concurrency to the average node count of the job invokers. Requires a {@link JobDispatcher}.</p>
  * 
- * <p>TODO: [ENG-200] Tuning of job size and cost parameters</p>
+ * <p>In adaptive mode, also choose the job size and cost limits from the measured statistics. Requires job dispatch
+ * and graph execution statistics. The minimum job cost is set so that the measured non-execution time of a job,
+ * which covers dispatch overhead and data transfer, is at most the target fraction of its duration. The maximum
+ * job cost is set so that an average graph splits into at least the target number of jobs per node. The item limits
+ * follow from these costs and the mean item cost estimated from the function invocation statistics. Changes are
+ * damped, and only applied when a limit would move by more than the adaption threshold, as each change discards
+ * the cached execution plans.</p>
  */
 public class MultipleNodeExecutorTuner implements Runnable {
   
@@ -51,6 +57,18 @@ public class MultipleNodeExecutorTuner implements Runnable {
   private TotallingNodeStatisticsGatherer _jobDispatchStatistics;
   private double _statisticDecayRate = 0.1; // 10% decay every schedule
   private int _statisticsKeepAlive = 300; // keep for 5 minutes
+  private boolean _adaptive;
+  private double _targetOverheadFraction = 0.1;
+  private int _jobsPerNode = 2;
+  private double _adaptionGain = 0.5;
+  private double _adaptionThreshold = 0.2;
+  private volatile double _measuredJobOverhead;
+  private volatile double _measuredItemCost;
+  private volatile double _measuredGraphExecutionTime;
+  private volatile double _measuredGraphActualTime;
+  private volatile double _graphActualTimeAtAdjustment;
+  private volatile long _adjustments;
+  private volatile Instant _lastAdjustment;
 
   /**
    * @param factory The factory to tune
@@ -104,11 +122,125 @@ public class MultipleNodeExecutorTuner implements Runnable {
     return _statisticDecayRate;
   }
 
+  /**
+   * Enables or disables tuning of the job size and cost limits from the measured statistics.
+   * 
+   * @param adaptive true to tune the limits
+   */
+  public void setAdaptive(final boolean adaptive) {
+    _adaptive = adaptive;
+  }
+
+  public boolean isAdaptive() {
+    return _adaptive;
+  }
+
+  /**
+   * Sets the largest fraction of a job's duration that may be spent outside of execution.
+   * 
+   * @param targetOverheadFraction the fraction, greater than 0 and less than 1
+   */
+  public void setTargetOverheadFraction(final double targetOverheadFraction) {
+    ArgumentChecker.isTrue((targetOverheadFraction > 0) && (targetOverheadFraction < 1), "targetOverheadFraction must be between 0 and 1");
+    _targetOverheadFraction = targetOverheadFraction;
+  }
+
+  public double getTargetOverheadFraction() {
+    return _targetOverheadFraction;
+  }
+
+  /**
+   * Sets the minimum number of jobs per node an average graph should be split into.
+   * 
+   * @param jobsPerNode the number of jobs, at least 1
+   */
+  public void setJobsPerNode(final int jobsPerNode) {
+    ArgumentChecker.isTrue(jobsPerNode > 0, "jobsPerNode must be positive");
+    _jobsPerNode = jobsPerNode;
+  }
+
+  public int getJobsPerNode() {
+    return _jobsPerNode;
+  }
+
+  /**
+   * Sets the proportion of the difference between the current and target limits applied at each adjustment.
+   * 
+   * @param adaptionGain the gain, greater than 0 and at most 1
+   */
+  public void setAdaptionGain(final double adaptionGain) {
+    ArgumentChecker.isTrue((adaptionGain > 0) && (adaptionGain <= 1), "adaptionGain must be between 0 and 1");
+    _adaptionGain = adaptionGain;
+  }
+
+  public double getAdaptionGain() {
+    return _adaptionGain;
+  }
+
+  /**
+   * Sets the relative change in a limit below which no adjustment is made.
+   * 
+   * @param adaptionThreshold the threshold, at least 0
+   */
+  public void setAdaptionThreshold(final double adaptionThreshold) {
+    ArgumentChecker.isTrue(adaptionThreshold >= 0, "adaptionThreshold must not be negative");
+    _adaptionThreshold = adaptionThreshold;
+  }
+
+  public double getAdaptionThreshold() {
+    return _adaptionThreshold;
+  }
+
+  /**
+   * Returns the mean non-execution time of a job, in nanoseconds, when last measured.
+   */
+  public double getMeasuredJobOverhead() {
+    return _measuredJobOverhead;
+  }
+
+  /**
+   * Returns the mean estimated cost of a job item, in nanoseconds, when last measured.
+   */
+  public double getMeasuredItemCost() {
+    return _measuredItemCost;
+  }
+
+  /**
+   * Returns the mean execution time of a graph summed over its jobs, in nanoseconds, when last measured.
+   */
+  public double getMeasuredGraphExecutionTime() {
+    return _measuredGraphExecutionTime;
+  }
+
+  /**
+   * Returns the mean elapsed time to execute a graph, in nanoseconds, when last measured.
+   */
+  public double getMeasuredGraphActualTime() {
+    return _measuredGraphActualTime;
+  }
+
+  /**
+   * Returns the mean elapsed time to execute a graph, in nanoseconds, measured when the limits were last adjusted.
+   * Comparing this with {@link #getMeasuredGraphActualTime} shows the effect of the adjustment.
+   */
+  public double getGraphActualTimeAtAdjustment() {
+    return _graphActualTimeAtAdjustment;
+  }
+
+  public long getAdjustments() {
+    return _adjustments;
+  }
+
+  public Instant getLastAdjustment() {
+    return _lastAdjustment;
+  }
+
   /**
    * Makes one tuning adjustment.
    */
   @Override
   public void run() {
+    int nodeCount = 0;
     if (getJobDispatcher() != null) {
       s_logger.debug("Processing capabilities");
       final Map<String, Collection<Capability>> allCapabilities = getJobDispatcher().getAllCapabilities();
@@ -124,6 +256,7 @@ public class MultipleNodeExecutorTuner implements Runnable {
       }
       if (nodesPerInvokerCount > 0) {
         s_logger.debug("Found {} nodes at {} invokers", nodesPerInvoker, nodesPerInvokerCount);
+        nodeCount = (int) nodesPerInvoker;
         int maxConcurrency = getFactory().getMaximumConcurrency();
         int newMaxConcurrency = (int) Math.ceil(nodesPerInvoker / (double) nodesPerInvokerCount);
         if (newMaxConcurrency != maxConcurrency) {
@@ -132,6 +265,9 @@ public class MultipleNodeExecutorTuner implements Runnable {
         }
       }
     }
+    if (isAdaptive() && (getGraphExecutionStatistics() != null) && (getJobDispatchStatistics() != null)) {
+      adapt(Math.max(nodeCount, 1));
+    }
     if (getGraphExecutionStatistics() != null) {
       s_logger.debug("Processing graph execution statistics");
       for (TotallingGraphStatisticsGathererProvider.Statistics gatherer : getGraphExecutionStatistics().getViewStatistics()) {
@@ -150,6 +286,80 @@ public class MultipleNodeExecutorTuner implements Runnable {
     }
   }
 
+  private long damp(final long current, final long target) {
+    if ((current <= 1) || (current >= Long.MAX_VALUE / 2)) {
+      // Unset or unbounded; go straight to the target
+      return target;
+    }
+    return current + (long) ((double) (target - current) * getAdaptionGain());
+  }
+
+  private boolean isSignificant(final long current, final long proposed) {
+    return Math.abs((double) proposed - (double) current) > (double) current * getAdaptionThreshold();
+  }
+
+  /**
+   * Measures the job overhead and graph costs and, if the limits they imply differ significantly from the current
+   * ones, moves the factory's limits towards them.
+   * 
+   * @param nodeCount the total number of calculation nodes
+   */
+  protected void adapt(final int nodeCount) {
+    long jobs = 0;
+    long nonExecutionNanos = 0;
+    for (CalculationNodeStatistics statistics : getJobDispatchStatistics().getNodeStatistics()) {
+      jobs += statistics.getSuccessfulJobs();
+      nonExecutionNanos += statistics.getNonExecutionTime();
+    }
+    long graphs = 0;
+    long executionNanos = 0;
+    long actualNanos = 0;
+    long processedJobSize = 0;
+    long processedJobCycleCost = 0;
+    for (TotallingGraphStatisticsGathererProvider.Statistics gatherer : getGraphExecutionStatistics().getViewStatistics()) {
+      for (GraphExecutionStatistics statistics : gatherer.getExecutionStatistics()) {
+        graphs += statistics.getExecutedGraphs();
+        executionNanos += statistics.getExecutionTime();
+        actualNanos += statistics.getActualTime();
+        processedJobSize += statistics.getProcessedJobSize();
+        processedJobCycleCost += statistics.getProcessedJobCycleCost();
+      }
+    }
+    if ((jobs <= 0) || (graphs <= 0) || (processedJobSize <= 0) || (processedJobCycleCost <= 0)) {
+      s_logger.debug("Insufficient statistics to adapt job limits");
+      return;
+    }
+    final double jobOverhead = (double) nonExecutionNanos / (double) jobs;
+    final double itemCost = (double) processedJobCycleCost / (double) processedJobSize;
+    final double graphExecutionTime = (double) executionNanos / (double) graphs;
+    _measuredJobOverhead = jobOverhead;
+    _measuredItemCost = itemCost;
+    _measuredGraphExecutionTime = graphExecutionTime;
+    _measuredGraphActualTime = (double) actualNanos / (double) graphs;
+    s_logger.debug("Job overhead {}ns, item cost {}ns, graph execution time {}ns", new Object[] {jobOverhead, itemCost, graphExecutionTime });
+    final long targetMinimumJobCost = Math.max((long) (jobOverhead * (1 - getTargetOverheadFraction()) / getTargetOverheadFraction()), 1);
+    final long targetMaximumJobCost = Math.max((long) (graphExecutionTime / (double) (nodeCount * getJobsPerNode())), 2 * targetMinimumJobCost);
+    final MultipleNodeExecutorFactory factory = getFactory();
+    final long minimumJobCost = damp(factory.getMinimumJobCost(), targetMinimumJobCost);
+    final long maximumJobCost = Math.max(damp(factory.getMaximumJobCost(), targetMaximumJobCost), 2 * minimumJobCost);
+    // Item limits are looser than the cost limits as the cost per item varies
+    final int minimumJobItems = (int) Math.max(Math.min((double) minimumJobCost / itemCost / 2, Integer.MAX_VALUE), 1);
+    final int maximumJobItems = (int) Math.max(Math.min((double) maximumJobCost / itemCost * 2, Integer.MAX_VALUE), minimumJobItems);
+    if (!isSignificant(factory.getMinimumJobCost(), minimumJobCost) && !isSignificant(factory.getMaximumJobCost(), maximumJobCost)
+        && !isSignificant(factory.getMinimumJobItems(), minimumJobItems) && !isSignificant(factory.getMaximumJobItems(), maximumJobItems)) {
+      s_logger.debug("Job limits within adaption threshold");
+      return;
+    }
+    s_logger.info("Changing job items to {}-{} and job cost to {}-{}", new Object[] {minimumJobItems, maximumJobItems, minimumJobCost, maximumJobCost });
+    factory.setMinimumJobItems(minimumJobItems);
+    factory.setMaximumJobItems(maximumJobItems);
+    factory.setMinimumJobCost(minimumJobCost);
+    factory.setMaximumJobCost(maximumJobCost);
+    _graphActualTimeAtAdjustment = _measuredGraphActualTime;
+    _lastAdjustment = Instant.now();
+    _adjustments++;
+  }
+
   private FudgeMsg dumpCapabilities(final FudgeSerializationContext context, final String invokerId, final Collection<Capability> capabilities) {
     final MutableFudgeMsg message = context.newMessage();
     message.add("identifier", invokerId);
@@ -170,4 +380,9 @@ public class MultipleNodeExecutorTuner implements Runnable {
     return message;
   }
 
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
 }
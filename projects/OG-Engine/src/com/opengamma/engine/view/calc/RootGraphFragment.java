@@ -9,7 +9,6 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -17,11 +16,12 @@ import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.engine.view.calcnode.CalculationJobResult;
 
-/* package */class RootGraphFragment extends GraphFragment implements Future<Object> {
+/* package */class RootGraphFragment extends GraphFragment implements DependencyGraphExecutionFuture<Object> {
 
   private final GraphExecutorStatisticsGatherer _statistics;
   private long _jobStarted;
   private boolean _done;
+  private Listener _listener;
 
   public RootGraphFragment(final GraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
     super(context);
@@ -35,13 +35,21 @@ import com.opengamma.engine.view.calcnode.CalculationJobResult;
   }
 
   @Override
-  public synchronized void execute() {
-    if (!isCancelled()) {
+  public void execute() {
+    final Listener listener;
+    synchronized (this) {
+      if (isCancelled()) {
+        return;
+      }
       _done = true;
       notifyAll();
       _statistics.graphExecuted(getContext().getGraph().getCalculationConfigurationName(), getContext().getGraph().getSize(), getContext().getExecutionTime(), System.nanoTime() - _jobStarted);
       getContext().freeSharedCacheValues();
       getContext().getExecutor().getCache().cacheExecutionPlan(getContext().getGraph(), this);
+      listener = _listener;
+    }
+    if (listener != null) {
+      listener.graphCompleted(getContext().getGraph().getCalculationConfigurationName());
     }
   }
 
@@ -63,19 +71,43 @@ import com.opengamma.engine.view.calcnode.CalculationJobResult;
       return false;
     }
     _jobStarted = System.nanoTime();
-    _done = false;
+    synchronized (this) {
+      _done = false;
+      _listener = null;
+    }
     return true;
   }
 
+  // DependencyGraphExecutionFuture
+
+  @Override
+  public void setListener(final Listener listener) {
+    final boolean done;
+    synchronized (this) {
+      _listener = listener;
+      done = isDone();
+    }
+    if (done) {
+      listener.graphCompleted(getContext().getGraph().getCalculationConfigurationName());
+    }
+  }
+
   // Future
 
   @Override
-  public synchronized boolean cancel(boolean mayInterruptIfRunning) {
-    if (isDone()) {
-      return false;
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    final Listener listener;
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+      getContext().cancelAll(mayInterruptIfRunning);
+      notifyAll();
+      listener = _listener;
+    }
+    if (listener != null) {
+      listener.graphCompleted(getContext().getGraph().getCalculationConfigurationName());
     }
-    getContext().cancelAll(mayInterruptIfRunning);
-    notifyAll();
     return true;
   }
 
@@ -16,10 +16,10 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.time.Duration;
@@ -35,6 +35,7 @@ import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.depgraph.DependencyNodeFilter;
 import com.opengamma.engine.function.MarketDataSourcingFunction;
+import com.opengamma.engine.marketdata.InMemoryLKVMarketDataSnapshot;
 import com.opengamma.engine.marketdata.MarketDataSnapshot;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
@@ -80,6 +81,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   private final Set<DependencyNode> _executedNodes = new HashSet<DependencyNode>();
   private final Set<DependencyNode> _failedNodes = new HashSet<DependencyNode>();
   private final Map<String, ViewComputationCache> _cachesByCalculationConfiguration = new HashMap<String, ViewComputationCache>();
+  private volatile MarketDataSnapshot _marketDataSnapshot;
 
   // Output
   private final InMemoryViewComputationResultModel _resultModel;
@@ -235,7 +237,25 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
    *                               Execution of any outstanding jobs will be cancelled, but {@link #release()}
    *                               still must be called.
    */
-  public void execute(SingleComputationCycle previousCycle, MarketDataSnapshot marketDataSnapshot) throws InterruptedException {    
+  public void execute(SingleComputationCycle previousCycle, MarketDataSnapshot marketDataSnapshot) throws InterruptedException {
+    execute(previousCycle, marketDataSnapshot, null);
+  }
+
+  /**
+   * Synchronously runs the cycle, writing the results of each calculation configuration to the result model as soon
+   * as that configuration has been executed rather than waiting for the whole cycle to complete.
+   * 
+   * @param previousCycle  the previous cycle from which a delta cycle should be performed, or {@code null} to perform
+   *                       a full cycle
+   * @param marketDataSnapshot  the market data snapshot with which to execute the cycle, not {@code null}
+   * @param fragmentListener  the listener to notify as each calculation configuration completes, other than the
+   *                          last, or {@code null} for no notifications
+   * @throws InterruptedException  if the thread is interrupted while waiting for the computation cycle to complete.
+   *                               Execution of any outstanding jobs will be cancelled, but {@link #release()}
+   *                               still must be called.
+   */
+  public void execute(SingleComputationCycle previousCycle, MarketDataSnapshot marketDataSnapshot, ViewCycleFragmentListener fragmentListener)
+      throws InterruptedException {
     if (_state != ViewCycleState.AWAITING_EXECUTION) {
       throw new IllegalStateException("State must be " + ViewCycleState.AWAITING_EXECUTION);
     }
@@ -244,12 +264,21 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
 
     createAllCaches();    
     prepareInputs(marketDataSnapshot);
+    _marketDataSnapshot = marketDataSnapshot;
     
     if (previousCycle != null) {
       computeDelta(previousCycle);
     }
 
-    LinkedList<Future<?>> futures = new LinkedList<Future<?>>();
+    final Map<String, Future<?>> futures = new HashMap<String, Future<?>>();
+    final LinkedList<String> blockingConfigurations = new LinkedList<String>();
+    final BlockingQueue<String> completedConfigurations = new LinkedBlockingQueue<String>();
+    final DependencyGraphExecutionFuture.Listener completionListener = new DependencyGraphExecutionFuture.Listener() {
+      @Override
+      public void graphCompleted(final String calculationConfiguration) {
+        completedConfigurations.add(calculationConfiguration);
+      }
+    };
 
     for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
       s_logger.info("Executing plans for calculation configuration {}", calcConfigurationName);
@@ -258,36 +287,52 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       s_logger.info("Submitting {} for execution by {}", depGraph, getDependencyGraphExecutor());
 
       Future<?> future = getDependencyGraphExecutor().execute(depGraph, _statisticsGatherer);
-      futures.add(future);
+      futures.put(calcConfigurationName, future);
+      if (future instanceof DependencyGraphExecutionFuture) {
+        ((DependencyGraphExecutionFuture<?>) future).setListener(completionListener);
+      } else {
+        blockingConfigurations.add(calcConfigurationName);
+      }
     }
 
-    while (!futures.isEmpty()) {
-      Future<?> future = futures.poll();
-      try {
-        future.get(5, TimeUnit.SECONDS);
-      } catch (TimeoutException e) {
-        s_logger.info("Waiting for " + future);
-        futures.add(future);
-      } catch (InterruptedException e) {
-        Thread.interrupted();
-        // Cancel all outstanding jobs to free up resources
-        future.cancel(true);
-        for (Future<?> incompleteFuture : futures) {
-          incompleteFuture.cancel(true);
+    try {
+      while (!futures.isEmpty()) {
+        // Executors that can't notify us are waited on only once all of those that can have completed
+        final String calcConfigurationName = (futures.size() > blockingConfigurations.size()) ? completedConfigurations.take() : blockingConfigurations.poll();
+        final Future<?> future = futures.remove(calcConfigurationName);
+        if (future == null) {
+          continue;
+        }
+        future.get();
+        s_logger.debug("Calculation configuration {} completed", calcConfigurationName);
+        // The final configuration completes the cycle so is reported with the full result instead
+        if ((fragmentListener != null) && !futures.isEmpty()) {
+          final InMemoryViewComputationResultModel fragment = createFragmentResultModel(calcConfigurationName);
+          populateResultModel(calcConfigurationName, getDependencyGraph(calcConfigurationName), fragment);
+          fragmentListener.cycleFragmentCompleted(this, fragment);
+        } else {
+          populateResultModel(calcConfigurationName, getDependencyGraph(calcConfigurationName), null);
         }
-        _state = ViewCycleState.EXECUTION_INTERRUPTED;
-        s_logger.info("Execution interrupted before completion.");
-        throw e;
-      } catch (ExecutionException e) {
-        s_logger.error("Unable to execute dependency graph", e);
-        // Should we be swallowing this or not?
-        throw new OpenGammaRuntimeException("Unable to execute dependency graph", e);
       }
+    } catch (InterruptedException e) {
+      Thread.interrupted();
+      // Cancel all outstanding jobs to free up resources
+      for (Future<?> incompleteFuture : futures.values()) {
+        incompleteFuture.cancel(true);
+      }
+      _state = ViewCycleState.EXECUTION_INTERRUPTED;
+      s_logger.info("Execution interrupted before completion.");
+      throw e;
+    } catch (ExecutionException e) {
+      s_logger.error("Unable to execute dependency graph", e);
+      // Should we be swallowing this or not?
+      throw new OpenGammaRuntimeException("Unable to execute dependency graph", e);
     }
 
     _endTime = Instant.now();
     
-    populateResultModel();
+    getResultModel().setCalculationTime(Instant.now());
+    getResultModel().setCalculationDuration(getDuration());
     _state = ViewCycleState.EXECUTED;
   }
  
@@ -372,6 +417,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       throw new IllegalArgumentException("State of previous cycle must be " + ViewCycleState.EXECUTED);
     }
 
+    final Collection<ValueSpecification> changedMarketData = getChangedMarketData(previousCycle);
     for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
       DependencyGraph depGraph = getCompiledViewDefinition().getDependencyGraph(calcConfigurationName);
 
@@ -379,7 +425,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       ViewComputationCache previousCache = previousCycle.getComputationCache(calcConfigurationName);
 
       LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(depGraph, cache, previousCache);
-      deltaCalculator.computeDelta();
+      deltaCalculator.computeDelta(changedMarketData, getViewProcessContext().getDeltaExecutorService());
 
       s_logger.info("Computed delta for calculation configuration '{}'. {} nodes out of {} require recomputation.",
           new Object[] {calcConfigurationName, deltaCalculator.getChangedNodes().size(), depGraph.getSize()});
@@ -391,33 +437,58 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
         specsToCopy.addAll(unchangedNode.getOutputValues());
       }
       
-      copyValues(cache, previousCache, specsToCopy);
+      // Carry the encoded values forward without deserializing them
+      getViewProcessContext().getComputationCacheSource().inheritSharedValues(previousCycle.getUniqueId(), getUniqueId(), calcConfigurationName, specsToCopy);
     }
   }
-
-  private void copyValues(ViewComputationCache cache, ViewComputationCache previousCache, Collection<ValueSpecification> specsToCopy) {
-    Collection<Pair<ValueSpecification, Object>> valuesToCopy = previousCache.getValues(specsToCopy);
-    
-    Collection<ComputedValue> newValues = new HashSet<ComputedValue>();
-    for (Pair<ValueSpecification, Object> pair : valuesToCopy) {
-      Object previousValue = pair.getSecond();
-      if (previousValue != null) {
-        newValues.add(new ComputedValue(pair.getFirst(), previousValue));
+  
+  /**
+   * Gets the market data that may have changed since the previous cycle, if the snapshots can report it, so that only
+   * those values need to be compared when computing the delta.
+   * 
+   * @param previousCycle  the previous cycle, not null
+   * @return the market data that may have changed, or null if all market data must be compared
+   */
+  private Collection<ValueSpecification> getChangedMarketData(SingleComputationCycle previousCycle) {
+    if (previousCycle.getCompiledViewDefinition() != getCompiledViewDefinition()) {
+      // Market data that is new to the view will not be in the previous caches even if it hasn't changed
+      return null;
+    }
+    if (!(_marketDataSnapshot instanceof InMemoryLKVMarketDataSnapshot) || !(previousCycle._marketDataSnapshot instanceof InMemoryLKVMarketDataSnapshot)) {
+      return null;
+    }
+    final Set<ValueRequirement> changedRequirements = ((InMemoryLKVMarketDataSnapshot) _marketDataSnapshot).getChangedRequirements(
+        (InMemoryLKVMarketDataSnapshot) previousCycle._marketDataSnapshot);
+    if (changedRequirements == null) {
+      return null;
+    }
+    final Map<ValueRequirement, ValueSpecification> marketDataRequirements = getCompiledViewDefinition().getMarketDataRequirements();
+    final Collection<ValueSpecification> changedMarketData = new HashSet<ValueSpecification>();
+    for (ValueRequirement changedRequirement : changedRequirements) {
+      final ValueSpecification specification = marketDataRequirements.get(changedRequirement);
+      if (specification != null) {
+        changedMarketData.add(specification);
       }
     }
-    cache.putSharedValues(newValues);
+    s_logger.debug("{} of {} market data values changed since the previous cycle", changedMarketData.size(), marketDataRequirements.size());
+    return changedMarketData;
   }
-  
-  private void populateResultModel() {
-    getResultModel().setCalculationTime(Instant.now());
-    getResultModel().setCalculationDuration(getDuration());
-    for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
-      DependencyGraph depGraph = getCompiledViewDefinition().getDependencyGraph(calcConfigurationName);
-      populateResultModel(calcConfigurationName, depGraph);
+
+  private InMemoryViewComputationResultModel createFragmentResultModel(String calcConfigurationName) {
+    InMemoryViewComputationResultModel fragment = new InMemoryViewComputationResultModel();
+    fragment.setCalculationConfigurationNames(Collections.singleton(calcConfigurationName));
+    if (getCompiledViewDefinition().getPortfolio() != null) {
+      fragment.setPortfolio(getCompiledViewDefinition().getPortfolio());
     }
+    fragment.setViewCycleId(getUniqueId());
+    fragment.setViewProcessId(getViewProcessId());
+    fragment.setValuationTime(getValuationTime());
+    fragment.setCalculationTime(Instant.now());
+    fragment.setCalculationDuration(getDuration());
+    return fragment;
   }
 
-  private void populateResultModel(String calcConfigurationName, DependencyGraph depGraph) {
+  private void populateResultModel(String calcConfigurationName, DependencyGraph depGraph, InMemoryViewComputationResultModel fragment) {
     ViewComputationCache computationCache = getComputationCache(calcConfigurationName);
     for (Pair<ValueSpecification, Object> value : computationCache.getValues(depGraph.getOutputSpecifications(), CacheSelectHint.allShared())) {
       if (value.getValue() == null) {
@@ -429,7 +500,11 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       if (value.getSecond() instanceof MissingMarketDataSentinel) {
         continue;
       }
-      getResultModel().addValue(calcConfigurationName, new ComputedValue(value.getFirst(), value.getSecond()));
+      final ComputedValue computedValue = new ComputedValue(value.getFirst(), value.getSecond());
+      getResultModel().addValue(calcConfigurationName, computedValue);
+      if (fragment != null) {
+        fragment.addValue(calcConfigurationName, computedValue);
+      }
     }
   }
   
@@ -468,6 +543,7 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       dumpComputationCachesToDisk();
     }
     getViewProcessContext().getComputationCacheSource().releaseCaches(getUniqueId());
+    _marketDataSnapshot = null;
     _state = ViewCycleState.DESTROYED;
   }
 
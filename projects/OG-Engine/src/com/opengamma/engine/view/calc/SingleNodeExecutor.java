@@ -162,7 +162,7 @@ public class SingleNodeExecutor implements DependencyGraphExecutor<CalculationJo
     future._statistics.graphExecuted(result.getSpecification().getCalcConfigName(), future._item2Node.size(), result.getDuration(), System.nanoTime() - future._startTime);
   }
 
-  private class AtomicExecutorFuture extends FutureTask<CalculationJobResult> {
+  private class AtomicExecutorFuture extends FutureTask<CalculationJobResult> implements DependencyGraphExecutionFuture<CalculationJobResult> {
 
     private final AtomicExecutorCallable _callable;
     private final DependencyGraph _graph;
@@ -170,6 +170,7 @@ public class SingleNodeExecutor implements DependencyGraphExecutor<CalculationJo
     private final GraphExecutorStatisticsGatherer _statistics;
     private final long _startTime = System.nanoTime();
     private Cancellable _cancel;
+    private Listener _listener;
 
     public AtomicExecutorFuture(AtomicExecutorCallable callable, DependencyGraph graph, Map<CalculationJobItem, DependencyNode> item2Node, GraphExecutorStatisticsGatherer statistics) {
       super(callable);
@@ -196,6 +197,29 @@ public class SingleNodeExecutor implements DependencyGraphExecutor<CalculationJo
       return super.cancel(mayInterruptIfRunning);
     }
 
+    @Override
+    public void setListener(final Listener listener) {
+      synchronized (this) {
+        if (!isDone()) {
+          _listener = listener;
+          return;
+        }
+      }
+      listener.graphCompleted(_graph.getCalculationConfigurationName());
+    }
+
+    @Override
+    protected void done() {
+      final Listener listener;
+      synchronized (this) {
+        listener = _listener;
+        _listener = null;
+      }
+      if (listener != null) {
+        listener.graphCompleted(_graph.getCalculationConfigurationName());
+      }
+    }
+
   }
 
   private class AtomicExecutorCallable implements Callable<CalculationJobResult> {
@@ -9,6 +9,7 @@ import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -17,12 +18,17 @@ import java.util.concurrent.TimeUnit;
 
 import javax.time.Instant;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
 import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.Trade;
+import com.opengamma.core.position.impl.AbstractPortfolioNodeTraversalCallback;
+import com.opengamma.core.position.impl.PortfolioNodeTraverser;
 import com.opengamma.engine.marketdata.MarketDataListener;
 import com.opengamma.engine.marketdata.MarketDataProvider;
 import com.opengamma.engine.marketdata.MarketDataSnapshot;
@@ -30,6 +36,7 @@ import com.opengamma.engine.marketdata.availability.MarketDataAvailabilityProvid
 import com.opengamma.engine.marketdata.spec.MarketDataSpecification;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewComputationResultModel;
 import com.opengamma.engine.view.ViewProcessContext;
 import com.opengamma.engine.view.ViewProcessImpl;
 import com.opengamma.engine.view.compilation.CompiledViewDefinitionWithGraphsImpl;
@@ -38,6 +45,8 @@ import com.opengamma.engine.view.compilation.ViewDefinitionCompiler;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
 import com.opengamma.engine.view.execution.ViewExecutionFlags;
 import com.opengamma.engine.view.execution.ViewExecutionOptions;
+import com.opengamma.id.ObjectIdentifier;
+import com.opengamma.id.UniqueIdentifiable;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.TerminatableJob;
@@ -72,10 +81,13 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private final Set<ValueRequirement> _marketDataSubscriptions = new HashSet<ValueRequirement>();
   private final Set<ValueRequirement> _pendingSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<ValueRequirement, Boolean>());
   private CountDownLatch _pendingSubscriptionLatch;
+  private volatile Set<ObjectIdentifier> _compiledPortfolioIdentifiers = Collections.emptySet();
+  private final Set<ObjectIdentifier> _changedTargets = Collections.newSetFromMap(new ConcurrentHashMap<ObjectIdentifier, Boolean>());
   
   private volatile boolean _wakeOnMarketDataChanged;
   private volatile boolean _marketDataChanged;
   private volatile boolean _cycleTriggered;
+  private final AdaptiveCycleTrigger _marketDataTrigger = new AdaptiveCycleTrigger();
   
   private enum ViewCycleType { FULL, DELTA, NONE }
   
@@ -85,6 +97,16 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private double _totalTimeNanos;
 
   private MarketDataProvider _marketDataProvider;
+
+  private final ViewCycleFragmentListener _fragmentListener = new ViewCycleFragmentListener() {
+    @Override
+    public void cycleFragmentCompleted(ViewCycle cycle, ViewComputationResultModel fragment) {
+      // As for full results, don't push anything through once terminated
+      if (!isTerminated()) {
+        ViewComputationJob.this.cycleFragmentCompleted(cycle, fragment);
+      }
+    }
+  };
   
   public ViewComputationJob(ViewProcessImpl viewProcess, ViewExecutionOptions executionOptions,
       ViewProcessContext processContext, EngineResourceManagerInternal<SingleComputationCycle> cycleManager) {
@@ -294,6 +316,14 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     }
   }
 
+  private void cycleFragmentCompleted(ViewCycle cycle, ViewComputationResultModel fragment) {
+    try {
+      getViewProcess().cycleFragmentCompleted(cycle, fragment);
+    } catch (Exception e) {
+      s_logger.error("Error notifying view process " + getViewProcess() + " of view cycle fragment completion", e);
+    }
+  }
+
   private void cycleCompleted(ViewCycle cycle) {
     try {
       getViewProcess().cycleCompleted(cycle);
@@ -341,18 +371,22 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       doDeltaRecalc = true;
     }
     
+    // Market data changes may be held back, to coalesce further changes, until the start time for the target latency
+    final Long targetLatency = getViewProcess().getDefinition().getTargetResultLatency();
+    final boolean marketDataFull = doFullRecalc || (!doDeltaRecalc && (currentTimeNanos >= _eligibleForFullComputationFromNanos));
+    final long marketDataStartNanos = _marketDataTrigger.getStartNanos(marketDataFull, targetLatency);
     if (_marketDataChanged) {
       s_logger.debug("Market data has changed");
-      if (currentTimeNanos >= _eligibleForFullComputationFromNanos) {
+      if ((currentTimeNanos < marketDataStartNanos) && !doFullRecalc && !doDeltaRecalc) {
+        s_logger.debug("Coalescing {} market data changes", _marketDataTrigger.getTicks());
+      } else if (currentTimeNanos >= _eligibleForFullComputationFromNanos) {
         // Do (or upgrade to) a full computation because we're eligible for one
         s_logger.debug("Performing a full computation for the market data change");
         doFullRecalc = true;
-        _marketDataChanged = false;
       } else if (currentTimeNanos >= _eligibleForDeltaComputationFromNanos) {
         // Do a delta computation
         s_logger.debug("Performing a delta computation for the market data change");
         doDeltaRecalc = true;
-        _marketDataChanged = false;
       }
     }
     if (_cycleTriggered) {
@@ -371,6 +405,10 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     }
     
     if (doFullRecalc || doDeltaRecalc) {
+      if (_marketDataChanged) {
+        // Whatever started the cycle, it will reflect the market data changes
+        marketDataCycleStarted(currentTimeNanos, doFullRecalc);
+      }
       // Set the times for the next computation cycle. These might have passed by the time this cycle completes, in
       // which case another cycle will run straight away.
       updateComputationTimes(currentTimeNanos, !doFullRecalc);
@@ -385,10 +423,11 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       s_logger.debug("Sleeping until eligible to perform the next computation cycle");
       
       // Market data has arrived but we decided not to perform a computation cycle; this must be because we're not
-      // eligible for one right now. We'll do one as soon as we are.
-      wakeUpTime = minWakeUpTime;
+      // eligible for one right now, or are coalescing changes. We'll do one as soon as we should, unless forced sooner.
+      wakeUpTime = Math.min(Math.max(minWakeUpTime, marketDataStartNanos), Math.min(_deltaComputationRequiredByNanos, _fullComputationRequiredByNanos));
       
-      // No amount of market data can make us eligible for a computation cycle any sooner.
+      // No amount of market data can make us eligible for a computation cycle any sooner; the start time for the
+      // target latency is set by the first change.
       _wakeOnMarketDataChanged = false;
     } else {
       s_logger.debug("Sleeping until forced to perform the next computation cycle");
@@ -421,6 +460,20 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     return ViewCycleType.NONE;
   }
   
+  /**
+   * Clears the pending market data changes, which will be reflected in the cycle about to start, and reports the
+   * decision to the statistics gatherer.
+   */
+  private void marketDataCycleStarted(final long currentTimeNanos, final boolean full) {
+    _marketDataChanged = false;
+    final long firstTickNanos = _marketDataTrigger.getFirstTickNanos();
+    final int ticks = _marketDataTrigger.cycleStarted();
+    if (ticks > 0) {
+      getProcessContext().getGraphExecutorStatisticsGathererProvider().getStatisticsGatherer(getViewProcess().getUniqueId()).cycleTriggered(ticks,
+          currentTimeNanos - firstTickNanos, _marketDataTrigger.getEstimatedDurationNanos(full));
+    }
+  }
+
   private void executeViewCycle(ViewCycleType cycleType, EngineResourceReference<SingleComputationCycle> cycleReference, MarketDataSnapshot marketDataSnapshot) throws Exception {
     SingleComputationCycle deltaCycle;
     if (cycleType == ViewCycleType.FULL) {
@@ -434,7 +487,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     }
     
     try {
-      cycleReference.get().execute(deltaCycle, marketDataSnapshot);
+      cycleReference.get().execute(deltaCycle, marketDataSnapshot, _fragmentListener);
     } catch (InterruptedException e) {
       Thread.interrupted();
       // In reality this means that the job has been terminated, and it will end as soon as we return from this method.
@@ -448,6 +501,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     }
     
     long durationNanos = cycleReference.get().getDuration().toNanosLong();
+    _marketDataTrigger.cycleCompleted(cycleType == ViewCycleType.FULL, durationNanos);
     _totalTimeNanos += durationNanos;
     _numExecutions += 1.0;
     s_logger.info("Last latency was {} ms, Average latency is {} ms", durationNanos / NANOS_PER_MILLISECOND, (_totalTimeNanos / _numExecutions) / NANOS_PER_MILLISECOND);
@@ -478,13 +532,23 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     notifyAll();
   }
   
-  public synchronized void marketDataChanged() {
+  public void marketDataChanged() {
+    marketDataChanged(1);
+  }
+
+  /**
+   * Notifies the job of relevant market data changes.
+   * 
+   * @param ticks  the number of market data values that changed
+   */
+  public synchronized void marketDataChanged(int ticks) {
     // REVIEW jonathan 2010-10-04 -- this synchronisation is necessary, but it feels very heavyweight for
     // high-frequency market data. See how it goes, but we could take into account the recalc periods and apply a
     // heuristic (e.g. only wake up due to market data if max - min < e, for some e) which tries to see whether it's
     // worth doing all this.
     
     s_logger.debug("Market Data changed");
+    _marketDataTrigger.ticksReceived(ticks, System.nanoTime());
     _marketDataChanged = true;
     if (!_wakeOnMarketDataChanged) {
       return;
@@ -507,7 +571,8 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   private CompiledViewDefinitionWithGraphsImpl getCompiledViewDefinition(Instant valuationTime) {
     long functionInitId = getProcessContext().getFunctionCompilationService().getFunctionCompilationContext().getFunctionInitId();
     CompiledViewDefinitionWithGraphsImpl compiledViewDefinition = getCachedCompiledViewDefinition();
-    if (compiledViewDefinition != null && compiledViewDefinition.isValidFor(valuationTime) && functionInitId == compiledViewDefinition.getFunctionInitId()) {
+    final Set<ObjectIdentifier> changedTargets = takeChangedTargets();
+    if (compiledViewDefinition != null && compiledViewDefinition.isValidFor(valuationTime) && functionInitId == compiledViewDefinition.getFunctionInitId() && changedTargets.isEmpty()) {
       // Existing cached model is valid (an optimisation for the common case of similar, increasing valuation times)
       return compiledViewDefinition;
     }
@@ -515,8 +580,14 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
     try {
       MarketDataAvailabilityProvider availabilityProvider = getMarketDataProvider().getAvailabilityProvider();
       ViewCompilationServices compilationServices = getProcessContext().asCompilationServices(availabilityProvider);
-      compiledViewDefinition = ViewDefinitionCompiler.compile(getViewProcess().getDefinition(), compilationServices, valuationTime);
+      if (compiledViewDefinition != null && !changedTargets.isEmpty()) {
+        compiledViewDefinition = ViewDefinitionCompiler.compileIncremental(getViewProcess().getDefinition(), compilationServices, valuationTime, compiledViewDefinition, changedTargets);
+      } else {
+        compiledViewDefinition = ViewDefinitionCompiler.compile(getViewProcess().getDefinition(), compilationServices, valuationTime);
+      }
     } catch (Exception e) {
+      // Changes will need applying to whatever is compiled next
+      _changedTargets.addAll(changedTargets);
       String message = MessageFormat.format("Error compiling view definition {0} for time {1}", getViewProcess().getDefinitionName(), valuationTime);
       viewDefinitionCompilationFailed(valuationTime, new OpenGammaRuntimeException(message, e));
       throw new OpenGammaRuntimeException(message, e);
@@ -545,7 +616,7 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
   }
   
   private void invalidateCachedCompiledViewDefinition() {
-    _latestCompiledViewDefinition = null;
+    setCachedCompiledViewDefinition(null);
   }
   
   /**
@@ -557,6 +628,74 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
    */
   public void setCachedCompiledViewDefinition(CompiledViewDefinitionWithGraphsImpl latestCompiledViewDefinition) {
     _latestCompiledViewDefinition = latestCompiledViewDefinition;
+    _compiledPortfolioIdentifiers = getPortfolioIdentifiers(latestCompiledViewDefinition);
+  }
+
+  /**
+   * Notifies the job that portfolios, positions or securities have changed. If any are referenced by the portfolio of
+   * the cached compiled view definition then it is updated, recompiling only the affected parts, and a cycle is
+   * triggered.
+   * 
+   * @param changedIdentifiers the object identifiers of the changed items, not null
+   */
+  public void targetsChanged(Collection<ObjectIdentifier> changedIdentifiers) {
+    final Set<ObjectIdentifier> compiledIdentifiers = _compiledPortfolioIdentifiers;
+    for (ObjectIdentifier changedIdentifier : changedIdentifiers) {
+      if (compiledIdentifiers.contains(changedIdentifier)) {
+        s_logger.debug("Targets changed: {}", changedIdentifiers);
+        _changedTargets.addAll(changedIdentifiers);
+        triggerCycle();
+        return;
+      }
+    }
+  }
+
+  private Set<ObjectIdentifier> takeChangedTargets() {
+    if (_changedTargets.isEmpty()) {
+      return Collections.emptySet();
+    }
+    final Set<ObjectIdentifier> changedTargets = new HashSet<ObjectIdentifier>();
+    final Iterator<ObjectIdentifier> itr = _changedTargets.iterator();
+    while (itr.hasNext()) {
+      changedTargets.add(itr.next());
+      itr.remove();
+    }
+    return changedTargets;
+  }
+
+  private static Set<ObjectIdentifier> getPortfolioIdentifiers(final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition) {
+    if ((compiledViewDefinition == null) || (compiledViewDefinition.getPortfolio() == null)) {
+      return Collections.emptySet();
+    }
+    final Portfolio portfolio = compiledViewDefinition.getPortfolio();
+    final Set<ObjectIdentifier> identifiers = new HashSet<ObjectIdentifier>();
+    if (portfolio.getUniqueId() != null) {
+      identifiers.add(portfolio.getUniqueId().getObjectId());
+    }
+    PortfolioNodeTraverser.depthFirst(new AbstractPortfolioNodeTraversalCallback() {
+
+      private void add(final UniqueIdentifiable object) {
+        if ((object != null) && (object.getUniqueId() != null)) {
+          identifiers.add(object.getUniqueId().getObjectId());
+        }
+      }
+
+      @Override
+      public void preOrderOperation(PortfolioNode portfolioNode) {
+        add(portfolioNode);
+      }
+
+      @Override
+      public void preOrderOperation(Position position) {
+        add(position);
+        add(position.getSecurity());
+        for (Trade trade : position.getTrades()) {
+          add(trade);
+        }
+      }
+
+    }).traverse(portfolio.getRootNode());
+    return identifiers;
   }
   
   private boolean requireFullCycleNext(long currentTime) {
@@ -690,8 +829,14 @@ public class ViewComputationJob extends TerminatableJob implements MarketDataLis
       return;
     }
     Map<ValueRequirement, ValueSpecification> marketDataRequirements = compiledView.getMarketDataRequirements();
-    if (CollectionUtils.containsAny(marketDataRequirements.keySet(), values)) {
-      marketDataChanged();
+    int ticks = 0;
+    for (ValueRequirement value : values) {
+      if (marketDataRequirements.containsKey(value)) {
+        ticks++;
+      }
+    }
+    if (ticks > 0) {
+      marketDataChanged(ticks);
     }
   }
 
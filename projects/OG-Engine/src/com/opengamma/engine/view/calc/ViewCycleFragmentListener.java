@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import com.opengamma.engine.view.ViewComputationResultModel;
+
+/**
+ * A call-back interface for the results of individual calculation configurations as they complete during a
+ * {@link SingleComputationCycle}.
+ */
+public interface ViewCycleFragmentListener {
+
+  /**
+   * Called from the cycle's executing thread when a calculation configuration has been executed and its results
+   * written to the cycle's result model.
+   * 
+   * @param cycle  the cycle being executed, not {@code null}
+   * @param fragment  the results of just the completed calculation configuration, not {@code null}
+   */
+  void cycleFragmentCompleted(ViewCycle cycle, ViewComputationResultModel fragment);
+
+}
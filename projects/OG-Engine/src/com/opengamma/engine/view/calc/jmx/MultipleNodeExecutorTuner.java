@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.jmx;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MultipleNodeExecutorTunerMBean implementation.
+ */
+public final class MultipleNodeExecutorTuner implements MultipleNodeExecutorTunerMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(MultipleNodeExecutorTuner.class);
+
+  private final com.opengamma.engine.view.calc.MultipleNodeExecutorTuner _underlying;
+
+  private MultipleNodeExecutorTuner(final com.opengamma.engine.view.calc.MultipleNodeExecutorTuner underlying) {
+    _underlying = underlying;
+  }
+
+  private com.opengamma.engine.view.calc.MultipleNodeExecutorTuner getUnderlying() {
+    return _underlying;
+  }
+
+  public static void registerMBeans(final com.opengamma.engine.view.calc.MultipleNodeExecutorTuner tuner, final MBeanServer server) throws JMException {
+    final ObjectName name = new ObjectName("com.opengamma:type=MultipleNodeExecutorTuner,name=" + tuner.toString());
+    final MultipleNodeExecutorTuner instance = new MultipleNodeExecutorTuner(tuner);
+    try {
+      server.registerMBean(instance, name);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", name);
+      server.unregisterMBean(name);
+      server.registerMBean(instance, name);
+    }
+  }
+
+  @Override
+  public void setAdaptive(boolean adaptive) {
+    getUnderlying().setAdaptive(adaptive);
+  }
+
+  @Override
+  public boolean isAdaptive() {
+    return getUnderlying().isAdaptive();
+  }
+
+  @Override
+  public void setTargetOverheadFraction(double targetOverheadFraction) {
+    getUnderlying().setTargetOverheadFraction(targetOverheadFraction);
+  }
+
+  @Override
+  public double getTargetOverheadFraction() {
+    return getUnderlying().getTargetOverheadFraction();
+  }
+
+  @Override
+  public void setJobsPerNode(int jobsPerNode) {
+    getUnderlying().setJobsPerNode(jobsPerNode);
+  }
+
+  @Override
+  public int getJobsPerNode() {
+    return getUnderlying().getJobsPerNode();
+  }
+
+  @Override
+  public void setAdaptionGain(double adaptionGain) {
+    getUnderlying().setAdaptionGain(adaptionGain);
+  }
+
+  @Override
+  public double getAdaptionGain() {
+    return getUnderlying().getAdaptionGain();
+  }
+
+  @Override
+  public void setAdaptionThreshold(double adaptionThreshold) {
+    getUnderlying().setAdaptionThreshold(adaptionThreshold);
+  }
+
+  @Override
+  public double getAdaptionThreshold() {
+    return getUnderlying().getAdaptionThreshold();
+  }
+
+  @Override
+  public double getMeasuredJobOverhead() {
+    return getUnderlying().getMeasuredJobOverhead();
+  }
+
+  @Override
+  public double getMeasuredItemCost() {
+    return getUnderlying().getMeasuredItemCost();
+  }
+
+  @Override
+  public double getMeasuredGraphExecutionTime() {
+    return getUnderlying().getMeasuredGraphExecutionTime();
+  }
+
+  @Override
+  public double getMeasuredGraphActualTime() {
+    return getUnderlying().getMeasuredGraphActualTime();
+  }
+
+  @Override
+  public double getGraphActualTimeAtAdjustment() {
+    return getUnderlying().getGraphActualTimeAtAdjustment();
+  }
+
+  @Override
+  public long getAdjustments() {
+    return getUnderlying().getAdjustments();
+  }
+
+  @Override
+  public String getLastAdjustment() {
+    final Instant lastAdjustment = getUnderlying().getLastAdjustment();
+    return (lastAdjustment != null) ? lastAdjustment.toString() : null;
+  }
+
+}
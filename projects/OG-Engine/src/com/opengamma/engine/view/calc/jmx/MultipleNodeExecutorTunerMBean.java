@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.jmx;
+
+
+/**
+ * JMX MBean interface for the adaptive tuning of the factory parameters, and the measurements it is based on.
+ */
+public interface MultipleNodeExecutorTunerMBean {
+
+  void setAdaptive(boolean adaptive);
+  boolean isAdaptive();
+  void setTargetOverheadFraction(double targetOverheadFraction);
+  double getTargetOverheadFraction();
+  void setJobsPerNode(int jobsPerNode);
+  int getJobsPerNode();
+  void setAdaptionGain(double adaptionGain);
+  double getAdaptionGain();
+  void setAdaptionThreshold(double adaptionThreshold);
+  double getAdaptionThreshold();
+  double getMeasuredJobOverhead();
+  double getMeasuredItemCost();
+  double getMeasuredGraphExecutionTime();
+  double getMeasuredGraphActualTime();
+  double getGraphActualTimeAtAdjustment();
+  long getAdjustments();
+  String getLastAdjustment();
+
+}
@@ -28,6 +28,11 @@ public class DiscardingGraphStatisticsGathererProvider implements GraphExecutorS
       // No action
     }
 
+    @Override
+    public void cycleTriggered(int ticks, long delay, long estimatedDuration) {
+      // No action
+    }
+
   };
 
   public GraphExecutorStatisticsGatherer getStatisticsGatherer(final UniqueIdentifier viewProcessId) {
@@ -35,4 +35,13 @@ public interface GraphExecutorStatisticsGatherer {
    */
   void graphExecuted(String calcConfig, int nodeCount, long executionTime, long duration);
 
+  /**
+   * Reports the decision to start a computation cycle for market data changes.
+   * 
+   * @param ticks Number of relevant market data changes coalesced into the cycle.
+   * @param delay Time from the first of those changes to the start of the cycle, in nanoseconds.
+   * @param estimatedDuration Expected duration of the cycle when it was started, in nanoseconds, or 0 if not available.
+   */
+  void cycleTriggered(int ticks, long delay, long estimatedDuration);
+
 }
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.time.Instant;
 import javax.time.InstantProvider;
@@ -30,6 +31,10 @@ public class TotallingGraphStatisticsGathererProvider extends PerViewStatisticsG
 
     private final UniqueIdentifier _viewProcessId;
     private final ConcurrentMap<String, GraphExecutionStatistics> _statistics = new ConcurrentHashMap<String, GraphExecutionStatistics>();
+    private final AtomicLong _triggeredCycles = new AtomicLong();
+    private final AtomicLong _coalescedTicks = new AtomicLong();
+    private final AtomicLong _triggerDelay = new AtomicLong();
+    private final AtomicLong _estimatedCycleDuration = new AtomicLong();
 
     private Statistics(final UniqueIdentifier viewProcessId) {
       _viewProcessId = viewProcessId;
@@ -57,6 +62,53 @@ public class TotallingGraphStatisticsGathererProvider extends PerViewStatisticsG
       getOrCreateConfiguration(calcConfig).recordProcessing(totalJobs, meanJobSize, meanJobCycleCost, meanJobIOCost);
     }
 
+    @Override
+    public void cycleTriggered(int ticks, long delay, long estimatedDuration) {
+      _triggeredCycles.incrementAndGet();
+      _coalescedTicks.addAndGet(ticks);
+      _triggerDelay.addAndGet(delay);
+      _estimatedCycleDuration.addAndGet(estimatedDuration);
+    }
+
+    public long getTriggeredCycles() {
+      return _triggeredCycles.get();
+    }
+
+    public long getCoalescedTicks() {
+      return _coalescedTicks.get();
+    }
+
+    /**
+     * Returns the total time cycles were held back to coalesce market data changes, in nanoseconds.
+     * 
+     * @return the total delay
+     */
+    public long getTriggerDelay() {
+      return _triggerDelay.get();
+    }
+
+    public long getEstimatedCycleDuration() {
+      return _estimatedCycleDuration.get();
+    }
+
+    public double getAverageCoalescedTicks() {
+      final long cycles = getTriggeredCycles();
+      if (cycles > 0) {
+        return (double) getCoalescedTicks() / (double) cycles;
+      } else {
+        return 0;
+      }
+    }
+
+    public double getAverageTriggerDelay() {
+      final long cycles = getTriggeredCycles();
+      if (cycles > 0) {
+        return (double) getTriggerDelay() / (double) cycles / 1e9;
+      } else {
+        return 0;
+      }
+    }
+
     public List<GraphExecutionStatistics> getExecutionStatistics() {
       return new ArrayList<GraphExecutionStatistics>(_statistics.values());
     }
@@ -6,11 +6,18 @@
 package com.opengamma.engine.view.calcnode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.function.CompiledFunctionRepository;
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.function.FunctionExecutionContext;
@@ -25,6 +33,7 @@ import com.opengamma.engine.function.FunctionInputs;
 import com.opengamma.engine.function.FunctionInputsImpl;
 import com.opengamma.engine.function.FunctionInvoker;
 import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ViewProcessor;
 import com.opengamma.engine.view.cache.ViewComputationCache;
@@ -53,6 +62,10 @@ public abstract class AbstractCalculationNode implements CalculationNode {
   private final FunctionInvocationStatisticsGatherer _functionInvocationStatistics;
   private String _nodeId;
   private final ExecutorService _writeBehindExecutorService;
+  private boolean _prefetchInputs;
+  private InputValueCache _inputValueCache;
+  private ExecutorService _itemExecutorService;
+  private int _itemParallelism = Runtime.getRuntime().availableProcessors();
 
   protected AbstractCalculationNode(ViewComputationCacheSource cacheSource, CompiledFunctionService functionCompilationService,
       FunctionExecutionContext functionExecutionContext, ComputationTargetResolver targetResolver, ViewProcessorQuerySender calcNodeQuerySender, String nodeId,
@@ -105,6 +118,62 @@ public abstract class AbstractCalculationNode implements CalculationNode {
     return _functionInvocationStatistics;
   }
 
+  /**
+   * Sets whether to fetch the inputs of all items in a job in a single request before executing any of them, instead
+   * of fetching the inputs of each item as it is executed.
+   * 
+   * @param prefetchInputs true to fetch inputs for the whole job
+   */
+  public void setPrefetchInputs(final boolean prefetchInputs) {
+    _prefetchInputs = prefetchInputs;
+  }
+
+  public boolean isPrefetchInputs() {
+    return _prefetchInputs;
+  }
+
+  /**
+   * Sets a cache of deserialized input values to use across the jobs this node executes.
+   * 
+   * @param inputValueCache the cache, or null to fetch every input from the computation cache
+   */
+  public void setInputValueCache(final InputValueCache inputValueCache) {
+    _inputValueCache = inputValueCache;
+  }
+
+  public InputValueCache getInputValueCache() {
+    return _inputValueCache;
+  }
+
+  /**
+   * Sets an executor to run independent items of a job in parallel. Items are grouped into dependency levels and
+   * the items of each level are run concurrently, one level after another. Results are returned in the original
+   * item order.
+   * 
+   * @param itemExecutorService the executor, or null to run items one after another on the calling thread
+   */
+  public void setItemExecutorService(final ExecutorService itemExecutorService) {
+    _itemExecutorService = itemExecutorService;
+  }
+
+  public ExecutorService getItemExecutorService() {
+    return _itemExecutorService;
+  }
+
+  /**
+   * Sets the maximum number of threads, including the calling thread, used to run the items of a job.
+   * 
+   * @param itemParallelism the number of threads, at least 1
+   */
+  public void setItemParallelism(final int itemParallelism) {
+    ArgumentChecker.isTrue(itemParallelism > 0, "itemParallelism must be positive");
+    _itemParallelism = itemParallelism;
+  }
+
+  public int getItemParallelism() {
+    return _itemParallelism;
+  }
+
   @Override
   public String getNodeId() {
     return _nodeId;
@@ -125,25 +194,18 @@ public abstract class AbstractCalculationNode implements CalculationNode {
     final WriteBehindViewComputationCache cache = new WriteBehindViewComputationCache(getCache(spec), job.getCacheSelectHint(), getWriteBehindExecutorService());
     long executionTime = System.nanoTime();
     final List<CalculationJobResultItem> resultItems = new ArrayList<CalculationJobResultItem>();
-    final String calculationConfiguration = spec.getCalcConfigName();
-    for (CalculationJobItem jobItem : job.getJobItems()) {
-      if (job.isCancelled()) {
+    final Map<ValueSpecification, Object> prefetched = isPrefetchInputs() ? prefetchInputs(job, cache) : null;
+    if ((getItemExecutorService() != null) && (job.getJobItems().size() > 1)) {
+      if (!executeItemsInParallel(job, functions, cache, prefetched, resultItems)) {
         return null;
       }
-      CalculationJobResultItem resultItem;
-      try {
-        invoke(functions, jobItem, cache, new DeferredInvocationStatistics(getFunctionInvocationStatistics(), calculationConfiguration));
-        resultItem = new CalculationJobResultItem(jobItem);
-      } catch (MissingInputException e) {
-        // NOTE kirk 2009-10-20 -- We intentionally only do the message here so that we don't
-        // litter the logs with stack traces.
-        s_logger.info("Unable to invoke {} due to missing inputs: {}", jobItem, e.getMessage());
-        resultItem = new CalculationJobResultItem(jobItem, e);
-      } catch (Throwable t) {
-        s_logger.warn("Invoking " + jobItem.getFunctionUniqueIdentifier() + " threw exception.", t);
-        resultItem = new CalculationJobResultItem(jobItem, t);
+    } else {
+      for (CalculationJobItem jobItem : job.getJobItems()) {
+        if (job.isCancelled()) {
+          return null;
+        }
+        resultItems.add(executeItem(functions, spec, jobItem, cache, prefetched, getFunctionExecutionContext()));
       }
-      resultItems.add(resultItem);
     }
     cache.waitForPendingWrites();
     executionTime = System.nanoTime() - executionTime;
@@ -152,13 +214,200 @@ public abstract class AbstractCalculationNode implements CalculationNode {
     return jobResult;
   }
 
+  private CalculationJobResultItem executeItem(final CompiledFunctionRepository functions, final CalculationJobSpecification spec, final CalculationJobItem jobItem,
+      final WriteBehindViewComputationCache cache, final Map<ValueSpecification, Object> prefetched, final FunctionExecutionContext executionContext) {
+    try {
+      invoke(functions, spec, jobItem, cache, prefetched, executionContext, new DeferredInvocationStatistics(getFunctionInvocationStatistics(), spec.getCalcConfigName()));
+      return new CalculationJobResultItem(jobItem);
+    } catch (MissingInputException e) {
+      // NOTE kirk 2009-10-20 -- We intentionally only do the message here so that we don't
+      // litter the logs with stack traces.
+      s_logger.info("Unable to invoke {} due to missing inputs: {}", jobItem, e.getMessage());
+      return new CalculationJobResultItem(jobItem, e);
+    } catch (Throwable t) {
+      s_logger.warn("Invoking " + jobItem.getFunctionUniqueIdentifier() + " threw exception.", t);
+      return new CalculationJobResultItem(jobItem, t);
+    }
+  }
+
+  /**
+   * Assigns each item of a job to a dependency level. An item is placed one level above the highest item earlier in
+   * the job that produces a value with the same name and target as one of its inputs. Items within a level are
+   * independent of each other.
+   * 
+   * @param jobItems the items, in execution order
+   * @return the level of each item, starting from 0
+   */
+  /* package */static int[] getDependencyLevels(final List<CalculationJobItem> jobItems) {
+    final int[] levels = new int[jobItems.size()];
+    final Map<Pair<String, ComputationTargetSpecification>, Integer> producers = new HashMap<Pair<String, ComputationTargetSpecification>, Integer>();
+    int index = 0;
+    for (CalculationJobItem jobItem : jobItems) {
+      int level = 0;
+      for (ValueSpecification input : jobItem.getInputs()) {
+        final Integer producer = producers.get(Pair.of(input.getValueName(), input.getTargetSpecification()));
+        if ((producer != null) && (producer >= level)) {
+          level = producer + 1;
+        }
+      }
+      levels[index++] = level;
+      for (ValueRequirement output : jobItem.getDesiredValues()) {
+        final Pair<String, ComputationTargetSpecification> key = Pair.of(output.getValueName(), output.getTargetSpecification());
+        final Integer producer = producers.get(key);
+        if ((producer == null) || (producer < level)) {
+          producers.put(key, level);
+        }
+      }
+    }
+    return levels;
+  }
+
+  /**
+   * Executes the items of a job, running the independent items of each dependency level in parallel.
+   * 
+   * @return false if the job was cancelled
+   */
+  private boolean executeItemsInParallel(final CalculationJob job, final CompiledFunctionRepository functions, final WriteBehindViewComputationCache cache,
+      final Map<ValueSpecification, Object> prefetched, final List<CalculationJobResultItem> resultItems) {
+    final List<CalculationJobItem> jobItems = job.getJobItems();
+    final int[] levels = getDependencyLevels(jobItems);
+    final List<List<Integer>> levelItems = new ArrayList<List<Integer>>();
+    for (int i = 0; i < levels.length; i++) {
+      while (levelItems.size() <= levels[i]) {
+        levelItems.add(new ArrayList<Integer>());
+      }
+      levelItems.get(levels[i]).add(i);
+    }
+    s_logger.debug("Executing {} items in {} levels", jobItems.size(), levelItems.size());
+    final CalculationJobResultItem[] results = new CalculationJobResultItem[jobItems.size()];
+    for (final List<Integer> items : levelItems) {
+      if (job.isCancelled()) {
+        return false;
+      }
+      final AtomicInteger next = new AtomicInteger();
+      final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+          // Each worker needs its own context as the function parameters are set on it for each item
+          final FunctionExecutionContext executionContext = getFunctionExecutionContext().clone();
+          int i = next.getAndIncrement();
+          while ((i < items.size()) && !job.isCancelled()) {
+            final int item = items.get(i);
+            results[item] = executeItem(functions, job.getSpecification(), jobItems.get(item), cache, prefetched, executionContext);
+            i = next.getAndIncrement();
+          }
+        }
+      };
+      final int workers = Math.min(getItemParallelism(), items.size()) - 1;
+      final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+      for (int i = 0; i < workers; i++) {
+        futures.add(getItemExecutorService().submit(worker));
+      }
+      worker.run();
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new OpenGammaRuntimeException("Interrupted", e);
+        } catch (ExecutionException e) {
+          throw new OpenGammaRuntimeException("Error executing job items", e.getCause());
+        }
+      }
+    }
+    if (job.isCancelled()) {
+      return false;
+    }
+    resultItems.addAll(Arrays.asList(results));
+    return true;
+  }
+
   @Override
   public ViewComputationCache getCache(CalculationJobSpecification spec) {
     ViewComputationCache cache = getCacheSource().getCache(spec.getViewCycleId(), spec.getCalcConfigName());
     return cache;
   }
 
-  private void invoke(final CompiledFunctionRepository functions, final CalculationJobItem jobItem, final WriteBehindViewComputationCache cache, final DeferredInvocationStatistics statistics) {
+  private static boolean isCacheable(final Object value) {
+    return (value != null) && !(value instanceof MissingInput);
+  }
+
+  /**
+   * Fetches the inputs to all items in a job. Values produced by items within the job are excluded where they can be
+   * identified.
+   * 
+   * @param job the job
+   * @param cache the cache to fetch from
+   * @return the values fetched, keyed by specification
+   */
+  private Map<ValueSpecification, Object> prefetchInputs(final CalculationJob job, final WriteBehindViewComputationCache cache) {
+    final Set<ValueSpecification> outputs = new HashSet<ValueSpecification>();
+    final Set<ValueSpecification> inputs = new HashSet<ValueSpecification>();
+    for (CalculationJobItem jobItem : job.getJobItems()) {
+      inputs.addAll(jobItem.getInputs());
+      outputs.addAll(jobItem.getOutputs());
+    }
+    inputs.removeAll(outputs);
+    final Map<ValueSpecification, Object> values = new HashMap<ValueSpecification, Object>();
+    final InputValueCache inputValueCache = getInputValueCache();
+    if (inputValueCache != null) {
+      final Iterator<ValueSpecification> iterator = inputs.iterator();
+      while (iterator.hasNext()) {
+        final ValueSpecification input = iterator.next();
+        final Object value = inputValueCache.get(job.getSpecification(), input);
+        if (value != null) {
+          values.put(input, value);
+          iterator.remove();
+        }
+      }
+    }
+    if (!inputs.isEmpty()) {
+      s_logger.debug("Prefetching {} inputs for {}", inputs.size(), job);
+      for (Pair<ValueSpecification, Object> input : cache.getValues(inputs)) {
+        // Values not yet available are not kept; the item needing them will fetch them itself
+        if (isCacheable(input.getValue())) {
+          values.put(input.getKey(), input.getValue());
+          if (inputValueCache != null) {
+            inputValueCache.put(job.getSpecification(), input.getKey(), input.getValue(), cache.estimateValueSize(new ComputedValue(input.getKey(), input.getValue())));
+          }
+        }
+      }
+    }
+    return values;
+  }
+
+  private Collection<Pair<ValueSpecification, Object>> getInputs(final CalculationJobSpecification job, final CalculationJobItem jobItem, final WriteBehindViewComputationCache cache,
+      final Map<ValueSpecification, Object> prefetched) {
+    final InputValueCache inputValueCache = getInputValueCache();
+    if ((prefetched == null) && (inputValueCache == null)) {
+      return cache.getValues(jobItem.getInputs());
+    }
+    final Collection<Pair<ValueSpecification, Object>> values = new ArrayList<Pair<ValueSpecification, Object>>(jobItem.getInputs().size());
+    final Collection<ValueSpecification> misses = new ArrayList<ValueSpecification>(jobItem.getInputs().size());
+    for (ValueSpecification input : jobItem.getInputs()) {
+      Object value = (prefetched != null) ? prefetched.get(input) : null;
+      if ((value == null) && (inputValueCache != null)) {
+        value = inputValueCache.get(job, input);
+      }
+      if (value != null) {
+        values.add(Pair.of(input, value));
+      } else {
+        misses.add(input);
+      }
+    }
+    if (!misses.isEmpty()) {
+      for (Pair<ValueSpecification, Object> input : cache.getValues(misses)) {
+        values.add(input);
+        if ((inputValueCache != null) && isCacheable(input.getValue())) {
+          inputValueCache.put(job, input.getKey(), input.getValue(), cache.estimateValueSize(new ComputedValue(input.getKey(), input.getValue())));
+        }
+      }
+    }
+    return values;
+  }
+
+  private void invoke(final CompiledFunctionRepository functions, final CalculationJobSpecification spec, final CalculationJobItem jobItem, final WriteBehindViewComputationCache cache,
+      final Map<ValueSpecification, Object> prefetched, final FunctionExecutionContext executionContext, final DeferredInvocationStatistics statistics) {
     final String functionUniqueId = jobItem.getFunctionUniqueIdentifier();
     final ComputationTarget target = getTargetResolver().resolve(jobItem.getComputationTargetSpecification());
     if (target == null) {
@@ -170,13 +419,13 @@ public abstract class AbstractCalculationNode implements CalculationNode {
       throw new NullPointerException("Unable to locate " + functionUniqueId + " in function repository.");
     }
     // set parameters
-    getFunctionExecutionContext().setFunctionParameters(jobItem.getFunctionParameters());
+    executionContext.setFunctionParameters(jobItem.getFunctionParameters());
     // assemble inputs
     final Collection<ComputedValue> inputs = new HashSet<ComputedValue>();
     final Collection<ValueSpecification> missingInputs = new HashSet<ValueSpecification>();
     int inputBytes = 0;
     int inputSamples = 0;
-    for (Pair<ValueSpecification, Object> input : cache.getValues(jobItem.getInputs())) {
+    for (Pair<ValueSpecification, Object> input : getInputs(spec, jobItem, cache, prefetched)) {
       if ((input.getValue() == null) || (input.getValue() instanceof MissingInput)) {
         missingInputs.add(input.getKey());
       } else {
@@ -201,7 +450,7 @@ public abstract class AbstractCalculationNode implements CalculationNode {
     final FunctionInputs functionInputs = new FunctionInputsImpl(inputs);
     // execute
     statistics.beginInvocation();
-    final Set<ComputedValue> results = invoker.execute(getFunctionExecutionContext(), functionInputs, target, jobItem.getDesiredValues());
+    final Set<ComputedValue> results = invoker.execute(executionContext, functionInputs, target, jobItem.getDesiredValues());
     if (results == null) {
       throw new NullPointerException("No results returned by invoker " + invoker);
     }
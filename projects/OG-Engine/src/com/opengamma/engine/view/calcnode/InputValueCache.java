@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.ObjectIdentifier;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Holds input values a calculation node has recently fetched and deserialized so that later job items in the same
+ * cycle that need the same value do not fetch and decode it again. Values are keyed by the view cycle, calculation
+ * configuration and value specification, and the cache is bounded by the estimated encoded size of the values held,
+ * discarding the least recently used first.
+ * <p>
+ * Values are only useful within their own cycle, so as soon as a job from a later cycle of a view process is seen,
+ * everything held for its earlier cycle is discarded rather than left to age out.
+ * <p>
+ * The same object is passed to every function that uses the value, so functions must not modify their inputs.
+ */
+public class InputValueCache {
+
+  /**
+   * Size assumed for a value that has no estimate.
+   */
+  private static final int DEFAULT_VALUE_SIZE = 1024;
+
+  private static final class Key {
+
+    private final UniqueIdentifier _viewCycleId;
+    private final String _calculationConfiguration;
+    private final ValueSpecification _specification;
+
+    private Key(final CalculationJobSpecification job, final ValueSpecification specification) {
+      _viewCycleId = job.getViewCycleId();
+      _calculationConfiguration = job.getCalcConfigName();
+      _specification = specification;
+    }
+
+    @Override
+    public int hashCode() {
+      return (_viewCycleId.hashCode() * 31 + _calculationConfiguration.hashCode()) * 31 + _specification.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return _specification.equals(other._specification) && _viewCycleId.equals(other._viewCycleId) && _calculationConfiguration.equals(other._calculationConfiguration);
+    }
+
+  }
+
+  private static final class Entry {
+
+    private final Object _value;
+    private final int _size;
+
+    private Entry(final Object value, final int size) {
+      _value = value;
+      _size = size;
+    }
+
+  }
+
+  private final long _maximumSize;
+  private final LinkedHashMap<Key, Entry> _values = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+  private final Map<ObjectIdentifier, UniqueIdentifier> _currentCycles = new HashMap<ObjectIdentifier, UniqueIdentifier>();
+  private long _size;
+  private long _hits;
+  private long _misses;
+
+  /**
+   * Creates a cache.
+   *
+   * @param maximumSize the maximum total estimated size of the values held, in bytes
+   */
+  public InputValueCache(final long maximumSize) {
+    ArgumentChecker.isTrue(maximumSize > 0, "maximumSize must be positive");
+    _maximumSize = maximumSize;
+  }
+
+  public long getMaximumSize() {
+    return _maximumSize;
+  }
+
+  /**
+   * Returns a value, if held.
+   *
+   * @param job the job requiring the value, not null
+   * @param specification the value, not null
+   * @return the value, or null if not held
+   */
+  public synchronized Object get(final CalculationJobSpecification job, final ValueSpecification specification) {
+    checkCycle(job);
+    final Entry entry = _values.get(new Key(job, specification));
+    if (entry != null) {
+      _hits++;
+      return entry._value;
+    } else {
+      _misses++;
+      return null;
+    }
+  }
+
+  /**
+   * Stores a value, discarding the least recently used values if the cache is full.
+   *
+   * @param job the job that fetched the value, not null
+   * @param specification the value, not null
+   * @param value the deserialized value, not null
+   * @param size the size of the encoded value in bytes, or null if there is no estimate
+   */
+  public synchronized void put(final CalculationJobSpecification job, final ValueSpecification specification, final Object value, final Integer size) {
+    final int entrySize = (size != null) ? size : DEFAULT_VALUE_SIZE;
+    checkCycle(job);
+    if (entrySize > _maximumSize) {
+      return;
+    }
+    final Entry previous = _values.put(new Key(job, specification), new Entry(value, entrySize));
+    if (previous != null) {
+      _size -= previous._size;
+    }
+    _size += entrySize;
+    final Iterator<Map.Entry<Key, Entry>> iterator = _values.entrySet().iterator();
+    while (_size > _maximumSize) {
+      final Entry eldest = iterator.next().getValue();
+      iterator.remove();
+      _size -= eldest._size;
+    }
+  }
+
+  public synchronized void clear() {
+    _values.clear();
+    _currentCycles.clear();
+    _size = 0;
+  }
+
+  /**
+   * Notes the cycle of a job, discarding the values held for the previous cycle of the same view process if it has
+   * changed. Must be called holding the monitor.
+   */
+  private void checkCycle(final CalculationJobSpecification job) {
+    final UniqueIdentifier cycleId = job.getViewCycleId();
+    final UniqueIdentifier previousCycleId = _currentCycles.put(cycleId.getObjectId(), cycleId);
+    if ((previousCycleId == null) || previousCycleId.equals(cycleId)) {
+      return;
+    }
+    final Iterator<Map.Entry<Key, Entry>> iterator = _values.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<Key, Entry> entry = iterator.next();
+      if (previousCycleId.equals(entry.getKey()._viewCycleId)) {
+        iterator.remove();
+        _size -= entry.getValue()._size;
+      }
+    }
+  }
+
+  /**
+   * Returns the total estimated size of the values held, in bytes.
+   *
+   * @return the size
+   */
+  public synchronized long getSize() {
+    return _size;
+  }
+
+  public synchronized long getHits() {
+    return _hits;
+  }
+
+  public synchronized long getMisses() {
+    return _misses;
+  }
+
+}
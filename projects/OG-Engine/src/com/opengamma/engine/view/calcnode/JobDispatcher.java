@@ -19,6 +19,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -42,6 +43,7 @@ public class JobDispatcher implements JobInvokerRegister {
   /* package */static final int DEFAULT_MAX_JOB_ATTEMPTS = 3;
   /* package */static final long DEFAULT_MAX_JOB_EXECUTION_QUERY_TIMEOUT = 5000;
   /* package */static final String DEFAULT_JOB_FAILURE_NODE_ID = "NOT EXECUTED";
+  /* package */static final int DEFAULT_QUEUE_DEPTH_PER_NODE = 2;
 
   private static List<CalculationJob> getAllJobs(CalculationJob job, List<CalculationJob> jobs) {
     if (jobs == null) {
@@ -117,6 +119,133 @@ public class JobDispatcher implements JobInvokerRegister {
 
   }
 
+  /**
+   * Jobs held for an invoker in work-stealing mode that have not yet been passed to it, with an estimate of its
+   * recent throughput.
+   */
+  private static final class InvokerQueue {
+
+    private static final double DECAY = 0.2;
+
+    private final LinkedList<DispatchJob> _jobs = new LinkedList<DispatchJob>();
+    private int _jobItems;
+    private int _nodeCount = 1;
+    private double _nanosPerItem;
+
+    // caller must own the dispatcher monitor
+    private void setNodeCount(final int nodeCount) {
+      _nodeCount = Math.max(nodeCount, 1);
+    }
+
+    private int getNodeCount() {
+      return _nodeCount;
+    }
+
+    private int size() {
+      return _jobs.size();
+    }
+
+    // caller must own the dispatcher monitor
+    private void add(final DispatchJob job, final boolean atHead) {
+      if (atHead) {
+        _jobs.addFirst(job);
+      } else {
+        _jobs.addLast(job);
+      }
+      _jobItems += job.getJobItems();
+    }
+
+    // caller must own the dispatcher monitor
+    private DispatchJob take(final JobInvoker jobInvoker, final boolean fromTail) {
+      final Iterator<DispatchJob> iterator = fromTail ? _jobs.descendingIterator() : _jobs.iterator();
+      while (iterator.hasNext()) {
+        final DispatchJob job = iterator.next();
+        if (job._completed.get()) {
+          s_logger.info("Job {} cancelled", job.getJob().getSpecification().getJobId());
+          iterator.remove();
+          _jobItems -= job.getJobItems();
+        } else if (job.canRunOn(jobInvoker)) {
+          iterator.remove();
+          _jobItems -= job.getJobItems();
+          return job;
+        }
+      }
+      return null;
+    }
+
+    // caller must own the dispatcher monitor
+    private boolean hasJobFor(final JobInvoker jobInvoker) {
+      for (DispatchJob job : _jobs) {
+        if (!job._completed.get() && job.canRunOn(jobInvoker)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // caller must own the dispatcher monitor
+    private void drainTo(final Collection<DispatchJob> jobs) {
+      jobs.addAll(_jobs);
+      _jobs.clear();
+      _jobItems = 0;
+    }
+
+    // caller must own the dispatcher monitor
+    private void drainQueuedBefore(final long queuedBefore, final Collection<DispatchJob> jobs) {
+      final Iterator<DispatchJob> iterator = _jobs.iterator();
+      while (iterator.hasNext()) {
+        final DispatchJob job = iterator.next();
+        if (job._completed.get()) {
+          iterator.remove();
+          _jobItems -= job.getJobItems();
+        } else if (job._queuedTime - queuedBefore < 0) {
+          iterator.remove();
+          _jobItems -= job.getJobItems();
+          jobs.add(job);
+        }
+      }
+    }
+
+    private synchronized void recordJob(final int jobItems, final long executionNanos) {
+      final double nanosPerItem = (double) executionNanos / (double) Math.max(jobItems, 1);
+      if (_nanosPerItem > 0) {
+        _nanosPerItem += (nanosPerItem - _nanosPerItem) * DECAY;
+      } else {
+        _nanosPerItem = nanosPerItem;
+      }
+    }
+
+    private synchronized double getNanosPerItem() {
+      return _nanosPerItem;
+    }
+
+    /**
+     * Returns the number of jobs to hold; proportional to the node count, and scaled by how this invoker's throughput
+     * compares to the average.
+     */
+    private int getLimit(final int depthPerNode, final double meanNanosPerItem) {
+      final int limit = getNodeCount() * depthPerNode;
+      final double nanosPerItem = getNanosPerItem();
+      if ((nanosPerItem > 0) && (meanNanosPerItem > 0)) {
+        final double scaled = (double) limit * meanNanosPerItem / nanosPerItem;
+        return (int) Math.max(1, Math.min(Math.round(scaled), limit * 2));
+      }
+      return limit;
+    }
+
+    /**
+     * Returns the expected time until the invoker would start a job of the given size if it were queued now.
+     */
+    private double getExpectedWait(final int jobItems, final double meanNanosPerItem) {
+      double nanosPerItem = getNanosPerItem();
+      if (nanosPerItem <= 0) {
+        nanosPerItem = (meanNanosPerItem > 0) ? meanNanosPerItem : 1;
+      }
+      return (double) (_jobItems + jobItems + _jobs.size()) * nanosPerItem / (double) getNodeCount();
+    }
+
+  }
+
   private final class DispatchJob implements JobInvocationReceiver, Cancellable {
 
     private final CalculationJob _rootJob;
@@ -124,17 +253,23 @@ public class JobDispatcher implements JobInvokerRegister {
     private final AtomicBoolean _completed = new AtomicBoolean(false);
     private final long _jobCreationTime;
     private final CapabilityRequirements _capabilityRequirements;
+    private final int _jobItems;
     private final AtomicReference<Timeout> _timeout = new AtomicReference<Timeout>();
+    private volatile JobInvoker _jobInvoker;
     private Set<JobInvoker> _excludeJobInvoker;
     private int _rescheduled;
+    private long _queuedTime;
 
     private DispatchJob(final CalculationJob job, final JobResultReceiver resultReceiver) {
       _rootJob = job;
       _resultReceivers = new ConcurrentHashMap<CalculationJobSpecification, JobResultReceiver>();
       final List<CalculationJob> jobs = getAllJobs(job, null);
+      int jobItems = 0;
       for (CalculationJob jobref : jobs) {
         _resultReceivers.put(jobref.getSpecification(), resultReceiver);
+        jobItems += jobref.getJobItems().size();
       }
+      _jobItems = jobItems;
       _jobCreationTime = System.nanoTime();
       _capabilityRequirements = getCapabilityRequirementsProvider().getCapabilityRequirements(jobs);
     }
@@ -147,6 +282,13 @@ public class JobDispatcher implements JobInvokerRegister {
       return _rootJob;
     }
 
+    /**
+     * Returns the number of items in the job and its tails, used as the estimate of its cost.
+     */
+    private int getJobItems() {
+      return _jobItems;
+    }
+
     @Override
     public void jobCompleted(final CalculationJobResult result) {
       final JobResultReceiver resultReceiver = _resultReceivers.remove(result.getSpecification());
@@ -168,8 +310,15 @@ public class JobDispatcher implements JobInvokerRegister {
       resultReceiver.resultReceived(result);
       final long durationNanos = getDurationNanos();
       s_logger.debug("Reported time = {}ms, non-executing job time = {}ms", (double) result.getDuration() / 1000000d, ((double) durationNanos - (double) result.getDuration()) / 1000000d);
+      final int size = result.getResultItems().size();
+      final JobInvoker jobInvoker = _jobInvoker;
+      if (jobInvoker != null) {
+        final InvokerQueue queue = _invokerQueues.get(jobInvoker);
+        if (queue != null) {
+          queue.recordJob(size, result.getDuration());
+        }
+      }
       if (getStatisticsGatherer() != null) {
-        final int size = result.getResultItems().size();
         getStatisticsGatherer().jobCompleted(result.getComputeNodeId(), size, result.getDuration(), getDurationNanos());
       }
     }
@@ -258,6 +407,7 @@ public class JobDispatcher implements JobInvokerRegister {
     }
 
     private void setTimeout(final JobInvoker jobInvoker) {
+      _jobInvoker = jobInvoker;
       Timeout timeout = new Timeout(this, jobInvoker, getJobTimeoutExecutor(), Math.min(getMaxJobExecutionTimeQuery(), getMaxJobExecutionTime()));
       if (_timeout.compareAndSet(null, timeout)) {
         s_logger.debug("Timeout set for job {}", getJob().getSpecification().getJobId());
@@ -345,6 +495,7 @@ public class JobDispatcher implements JobInvokerRegister {
   private final Queue<DispatchJob> _pending = new LinkedList<DispatchJob>();
   private final Queue<JobInvoker> _invokers = new ConcurrentLinkedQueue<JobInvoker>();
   private final Map<JobInvoker, Collection<Capability>> _capabilityCache = new ConcurrentHashMap<JobInvoker, Collection<Capability>>();
+  private final Map<JobInvoker, InvokerQueue> _invokerQueues = new ConcurrentHashMap<JobInvoker, InvokerQueue>();
 
   private int _maxJobAttempts = DEFAULT_MAX_JOB_ATTEMPTS;
   private String _jobFailureNodeId = DEFAULT_JOB_FAILURE_NODE_ID;
@@ -359,6 +510,9 @@ public class JobDispatcher implements JobInvokerRegister {
   private long _maxJobExecutionTimeQuery = DEFAULT_MAX_JOB_EXECUTION_QUERY_TIMEOUT;
   private ScheduledThreadPoolExecutor _jobTimeoutExecutor;
   private CalculationNodeStatisticsGatherer _statisticsGatherer = new DiscardingNodeStatisticsGatherer();
+  private boolean _workStealing;
+  private int _queueDepthPerNode = DEFAULT_QUEUE_DEPTH_PER_NODE;
+  private ScheduledFuture<?> _queueTimeouts;
 
   public JobDispatcher() {
   }
@@ -412,6 +566,7 @@ public class JobDispatcher implements JobInvokerRegister {
         _jobTimeoutExecutor.setMaximumPoolSize(1);
       }
     }
+    scheduleQueueTimeouts();
   }
 
   public void setMaxJobExecutionTimeQuery(final long maxJobExecutionTimeQuery) {
@@ -433,6 +588,51 @@ public class JobDispatcher implements JobInvokerRegister {
     return _statisticsGatherer;
   }
 
+  /**
+   * Enables or disables work-stealing dispatch. When enabled, a job that no invoker can accept immediately is queued
+   * for the invoker expected to start it soonest, based on its node count, recent throughput and the job items already
+   * queued for it. Each queue is bounded by the invoker's node count and throughput. An invoker that becomes available
+   * takes jobs from its own queue first, then from the queues of the busiest other invokers. Jobs are stolen with
+   * their tails, as tails read values from the private cache of the node that ran their parent.
+   * <p>
+   * Disabling returns any queued jobs to the shared pending queue. If a maximum job execution time is set, a job that
+   * has been queued for an invoker for longer than that is treated as having failed on that invoker, and is retried
+   * elsewhere or aborted as if it had timed out there.
+   * 
+   * @param workStealing true to enable work-stealing dispatch
+   */
+  public synchronized void setWorkStealing(final boolean workStealing) {
+    _workStealing = workStealing;
+    scheduleQueueTimeouts();
+    if (!workStealing) {
+      for (InvokerQueue queue : _invokerQueues.values()) {
+        queue.drainTo(getPending());
+      }
+      _invokerQueues.clear();
+      if (!getPending().isEmpty()) {
+        retryPending(0L);
+      }
+    }
+  }
+
+  public synchronized boolean isWorkStealing() {
+    return _workStealing;
+  }
+
+  /**
+   * Sets the number of jobs to queue per node at an invoker with average throughput in work-stealing mode.
+   * 
+   * @param queueDepthPerNode the number of jobs, at least 1
+   */
+  public synchronized void setQueueDepthPerNode(final int queueDepthPerNode) {
+    ArgumentChecker.isTrue(queueDepthPerNode > 0, "queueDepthPerNode must be positive");
+    _queueDepthPerNode = queueDepthPerNode;
+  }
+
+  public synchronized int getQueueDepthPerNode() {
+    return _queueDepthPerNode;
+  }
+
   public void setCapabilityRequirementsProvider(final CapabilityRequirementsProvider capabilityRequirementsProvider) {
     ArgumentChecker.notNull(capabilityRequirementsProvider, "capabilityRequirementsProvider");
     _capabilityRequirementsProvider = capabilityRequirementsProvider;
@@ -459,12 +659,191 @@ public class JobDispatcher implements JobInvokerRegister {
     ArgumentChecker.notNull(invoker, "invoker");
     s_logger.debug("Registering job invoker {}", invoker);
     getInvokers().add(invoker);
-    getCapabilityCache().put(invoker, invoker.getCapabilities());
+    final Collection<Capability> capabilities = invoker.getCapabilities();
+    getCapabilityCache().put(invoker, capabilities);
+    if (isWorkStealing()) {
+      InvokerQueue queue = _invokerQueues.get(invoker);
+      if (queue == null) {
+        queue = new InvokerQueue();
+        _invokerQueues.put(invoker, queue);
+      }
+      queue.setNodeCount(getNodeCount(capabilities));
+      drainQueues(invoker, queue);
+    }
     if (!getPending().isEmpty()) {
       retryPending(0L);
     }
   }
 
+  /**
+   * Removes an invoker that will not accept any further jobs, for example because its connection has failed. Any jobs
+   * queued for it in work-stealing mode are dispatched again. Jobs that it had already accepted must still be failed
+   * through their {@link JobInvocationReceiver}.
+   * 
+   * @param invoker the invoker to remove
+   */
+  @Override
+  public synchronized void unregisterJobInvoker(final JobInvoker invoker) {
+    ArgumentChecker.notNull(invoker, "invoker");
+    s_logger.debug("Unregistering job invoker {}", invoker);
+    getInvokers().remove(invoker);
+    getCapabilityCache().remove(invoker);
+    final InvokerQueue queue = _invokerQueues.remove(invoker);
+    if (queue != null) {
+      final List<DispatchJob> jobs = new ArrayList<DispatchJob>(queue.size());
+      queue.drainTo(jobs);
+      for (DispatchJob job : jobs) {
+        if (!job._completed.get()) {
+          s_logger.info("Re-dispatching job {} queued for {}", job.getJob().getSpecification().getJobId(), invoker);
+          dispatchJobImpl(job);
+        }
+      }
+    }
+  }
+
+  // caller must already own monitor
+  private void scheduleQueueTimeouts() {
+    if (_workStealing && (_maxJobExecutionTime > 0)) {
+      if (_queueTimeouts == null) {
+        final long period = Math.min(getMaxJobExecutionTimeQuery(), getMaxJobExecutionTime());
+        _queueTimeouts = getJobTimeoutExecutor().scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            timeoutQueuedJobs();
+          }
+        }, period, period, TimeUnit.MILLISECONDS);
+      }
+    } else if (_queueTimeouts != null) {
+      _queueTimeouts.cancel(false);
+      _queueTimeouts = null;
+    }
+  }
+
+  private synchronized void timeoutQueuedJobs() {
+    final long maxJobExecutionTime = getMaxJobExecutionTime();
+    if (maxJobExecutionTime <= 0) {
+      return;
+    }
+    final long queuedBefore = System.nanoTime() - maxJobExecutionTime * 1000000L;
+    final List<DispatchJob> jobs = new ArrayList<DispatchJob>();
+    for (Map.Entry<JobInvoker, InvokerQueue> invokerQueue : _invokerQueues.entrySet()) {
+      invokerQueue.getValue().drainQueuedBefore(queuedBefore, jobs);
+      if (!jobs.isEmpty()) {
+        final JobInvoker jobInvoker = invokerQueue.getKey();
+        for (DispatchJob job : jobs) {
+          s_logger.warn("Job {} queued for invoker {} for longer than {}ms", new Object[] {job.getJob().getSpecification().getJobId(), jobInvoker.getInvokerId(), maxJobExecutionTime });
+          job.jobFailed(jobInvoker, "node on " + jobInvoker.getInvokerId(), new OpenGammaRuntimeException("Queue limit of " + maxJobExecutionTime + "ms exceeded"));
+        }
+        jobs.clear();
+      }
+    }
+  }
+
+  private static int getNodeCount(final Collection<Capability> capabilities) {
+    for (Capability capability : capabilities) {
+      if (PlatformCapabilities.NODE_COUNT.equals(capability.getIdentifier()) && (capability.getUpperBoundParameter() != null)) {
+        return capability.getUpperBoundParameter().intValue();
+      }
+    }
+    return 1;
+  }
+
+  // caller must already own monitor
+  private double getMeanNanosPerItem() {
+    double total = 0;
+    int count = 0;
+    for (InvokerQueue queue : _invokerQueues.values()) {
+      final double nanosPerItem = queue.getNanosPerItem();
+      if (nanosPerItem > 0) {
+        total += nanosPerItem;
+        count++;
+      }
+    }
+    return (count > 0) ? total / (double) count : 0;
+  }
+
+  // caller must already own monitor
+  private boolean enqueue(final DispatchJob job) {
+    final double meanNanosPerItem = getMeanNanosPerItem();
+    final int depthPerNode = getQueueDepthPerNode();
+    InvokerQueue best = null;
+    double bestWait = 0;
+    for (Map.Entry<JobInvoker, InvokerQueue> invokerQueue : _invokerQueues.entrySet()) {
+      final InvokerQueue queue = invokerQueue.getValue();
+      if ((queue.size() < queue.getLimit(depthPerNode, meanNanosPerItem)) && job.canRunOn(invokerQueue.getKey())) {
+        final double wait = queue.getExpectedWait(job.getJobItems(), meanNanosPerItem);
+        if ((best == null) || (wait < bestWait)) {
+          best = queue;
+          bestWait = wait;
+        }
+      }
+    }
+    if (best == null) {
+      return false;
+    }
+    job._queuedTime = System.nanoTime();
+    best.add(job, false);
+    return true;
+  }
+
+  // caller must already own monitor
+  private boolean invoke(final DispatchJob job, final JobInvoker jobInvoker) {
+    if (jobInvoker.invoke(job.getJob(), job)) {
+      s_logger.debug("Invoker {} accepted job {}", jobInvoker, job.getJob().getSpecification().getJobId());
+      job.setTimeout(jobInvoker);
+      return true;
+    }
+    s_logger.debug("Invoker {} refused to execute job {}", jobInvoker, job.getJob().getSpecification().getJobId());
+    getInvokers().remove(jobInvoker);
+    if (jobInvoker.notifyWhenAvailable(this)) {
+      s_logger.info("Invoker {} requested immediate retry", jobInvoker);
+      getInvokers().add(jobInvoker);
+    }
+    return false;
+  }
+
+  // caller must already own monitor
+  private void drainQueues(final JobInvoker jobInvoker, final InvokerQueue ownQueue) {
+    DispatchJob job = ownQueue.take(jobInvoker, false);
+    while (job != null) {
+      if (!invoke(job, jobInvoker)) {
+        ownQueue.add(job, true);
+        return;
+      }
+      job = ownQueue.take(jobInvoker, false);
+    }
+    do {
+      // Take from the back of the queue with the longest expected wait
+      final double meanNanosPerItem = getMeanNanosPerItem();
+      JobInvoker victim = null;
+      InvokerQueue victimQueue = null;
+      double victimWait = 0;
+      for (Map.Entry<JobInvoker, InvokerQueue> invokerQueue : _invokerQueues.entrySet()) {
+        final InvokerQueue queue = invokerQueue.getValue();
+        if ((queue != ownQueue) && (queue.size() > 0)) {
+          final double wait = queue.getExpectedWait(0, meanNanosPerItem);
+          if ((wait > victimWait) && queue.hasJobFor(jobInvoker)) {
+            victim = invokerQueue.getKey();
+            victimQueue = queue;
+            victimWait = wait;
+          }
+        }
+      }
+      if (victimQueue == null) {
+        return;
+      }
+      job = victimQueue.take(jobInvoker, true);
+      if (!invoke(job, jobInvoker)) {
+        victimQueue.add(job, false);
+        return;
+      }
+      s_logger.debug("Invoker {} stole job {} from {}", new Object[] {jobInvoker, job.getJob().getSpecification().getJobId(), victim });
+      if (getStatisticsGatherer() != null) {
+        getStatisticsGatherer().jobStolen(jobInvoker.getInvokerId(), victim.getInvokerId());
+      }
+    } while (true);
+  }
+
   // caller must already own monitor
   private void retryPending(final long failJobsBefore) {
     s_logger.debug("Retrying pending operations");
@@ -537,6 +916,10 @@ public class JobDispatcher implements JobInvokerRegister {
 
   private synchronized void dispatchJobImpl(final DispatchJob job) {
     if (!invoke(job)) {
+      if (isWorkStealing() && enqueue(job)) {
+        s_logger.debug("Queued job {} for an invoker", job.getJob().getSpecification().getJobId());
+        return;
+      }
       s_logger.debug("Adding job to pending set");
       getPending().add(job);
       if (_invokers != null) {
@@ -13,4 +13,12 @@ public interface JobInvokerRegister {
 
   void registerJobInvoker(JobInvoker invoker);
 
+  /**
+   * Called by an invoker that will not accept any further invocation requests, for example
+   * because its connection has failed, so that work held for it can be dispatched elsewhere.
+   * 
+   * @param invoker the invoker that is no longer available
+   */
+  void unregisterJobInvoker(JobInvoker invoker);
+
 }
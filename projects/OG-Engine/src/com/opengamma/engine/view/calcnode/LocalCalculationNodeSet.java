@@ -37,6 +37,10 @@ public class LocalCalculationNodeSet extends AbstractCollection<LocalCalculation
 
   private int _nodeCount;
   private double _nodesPerCore;
+  private boolean _prefetchInputs;
+  private long _inputValueCacheSize;
+  private ExecutorService _itemExecutorService;
+  private int _itemParallelism;
 
   private Collection<LocalCalculationNode> _nodes;
 
@@ -169,6 +173,60 @@ public class LocalCalculationNodeSet extends AbstractCollection<LocalCalculation
     return _statisticsGatherer;
   }
 
+  /**
+   * Sets whether the nodes fetch the inputs of all items in a job before executing any of them.
+   * 
+   * @param prefetchInputs true to fetch inputs for the whole job
+   */
+  public void setPrefetchInputs(final boolean prefetchInputs) {
+    _prefetchInputs = prefetchInputs;
+  }
+
+  public boolean isPrefetchInputs() {
+    return _prefetchInputs;
+  }
+
+  /**
+   * Sets the size of the deserialized input value cache each node holds.
+   * 
+   * @param inputValueCacheSize the estimated size of the values each node may hold in bytes, or 0 for no cache
+   */
+  public void setInputValueCacheSize(final long inputValueCacheSize) {
+    ArgumentChecker.isTrue(inputValueCacheSize >= 0, "inputValueCacheSize must not be negative");
+    _inputValueCacheSize = inputValueCacheSize;
+  }
+
+  public long getInputValueCacheSize() {
+    return _inputValueCacheSize;
+  }
+
+  /**
+   * Sets an executor the nodes use to run independent items of a job in parallel.
+   * 
+   * @param itemExecutorService the executor, or null to run the items of a job one after another
+   */
+  public void setItemExecutorService(final ExecutorService itemExecutorService) {
+    _itemExecutorService = itemExecutorService;
+  }
+
+  public ExecutorService getItemExecutorService() {
+    return _itemExecutorService;
+  }
+
+  /**
+   * Sets the maximum number of threads used to run the items of a job.
+   * 
+   * @param itemParallelism the number of threads, or 0 for the number of cores
+   */
+  public void setItemParallelism(final int itemParallelism) {
+    ArgumentChecker.notNegative(itemParallelism, "itemParallelism");
+    _itemParallelism = itemParallelism;
+  }
+
+  public int getItemParallelism() {
+    return _itemParallelism;
+  }
+
   protected int getCores() {
     return Runtime.getRuntime().availableProcessors();
   }
@@ -211,6 +269,12 @@ public class LocalCalculationNodeSet extends AbstractCollection<LocalCalculation
           node.setNodeId(getNodeIdentifier());
         }
       }
+      node.setPrefetchInputs(isPrefetchInputs());
+      if (getInputValueCacheSize() > 0) {
+        node.setInputValueCache(new InputValueCache(getInputValueCacheSize()));
+      }
+      node.setItemExecutorService(getItemExecutorService());
+      node.setItemParallelism((getItemParallelism() > 0) ? getItemParallelism() : getCores());
       _nodes.add(node);
     }
   }
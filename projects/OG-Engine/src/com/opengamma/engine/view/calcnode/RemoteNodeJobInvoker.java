@@ -54,6 +54,7 @@ import com.opengamma.transport.FudgeMessageSender;
   private volatile int _capacity;
   private final AtomicInteger _launched = new AtomicInteger();
   private final AtomicReference<JobInvokerRegister> _dispatchCallback = new AtomicReference<JobInvokerRegister>();
+  private volatile JobInvokerRegister _jobInvokerRegister;
   private final IdentifierMap _identifierMap;
   private final FunctionCosts _functionCosts;
   private volatile String _invokerId;
@@ -166,6 +167,15 @@ import com.opengamma.transport.FudgeMessageSender;
     return _capabilitySet;
   }
 
+  /**
+   * Sets the register to notify if the connection fails, so that jobs held for this invoker can be dispatched elsewhere.
+   * 
+   * @param jobInvokerRegister the register, or null for none
+   */
+  protected void setJobInvokerRegister(final JobInvokerRegister jobInvokerRegister) {
+    _jobInvokerRegister = jobInvokerRegister;
+  }
+
   protected void addCapabilities(final Collection<Capability> capabilities) {
     getCapabilitySet().addCapabilities(capabilities);
   }
@@ -296,6 +306,10 @@ import com.opengamma.transport.FudgeMessageSender;
   public void connectionFailed(final FudgeConnection connection, final Exception cause) {
     s_logger.warn("Client connection {} dropped", connection, cause);
     _launched.addAndGet(_capacity);
+    final JobInvokerRegister jobInvokerRegister = _jobInvokerRegister;
+    if (jobInvokerRegister != null) {
+      jobInvokerRegister.unregisterJobInvoker(this);
+    }
     _invokerId = null;
     for (CalculationJobSpecification jobSpec : getJobCompletionCallbacks().keySet()) {
       final JobInvocationReceiver callback = getJobCompletionCallbacks().remove(jobSpec);
@@ -103,6 +103,7 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
         }
         final Init init = new Init(getFunctionCompilationContext().getFunctionInitId());
         invoker.sendMessage(init);
+        invoker.setJobInvokerRegister(getJobInvokerRegister());
         getJobInvokerRegister().registerJobInvoker(invoker);
       }
 
@@ -42,6 +42,10 @@ public class CalculationNodeStatistics {
    * The non-execution time in nanoseconds.
    */
   private long _nonExecutionNanos;
+  /**
+   * The number of jobs taken from the queues of other nodes.
+   */
+  private long _stolenJobs;
   /**
    * The last instant that a job was sent.
    */
@@ -64,6 +68,7 @@ public class CalculationNodeStatistics {
     _unsuccessfulJobs = other._unsuccessfulJobs;
     _executionNanos = other._executionNanos;
     _nonExecutionNanos = other._nonExecutionNanos;
+    _stolenJobs = other._stolenJobs;
     _lastJobInstant = other._lastJobInstant;
   }
 
@@ -95,6 +100,15 @@ public class CalculationNodeStatistics {
     return _successfulJobs;
   }
 
+  /**
+   * Gets the number of jobs taken from the queues of other nodes.
+   * 
+   * @return the number of stolen jobs
+   */
+  public synchronized long getStolenJobs() {
+    return _stolenJobs;
+  }
+
   /**
    * Gets the number of unsuccessful jobs.
    * 
@@ -214,6 +228,13 @@ public class CalculationNodeStatistics {
     _lastJobInstant = Instant.now();
   }
 
+  /**
+   * Records a job taken from the queue of another node.
+   */
+  public synchronized void recordStolenJob() {
+    _stolenJobs++;
+  }
+
   // -------------------------------------------------------------------------
   /**
    * Resets the counters to zero.
@@ -224,6 +245,7 @@ public class CalculationNodeStatistics {
     _jobItems = 0;
     _executionNanos = 0;
     _nonExecutionNanos = 0;
+    _stolenJobs = 0;
   }
 
   /**
@@ -237,6 +259,7 @@ public class CalculationNodeStatistics {
     _jobItems -= ((double) _jobItems * factor);
     _executionNanos -= ((double) _executionNanos * factor);
     _nonExecutionNanos -= ((double) _nonExecutionNanos * factor);
+    _stolenJobs -= ((double) _stolenJobs * factor);
   }
 
   /**
@@ -31,4 +31,12 @@ public interface CalculationNodeStatisticsGatherer {
    */
   void jobFailed(String nodeId, long durationNanos);
 
+  /**
+   * Reports a job taken by an idle invoker from the queue of a busier one.
+   * 
+   * @param nodeId  the invoker that took the job
+   * @param fromNodeId  the invoker the job was queued for
+   */
+  void jobStolen(String nodeId, String fromNodeId);
+
 }
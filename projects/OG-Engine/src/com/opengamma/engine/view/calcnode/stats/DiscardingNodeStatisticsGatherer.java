@@ -21,4 +21,9 @@ public final class DiscardingNodeStatisticsGatherer implements CalculationNodeSt
     // no action
   }
 
+  @Override
+  public void jobStolen(String nodeId, String fromNodeId) {
+    // no action
+  }
+
 }
@@ -37,6 +37,11 @@ public class TotallingNodeStatisticsGatherer implements CalculationNodeStatistic
     getOrCreateNodeStatistics(nodeId).recordUnsuccessfulJob(duration);
   }
 
+  @Override
+  public void jobStolen(String nodeId, String fromNodeId) {
+    getOrCreateNodeStatistics(nodeId).recordStolenJob();
+  }
+
   /**
    * Creates the statistics for a given node.
    * 
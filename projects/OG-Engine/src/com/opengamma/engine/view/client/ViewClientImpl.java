@@ -113,6 +113,21 @@ public class ViewClientImpl implements ViewClient {
         }
       }
 
+      @Override
+      public void cycleFragmentCompleted(ViewComputationResultModel fullFragment, ViewDeltaResultModel deltaFragment) {
+        ViewResultListener listener = _userResultListener.get();
+        if (listener != null) {
+          // Fragments don't update the latest result; they are only ever a partial view of the next one
+          boolean isFirstResult = getLatestResult() == null;
+          ViewResultMode resultMode = getResultMode();
+          ViewComputationResultModel userFullFragment = isFullResultRequired(resultMode, isFirstResult) ? fullFragment : null;
+          ViewDeltaResultModel userDeltaFragment = isDeltaResultRequired(resultMode, isFirstResult) ? deltaFragment : null;
+          if (userFullFragment != null || userDeltaFragment != null) {
+            listener.cycleFragmentCompleted(userFullFragment, userDeltaFragment);
+          }
+        }
+      }
+
       @Override
       public void cycleCompleted(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
         boolean isFirstResult = updateLatestResult(fullResult);
@@ -5,8 +5,16 @@
  */
 package com.opengamma.engine.view.client;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueProperties;
@@ -21,79 +29,174 @@ import com.opengamma.util.tuple.Pair;
 
 /**
  * Produces {@link ViewDeltaResultModel} instances by comparing two {@link ViewComputationResultModel}.
+ * <p>
+ * The delta is computed once by the view process and shared by all of its clients. For large result models the
+ * comparisons can be spread over an executor; the targets are split into batches, each batch comparing the values of
+ * its targets for every calculation configuration. The delta model produced is identical to the one produced by a
+ * single thread.
  */
 public class ViewDeltaResultCalculator {
 
+  /**
+   * The minimum number of targets compared by each task when an executor is used.
+   */
+  private static final int MIN_BATCH_SIZE = 256;
+
   /**
    * Computes the delta between and old and new results.
-   * 
+   *
    * @param viewDefinition  the view definition to which the results apply
    * @param previousResult  the previous result
    * @param result  the new result
    * @return  the delta between the two results, not null
    */
   public static ViewDeltaResultModel computeDeltaModel(ViewDefinition viewDefinition, ViewResultModel previousResult, ViewResultModel result) {
+    return computeDeltaModel(viewDefinition, previousResult, result, null);
+  }
+
+  /**
+   * Computes the delta between and old and new results, spreading the comparisons over an executor.
+   *
+   * @param viewDefinition  the view definition to which the results apply
+   * @param previousResult  the previous result
+   * @param result  the new result
+   * @param executor  the executor to spread the work over, or null to do it in the calling thread
+   * @return  the delta between the two results, not null
+   */
+  public static ViewDeltaResultModel computeDeltaModel(ViewDefinition viewDefinition, ViewResultModel previousResult, ViewResultModel result,
+      ExecutorService executor) {
     InMemoryViewDeltaResultModel deltaModel = new InMemoryViewDeltaResultModel();
     deltaModel.setValuationTime(result.getValuationTime());
     deltaModel.setCalculationTime(result.getCalculationTime());
     deltaModel.setCalculationDuration(result.getCalculationDuration());
     deltaModel.setViewCycleId(result.getViewCycleId());
     deltaModel.setViewProcessId(result.getViewProcessId());
-    
+
     if (previousResult != null) {
       deltaModel.setPreviousCalculationTime(previousResult.getCalculationTime());
     }
     deltaModel.setCalculationConfigurationNames(result.getCalculationConfigurationNames());
-    for (ComputationTargetSpecification targetSpec : result.getAllTargets()) {
-      computeDeltaModel(viewDefinition, deltaModel, targetSpec, previousResult, result);
+
+    // Columnar layout: one column of results for each calculation configuration, resolved once rather than per target
+    final List<String> calcConfigNames = new ArrayList<String>(result.getCalculationConfigurationNames());
+    final int columns = calcConfigNames.size();
+    final String[] calcConfigNameColumns = calcConfigNames.toArray(new String[columns]);
+    final DeltaDefinition[] deltaDefinitions = new DeltaDefinition[columns];
+    final ViewCalculationResultModel[] resultColumns = new ViewCalculationResultModel[columns];
+    final ViewCalculationResultModel[] previousColumns = new ViewCalculationResultModel[columns];
+    for (int i = 0; i < columns; i++) {
+      deltaDefinitions[i] = viewDefinition.getCalculationConfiguration(calcConfigNameColumns[i]).getDeltaDefinition();
+      resultColumns[i] = result.getCalculationResult(calcConfigNameColumns[i]);
+      previousColumns[i] = previousResult != null ? previousResult.getCalculationResult(calcConfigNameColumns[i]) : null;
+    }
+    final List<ComputationTargetSpecification> targets = new ArrayList<ComputationTargetSpecification>(result.getAllTargets());
+
+    // Each cell holds the changed values for a target (row) and calculation configuration (column). The cells are
+    // written by the batches and then added to the delta model in the same order as a single thread would.
+    @SuppressWarnings("unchecked")
+    final Collection<ComputedValue>[] cells = new Collection[targets.size() * columns];
+    final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (final int[] batch : partition(targets.size(), executor)) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int row = batch[0]; row < batch[1]; row++) {
+            final ComputationTargetSpecification targetSpec = targets.get(row);
+            for (int column = 0; column < columns; column++) {
+              cells[row * columns + column] = computeDelta(deltaDefinitions[column], targetSpec, previousColumns[column], resultColumns[column]);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks, executor);
+
+    for (int row = 0; row < targets.size(); row++) {
+      for (int column = 0; column < columns; column++) {
+        final Collection<ComputedValue> changed = cells[row * columns + column];
+        if (changed != null) {
+          for (ComputedValue value : changed) {
+            deltaModel.addValue(calcConfigNameColumns[column], value);
+          }
+        }
+      }
     }
     return deltaModel;
   }
-  
-  private static void computeDeltaModel(ViewDefinition viewDefinition, InMemoryViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
-      ViewResultModel previousResult, ViewResultModel result) {
-    for (String calcConfigName : result.getCalculationConfigurationNames()) {
-      DeltaDefinition deltaDefinition = viewDefinition.getCalculationConfiguration(calcConfigName).getDeltaDefinition();
-      ViewCalculationResultModel resultCalcModel = result.getCalculationResult(calcConfigName);
-      ViewCalculationResultModel previousCalcModel = previousResult != null ? previousResult.getCalculationResult(calcConfigName) : null;      
-      computeDeltaModel(deltaDefinition, deltaModel, targetSpec, calcConfigName, previousCalcModel, resultCalcModel);
+
+  private static List<int[]> partition(final int size, final ExecutorService executor) {
+    final List<int[]> batches = new ArrayList<int[]>();
+    if ((executor == null) || (size < 2 * MIN_BATCH_SIZE)) {
+      batches.add(new int[] {0, size });
+      return batches;
     }
+    final int count = size / MIN_BATCH_SIZE;
+    final int batchSize = (size + count - 1) / count;
+    for (int i = 0; i < size; i += batchSize) {
+      batches.add(new int[] {i, Math.min(i + batchSize, size) });
+    }
+    return batches;
   }
 
-  private static void computeDeltaModel(DeltaDefinition deltaDefinition, InMemoryViewDeltaResultModel deltaModel, ComputationTargetSpecification targetSpec,
-      String calcConfigName, ViewCalculationResultModel previousCalcModel, ViewCalculationResultModel resultCalcModel) {
-    final Map<Pair<String, ValueProperties>, ComputedValue> resultValues = resultCalcModel.getValues(targetSpec);
-    if (resultValues != null) {
-      if (previousCalcModel == null) {
-        // Everything is new/delta because this is a new calculation context.
-        for (Map.Entry<Pair<String, ValueProperties>, ComputedValue> resultEntry : resultValues.entrySet()) {
-          deltaModel.addValue(calcConfigName, resultEntry.getValue());
-        }
+  private static void invokeAll(final List<Callable<Void>> tasks, final ExecutorService executor) {
+    try {
+      if (tasks.size() == 1) {
+        tasks.get(0).call();
       } else {
-        final Map<Pair<String, ValueProperties>, ComputedValue> previousValues = previousCalcModel.getValues(targetSpec);
-        if (previousValues == null) {
-          // Everything is new/delta because this is a new target.
-          for (ComputedValue result : resultValues.values()) {
-            deltaModel.addValue(calcConfigName, result);
-          }
-        } else {
-          // Have to individual delta.
-          for (Map.Entry<Pair<String, ValueProperties>, ComputedValue> resultEntry : resultValues.entrySet()) {
-            ComputedValue resultValue = resultEntry.getValue();
-            ComputedValue previousValue = previousValues.get(resultEntry.getKey());
-            // REVIEW jonathan 2010-05-07 -- The previous value that we're comparing with is the value from the last
-            // computation cycle, not the value that we last emitted as a delta. It is therefore important that the
-            // DeltaComparers take this into account in their implementation of isDelta. E.g. they should compare the
-            // values after truncation to the required decimal place, rather than testing whether the difference of the
-            // full values is greater than some threshold; this way, there will always be a point beyond which a change
-            // is detected, even in the event of gradual creep.
-            if (deltaDefinition.isDelta(previousValue, resultValue)) {
-              deltaModel.addValue(calcConfigName, resultEntry.getValue());
-            }
-          }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+          future.get();
         }
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted while computing delta model", e);
+    } catch (ExecutionException e) {
+      throw new OpenGammaRuntimeException("Unable to compute delta model", e.getCause());
+    } catch (Exception e) {
+      throw new OpenGammaRuntimeException("Unable to compute delta model", e);
     }
   }
-  
+
+  /**
+   * Returns the values for a target in one calculation configuration that are part of the delta.
+   *
+   * @return the values, or null if none
+   */
+  private static Collection<ComputedValue> computeDelta(DeltaDefinition deltaDefinition, ComputationTargetSpecification targetSpec,
+      ViewCalculationResultModel previousCalcModel, ViewCalculationResultModel resultCalcModel) {
+    final Map<Pair<String, ValueProperties>, ComputedValue> resultValues = resultCalcModel.getValues(targetSpec);
+    if (resultValues == null) {
+      return null;
+    }
+    if (previousCalcModel == null) {
+      // Everything is new/delta because this is a new calculation context.
+      return resultValues.values();
+    }
+    final Map<Pair<String, ValueProperties>, ComputedValue> previousValues = previousCalcModel.getValues(targetSpec);
+    if (previousValues == null) {
+      // Everything is new/delta because this is a new target.
+      return resultValues.values();
+    }
+    // Have to individual delta.
+    List<ComputedValue> changed = null;
+    for (Map.Entry<Pair<String, ValueProperties>, ComputedValue> resultEntry : resultValues.entrySet()) {
+      ComputedValue resultValue = resultEntry.getValue();
+      ComputedValue previousValue = previousValues.get(resultEntry.getKey());
+      // REVIEW jonathan 2010-05-07 -- The previous value that we're comparing with is the value from the last
+      // computation cycle, not the value that we last emitted as a delta. It is therefore important that the
+      // DeltaComparers take this into account in their implementation of isDelta. E.g. they should compare the
+      // values after truncation to the required decimal place, rather than testing whether the difference of the
+      // full values is greater than some threshold; this way, there will always be a point beyond which a change
+      // is detected, even in the event of gradual creep.
+      if (deltaDefinition.isDelta(previousValue, resultValue)) {
+        if (changed == null) {
+          changed = new ArrayList<ComputedValue>();
+        }
+        changed.add(resultValue);
+      }
+    }
+    return changed;
+  }
+
 }
@@ -163,6 +163,19 @@ public class MergingViewProcessListener implements ViewResultListener {
     }
   }
 
+  @Override
+  public void cycleFragmentCompleted(ViewComputationResultModel fullFragment, ViewDeltaResultModel deltaFragment) {
+    _mergerLock.lock();
+    try {
+      // Fragments are not merged; any that arrive while paused are superseded by the cycle's full result
+      if (isPassThrough()) {
+        getUnderlying().cycleFragmentCompleted(fullFragment, deltaFragment);
+      }
+    } finally {
+      _mergerLock.unlock();
+    }
+  }
+
   @Override
   public void cycleCompleted(ViewComputationResultModel fullResult, ViewDeltaResultModel deltaResult) {
     _mergerLock.lock();
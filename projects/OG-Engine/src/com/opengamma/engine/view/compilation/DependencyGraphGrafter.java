@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.MarketDataSourcingFunction;
+import com.opengamma.engine.function.ParameterizedFunction;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ResultModelDefinition;
+import com.opengamma.engine.view.ResultOutputMode;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Updates a previously compiled dependency graph by removing the nodes for a set of changed targets and grafting in
+ * the nodes from a graph built for just those targets.
+ * <p>
+ * Nodes on unchanged portfolio nodes which consumed values from the changed targets are kept rather than rebuilt. Each
+ * such input is re-wired to the value with the same name and properties on the new version of its target, so the
+ * aggregates above a changed position are not resolved again.
+ * <p>
+ * Nodes are never modified in place; the result is a new graph so that any cycles still referencing the previous
+ * graph are unaffected.
+ */
+/* package */final class DependencyGraphGrafter {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(DependencyGraphGrafter.class);
+
+  private DependencyGraphGrafter() {
+  }
+
+  /**
+   * A node in the grafted graph, possibly combining a node from the previous graph with one from the additions.
+   */
+  private static final class GraftNode {
+
+    private ComputationTarget _target;
+    private final ParameterizedFunction _function;
+    private Set<ValueSpecification> _inputValues;
+    private final Set<ValueSpecification> _outputValues = new HashSet<ValueSpecification>();
+    private final Set<ValueSpecification> _terminalOutputValues = new HashSet<ValueSpecification>();
+    private DependencyNode _node;
+
+    private GraftNode(final DependencyNode node) {
+      _target = node.getComputationTarget();
+      _function = node.getFunction();
+      _inputValues = new HashSet<ValueSpecification>(node.getInputValues());
+      add(node);
+    }
+
+    private void add(final DependencyNode node) {
+      _outputValues.addAll(node.getOutputValues());
+      _terminalOutputValues.addAll(node.getTerminalOutputValues());
+    }
+
+    private boolean isEquivalent(final DependencyNode node) {
+      return _target.equals(node.getComputationTarget())
+          && _function.getFunction().getFunctionDefinition().getUniqueId().equals(node.getFunction().getFunction().getFunctionDefinition().getUniqueId())
+          && ObjectUtils.equals(_function.getParameters(), node.getFunction().getParameters())
+          && _inputValues.equals(node.getInputValues());
+    }
+
+    private DependencyNode createNode() {
+      _node = new DependencyNode(_target);
+      _node.setFunction(_function);
+      _node.addOutputValues(_outputValues);
+      for (ValueSpecification inputValue : _inputValues) {
+        _node.addInputValue(inputValue);
+      }
+      return _node;
+    }
+
+  }
+
+  /**
+   * Produces a new graph from a previous one, replacing the nodes for changed targets.
+   *
+   * @param previous  the previously compiled graph, not {@code null}
+   * @param changedTargets  the unique identifiers of targets whose nodes must be removed, not {@code null}
+   * @param additions  a graph built for the requirements on the changed targets, not {@code null}. Unnecessary values
+   *        must not have been removed as they may be consumed by retained nodes; the grafted graph is pruned instead.
+   * @param portfolioNodes  the current portfolio nodes by unique identifier, replacing the targets of retained nodes, not {@code null}
+   * @param resultModelDefinition  the result model; terminal outputs of the additions are dropped for target types it
+   *        does not output as they were only required to re-wire retained nodes, not {@code null}
+   * @return the grafted graph, or {@code null} if the additions could not be combined with the previous graph and a full
+   *         compilation is required
+   */
+  public static DependencyGraph graft(final DependencyGraph previous, final Set<UniqueIdentifier> changedTargets, final DependencyGraph additions,
+      final Map<UniqueIdentifier, PortfolioNode> portfolioNodes, final ResultModelDefinition resultModelDefinition) {
+    // Remove the nodes on changed targets, and anything that consumes their values
+    final Set<DependencyNode> removed = new HashSet<DependencyNode>();
+    final LinkedList<DependencyNode> pending = new LinkedList<DependencyNode>();
+    for (DependencyNode node : previous.getDependencyNodes()) {
+      if (changedTargets.contains(node.getComputationTarget().getUniqueId())) {
+        pending.add(node);
+      }
+    }
+    while (!pending.isEmpty()) {
+      final DependencyNode node = pending.removeFirst();
+      if (!removed.add(node)) {
+        continue;
+      }
+      for (ValueSpecification terminalOutput : node.getTerminalOutputValues()) {
+        if (!changedTargets.contains(terminalOutput.getTargetSpecification().getUniqueId())) {
+          // Requirements on unchanged targets are not recompiled so must not be lost
+          s_logger.debug("Terminal output {} depends on a changed target", terminalOutput);
+          return null;
+        }
+      }
+      for (DependencyNode dependent : node.getDependentNodes()) {
+        if (previous.containsNode(dependent) && !isRewirable(dependent, changedTargets)) {
+          pending.add(dependent);
+        }
+      }
+    }
+    // Prune nodes which only served the removed ones
+    final Set<DependencyNode> retained = new HashSet<DependencyNode>(previous.getDependencyNodes());
+    retained.removeAll(removed);
+    final Map<DependencyNode, Integer> dependentCounts = new HashMap<DependencyNode, Integer>();
+    for (DependencyNode node : retained) {
+      int count = 0;
+      for (DependencyNode dependent : node.getDependentNodes()) {
+        if (retained.contains(dependent)) {
+          count++;
+        }
+      }
+      dependentCounts.put(node, count);
+      if ((count == 0) && node.getTerminalOutputValues().isEmpty()) {
+        pending.add(node);
+      }
+    }
+    while (!pending.isEmpty()) {
+      final DependencyNode node = pending.removeFirst();
+      retained.remove(node);
+      for (DependencyNode input : node.getInputNodes()) {
+        final Integer count = dependentCounts.get(input);
+        if ((count != null) && retained.contains(input)) {
+          dependentCounts.put(input, count - 1);
+          if ((count == 1) && input.getTerminalOutputValues().isEmpty()) {
+            pending.add(input);
+          }
+        }
+      }
+    }
+    s_logger.debug("Retaining {} of {} nodes", retained.size(), previous.getSize());
+    // Combine the retained nodes with the additions
+    final List<GraftNode> graftNodes = new ArrayList<GraftNode>(retained.size() + additions.getSize());
+    final Map<ValueSpecification, GraftNode> producers = new HashMap<ValueSpecification, GraftNode>();
+    final Map<ComputationTarget, List<GraftNode>> retainedByTarget = new HashMap<ComputationTarget, List<GraftNode>>();
+    for (DependencyNode node : retained) {
+      final GraftNode graftNode = new GraftNode(node);
+      if (graftNode._target.getType() == ComputationTargetType.PORTFOLIO_NODE) {
+        // The node's positions or those of its children may be new versions
+        final PortfolioNode portfolioNode = portfolioNodes.get(graftNode._target.getUniqueId());
+        if (portfolioNode == null) {
+          s_logger.debug("Portfolio node {} no longer exists", graftNode._target);
+          return null;
+        }
+        graftNode._target = new ComputationTarget(portfolioNode);
+      }
+      graftNodes.add(graftNode);
+      for (ValueSpecification output : node.getOutputValues()) {
+        producers.put(output, graftNode);
+      }
+      List<GraftNode> targetNodes = retainedByTarget.get(graftNode._target);
+      if (targetNodes == null) {
+        targetNodes = new LinkedList<GraftNode>();
+        retainedByTarget.put(graftNode._target, targetNodes);
+      }
+      targetNodes.add(graftNode);
+    }
+    for (DependencyNode node : additions.getDependencyNodes()) {
+      GraftNode graftNode = null;
+      for (ValueSpecification output : node.getOutputValues()) {
+        final GraftNode producer = producers.get(output);
+        if (producer != null) {
+          if ((graftNode != null) && (graftNode != producer)) {
+            s_logger.debug("Outputs of {} produced by multiple existing nodes", node);
+            return null;
+          }
+          graftNode = producer;
+        }
+      }
+      if ((graftNode == null) && !(node.getFunction().getFunction() instanceof MarketDataSourcingFunction)) {
+        // An existing node may have had the outputs now required pruned from it
+        final List<GraftNode> targetNodes = retainedByTarget.get(node.getComputationTarget());
+        if (targetNodes != null) {
+          for (GraftNode targetNode : targetNodes) {
+            if (targetNode.isEquivalent(node)) {
+              graftNode = targetNode;
+              break;
+            }
+          }
+        }
+      }
+      if (graftNode == null) {
+        graftNode = new GraftNode(node);
+        graftNodes.add(graftNode);
+      } else if (graftNode.isEquivalent(node)) {
+        graftNode.add(node);
+      } else {
+        s_logger.debug("{} conflicts with an existing node", node);
+        return null;
+      }
+      for (ValueSpecification output : node.getOutputValues()) {
+        producers.put(output, graftNode);
+      }
+    }
+    // Re-wire inputs that were produced by removed nodes
+    Map<List<Object>, ValueSpecification> replacements = null;
+    for (GraftNode graftNode : graftNodes) {
+      Set<ValueSpecification> inputValues = null;
+      for (ValueSpecification inputValue : graftNode._inputValues) {
+        if (producers.containsKey(inputValue)) {
+          continue;
+        }
+        if (replacements == null) {
+          replacements = getReplacements(additions);
+          if (replacements == null) {
+            return null;
+          }
+        }
+        final ValueSpecification replacement = replacements.get(getReplacementKey(inputValue));
+        if (replacement == null) {
+          s_logger.debug("No replacement for input {} to {}", inputValue, graftNode._target);
+          return null;
+        }
+        if (inputValues == null) {
+          inputValues = new HashSet<ValueSpecification>(graftNode._inputValues);
+        }
+        inputValues.remove(inputValue);
+        inputValues.add(replacement);
+      }
+      if (inputValues != null) {
+        graftNode._inputValues = inputValues;
+      }
+    }
+    // Construct the new graph
+    for (GraftNode graftNode : graftNodes) {
+      graftNode.createNode();
+    }
+    final DependencyGraph graph = new DependencyGraph(previous.getCalculationConfigurationName());
+    for (GraftNode graftNode : graftNodes) {
+      for (ValueSpecification inputValue : graftNode._inputValues) {
+        final GraftNode producer = producers.get(inputValue);
+        if (producer == null) {
+          s_logger.debug("No producer for input {} to {}", inputValue, graftNode._node);
+          return null;
+        }
+        graftNode._node.addInputNode(producer._node);
+      }
+    }
+    for (GraftNode graftNode : graftNodes) {
+      graph.addDependencyNode(graftNode._node);
+    }
+    for (GraftNode graftNode : graftNodes) {
+      for (ValueSpecification terminalOutput : graftNode._terminalOutputValues) {
+        if (resultModelDefinition.getOutputMode(terminalOutput.getTargetSpecification().getType()) != ResultOutputMode.NONE) {
+          graph.addTerminalOutputValue(terminalOutput);
+        }
+      }
+    }
+    graph.removeUnnecessaryValues();
+    return graph;
+  }
+
+  /**
+   * Tests whether a node consuming the values of a changed target can be kept, with its inputs re-wired, rather than removed.
+   */
+  private static boolean isRewirable(final DependencyNode node, final Set<UniqueIdentifier> changedTargets) {
+    return (node.getComputationTarget().getType() == ComputationTargetType.PORTFOLIO_NODE) && !changedTargets.contains(node.getComputationTarget().getUniqueId());
+  }
+
+  /**
+   * Identifies a value independently of the version of its target.
+   */
+  private static List<Object> getReplacementKey(final ValueSpecification valueSpecification) {
+    final UniqueIdentifier targetId = valueSpecification.getTargetSpecification().getUniqueId();
+    return Arrays.<Object>asList(valueSpecification.getValueName(), valueSpecification.getProperties(), valueSpecification.getTargetSpecification().getType(),
+        (targetId != null) ? targetId.getObjectId() : null);
+  }
+
+  private static Map<List<Object>, ValueSpecification> getReplacements(final DependencyGraph additions) {
+    final Map<List<Object>, ValueSpecification> replacements = new HashMap<List<Object>, ValueSpecification>();
+    for (DependencyNode node : additions.getDependencyNodes()) {
+      for (ValueSpecification output : node.getOutputValues()) {
+        final ValueSpecification previous = replacements.put(getReplacementKey(output), output);
+        if ((previous != null) && !previous.equals(output)) {
+          s_logger.debug("Ambiguous replacement for {}", output);
+          return null;
+        }
+      }
+    }
+    return replacements;
+  }
+
+}
@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -34,8 +37,11 @@ import com.opengamma.engine.view.ResultOutputMode;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.ObjectIdentifier;
+import com.opengamma.id.UniqueIdentifiable;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.monitor.OperationTimer;
+import com.opengamma.util.tuple.Pair;
 
 /**
  * Compiles Portfolio requirements into the dependency graphs.
@@ -91,6 +97,179 @@ public final class PortfolioCompiler {
     return portfolio;
   }
 
+  /**
+   * Adds portfolio targets to the dependency graphs for only those parts of the portfolio which have changed since
+   * a previous compilation.
+   * 
+   * @param compilationContext  the context of the view definition compilation
+   * @param previousPortfolio  the fully-resolved portfolio from the previous compilation, not {@code null}
+   * @param changedIdentifiers  the object identifiers of positions, securities or portfolios reported as changed, not {@code null}
+   * @return the fully-resolved portfolio and the unique identifiers of all targets, from either portfolio, which must be
+   *         removed from the previous dependency graphs; {@code null} if the changes could not be determined. Nodes
+   *         above the changed targets are not included, see {@link #getChangedTargets}.
+   */
+  protected static Pair<Portfolio, Set<UniqueIdentifier>> executeIncremental(ViewCompilationContext compilationContext, Portfolio previousPortfolio,
+      Set<ObjectIdentifier> changedIdentifiers) {
+    final Portfolio portfolio = getPortfolio(compilationContext);
+    final Set<UniqueIdentifier> changedTargets = getChangedTargets(previousPortfolio, portfolio, changedIdentifiers);
+    if (changedTargets == null) {
+      return null;
+    }
+    s_logger.debug("{} changed targets in portfolio {}", changedTargets.size(), portfolio.getUniqueId());
+    if (!changedTargets.isEmpty()) {
+      for (ViewCalculationConfiguration calcConfig : compilationContext.getViewDefinition().getAllCalculationConfigurations()) {
+        if (calcConfig.getAllPortfolioRequirements().size() == 0) {
+          continue;
+        }
+        DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+        PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig, changedTargets);
+        PortfolioNodeTraverser.depthFirst(traversalCallback).traverse(portfolio.getRootNode());
+      }
+    }
+    return Pair.of(portfolio, changedTargets);
+  }
+
+  /**
+   * Compares two resolutions of a portfolio to find the targets that have changed. A position has changed if it, its
+   * security or its trades have different unique identifiers, or its object identifier or that of its security has
+   * been reported as changed. A portfolio node has changed if it has been reported as changed, the set of positions
+   * or nodes directly beneath it is different, or the security types beneath it are different.
+   * <p>
+   * A node with only a changed position or node somewhere beneath it is not itself changed. Its aggregate values
+   * still need the same inputs, which are re-wired to the recompiled targets when the graphs are grafted, so
+   * changing a single position does not recompile the nodes above it.
+   * 
+   * @param previousPortfolio  the previous portfolio, not {@code null}
+   * @param portfolio  the new portfolio, not {@code null}
+   * @param changedIdentifiers  the object identifiers reported as changed, not {@code null}
+   * @return the unique identifiers of changed nodes, positions, trades and securities, or {@code null} if the
+   *         portfolios cannot be compared
+   */
+  /* package */static Set<UniqueIdentifier> getChangedTargets(final Portfolio previousPortfolio, final Portfolio portfolio, final Set<ObjectIdentifier> changedIdentifiers) {
+    final Map<UniqueIdentifier, PortfolioNode> previousNodes = new HashMap<UniqueIdentifier, PortfolioNode>();
+    final Map<UniqueIdentifier, Position> previousPositions = new HashMap<UniqueIdentifier, Position>();
+    if (!indexPortfolio(previousPortfolio.getRootNode(), previousNodes, previousPositions)) {
+      return null;
+    }
+    final Map<UniqueIdentifier, PortfolioNode> nodes = new HashMap<UniqueIdentifier, PortfolioNode>();
+    final Map<UniqueIdentifier, Position> positions = new HashMap<UniqueIdentifier, Position>();
+    if (!indexPortfolio(portfolio.getRootNode(), nodes, positions)) {
+      return null;
+    }
+    final Map<UniqueIdentifier, Set<String>> previousSecurityTypes = new HashMap<UniqueIdentifier, Set<String>>();
+    indexSecurityTypes(previousPortfolio.getRootNode(), previousSecurityTypes);
+    final Set<UniqueIdentifier> changed = new HashSet<UniqueIdentifier>();
+    compareNode(portfolio.getRootNode(), previousNodes, previousPositions, previousSecurityTypes, changedIdentifiers, changed);
+    for (Map.Entry<UniqueIdentifier, PortfolioNode> previousNode : previousNodes.entrySet()) {
+      if (!nodes.containsKey(previousNode.getKey())) {
+        changed.add(previousNode.getKey());
+      }
+    }
+    for (Map.Entry<UniqueIdentifier, Position> previousPosition : previousPositions.entrySet()) {
+      if (!positions.containsKey(previousPosition.getKey())) {
+        addPosition(previousPosition.getValue(), changed);
+      }
+    }
+    return changed;
+  }
+
+  private static boolean indexPortfolio(final PortfolioNode node, final Map<UniqueIdentifier, PortfolioNode> nodes, final Map<UniqueIdentifier, Position> positions) {
+    if (node.getUniqueId() == null) {
+      return false;
+    }
+    nodes.put(node.getUniqueId(), node);
+    for (Position position : node.getPositions()) {
+      if ((position.getUniqueId() == null) || (position.getSecurity() == null) || (position.getSecurity().getUniqueId() == null)) {
+        return false;
+      }
+      positions.put(position.getUniqueId(), position);
+    }
+    for (PortfolioNode child : node.getChildNodes()) {
+      if (!indexPortfolio(child, nodes, positions)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Set<String> indexSecurityTypes(final PortfolioNode node, final Map<UniqueIdentifier, Set<String>> securityTypes) {
+    final Set<String> types = new HashSet<String>();
+    for (Position position : node.getPositions()) {
+      types.add(position.getSecurity().getSecurityType());
+    }
+    for (PortfolioNode child : node.getChildNodes()) {
+      types.addAll(indexSecurityTypes(child, securityTypes));
+    }
+    securityTypes.put(node.getUniqueId(), types);
+    return types;
+  }
+
+  private static void addPosition(final Position position, final Set<UniqueIdentifier> changed) {
+    changed.add(position.getUniqueId());
+    changed.add(position.getSecurity().getUniqueId());
+    for (Trade trade : position.getTrades()) {
+      changed.add(trade.getUniqueId());
+    }
+  }
+
+  private static Set<UniqueIdentifier> getTradeIdentifiers(final Position position) {
+    final Set<UniqueIdentifier> identifiers = new HashSet<UniqueIdentifier>();
+    for (Trade trade : position.getTrades()) {
+      identifiers.add(trade.getUniqueId());
+    }
+    return identifiers;
+  }
+
+  private static boolean isPositionChanged(final Position previous, final Position position, final Set<ObjectIdentifier> changedIdentifiers) {
+    return (previous == null)
+        || changedIdentifiers.contains(position.getUniqueId().getObjectId())
+        || changedIdentifiers.contains(position.getSecurity().getUniqueId().getObjectId())
+        || !previous.getSecurity().getUniqueId().equals(position.getSecurity().getUniqueId())
+        || !getTradeIdentifiers(previous).equals(getTradeIdentifiers(position));
+  }
+
+  private static Set<ObjectIdentifier> getObjectIds(final Collection<? extends UniqueIdentifiable> objects) {
+    final Set<ObjectIdentifier> identifiers = new HashSet<ObjectIdentifier>();
+    for (UniqueIdentifiable object : objects) {
+      identifiers.add(object.getUniqueId().getObjectId());
+    }
+    return identifiers;
+  }
+
+  /**
+   * Compares a node and everything beneath it with the previous portfolio.
+   * 
+   * @return the security types of the positions beneath the node
+   */
+  private static Set<String> compareNode(final PortfolioNode node, final Map<UniqueIdentifier, PortfolioNode> previousNodes, final Map<UniqueIdentifier, Position> previousPositions,
+      final Map<UniqueIdentifier, Set<String>> previousSecurityTypes, final Set<ObjectIdentifier> changedIdentifiers, final Set<UniqueIdentifier> changed) {
+    final Set<String> securityTypes = new HashSet<String>();
+    for (PortfolioNode child : node.getChildNodes()) {
+      securityTypes.addAll(compareNode(child, previousNodes, previousPositions, previousSecurityTypes, changedIdentifiers, changed));
+    }
+    for (Position position : node.getPositions()) {
+      securityTypes.add(position.getSecurity().getSecurityType());
+      final Position previousPosition = previousPositions.get(position.getUniqueId());
+      if (isPositionChanged(previousPosition, position, changedIdentifiers)) {
+        addPosition(position, changed);
+        if (previousPosition != null) {
+          addPosition(previousPosition, changed);
+        }
+      }
+    }
+    final PortfolioNode previousNode = previousNodes.get(node.getUniqueId());
+    // The requirements on a node depend on the security types beneath it, and its aggregate functions may depend on
+    // which positions and nodes are directly beneath it, but not on their versions
+    final boolean nodeChanged = (previousNode == null) || changedIdentifiers.contains(node.getUniqueId().getObjectId())
+        || !securityTypes.equals(previousSecurityTypes.get(node.getUniqueId()))
+        || !getObjectIds(previousNode.getPositions()).equals(getObjectIds(node.getPositions()))
+        || !getObjectIds(previousNode.getChildNodes()).equals(getObjectIds(node.getChildNodes()));
+    if (nodeChanged) {
+      changed.add(node.getUniqueId());
+    }
+    return securityTypes;
+  }
+
   // --------------------------------------------------------------------------
   
   /**
@@ -111,7 +290,7 @@ public final class PortfolioCompiler {
    * 
    * @param compilationContext the compilation context containing the view being compiled
    */
-  private static Portfolio getPortfolio(ViewCompilationContext compilationContext) {
+  /* package */static Portfolio getPortfolio(ViewCompilationContext compilationContext) {
     UniqueIdentifier portfolioId = compilationContext.getViewDefinition().getPortfolioId();
     if (portfolioId == null) {
       throw new OpenGammaRuntimeException("The view definition '" + compilationContext.getViewDefinition().getName() + "' contains required portfolio outputs, but it does not reference a portfolio.");
@@ -25,6 +25,7 @@ import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.view.ResultModelDefinition;
 import com.opengamma.engine.view.ResultOutputMode;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.tuple.Pair;
 
 /**
@@ -35,11 +36,27 @@ import com.opengamma.util.tuple.Pair;
   private final DependencyGraphBuilder _dependencyGraphBuilder;
   private final ViewCalculationConfiguration _calculationConfiguration;
   private final ResultModelDefinition _resultModelDefinition;
+  private final Set<UniqueIdentifier> _includeTargets;
 
   public PortfolioCompilerTraversalCallback(DependencyGraphBuilder dependencyGraphBuilder, ViewCalculationConfiguration calculationConfiguration) {
+    this(dependencyGraphBuilder, calculationConfiguration, null);
+  }
+
+  /**
+   * @param dependencyGraphBuilder the builder to add requirements to
+   * @param calculationConfiguration the calculation configuration
+   * @param includeTargets the portfolio nodes, positions and trades to add requirements for, or {@code null} for all. A node
+   *        need not be included for the positions beneath it to be.
+   */
+  public PortfolioCompilerTraversalCallback(DependencyGraphBuilder dependencyGraphBuilder, ViewCalculationConfiguration calculationConfiguration, Set<UniqueIdentifier> includeTargets) {
     _dependencyGraphBuilder = dependencyGraphBuilder;
     _calculationConfiguration = calculationConfiguration;
     _resultModelDefinition = calculationConfiguration.getViewDefinition().getResultModelDefinition();
+    _includeTargets = includeTargets;
+  }
+
+  private boolean isIncluded(final UniqueIdentifier targetId) {
+    return (_includeTargets == null) || _includeTargets.contains(targetId);
   }
 
   /**
@@ -73,8 +90,21 @@ import com.opengamma.util.tuple.Pair;
     return accumulator.getSubNodeSecurityTypes();
   }
 
+  private boolean hasIncludedPosition(final PortfolioNode portfolioNode) {
+    for (Position position : portfolioNode.getPositions()) {
+      if (isIncluded(position.getUniqueId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public void preOrderOperation(PortfolioNode portfolioNode) {
+    if (!isIncluded(portfolioNode.getUniqueId()) && !hasIncludedPosition(portfolioNode)) {
+      // Changed targets may still be further down the tree
+      return;
+    }
     final Set<Position> allPositions = PositionAccumulator.getAccumulatedPositions(portfolioNode);
     for (Position position : allPositions) {
       for (Trade trade : position.getTrades()) {
@@ -99,6 +129,9 @@ import com.opengamma.util.tuple.Pair;
       // add requirements for trades as well
       if (_resultModelDefinition.getTradeOutputMode() != ResultOutputMode.NONE) {
         for (Position position : portfolioNode.getPositions()) {
+          if (!isIncluded(position.getUniqueId())) {
+            continue;
+          }
           requirements.clear();
           for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
             requirements.add(new ValueRequirement(requiredOutput.getFirst(), position, requiredOutput.getSecond()));
@@ -125,14 +158,18 @@ import com.opengamma.util.tuple.Pair;
       }
       Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
       // If the outputs are not even required in the results then there's no point adding them as terminal outputs
-      if (_resultModelDefinition.getAggregatePositionOutputMode() != ResultOutputMode.NONE) {
+      if ((_resultModelDefinition.getAggregatePositionOutputMode() != ResultOutputMode.NONE) && isIncluded(portfolioNode.getUniqueId())) {
         for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
           requirements.add(new ValueRequirement(requiredOutput.getFirst(), portfolioNode, requiredOutput.getSecond()));
         }
         _dependencyGraphBuilder.addTarget(requirements);
       }
-      if (_resultModelDefinition.getPositionOutputMode() != ResultOutputMode.NONE) {
+      // The values on a changed position are needed to re-wire the aggregates of an unchanged node, even if not output
+      if ((_resultModelDefinition.getPositionOutputMode() != ResultOutputMode.NONE) || !isIncluded(portfolioNode.getUniqueId())) {
         for (Position position : portfolioNode.getPositions()) {
+          if (!isIncluded(position.getUniqueId())) {
+            continue;
+          }
           requirements.clear();
           for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
             requirements.add(new ValueRequirement(requiredOutput.getFirst(), position, requiredOutput.getSecond()));
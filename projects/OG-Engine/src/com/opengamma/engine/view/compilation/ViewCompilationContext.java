@@ -71,6 +71,8 @@ public class ViewCompilationContext {
         builder.setFunctionResolver(new DefaultCompiledFunctionResolver(compilationContext, transformedRules));
       }
       builder.setCompilationContext(compilationContext);
+      // Graphs are built in parallel only if the services have an executor for it
+      builder.setExecutorService(compilationServices.getGraphBuildingExecutorService());
       result.put(configName, builder);
     }
     return result;
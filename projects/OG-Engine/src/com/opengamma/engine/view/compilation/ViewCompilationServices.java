@@ -29,6 +29,7 @@ public class ViewCompilationServices {
   private final ExecutorService _executorService;
   private final FunctionCompilationContext _compilationContext;
   private final CachingComputationTargetResolver _computationTargetResolver;
+  private final ExecutorService _graphBuildingExecutorService;
   
   /**
    * Constructs an instance, without a position source or security source.
@@ -87,6 +88,30 @@ public class ViewCompilationServices {
       ExecutorService executorService,
       SecuritySource securitySource,
       PositionSource positionSource) {
+    this(marketDataAvailabilityProvider, functionResolver, compilationContext, computationTargetResolver, executorService, securitySource, positionSource, null);
+  }
+  
+  /**
+   * Constructs an instance which may build dependency graphs in parallel.
+   * 
+   * @param marketDataAvailabilityProvider  the market data availability provider
+   * @param functionResolver  the function resolver
+   * @param compilationContext  the function compilation context
+   * @param computationTargetResolver  the computation target resolver
+   * @param executorService  the executor service
+   * @param securitySource  the security source
+   * @param positionSource  the position source
+   * @param graphBuildingExecutorService  the executor to build dependency graphs in parallel with, null to build them sequentially
+   */
+  public ViewCompilationServices(
+      MarketDataAvailabilityProvider marketDataAvailabilityProvider,
+      FunctionResolver functionResolver,
+      FunctionCompilationContext compilationContext,
+      CachingComputationTargetResolver computationTargetResolver,
+      ExecutorService executorService,
+      SecuritySource securitySource,
+      PositionSource positionSource,
+      ExecutorService graphBuildingExecutorService) {
     ArgumentChecker.notNull(marketDataAvailabilityProvider, "marketDataAvailabilityProvider");
     ArgumentChecker.notNull(functionResolver, "functionResolver");
     ArgumentChecker.notNull(compilationContext, "compilationContext");
@@ -100,6 +125,7 @@ public class ViewCompilationServices {
     _computationTargetResolver = computationTargetResolver;
     _securitySource = securitySource;
     _positionSource = positionSource;
+    _graphBuildingExecutorService = graphBuildingExecutorService;
   }
 
   //-------------------------------------------------------------------------
@@ -144,6 +170,14 @@ public class ViewCompilationServices {
     return _executorService;
   }
 
+  /**
+   * Gets the executor used to build dependency graphs in parallel.
+   * @return the graph building executor service, null to build graphs sequentially
+   */
+  public ExecutorService getGraphBuildingExecutorService() {
+    return _graphBuildingExecutorService;
+  }
+
   /**
    * Gets the compilation context.
    * @return the compilation context, not null
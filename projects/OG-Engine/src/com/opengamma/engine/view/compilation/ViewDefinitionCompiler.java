@@ -9,6 +9,7 @@ import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.time.Instant;
 
@@ -16,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
 import com.opengamma.core.security.SecuritySource;
 import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.depgraph.DependencyGraph;
@@ -26,6 +28,8 @@ import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.id.ObjectIdentifier;
+import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.monitor.OperationTimer;
 import com.opengamma.util.tuple.Pair;
@@ -82,13 +86,100 @@ public final class ViewDefinitionCompiler {
     return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphsByConfiguration, portfolio, compilationServices.getFunctionCompilationContext().getFunctionInitId());
   }
 
+  /**
+   * Compiles a view definition by updating a previous compilation for changes to the portfolio, its positions or
+   * their securities. Only the requirements on changed portfolio nodes, positions and trades are resolved; their
+   * nodes are grafted into copies of the previous dependency graphs. If the previous compilation cannot be updated, for
+   * example because it is no longer valid or the changes affect other requirements, a full compilation is performed.
+   * 
+   * @param viewDefinition  the view definition, not null
+   * @param compilationServices  the compilation services, not null
+   * @param valuationTime  the valuation time to compile for, not null
+   * @param previous  the previous compilation of the view definition, not null
+   * @param changedIdentifiers  the object identifiers of positions, securities or portfolios which have changed, not null
+   * @return the compiled view definition, not null
+   */
+  public static CompiledViewDefinitionWithGraphsImpl compileIncremental(ViewDefinition viewDefinition, ViewCompilationServices compilationServices, Instant valuationTime,
+      CompiledViewDefinitionWithGraphsImpl previous, Set<ObjectIdentifier> changedIdentifiers) {
+    ArgumentChecker.notNull(viewDefinition, "viewDefinition");
+    ArgumentChecker.notNull(compilationServices, "compilationServices");
+    ArgumentChecker.notNull(previous, "previous");
+    ArgumentChecker.notNull(changedIdentifiers, "changedIdentifiers");
+    final long functionInitId = compilationServices.getFunctionCompilationContext().getFunctionInitId();
+    if ((previous.getViewDefinition() != viewDefinition) || (previous.getFunctionInitId() != functionInitId) || !previous.isValidFor(valuationTime)
+        || (previous.getPortfolio() == null) || hasSpecificPortfolioRequirements(viewDefinition)) {
+      s_logger.debug("Previous compilation of {} cannot be updated", viewDefinition.getName());
+      return compile(viewDefinition, compilationServices, valuationTime);
+    }
+    s_logger.debug("Incrementally compiling {} for use with {}", viewDefinition.getName(), valuationTime);
+    OperationTimer timer = new OperationTimer(s_logger, "Incrementally compiling ViewDefinition: {}", viewDefinition.getName());
+    ViewCompilationContext viewCompilationContext = new ViewCompilationContext(viewDefinition, compilationServices, valuationTime);
+    Pair<Portfolio, Set<UniqueIdentifier>> portfolioChanges = PortfolioCompiler.executeIncremental(viewCompilationContext, previous.getPortfolio(), changedIdentifiers);
+    if (portfolioChanges == null) {
+      s_logger.info("Couldn't determine changes to portfolio of {}; performing full compilation", viewDefinition.getName());
+      return compile(viewDefinition, compilationServices, valuationTime);
+    }
+    final Set<UniqueIdentifier> changedTargets = portfolioChanges.getSecond();
+    final Map<String, DependencyGraph> graphsByConfiguration;
+    if (changedTargets.isEmpty()) {
+      graphsByConfiguration = previous.getDependencyGraphsByConfiguration();
+    } else {
+      // Values only consumed by the retained aggregates must survive until the graphs are grafted
+      final Map<String, DependencyGraph> additions = getDependencyGraphs(viewCompilationContext);
+      final Map<UniqueIdentifier, PortfolioNode> portfolioNodes = new HashMap<UniqueIdentifier, PortfolioNode>();
+      indexPortfolioNodes(portfolioChanges.getFirst().getRootNode(), portfolioNodes);
+      graphsByConfiguration = new HashMap<String, DependencyGraph>();
+      for (Map.Entry<String, DependencyGraph> graph : previous.getDependencyGraphsByConfiguration().entrySet()) {
+        final DependencyGraph grafted = DependencyGraphGrafter.graft(graph.getValue(), changedTargets, additions.get(graph.getKey()), portfolioNodes,
+            viewDefinition.getResultModelDefinition());
+        if (grafted == null) {
+          s_logger.info("Couldn't update dependency graph {} of {}; performing full compilation", graph.getKey(), viewDefinition.getName());
+          return compile(viewDefinition, compilationServices, valuationTime);
+        }
+        graphsByConfiguration.put(graph.getKey(), grafted);
+      }
+    }
+    timer.finished();
+    return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphsByConfiguration, portfolioChanges.getFirst(), functionInitId);
+  }
+
+  private static void indexPortfolioNodes(final PortfolioNode node, final Map<UniqueIdentifier, PortfolioNode> nodes) {
+    nodes.put(node.getUniqueId(), node);
+    for (PortfolioNode child : node.getChildNodes()) {
+      indexPortfolioNodes(child, nodes);
+    }
+  }
+
+  private static boolean hasSpecificPortfolioRequirements(final ViewDefinition viewDefinition) {
+    for (ViewCalculationConfiguration calcConfig : viewDefinition.getAllCalculationConfigurations()) {
+      for (ValueRequirement requirement : calcConfig.getSpecificRequirements()) {
+        switch (requirement.getTargetSpecification().getType()) {
+          case PORTFOLIO_NODE:
+          case POSITION:
+          case TRADE:
+          case SECURITY:
+            return true;
+          default:
+            break;
+        }
+      }
+    }
+    return false;
+  }
+
   //-------------------------------------------------------------------------
   private static Map<String, DependencyGraph> processDependencyGraphs(ViewCompilationContext context) {
+    Map<String, DependencyGraph> result = getDependencyGraphs(context);
+    for (DependencyGraph dependencyGraph : result.values()) {
+      dependencyGraph.removeUnnecessaryValues();
+    }
+    return result;
+  }
+
+  private static Map<String, DependencyGraph> getDependencyGraphs(ViewCompilationContext context) {
     Map<String, DependencyGraph> result = new HashMap<String, DependencyGraph>();
     for (DependencyGraphBuilder builder : context.getBuilders().values()) {
-      DependencyGraph dependencyGraph = builder.getDependencyGraph();
-      dependencyGraph.removeUnnecessaryValues();
-      result.put(builder.getCalculationConfigurationName(), dependencyGraph);
+      result.put(builder.getCalculationConfigurationName(), builder.getDependencyGraph());
     }
     return result;
   }
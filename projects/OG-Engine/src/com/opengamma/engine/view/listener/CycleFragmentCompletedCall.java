@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.listener;
+
+import com.google.common.base.Function;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.ViewDeltaResultModel;
+
+/**
+ * Represents a call to {@link ViewResultListener#cycleFragmentCompleted(com.opengamma.engine.view.ViewComputationResultModel, com.opengamma.engine.view.ViewDeltaResultModel)}
+ */
+public class CycleFragmentCompletedCall implements Function<ViewResultListener, Object> {
+
+  private final ViewComputationResultModel _fullFragment;
+  private final ViewDeltaResultModel _deltaFragment;
+
+  public CycleFragmentCompletedCall(ViewComputationResultModel fullFragment, ViewDeltaResultModel deltaFragment) {
+    _fullFragment = fullFragment;
+    _deltaFragment = deltaFragment;
+  }
+
+  public ViewComputationResultModel getFullFragment() {
+    return _fullFragment;
+  }
+
+  public ViewDeltaResultModel getDeltaFragment() {
+    return _deltaFragment;
+  }
+
+  @Override
+  public Object apply(ViewResultListener listener) {
+    listener.cycleFragmentCompleted(getFullFragment(), getDeltaFragment());
+    return null;
+  }
+
+}
@@ -55,6 +55,17 @@ public interface ViewResultListener {
   void viewDefinitionCompilationFailed(Instant valuationTime, Exception exception);
   
   //-------------------------------------------------------------------------
+  /**
+   * Called following the successful completion of one calculation configuration within a computation cycle which
+   * contains more than one. Further fragments, or the complete result through
+   * {@link #cycleCompleted(ViewComputationResultModel, ViewDeltaResultModel)}, will follow for the same cycle.
+   * 
+   * @param fullFragment  the results of the completed calculation configuration, not null
+   * @param deltaFragment  the delta result representing only the differences in the completed calculation
+   *                       configuration since the previous result, not null
+   */
+  void cycleFragmentCompleted(ViewComputationResultModel fullFragment, ViewDeltaResultModel deltaFragment);
+
   /**
    * Called following the successful completion of a computation cycle.
    * 
@@ -149,6 +149,10 @@ public class DepGraphTestHelper {
     _liveDataAvailabilityProvider.addRequirement(_req2);
   }
 
+  public void makeAvailableFromLiveData(final ValueRequirement requirement) {
+    _liveDataAvailabilityProvider.addRequirement(requirement);
+  }
+
   public DependencyGraphBuilder getBuilder(final DefaultFunctionResolver.FunctionPriority prioritizer) {
     if (_builder == null) {
       _builder = new DependencyGraphBuilder();
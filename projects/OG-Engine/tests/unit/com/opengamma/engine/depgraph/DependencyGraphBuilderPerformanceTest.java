@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.depgraph;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.MapComputationTargetResolver;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
+import com.opengamma.engine.function.CompiledFunctionService;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.function.resolver.CompiledFunctionResolver;
+import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
+import com.opengamma.engine.marketdata.availability.FixedMarketDataAvailabilityProvider;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.monitor.OperationTimer;
+
+/**
+ * Measures dependency graph build time against portfolio size for sequential and parallel builds.
+ * <p>
+ * Each "position" target requires a value of its own which depends on a value from a shared "curve" target,
+ * so the graphs contain one node per position plus a single shared node.
+ */
+@Test(enabled = false)
+public class DependencyGraphBuilderPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(DependencyGraphBuilderPerformanceTest.class);
+
+  private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+  private final MapComputationTargetResolver _targetResolver = new MapComputationTargetResolver();
+  private final List<ValueRequirement> _requirements = new ArrayList<ValueRequirement>();
+  private CompiledFunctionResolver _functionResolver;
+
+  private void init(final int numPositions) {
+    final InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    final ComputationTarget curve = new ComputationTarget(UniqueIdentifier.of("Curve", "0"));
+    _targetResolver.addTarget(curve);
+    final ValueRequirement curveRequirement = new ValueRequirement("Curve", curve.toSpecification());
+    final MockFunction curveFunction = new MockFunction("curve", curve);
+    curveFunction.addResult(new ComputedValue(new ValueSpecification(curveRequirement, MockFunction.UNIQUE_ID), 1.0));
+    functionRepo.addFunction(curveFunction);
+    _requirements.clear();
+    for (int i = 0; i < numPositions; i++) {
+      final ComputationTarget position = new ComputationTarget(UniqueIdentifier.of("Position", Integer.toString(i)));
+      _targetResolver.addTarget(position);
+      final ValueRequirement requirement = new ValueRequirement("PV", position.toSpecification());
+      final MockFunction function = new MockFunction("pv" + i, position);
+      function.addRequirement(curveRequirement);
+      function.addResult(new ComputedValue(new ValueSpecification(requirement, MockFunction.UNIQUE_ID), 2.0));
+      functionRepo.addFunction(function);
+      _requirements.add(requirement);
+    }
+    final CompiledFunctionService compilationService = new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), new FunctionCompilationContext());
+    _functionResolver = new DefaultFunctionResolver(compilationService).compile(Instant.now());
+  }
+
+  private DependencyGraph build(final ExecutorService executor) {
+    final DependencyGraphBuilder builder = new DependencyGraphBuilder();
+    builder.setCalculationConfigurationName("Default");
+    builder.setMarketDataAvailabilityProvider(new FixedMarketDataAvailabilityProvider());
+    builder.setTargetResolver(_targetResolver);
+    builder.setFunctionResolver(_functionResolver);
+    builder.setCompilationContext(new FunctionCompilationContext());
+    builder.setExecutorService(executor);
+    for (ValueRequirement requirement : _requirements) {
+      builder.addTarget(Collections.singleton(requirement));
+    }
+    return builder.getDependencyGraph();
+  }
+
+  private void run(final int numPositions) {
+    init(numPositions);
+    final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      // Warm up
+      build(null);
+      build(executor);
+      OperationTimer timer = new OperationTimer(s_logger, "Sequential build of {} positions", numPositions);
+      final DependencyGraph sequential = build(null);
+      final long sequentialMillis = timer.finished();
+      timer = new OperationTimer(s_logger, "Parallel build of {} positions with {} threads", numPositions, NUM_THREADS);
+      final DependencyGraph parallel = build(executor);
+      final long parallelMillis = timer.finished();
+      assertEquals(numPositions + 1, sequential.getSize());
+      assertEquals(sequential.getSize(), parallel.getSize());
+      assertEquals(sequential.getTerminalOutputSpecifications(), parallel.getTerminalOutputSpecifications());
+      s_logger.info("{} positions, sequential {}ms, parallel {}ms", new Object[] {numPositions, sequentialMillis, parallelMillis });
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void smallPortfolio() {
+    run(100);
+  }
+
+  public void mediumPortfolio() {
+    run(1000);
+  }
+
+  public void largePortfolio() {
+    run(5000);
+  }
+
+}
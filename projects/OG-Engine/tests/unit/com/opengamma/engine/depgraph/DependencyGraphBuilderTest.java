@@ -19,6 +19,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -168,6 +170,118 @@ public class DependencyGraphBuilderTest {
     }
   }
 
+  public void doubleLevelParallel() {
+    DepGraphTestHelper helper = new DepGraphTestHelper();
+    MockFunction fn1 = helper.addFunctionRequiring2Producing1();
+    MockFunction fn2 = helper.addFunctionProducing2();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      DependencyGraphBuilder builder = helper.getBuilder(null);
+      builder.setExecutorService(executor);
+      builder.addTarget(Sets.newHashSet(helper.getRequirement1()));
+      builder.addTarget(Sets.newHashSet(helper.getRequirement2()));
+
+      DependencyGraph graph = builder.getDependencyGraph();
+      assertNotNull(graph);
+      assertEquals(Sets.newHashSet(helper.getSpec1(), helper.getSpec2()), graph.getTerminalOutputSpecifications());
+
+      // The node producing 2 is shared rather than duplicated by the second batch
+      Collection<DependencyNode> nodes = graph.getDependencyNodes(ComputationTargetType.PRIMITIVE);
+      assertEquals(2, nodes.size());
+      for (DependencyNode node : nodes) {
+        if (ObjectUtils.equals(node.getFunction().getFunction(), fn1)) {
+          assertEquals(1, node.getInputNodes().size());
+          assertTrue(nodes.contains(node.getInputNodes().iterator().next()));
+        } else if (ObjectUtils.equals(node.getFunction().getFunction(), fn2)) {
+          assertTrue(node.getInputNodes().isEmpty());
+          assertEquals(1, node.getDependentNodes().size());
+        } else {
+          Assert.fail("Unexpected function definition");
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static DependencyGraphBuilder createSharedLiveDataBuilder(final DepGraphTestHelper helper) {
+    helper.makeAvailableFromLiveData(helper.getRequirement2Foo());
+    helper.makeAvailableFromLiveData(helper.getRequirement2Any());
+    helper.addFunctionRequiringProducing(helper.getRequirement2Any(), helper.getValue1Foo());
+    return helper.getBuilder(null);
+  }
+
+  private static void addSharedLiveDataTargets(final DependencyGraphBuilder builder, final DepGraphTestHelper helper) {
+    builder.addTarget(Sets.newHashSet(helper.getRequirement2Foo()));
+    builder.addTarget(Sets.newHashSet(helper.getRequirement2Any()));
+    builder.addTarget(Sets.newHashSet(helper.getRequirement1Foo()));
+  }
+
+  /**
+   * Describes the nodes and terminal outputs of a graph independently of the node instances.
+   */
+  private static Set<List<Object>> describe(final DependencyGraph graph) {
+    final Set<List<Object>> description = new HashSet<List<Object>>();
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      description.add(Arrays.<Object>asList(node.getComputationTarget(), node.getFunction().getFunction().getFunctionDefinition().getUniqueId(),
+          node.getInputValues(), node.getOutputValues()));
+    }
+    description.add(Arrays.<Object>asList(graph.getTerminalOutputSpecifications()));
+    return description;
+  }
+
+  public void parallelMatchesSequential() {
+    final DepGraphTestHelper sequentialHelper = new DepGraphTestHelper();
+    final DependencyGraphBuilder sequential = createSharedLiveDataBuilder(sequentialHelper);
+    addSharedLiveDataTargets(sequential, sequentialHelper);
+    final DependencyGraph expected = sequential.getDependencyGraph();
+    // The later requirements are satisfied by the market data node already in the graph
+    assertEquals(2, expected.getSize());
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final DepGraphTestHelper parallelHelper = new DepGraphTestHelper();
+      final DependencyGraphBuilder parallel = createSharedLiveDataBuilder(parallelHelper);
+      parallel.setExecutorService(executor);
+      addSharedLiveDataTargets(parallel, parallelHelper);
+      assertEquals(describe(expected), describe(parallel.getDependencyGraph()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static DependencyGraphBuilder createSharedFunctionBuilder(final DepGraphTestHelper helper) {
+    helper.makeAvailableFromLiveData(helper.getRequirement2Foo());
+    helper.addFunctionProducing(helper.getValue2Bar());
+    helper.addFunctionRequiringProducing(helper.getRequirement2Any(), helper.getValue1Foo());
+    helper.addFunctionRequiringProducing(helper.getRequirement2Bar(), helper.getValue1Bar());
+    return helper.getBuilder(null);
+  }
+
+  private static void addSharedFunctionTargets(final DependencyGraphBuilder builder, final DepGraphTestHelper helper) {
+    builder.addTarget(Sets.newHashSet(helper.getRequirement1Foo()));
+    builder.addTarget(Sets.newHashSet(helper.getRequirement1Bar(), helper.getRequirement2Foo()));
+    builder.addTarget(Sets.newHashSet(helper.getRequirement1Any()));
+    builder.addTarget(Sets.newHashSet(helper.getRequirement2Any()));
+  }
+
+  public void parallelMatchesSequentialWithSharedFunctions() {
+    final DepGraphTestHelper sequentialHelper = new DepGraphTestHelper();
+    final DependencyGraphBuilder sequential = createSharedFunctionBuilder(sequentialHelper);
+    addSharedFunctionTargets(sequential, sequentialHelper);
+    final DependencyGraph expected = sequential.getDependencyGraph();
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final DepGraphTestHelper parallelHelper = new DepGraphTestHelper();
+      final DependencyGraphBuilder parallel = createSharedFunctionBuilder(parallelHelper);
+      parallel.setExecutorService(executor);
+      addSharedFunctionTargets(parallel, parallelHelper);
+      assertEquals(describe(expected), describe(parallel.getDependencyGraph()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   public void doubleLevelLiveData() {
     DepGraphTestHelper helper = new DepGraphTestHelper();
     MockFunction fn1 = helper.addFunctionRequiring2Producing1();
@@ -28,4 +28,11 @@ public class ViewDefinitionBuilderTest extends AbstractBuilderTestCase {
     assertEncodeDecodeCycle(ViewDefinition.class, testViewDefinition);
   }
 
+  @Test
+  public void test_viewDefinition_targetResultLatency() {
+    ViewDefinition testViewDefinition = TestViewDefinitionProvider.getTestViewDefinition();
+    testViewDefinition.setTargetResultLatency(250L);
+    assertEncodeDecodeCycle(ViewDefinition.class, testViewDefinition);
+  }
+
 }
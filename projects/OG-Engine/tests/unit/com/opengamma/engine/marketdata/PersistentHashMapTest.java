@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.marketdata;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.id.Identifier;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the {@link PersistentHashMap} class and the versioned snapshots of {@link InMemoryLKVMarketDataProvider}.
+ */
+@Test
+public class PersistentHashMapTest {
+
+  /**
+   * Key with a poor hash code to exercise collisions.
+   */
+  private static final class Key {
+
+    private final int _value;
+
+    Key(final int value) {
+      _value = value;
+    }
+
+    @Override
+    public int hashCode() {
+      return _value / 4;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return (o instanceof Key) && (((Key) o)._value == _value);
+    }
+
+    @Override
+    public String toString() {
+      return "Key" + _value;
+    }
+
+  }
+
+  public void testEmpty() {
+    final PersistentHashMap<Key, String> map = PersistentHashMap.empty();
+    assertEquals(0, map.size());
+    assertTrue(map.isEmpty());
+    assertNull(map.get(new Key(1)));
+    assertSame(map, map.without(new Key(1)));
+    assertTrue(map.keySet().isEmpty());
+  }
+
+  public void testRandomOperations() {
+    final Random random = new Random(1);
+    final Map<Key, Integer> expected = new HashMap<Key, Integer>();
+    PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+    for (int i = 0; i < 20000; i++) {
+      final Key key = new Key(random.nextInt(2000));
+      final PersistentHashMap<Key, Integer> previous = map;
+      final Map<Key, Integer> previousExpected = new HashMap<Key, Integer>(expected);
+      if (random.nextInt(3) == 0) {
+        map = map.without(key);
+        expected.remove(key);
+      } else {
+        map = map.with(key, i);
+        expected.put(key, i);
+      }
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected.get(key), map.get(key));
+      // The earlier version is unaffected
+      assertEquals(previousExpected.get(key), previous.get(key));
+      final Set<Key> changed = map.getChangedKeys(previous);
+      assertEquals((previousExpected.equals(expected) ? Collections.<Key>emptySet() : Collections.singleton(key)), changed);
+    }
+    assertEquals(expected.keySet(), map.keySet());
+    for (Map.Entry<Key, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  public void testChangedKeys() {
+    PersistentHashMap<Key, String> map = PersistentHashMap.empty();
+    for (int i = 0; i < 1000; i++) {
+      map = map.with(new Key(i), "A");
+    }
+    final PersistentHashMap<Key, String> previous = map;
+    map = map.with(new Key(1), "B").with(new Key(500), "B").without(new Key(999)).with(new Key(1000), "A").with(new Key(2), "A");
+    assertEquals(new HashSet<Key>(Arrays.asList(new Key(1), new Key(500), new Key(999), new Key(1000), new Key(2))), map.getChangedKeys(previous));
+    assertEquals(previous.keySet(), previous.getChangedKeys(PersistentHashMap.<Key, String>empty()));
+  }
+
+  public void testSnapshotChanges() {
+    final InMemoryLKVMarketDataProvider provider = new InMemoryLKVMarketDataProvider();
+    final ValueRequirement a = new ValueRequirement("Market_Value", ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "A"));
+    final ValueRequirement b = new ValueRequirement("Market_Value", ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "B"));
+    provider.addValue(a, 1.0);
+    provider.addValue(b, 2.0);
+    final InMemoryLKVMarketDataSnapshot first = provider.snapshot(null);
+    first.init();
+    provider.addValue(a, 1.5);
+    provider.addValue(Identifier.of("Test", "C"), "Market_Value", 3.0);
+    final InMemoryLKVMarketDataSnapshot second = provider.snapshot(null);
+    second.init();
+    assertEquals(1.0, first.query(a));
+    assertEquals(1.5, second.query(a));
+    assertEquals(2, first.getAllValueKeys().size());
+    assertEquals(3, second.getAllValueKeys().size());
+    final Set<ValueRequirement> changed = second.getChangedRequirements(first);
+    assertEquals(2, changed.size());
+    assertTrue(changed.contains(a));
+    final InMemoryLKVMarketDataSnapshot other = new InMemoryLKVMarketDataProvider().snapshot(null);
+    other.init();
+    assertNull(second.getChangedRequirements(other));
+  }
+
+}
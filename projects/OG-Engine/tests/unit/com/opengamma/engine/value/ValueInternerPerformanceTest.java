@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.monitor.OperationTimer;
+
+/**
+ * Compares the memory footprint and hash map throughput of value specifications with and without {@link ValueInterner}.
+ * <p>
+ * The specifications are shaped like those of a large dependency graph; many targets each with a handful of values,
+ * produced by a few hundred functions, where each value is created independently by every node that references it.
+ */
+@Test(enabled = false)
+public class ValueInternerPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ValueInternerPerformanceTest.class);
+
+  private static final int NUM_TARGETS = 50000;
+  private static final int VALUES_PER_TARGET = 20;
+  private static final int NUM_FUNCTIONS = 200;
+  private static final String[] CURRENCIES = new String[] {"USD", "GBP", "EUR", "JPY", "CHF" };
+  private static final int LOOKUP_PASSES = 5;
+
+  private static ValueSpecification[] createSpecifications(final ValueInterner interner) {
+    final ValueSpecification[] specifications = new ValueSpecification[NUM_TARGETS * VALUES_PER_TARGET];
+    int i = 0;
+    for (int t = 0; t < NUM_TARGETS; t++) {
+      for (int v = 0; v < VALUES_PER_TARGET; v++) {
+        // Build every part afresh, as a node receiving the specification over the wire or from a function would
+        final ComputationTargetSpecification target = new ComputationTargetSpecification(ComputationTargetType.POSITION, UniqueIdentifier.of("Pos", Integer.toString(t)));
+        final ValueProperties properties = ValueProperties.with(ValuePropertyNames.FUNCTION, "Function" + ((t + v) % NUM_FUNCTIONS)).with(ValuePropertyNames.CURRENCY,
+            CURRENCIES[t % CURRENCIES.length]).get();
+        final ValueSpecification specification = new ValueSpecification("Value" + v, target, properties);
+        specifications[i++] = (interner != null) ? interner.intern(specification) : specification;
+      }
+    }
+    return specifications;
+  }
+
+  private static long getUsedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private void run(final String name, final ValueInterner interner) {
+    final long baseline = getUsedMemory();
+    OperationTimer timer = new OperationTimer(s_logger, "Creating {} specifications {}", new Object[] {NUM_TARGETS * VALUES_PER_TARGET, name });
+    final ValueSpecification[] specifications = createSpecifications(interner);
+    timer.finished();
+    s_logger.info("{}: {} bytes per specification", name, (getUsedMemory() - baseline) / specifications.length);
+    // Look up with equal but separately created instances as the graph and cache code does
+    final ValueSpecification[] lookups = createSpecifications(interner);
+    final Map<ValueSpecification, Integer> map = new HashMap<ValueSpecification, Integer>();
+    timer = new OperationTimer(s_logger, "Map operations on {} specifications {}", new Object[] {specifications.length, name });
+    for (int i = 0; i < specifications.length; i++) {
+      map.put(specifications[i], i);
+    }
+    long found = 0;
+    for (int pass = 0; pass < LOOKUP_PASSES; pass++) {
+      for (ValueSpecification lookup : lookups) {
+        if (map.get(lookup) != null) {
+          found++;
+        }
+      }
+    }
+    final long numMillis = timer.finished();
+    s_logger.info("{}: {} lookups/sec, {} found", new Object[] {name, (double) LOOKUP_PASSES * lookups.length * 1000.0 / Math.max(numMillis, 1L), found });
+  }
+
+  public void withoutInterning() {
+    run("without interning", null);
+  }
+
+  public void withInterning() {
+    run("with interning", new ValueInterner());
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.value;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the {@link ValueInterner} class.
+ */
+@Test
+public class ValueInternerTest {
+
+  private static ComputationTargetSpecification target() {
+    return new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "1"));
+  }
+
+  private static ValueProperties properties() {
+    return ValueProperties.with(ValuePropertyNames.FUNCTION, "Func").with(ValuePropertyNames.CURRENCY, "USD", "GBP").withOptional("Foo").get();
+  }
+
+  public void testProperties() {
+    final ValueInterner interner = new ValueInterner();
+    final ValueProperties a = properties();
+    final ValueProperties b = properties();
+    assertNotSame(a, b);
+    final ValueProperties canonical = interner.intern(a);
+    assertEquals(a, canonical);
+    assertEquals(a.hashCode(), canonical.hashCode());
+    assertSame(canonical, interner.intern(b));
+    assertSame(canonical, interner.intern(canonical));
+    assertSame(ValueProperties.none(), interner.intern(ValueProperties.none()));
+    assertFalse(canonical.equals(ValueProperties.with(ValuePropertyNames.FUNCTION, "Func").get()));
+  }
+
+  public void testSharedValueSets() {
+    final ValueInterner interner = new ValueInterner();
+    final ValueProperties a = interner.intern(ValueProperties.with(ValuePropertyNames.FUNCTION, "Func").with(ValuePropertyNames.CURRENCY, "USD").get());
+    final ValueProperties b = interner.intern(ValueProperties.with(ValuePropertyNames.FUNCTION, "Other").with(ValuePropertyNames.CURRENCY, "USD").get());
+    assertSame(a.getValues(ValuePropertyNames.CURRENCY), b.getValues(ValuePropertyNames.CURRENCY));
+  }
+
+  public void testSharedValues() {
+    final ValueInterner interner = new ValueInterner();
+    final ValueProperties a = interner.intern(ValueProperties.with(ValuePropertyNames.FUNCTION, new String("Func")).with(ValuePropertyNames.CURRENCY, new String("USD"), "GBP").get());
+    final ValueProperties b = interner.intern(ValueProperties.with(ValuePropertyNames.FUNCTION, new String("Other")).with(ValuePropertyNames.CURRENCY, new String("USD")).get());
+    String usd = null;
+    for (String value : a.getValues(ValuePropertyNames.CURRENCY)) {
+      if ("USD".equals(value)) {
+        usd = value;
+      }
+    }
+    assertSame(usd, b.getValues(ValuePropertyNames.CURRENCY).iterator().next());
+  }
+
+  public void testRequirement() {
+    final ValueInterner interner = new ValueInterner();
+    final ValueRequirement a = new ValueRequirement("Value", target(), properties());
+    final ValueRequirement canonical = interner.intern(a);
+    assertEquals(a, canonical);
+    assertSame(canonical, interner.intern(new ValueRequirement("Value", target(), properties())));
+    assertSame(interner.intern(target()), canonical.getTargetSpecification());
+    assertSame(interner.intern(properties()), canonical.getConstraints());
+  }
+
+  public void testSpecification() {
+    final ValueInterner interner = new ValueInterner();
+    final ValueSpecification a = new ValueSpecification("Value", target(), properties());
+    final ValueSpecification canonical = interner.intern(a);
+    assertEquals(a, canonical);
+    assertEquals(a.hashCode(), canonical.hashCode());
+    assertSame(canonical, interner.intern(new ValueSpecification("Value", target(), properties())));
+    assertSame(interner.intern(target()), canonical.getTargetSpecification());
+    assertSame(interner.intern(properties()), canonical.getProperties());
+    assertFalse(canonical.equals(new ValueSpecification("Other", target(), properties())));
+  }
+
+}
@@ -9,8 +9,11 @@ import static org.testng.AssertJUnit.assertEquals;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.fudgemsg.FudgeContext;
+import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -172,4 +175,59 @@ public class LiveDataDeltaCalculatorTest {
     assertEquals(_graph.getDependencyNodes(), _deltaCalculator.getChangedNodes());
   }
 
+  //-------------------------------------------------------------------------
+  private final ExecutorService _executor = Executors.newFixedThreadPool(2);
+
+  @AfterClass
+  public void shutdownExecutor() {
+    _executor.shutdown();
+  }
+
+  private ValueSpecification getMarketDataSpecification(DependencyNode node) {
+    return node.getRequiredMarketData().getSecond();
+  }
+
+  public void incrementalNoChange() {
+    put(_cache, _node1, 6.0);
+    put(_previousCache, _node1, 6.0);
+
+    _deltaCalculator.computeDelta(null, _executor);
+
+    assertEquals(_graph.getDependencyNodes(), _deltaCalculator.getUnchangedNodes());
+    assertEquals(Collections.emptySet(), _deltaCalculator.getChangedNodes());
+  }
+
+  public void incrementalChangeB() {
+    put(_cache, _node1, 6.0);
+    put(_previousCache, _node1, 7.0);
+
+    _deltaCalculator.computeDelta(null, _executor);
+
+    assertEquals(Sets.newHashSet(_node2, _node3), _deltaCalculator.getUnchangedNodes());
+    assertEquals(Sets.newHashSet(_node0, _node1), _deltaCalculator.getChangedNodes());
+  }
+
+  public void incrementalChangeC() {
+    put(_cache, _node3, 6.0);
+    put(_previousCache, _node3, 7.0);
+
+    _deltaCalculator.computeDelta(null, null);
+
+    assertEquals(Collections.emptySet(), _deltaCalculator.getUnchangedNodes());
+    assertEquals(_graph.getDependencyNodes(), _deltaCalculator.getChangedNodes());
+  }
+
+  public void incrementalCandidates() {
+    put(_cache, _node1, 6.0);
+    put(_previousCache, _node1, 7.0);
+    put(_cache, _node2, 6.0);
+    put(_previousCache, _node2, 7.0);
+
+    // Only node 2 is reported as having ticked
+    _deltaCalculator.computeDelta(Collections.singleton(getMarketDataSpecification(_node2)), _executor);
+
+    assertEquals(Sets.newHashSet(_node1, _node3), _deltaCalculator.getUnchangedNodes());
+    assertEquals(Sets.newHashSet(_node0, _node2), _deltaCalculator.getChangedNodes());
+  }
+
 }
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the {@link ConcurrentCachingIdentifierMap} class.
+ */
+@Test
+public class ConcurrentCachingIdentifierMapTest {
+
+  private static ValueSpecification[] createSpecifications(final int count) {
+    final ValueSpecification[] valueSpec = new ValueSpecification[count];
+    for (int i = 0; i < valueSpec.length; i++) {
+      valueSpec[i] = new ValueSpecification(new ValueRequirement("value" + i, new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("scheme",
+          "fibble"))), "mockFunctionId");
+    }
+    return valueSpec;
+  }
+
+  public void simpleOperation() {
+    final AtomicBoolean shouldFail = new AtomicBoolean(false);
+    final ValueSpecification[] valueSpec = createSpecifications(6);
+    final Map<ValueSpecification, Long> realIdentifiers = new HashMap<ValueSpecification, Long>();
+    for (int i = 0; i < valueSpec.length; i++) {
+      realIdentifiers.put(valueSpec[i], (long) i);
+    }
+    final IdentifierMap underlying = new AbstractIdentifierMap() {
+
+      @Override
+      public long getIdentifier(ValueSpecification spec) {
+        if (shouldFail.get()) {
+          AssertJUnit.fail("Should not have called underlying.");
+        }
+        return realIdentifiers.get(spec);
+      }
+
+      @Override
+      public ValueSpecification getValueSpecification(long identifier) {
+        if (shouldFail.get()) {
+          AssertJUnit.fail("Should not have called underlying.");
+        }
+        return valueSpec[(int) identifier];
+      }
+
+    };
+    final ConcurrentCachingIdentifierMap cachingSource = new ConcurrentCachingIdentifierMap(underlying);
+    assertEquals(0L, cachingSource.getIdentifier(valueSpec[0]));
+    final Map<ValueSpecification, Long> identifiers1 = new HashMap<ValueSpecification, Long>();
+    identifiers1.put(valueSpec[1], 1L);
+    identifiers1.put(valueSpec[2], 2L);
+    assertEquals(identifiers1, cachingSource.getIdentifiers(Arrays.asList(valueSpec[1], valueSpec[2])));
+    assertEquals(valueSpec[3], cachingSource.getValueSpecification(3));
+    final Map<Long, ValueSpecification> valueSpecs2 = new HashMap<Long, ValueSpecification>();
+    valueSpecs2.put(4L, valueSpec[4]);
+    valueSpecs2.put(5L, valueSpec[5]);
+    assertEquals(valueSpecs2, cachingSource.getValueSpecifications(Arrays.asList(4L, 5L)));
+    shouldFail.set(true);
+    for (int i = 0; i < valueSpec.length; i++) {
+      assertEquals((long) i, cachingSource.getIdentifier(valueSpec[i]));
+      assertEquals(valueSpec[i], cachingSource.getValueSpecification(i));
+    }
+    assertEquals(identifiers1, cachingSource.getIdentifiers(Arrays.asList(valueSpec[1], valueSpec[2])));
+    assertEquals(valueSpecs2, cachingSource.getValueSpecifications(Arrays.asList(4L, 5L)));
+  }
+
+  public void primitiveBatchOperation() {
+    final ValueSpecification[] valueSpec = createSpecifications(100);
+    final ConcurrentCachingIdentifierMap cachingSource = new ConcurrentCachingIdentifierMap(new InMemoryIdentifierMap());
+    final long[] identifiers = new long[valueSpec.length];
+    cachingSource.getIdentifiers(valueSpec, identifiers);
+    for (int i = 0; i < valueSpec.length; i++) {
+      assertEquals(cachingSource.getUnderlying().getIdentifier(valueSpec[i]), identifiers[i]);
+    }
+    final ValueSpecification[] specs = new ValueSpecification[valueSpec.length];
+    cachingSource.getValueSpecifications(identifiers, specs);
+    assertTrue(Arrays.equals(valueSpec, specs));
+    final long[] identifiers2 = new long[valueSpec.length];
+    cachingSource.getIdentifiers(valueSpec, identifiers2);
+    assertTrue(Arrays.equals(identifiers, identifiers2));
+  }
+
+  public void boundedEviction() {
+    final ValueSpecification[] valueSpec = createSpecifications(1000);
+    final AtomicInteger underlyingCalls = new AtomicInteger();
+    final InMemoryIdentifierMap realMap = new InMemoryIdentifierMap();
+    final IdentifierMap underlying = new AbstractIdentifierMap() {
+
+      @Override
+      public long getIdentifier(ValueSpecification spec) {
+        underlyingCalls.incrementAndGet();
+        return realMap.getIdentifier(spec);
+      }
+
+      @Override
+      public ValueSpecification getValueSpecification(long identifier) {
+        underlyingCalls.incrementAndGet();
+        return realMap.getValueSpecification(identifier);
+      }
+
+    };
+    final ConcurrentCachingIdentifierMap cachingSource = new ConcurrentCachingIdentifierMap(underlying, 64);
+    assertEquals(64, cachingSource.getMaxEntries());
+    for (int j = 0; j < 2; j++) {
+      for (int i = 0; i < valueSpec.length; i++) {
+        assertEquals(realMap.getIdentifier(valueSpec[i]), cachingSource.getIdentifier(valueSpec[i]));
+      }
+    }
+    // The cache is too small to hold everything, so the second pass must have gone back to the underlying
+    assertTrue(underlyingCalls.get() > valueSpec.length);
+  }
+
+}
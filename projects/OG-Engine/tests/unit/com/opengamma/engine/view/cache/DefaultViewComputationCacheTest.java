@@ -218,4 +218,19 @@ public class DefaultViewComputationCacheTest {
     assertPutValues (2, CacheSelectHint.sharedValues(Arrays.asList (valueSpecFoo)), CacheSelectHint.privateValues(Arrays.asList(valueSpecFoo)));
   }
 
+  @Test
+  public void testInheritSharedValues() {
+    final ValueSpecification valueSpecFoo = new ValueSpecification(new ValueRequirement("foo", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecBar = new ValueSpecification(new ValueRequirement("bar", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecMissing = new ValueSpecification(new ValueRequirement("missing", new ComputationTargetSpecification(null)), "mockFunctionId");
+    _viewComputationCache.putSharedValues(Arrays.asList(new ComputedValue(valueSpecFoo, "Foo")));
+    _viewComputationCache.putPrivateValues(Arrays.asList(new ComputedValue(valueSpecBar, "Bar")));
+    final DefaultViewComputationCache nextCache = new DefaultViewComputationCache(new InMemoryIdentifierMap(), new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(),
+        FudgeContext.GLOBAL_DEFAULT), new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(), FudgeContext.GLOBAL_DEFAULT), FudgeContext.GLOBAL_DEFAULT);
+    nextCache.inheritSharedValues(_viewComputationCache, Arrays.asList(valueSpecFoo, valueSpecBar, valueSpecMissing));
+    assertEquals("Foo", nextCache.getValue(valueSpecFoo, CacheSelectHint.allShared()));
+    assertEquals("Bar", nextCache.getValue(valueSpecBar, CacheSelectHint.allShared()));
+    assertNull(nextCache.getValue(valueSpecMissing));
+  }
+
 }
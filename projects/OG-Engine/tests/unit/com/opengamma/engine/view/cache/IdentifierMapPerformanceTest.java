@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.opengamma.util.monitor.OperationTimer;
+import com.sleepycat.je.Environment;
+
+/**
+ * Compares lookup throughput of the {@link IdentifierMap} implementations under contention.
+ */
+@Test(enabled = false)
+public class IdentifierMapPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(IdentifierMapPerformanceTest.class);
+
+  private static final int NUM_SPECIFICATIONS = 10000;
+  private static final int LOOKUPS_PER_THREAD = 200000;
+  private static final int BATCH_SIZE = 100;
+
+  private final ValueSpecification[] _specifications = new ValueSpecification[NUM_SPECIFICATIONS];
+  private File _dbDir;
+  private Environment _dbEnvironment;
+  private BerkeleyDBIdentifierMap _berkeleyDB;
+
+  @BeforeClass
+  public void init() {
+    for (int i = 0; i < _specifications.length; i++) {
+      _specifications[i] = new ValueSpecification(new ValueRequirement("value", new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("scheme",
+          "target" + i))), "mockFunctionId");
+    }
+    _dbDir = new File(System.getProperty("java.io.tmpdir"), "IdentifierMapPerformanceTest-" + System.currentTimeMillis());
+    _dbDir.mkdirs();
+    _dbEnvironment = BerkeleyDBViewComputationCacheSource.constructDatabaseEnvironment(_dbDir, true);
+    _berkeleyDB = new BerkeleyDBIdentifierMap(_dbEnvironment, OpenGammaFudgeContext.getInstance());
+    _berkeleyDB.start();
+  }
+
+  @AfterClass
+  public void cleanup() {
+    _berkeleyDB.stop();
+    _dbEnvironment.close();
+    try {
+      FileUtils.deleteDirectory(_dbDir);
+    } catch (IOException e) {
+      s_logger.warn("Unable to recursively delete directory {}", _dbDir);
+    }
+  }
+
+  private void run(final String name, final IdentifierMap map, final int numThreads) throws InterruptedException {
+    // Warm up and populate
+    for (ValueSpecification specification : _specifications) {
+      map.getIdentifier(specification);
+    }
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<Thread>(numThreads);
+    for (int t = 0; t < numThreads; t++) {
+      final int offset = t * 7919;
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          final List<ValueSpecification> batch = new ArrayList<ValueSpecification>(BATCH_SIZE);
+          for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+            final ValueSpecification specification = _specifications[(offset + i) % NUM_SPECIFICATIONS];
+            if ((i % 10) == 0) {
+              batch.add(specification);
+              if (batch.size() == BATCH_SIZE) {
+                map.getIdentifiers(batch);
+                batch.clear();
+              }
+            } else {
+              map.getValueSpecification(map.getIdentifier(specification));
+            }
+          }
+        }
+      }, name + "-" + t);
+      thread.start();
+      threads.add(thread);
+    }
+    final OperationTimer timer = new OperationTimer(s_logger, "{} lookups with {} threads on {}", new Object[] {numThreads * LOOKUPS_PER_THREAD, numThreads, name });
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    final long numMillis = timer.finished();
+    s_logger.info("{} with {} threads, {} lookups/sec", new Object[] {name, numThreads, (double) numThreads * LOOKUPS_PER_THREAD * 1000.0 / Math.max(numMillis, 1L) });
+  }
+
+  private void run(final int numThreads) throws InterruptedException {
+    run("CachingIdentifierMap", new CachingIdentifierMap(_berkeleyDB), numThreads);
+    run("ConcurrentCachingIdentifierMap", new ConcurrentCachingIdentifierMap(_berkeleyDB), numThreads);
+    run("BerkeleyDBIdentifierMap", _berkeleyDB, numThreads);
+  }
+
+  public void singleThread() throws InterruptedException {
+    run(1);
+  }
+
+  public void eightThreads() throws InterruptedException {
+    run(8);
+  }
+
+  public void thirtyTwoThreads() throws InterruptedException {
+    run(32);
+  }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the {@link OffHeapBinaryDataStore} class.
+ */
+@Test
+public class OffHeapBinaryDataStoreTest {
+
+  private static byte[] randomBytes(final Random random, final int length) {
+    final byte[] data = new byte[length];
+    random.nextBytes(data);
+    return data;
+  }
+
+  private void putGet(final OffHeapBinaryDataStore store) {
+    final Random random = new Random(1L);
+    final Map<Long, byte[]> expected = new HashMap<Long, byte[]>();
+    for (long i = 0; i < 1000; i++) {
+      final byte[] data = randomBytes(random, random.nextInt(200));
+      expected.put(i, data);
+      store.put(i, data);
+    }
+    // Oversize value is given its own segment
+    final byte[] large = randomBytes(random, store.getSegmentSize() * 2);
+    expected.put(1000L, large);
+    store.put(1000L, large);
+    for (Map.Entry<Long, byte[]> entry : expected.entrySet()) {
+      assertTrue(Arrays.equals(entry.getValue(), store.get(entry.getKey())));
+    }
+    final Map<Long, byte[]> result = store.get(expected.keySet());
+    assertEquals(expected.size(), result.size());
+    for (Map.Entry<Long, byte[]> entry : expected.entrySet()) {
+      assertTrue(Arrays.equals(entry.getValue(), result.get(entry.getKey())));
+    }
+    assertNull(store.get(1001L));
+    assertFalse(store.get(Arrays.asList(1001L, 1002L)).containsKey(1001L));
+  }
+
+  public void testDirect() {
+    final OffHeapBinaryDataStore store = new OffHeapBinaryDataStore(4096);
+    putGet(store);
+    assertTrue(store.getReservedBytes() > 0);
+    store.delete();
+    assertEquals(0, store.getReservedBytes());
+    assertNull(store.get(0L));
+  }
+
+  public void testReplace() {
+    final OffHeapBinaryDataStore store = new OffHeapBinaryDataStore(4096);
+    store.put(1L, new byte[] {1, 2, 3 });
+    store.put(1L, new byte[] {4, 5 });
+    assertTrue(Arrays.equals(new byte[] {4, 5 }, store.get(1L)));
+    store.delete();
+  }
+
+  public void testMemoryMapped() throws IOException {
+    final File folder = new File(System.getProperty("java.io.tmpdir"), "OffHeapBinaryDataStoreTest-" + System.currentTimeMillis());
+    try {
+      final OffHeapBinaryDataStoreFactory factory = new OffHeapBinaryDataStoreFactory(folder);
+      factory.setSegmentSize(4096);
+      final OffHeapBinaryDataStore store = (OffHeapBinaryDataStore) factory.createDataStore(new ViewComputationCacheKey(UniqueIdentifier.of("Test", "1"), "Default"));
+      assertTrue(store.isMemoryMapped());
+      putGet(store);
+      assertTrue(folder.list().length > 0);
+      store.delete();
+      assertEquals(0, folder.list().length);
+    } finally {
+      FileUtils.deleteDirectory(folder);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testFactorySegmentSizeTooSmall() {
+    new OffHeapBinaryDataStoreFactory().setSegmentSize(OffHeapBinaryDataStore.LENGTH_PREFIX);
+  }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link AdaptiveCycleTrigger} class.
+ */
+@Test
+public class AdaptiveCycleTriggerTest {
+
+  public void noTicks() {
+    final AdaptiveCycleTrigger trigger = new AdaptiveCycleTrigger();
+    assertEquals(Long.MAX_VALUE, trigger.getStartNanos(false, null));
+    assertEquals(Long.MAX_VALUE, trigger.getStartNanos(false, 100L));
+  }
+
+  public void noTargetLatency() {
+    final AdaptiveCycleTrigger trigger = new AdaptiveCycleTrigger();
+    trigger.ticksReceived(1, 1000L);
+    trigger.ticksReceived(2, 2000L);
+    assertEquals(3, trigger.getTicks());
+    assertEquals(1000L, trigger.getStartNanos(false, null));
+    assertEquals(3, trigger.cycleStarted());
+    assertEquals(0, trigger.getTicks());
+  }
+
+  public void coalesceToTargetLatency() {
+    final AdaptiveCycleTrigger trigger = new AdaptiveCycleTrigger();
+    // No history; start at the target latency
+    trigger.ticksReceived(1, 0L);
+    assertEquals(100000000L, trigger.getStartNanos(false, 100L));
+    trigger.cycleStarted();
+    // 40ms delta cycles; start 40ms before the target
+    trigger.cycleCompleted(false, 40000000L);
+    trigger.ticksReceived(1, 1000000000L);
+    assertEquals(1060000000L, trigger.getStartNanos(false, 100L));
+    // Full cycles estimated from the delta cycles until there is history
+    assertEquals(40000000L, trigger.getEstimatedDurationNanos(true));
+    trigger.cycleCompleted(true, 200000000L);
+    assertEquals(200000000L, trigger.getEstimatedDurationNanos(true));
+    // Cycle slower than the target; start immediately
+    assertEquals(1000000000L, trigger.getStartNanos(true, 100L));
+  }
+
+  public void smoothedEstimate() {
+    final AdaptiveCycleTrigger trigger = new AdaptiveCycleTrigger();
+    trigger.cycleCompleted(false, 40000000L);
+    trigger.cycleCompleted(false, 80000000L);
+    assertEquals(50000000L, trigger.getEstimatedDurationNanos(false));
+  }
+
+}
@@ -5,6 +5,7 @@
  */
 package com.opengamma.engine.view.calc;
 
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
@@ -12,6 +13,7 @@ import static org.testng.AssertJUnit.assertTrue;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -206,6 +208,28 @@ public class CancelExecutionTest {
     Assert.fail("Job didn't finish in time available");
   }
 
+  /**
+   * Allow the job to finish, observing completion through the listener rather than {@link Future#get}.
+   */
+  @Test(dataProvider = "executors")
+  public void testJobFinishListener(DependencyGraphExecutorFactory<?> factory) throws Exception {
+    s_logger.info("testJobFinishListener");
+    Future<?> job = executeTestJob(factory);
+    assertTrue(job instanceof DependencyGraphExecutionFuture);
+    final CountDownLatch latch = new CountDownLatch(1);
+    ((DependencyGraphExecutionFuture<?>) job).setListener(new DependencyGraphExecutionFuture.Listener() {
+      @Override
+      public void graphCompleted(String calculationConfiguration) {
+        assertEquals("Default", calculationConfiguration);
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(JOB_FINISH_TIME * 2, TimeUnit.MILLISECONDS));
+    assertTrue(jobFinished());
+    assertTrue(job.isDone());
+    assertFalse(job.isCancelled());
+  }
+
   /**
    * Call {@link Future#cancel} before the job finishes, with interrupt enabled.
    */
@@ -9,11 +9,18 @@ import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 
 import javax.time.Instant;
 
@@ -114,7 +121,11 @@ public class MultipleNodeExecutorTest {
   }
 
   private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency) {
-    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0)) {
+    return createExecutor(minimum, maximum, concurrency, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0));
+  }
+
+  private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache) {
+    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, functionCosts, cache) {
 
       @Override
       protected long getFunctionInitId() {
@@ -524,4 +535,74 @@ public class MultipleNodeExecutorTest {
     assertEquals(7, mask);
   }
 
+  private static Set<Set<DependencyNode>> getFragmentNodes(final RootGraphFragment root) {
+    final Set<Set<DependencyNode>> nodes = new HashSet<Set<DependencyNode>>();
+    final LinkedList<GraphFragment> fragments = new LinkedList<GraphFragment>();
+    fragments.add(root);
+    while (!fragments.isEmpty()) {
+      final GraphFragment fragment = fragments.removeFirst();
+      nodes.add(new HashSet<DependencyNode>(fragment.getNodes()));
+      fragments.addAll(fragment.getInputFragments());
+    }
+    return nodes;
+  }
+
+  private static ExecutionPlan serialize(final ExecutionPlan plan) throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(plan);
+    out.close();
+    return (ExecutionPlan) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+  }
+
+  /**
+   * Plan description restored against a structurally identical graph.
+   */
+  public void testRestoreExecutionPlan() throws Exception {
+    final ExecutionPlanCache cache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0);
+    MultipleNodeExecutor executor = createExecutor(2, 2, 0, new FunctionCosts(), cache);
+    final RootGraphFragment root = executor.createExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final ExecutionPlan plan = serialize(ExecutionPlan.of(cache, root));
+    assertTrue(plan.isCompatible(executor));
+    assertFalse(plan.isCompatible(createExecutor(2, 3, 0)));
+    final Set<DependencyNode> previousNodes = new HashSet<DependencyNode>(Arrays.asList(_testNode));
+    // Same structure, new node instances
+    createGraph();
+    executor = createExecutor(2, 2, 0, new FunctionCosts(), cache);
+    assertEquals(cache.getFingerprint(root.getContext().getGraph()).getFirst(), cache.getFingerprint(_testGraph).getFirst());
+    final RootGraphFragment restored = plan.restore(cache, new GraphFragmentContext(executor, _testGraph), DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final Set<Set<DependencyNode>> fragments = getFragmentNodes(restored);
+    assertEquals(getFragmentNodes(root).size(), fragments.size());
+    for (Set<DependencyNode> fragment : fragments) {
+      for (DependencyNode node : fragment) {
+        assertFalse(previousNodes.contains(node));
+      }
+    }
+    assertTrue(fragments.contains(new HashSet<DependencyNode>(Arrays.asList(_testNode[0], _testNode[1]))));
+    assertTrue(fragments.contains(new HashSet<DependencyNode>(Arrays.asList(_testNode[3], _testNode[4]))));
+    assertTrue(fragments.contains(Collections.singleton(_testNode[2])));
+    // N3 -> N4 is internal to the fragment
+    for (GraphFragment fragment : restored.getInputFragments()) {
+      if (fragment.getNodes().contains(_testNode[3])) {
+        final CacheSelectHint hint = fragment.createCalculationJob().getCacheSelectHint();
+        assertTrue(hint.isPrivateValue(_testValue34));
+        assertFalse(hint.isPrivateValue(_testValue4x));
+      }
+    }
+  }
+
+  /**
+   * Plan description invalidated by a change in function costs.
+   */
+  public void testExecutionPlanCostDrift() {
+    final FunctionCosts functionCosts = new FunctionCosts();
+    final ExecutionPlanCache cache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0);
+    final MultipleNodeExecutor executor = createExecutor(2, 2, 0, functionCosts, cache);
+    final RootGraphFragment root = executor.createExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    final ExecutionPlan plan = ExecutionPlan.of(cache, root);
+    assertEquals(0d, plan.getFunctionCosts().getDrift(functionCosts.getStatistics("Default")), 0d);
+    functionCosts.functionInvoked("Default", MockFunction.UNIQUE_ID, 100, 100 * 1000d, 1d, 1d);
+    assertTrue(plan.getFunctionCosts().getDrift(functionCosts.getStatistics("Default")) > ExecutionPlanCache.DEFAULT_COST_DRIFT_THRESHOLD);
+  }
+
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
+import com.opengamma.engine.view.calc.stats.TotallingGraphStatisticsGathererProvider;
+import com.opengamma.engine.view.calcnode.stats.TotallingNodeStatisticsGatherer;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the adaptive mode of {@link MultipleNodeExecutorTuner}.
+ */
+@Test
+public class MultipleNodeExecutorTunerTest {
+
+  private MultipleNodeExecutorTuner createTuner(final MultipleNodeExecutorFactory factory) {
+    final TotallingNodeStatisticsGatherer nodeStatistics = new TotallingNodeStatisticsGatherer();
+    // 1ms non-execution time per job
+    for (int i = 0; i < 10; i++) {
+      nodeStatistics.jobCompleted("Node", 10, 9000000L, 10000000L);
+    }
+    final TotallingGraphStatisticsGathererProvider graphStatistics = new TotallingGraphStatisticsGathererProvider();
+    final GraphExecutorStatisticsGatherer gatherer = graphStatistics.getStatisticsGatherer(UniqueIdentifier.of("View", "1"));
+    // 80ms execution time per graph, 0.1ms estimated cost per item
+    gatherer.graphProcessed("Default", 10, 10, 1000000d, 0d);
+    gatherer.graphExecuted("Default", 100, 80000000L, 50000000L);
+    final MultipleNodeExecutorTuner tuner = new MultipleNodeExecutorTuner(factory);
+    tuner.setJobDispatchStatistics(nodeStatistics);
+    tuner.setGraphExecutionStatistics(graphStatistics);
+    tuner.setTargetOverheadFraction(0.5);
+    tuner.setJobsPerNode(2);
+    return tuner;
+  }
+
+  public void testNotAdaptive() {
+    final MultipleNodeExecutorFactory factory = new MultipleNodeExecutorFactory();
+    final MultipleNodeExecutorTuner tuner = createTuner(factory);
+    tuner.run();
+    assertEquals(1, factory.getMinimumJobCost());
+    assertEquals(Long.MAX_VALUE, factory.getMaximumJobCost());
+    assertEquals(0, tuner.getAdjustments());
+  }
+
+  public void testAdaptive() {
+    final MultipleNodeExecutorFactory factory = new MultipleNodeExecutorFactory();
+    final MultipleNodeExecutorTuner tuner = createTuner(factory);
+    tuner.setAdaptive(true);
+    tuner.run();
+    assertEquals(1000000d, tuner.getMeasuredJobOverhead());
+    assertEquals(100000d, tuner.getMeasuredItemCost());
+    // Overhead is half of the minimum job duration
+    assertEquals(1000000L, factory.getMinimumJobCost());
+    // The graph splits into at least two jobs
+    assertEquals(40000000L, factory.getMaximumJobCost());
+    assertEquals(5, factory.getMinimumJobItems());
+    assertEquals(800, factory.getMaximumJobItems());
+    assertEquals(1, tuner.getAdjustments());
+    // Decayed statistics give the same limits, so no further adjustment
+    tuner.run();
+    assertEquals(1, tuner.getAdjustments());
+  }
+
+  public void testAdaptiveDamping() {
+    final MultipleNodeExecutorFactory factory = new MultipleNodeExecutorFactory();
+    factory.setMinimumJobCost(3000000L);
+    factory.setMaximumJobCost(40000000L);
+    final MultipleNodeExecutorTuner tuner = createTuner(factory);
+    tuner.setAdaptive(true);
+    tuner.setAdaptionGain(0.5);
+    tuner.run();
+    assertEquals(2000000L, factory.getMinimumJobCost());
+    assertEquals(40000000L, factory.getMaximumJobCost());
+  }
+
+}
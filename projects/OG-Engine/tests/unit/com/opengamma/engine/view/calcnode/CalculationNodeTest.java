@@ -8,13 +8,27 @@ package com.opengamma.engine.view.calcnode;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
 import org.testng.annotations.Test;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.EmptyFunctionParameters;
 import com.opengamma.engine.test.CalculationNodeUtils;
 import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.test.TestCalculationNode;
 import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.cache.ViewComputationCache;
+import com.opengamma.id.UniqueIdentifier;
 
 /**
  * Tests the {@link AbstractCalculationNode} class. Note the name so that Clover doesn't ignore it.
@@ -59,4 +73,76 @@ public class CalculationNodeTest {
     assertEquals("Nothing we care about", cache.getValue(mockFunction.getResultSpec()));
   }
 
+  public void mockFunctionInvocationPrefetchedInputs() throws InterruptedException {
+    MockFunction mockFunction = CalculationNodeUtils.getMockFunction();
+    TestCalculationNode calcNode = CalculationNodeUtils.getTestCalcNode(mockFunction);
+    calcNode.setPrefetchInputs(true);
+    final InputValueCache inputValueCache = new InputValueCache(1024 * 1024);
+    calcNode.setInputValueCache(inputValueCache);
+    CalculationJob calcJob = CalculationNodeUtils.getCalculationJob(mockFunction);
+    
+    ValueSpecification inputSpec = mockFunction.getRequirements().iterator ().next ();
+    ComputedValue inputValue = new ComputedValue(inputSpec, "Just an input object");
+    
+    ViewComputationCache cache = calcNode.getCache(calcJob.getSpecification());
+    cache.putSharedValue(inputValue);
+    
+    CalculationJobResult jobResult = calcNode.executeJob(calcJob);
+    assertEquals(InvocationResult.SUCCESS, jobResult.getResultItems().get(0).getResult());
+    assertEquals(0, inputValueCache.getHits());
+    assertEquals("Just an input object", inputValueCache.get(calcJob.getSpecification(), inputSpec));
+    final long hits = inputValueCache.getHits();
+    final long misses = inputValueCache.getMisses();
+    // The second execution prefetches the input from the node's cache, and the item uses the prefetched value
+    jobResult = calcNode.executeJob(CalculationNodeUtils.getCalculationJob(mockFunction));
+    assertEquals(InvocationResult.SUCCESS, jobResult.getResultItems().get(0).getResult());
+    assertEquals(hits + 1, inputValueCache.getHits());
+    assertEquals(misses, inputValueCache.getMisses());
+  }
+
+  public void mockFunctionInvocationParallelItems() throws InterruptedException {
+    MockFunction mockFunction = CalculationNodeUtils.getMockFunction();
+    TestCalculationNode calcNode = CalculationNodeUtils.getTestCalcNode(mockFunction);
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      calcNode.setItemExecutorService(executor);
+      calcNode.setItemParallelism(4);
+      final CalculationJobItem jobItem = CalculationNodeUtils.getCalculationJob(mockFunction).getJobItems().get(0);
+      final CalculationJobSpecification jobSpec = new CalculationJobSpecification(UniqueIdentifier.of("Test", "ViewProcess"), CalculationNodeUtils.CALC_CONF_NAME, Instant.now(), 1L);
+      final CalculationJob calcJob = new CalculationJob(jobSpec, 0L, null, Arrays.asList(jobItem, jobItem, jobItem), CacheSelectHint.allShared());
+      ValueSpecification inputSpec = mockFunction.getRequirements().iterator().next();
+      ViewComputationCache cache = calcNode.getCache(calcJob.getSpecification());
+      cache.putSharedValue(new ComputedValue(inputSpec, "Just an input object"));
+      CalculationJobResult jobResult = calcNode.executeJob(calcJob);
+      assertNotNull(jobResult);
+      assertEquals(3, jobResult.getResultItems().size());
+      for (CalculationJobResultItem resultItem : jobResult.getResultItems()) {
+        assertEquals(jobItem, resultItem.getItem());
+        assertEquals(InvocationResult.SUCCESS, resultItem.getResult());
+      }
+      assertEquals("Nothing we care about", cache.getValue(mockFunction.getResultSpec()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static CalculationJobItem createItem(final ComputationTargetSpecification target, final String input, final String output) {
+    final ValueRequirement outputRequirement = new ValueRequirement(output, target);
+    return new CalculationJobItem("Function", new EmptyFunctionParameters(), target, (input != null) ? Collections.singleton(new ValueSpecification(new ValueRequirement(input, target),
+        "Function")) : Collections.<ValueSpecification>emptySet(), Collections.singleton(outputRequirement));
+  }
+
+  public void dependencyLevels() {
+    final ComputationTargetSpecification target = new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "1"));
+    final CalculationJobItem a = createItem(target, null, "A");
+    final CalculationJobItem b = createItem(target, "A", "B");
+    final CalculationJobItem c = createItem(target, "X", "C");
+    final CalculationJobItem d = createItem(target, "B", "D");
+    final int[] levels = AbstractCalculationNode.getDependencyLevels(Arrays.asList(a, b, c, d));
+    assertEquals(0, levels[0]);
+    assertEquals(1, levels[1]);
+    assertEquals(0, levels[2]);
+    assertEquals(2, levels[3]);
+  }
+
 }
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import javax.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the {@link InputValueCache} class.
+ */
+@Test
+public class InputValueCacheTest {
+
+  private static final ComputationTargetSpecification TARGET = new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "1"));
+
+  private static CalculationJobSpecification job(final String viewProcess, final String cycle) {
+    return new CalculationJobSpecification(UniqueIdentifier.of("Cycle", viewProcess, cycle), "Default", Instant.now(), 1L);
+  }
+
+  private static ValueSpecification value(final String name) {
+    return new ValueSpecification(new ValueRequirement(name, TARGET), "Function");
+  }
+
+  public void testLeastRecentlyUsedDiscarded() {
+    final InputValueCache cache = new InputValueCache(200);
+    final CalculationJobSpecification job = job("A", "1");
+    cache.put(job, value("X"), "X", 100);
+    cache.put(job, value("Y"), "Y", 100);
+    assertEquals("X", cache.get(job, value("X")));
+    cache.put(job, value("Z"), "Z", 100);
+    assertEquals("X", cache.get(job, value("X")));
+    assertNull(cache.get(job, value("Y")));
+    assertEquals("Z", cache.get(job, value("Z")));
+    assertEquals(200, cache.getSize());
+  }
+
+  public void testEarlierCycleDiscarded() {
+    final InputValueCache cache = new InputValueCache(1024);
+    cache.put(job("A", "1"), value("X"), "A1", 100);
+    cache.put(job("A", "1"), value("Y"), "A1", 100);
+    cache.put(job("B", "1"), value("X"), "B1", 100);
+    assertEquals(300, cache.getSize());
+    // The next cycle of view process A discards everything from its first cycle, but not from other view processes
+    assertNull(cache.get(job("A", "2"), value("X")));
+    assertEquals(100, cache.getSize());
+    assertEquals("B1", cache.get(job("B", "1"), value("X")));
+    cache.put(job("A", "2"), value("X"), "A2", 100);
+    assertEquals("A2", cache.get(job("A", "2"), value("X")));
+    assertEquals(200, cache.getSize());
+  }
+
+}
@@ -28,6 +28,8 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.engine.view.calcnode.stats.CalculationNodeStatistics;
+import com.opengamma.engine.view.calcnode.stats.TotallingNodeStatisticsGatherer;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.Cancellable;
 import com.opengamma.util.test.Timeout;
@@ -430,4 +432,147 @@ public class JobDispatcherTest {
     assertTrue (blockingInvoker.isCancelled ());
   }
 
+  /**
+   * Invoker that runs one job at a time, holding it until completed by the test.
+   */
+  private class HoldingJobInvoker extends AbstractJobInvoker {
+
+    private CalculationJob _job;
+    private JobInvocationReceiver _receiver;
+    private JobInvokerRegister _callback;
+    private int _completed;
+
+    public HoldingJobInvoker(final String nodeId) {
+      super(nodeId);
+    }
+
+    @Override
+    public synchronized boolean invoke(final CalculationJob job, final JobInvocationReceiver receiver) {
+      if (_job != null) {
+        return false;
+      }
+      _job = job;
+      _receiver = receiver;
+      return true;
+    }
+
+    @Override
+    public synchronized boolean notifyWhenAvailable(final JobInvokerRegister callback) {
+      _callback = callback;
+      return false;
+    }
+
+    public void complete() {
+      final CalculationJob job;
+      final JobInvocationReceiver receiver;
+      final JobInvokerRegister callback;
+      synchronized (this) {
+        job = _job;
+        receiver = _receiver;
+        callback = _callback;
+        _job = null;
+        _receiver = null;
+        _callback = null;
+        _completed++;
+      }
+      receiver.jobCompleted(createTestJobResult(job.getSpecification(), 0L, getInvokerId()));
+      if (callback != null) {
+        callback.registerJobInvoker(this);
+      }
+    }
+
+    public synchronized boolean isHolding() {
+      return _job != null;
+    }
+
+  }
+
+  @Test
+  public void testWorkStealing() {
+    s_logger.info("testWorkStealing");
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    final TotallingNodeStatisticsGatherer statistics = new TotallingNodeStatisticsGatherer();
+    jobDispatcher.setStatisticsGatherer(statistics);
+    jobDispatcher.setWorkStealing(true);
+    final HoldingJobInvoker slow = new HoldingJobInvoker("Slow");
+    final HoldingJobInvoker fast = new HoldingJobInvoker("Fast");
+    jobDispatcher.registerJobInvoker(slow);
+    jobDispatcher.registerJobInvoker(fast);
+    final TestJobResultReceiver[] resultReceivers = new TestJobResultReceiver[6];
+    for (int i = 0; i < resultReceivers.length; i++) {
+      jobDispatcher.dispatchJob(createTestJob(), resultReceivers[i] = new TestJobResultReceiver());
+    }
+    // One job running and two queued at each invoker; the fast one works through its own queue then the slow one's
+    for (int i = 0; i < 5; i++) {
+      assertTrue(fast.isHolding());
+      fast.complete();
+    }
+    assertTrue(slow.isHolding());
+    assertTrue(!fast.isHolding());
+    slow.complete();
+    for (TestJobResultReceiver resultReceiver : resultReceivers) {
+      assertNotNull(resultReceiver.getResult());
+    }
+    assertEquals(1, slow._completed);
+    assertEquals(5, fast._completed);
+    long stolen = 0;
+    for (CalculationNodeStatistics nodeStatistics : statistics.getNodeStatistics()) {
+      if (fast.getInvokerId().equals(nodeStatistics.getNodeId())) {
+        stolen = nodeStatistics.getStolenJobs();
+      }
+    }
+    assertEquals(2, stolen);
+  }
+
+  @Test
+  public void testUnregisterRedispatchesQueue() {
+    s_logger.info("testUnregisterRedispatchesQueue");
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    jobDispatcher.setWorkStealing(true);
+    final HoldingJobInvoker dead = new HoldingJobInvoker("Dead");
+    final HoldingJobInvoker live = new HoldingJobInvoker("Live");
+    jobDispatcher.registerJobInvoker(dead);
+    jobDispatcher.registerJobInvoker(live);
+    final TestJobResultReceiver[] resultReceivers = new TestJobResultReceiver[6];
+    for (int i = 0; i < resultReceivers.length; i++) {
+      jobDispatcher.dispatchJob(createTestJob(), resultReceivers[i] = new TestJobResultReceiver());
+    }
+    // The two jobs queued for the dead invoker must be run by the live one; the one it accepted is its own to fail
+    jobDispatcher.unregisterJobInvoker(dead);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(live.isHolding());
+      live.complete();
+    }
+    assertTrue(!live.isHolding());
+    int results = 0;
+    for (TestJobResultReceiver resultReceiver : resultReceivers) {
+      if (resultReceiver.getResult() != null) {
+        results++;
+      }
+    }
+    assertEquals(5, results);
+    assertEquals(5, live._completed);
+  }
+
+  @Test
+  public void testQueuedJobTimeout() {
+    s_logger.info("testQueuedJobTimeout");
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    jobDispatcher.setWorkStealing(true);
+    jobDispatcher.setMaxJobExecutionTime(TIMEOUT);
+    jobDispatcher.setMaxJobAttempts(1);
+    final HoldingJobInvoker stuck = new HoldingJobInvoker("Stuck");
+    jobDispatcher.registerJobInvoker(stuck);
+    final TestJobResultReceiver[] resultReceivers = new TestJobResultReceiver[3];
+    for (int i = 0; i < resultReceivers.length; i++) {
+      jobDispatcher.dispatchJob(createTestJob(), resultReceivers[i] = new TestJobResultReceiver());
+    }
+    // One job running and two queued; all must fail rather than wait for the invoker forever
+    for (TestJobResultReceiver resultReceiver : resultReceivers) {
+      final CalculationJobResult jobResult = resultReceiver.waitForResult(3 * TIMEOUT);
+      assertNotNull(jobResult);
+      assertEquals(jobDispatcher.getJobFailureNodeId(), jobResult.getComputeNodeId());
+    }
+  }
+
 }
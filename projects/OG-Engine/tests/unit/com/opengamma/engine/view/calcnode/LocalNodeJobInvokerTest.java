@@ -72,5 +72,10 @@ public class LocalNodeJobInvokerTest {
     public void registerJobInvoker(final JobInvoker invoker) {
       _invoker = invoker;
     }
+
+    @Override
+    public void unregisterJobInvoker(final JobInvoker invoker) {
+      _invoker = null;
+    }
   }
 }
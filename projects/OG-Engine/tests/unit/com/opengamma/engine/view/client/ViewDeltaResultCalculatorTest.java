@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.client;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.InMemoryViewComputationResultModel;
+import com.opengamma.engine.view.NumberDeltaComparer;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.engine.view.ViewDeltaResultModel;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests {@link ViewDeltaResultCalculator}.
+ */
+@Test
+public class ViewDeltaResultCalculatorTest {
+
+  private static final String CONFIG_1 = "config1";
+  private static final String CONFIG_2 = "config2";
+  private static final String[] VALUE_NAMES = new String[] {"Value1", "Value2", "Value3" };
+
+  private ViewDefinition createViewDefinition() {
+    final ViewDefinition viewDefinition = new ViewDefinition("Test", "User");
+    final ViewCalculationConfiguration config1 = new ViewCalculationConfiguration(viewDefinition, CONFIG_1);
+    config1.getDeltaDefinition().setNumberComparer(new NumberDeltaComparer(2));
+    viewDefinition.addViewCalculationConfiguration(config1);
+    viewDefinition.addViewCalculationConfiguration(new ViewCalculationConfiguration(viewDefinition, CONFIG_2));
+    return viewDefinition;
+  }
+
+  private ComputedValue getComputedValue(final int target, final String valueName, final Object value) {
+    final ValueRequirement valueRequirement = new ValueRequirement(valueName, ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Scheme", Integer.toString(target)));
+    return new ComputedValue(new ValueSpecification(valueRequirement, "FunctionId"), value);
+  }
+
+  private InMemoryViewComputationResultModel createResult(final int targets, final int cycle) {
+    final InMemoryViewComputationResultModel result = new InMemoryViewComputationResultModel();
+    result.setCalculationConfigurationNames(Arrays.asList(CONFIG_1, CONFIG_2));
+    for (int i = 0; i < targets; i++) {
+      for (int j = 0; j < VALUE_NAMES.length; j++) {
+        // Some values change each cycle, some only beyond the comparer's precision, and the rest not at all
+        final double value = ((i + j) % 3 == 0) ? i + cycle : ((i + j) % 3 == 1) ? i + cycle * 0.0001 : i;
+        result.addValue(CONFIG_1, getComputedValue(i, VALUE_NAMES[j], value));
+        result.addValue(CONFIG_2, getComputedValue(i, VALUE_NAMES[j], value));
+      }
+    }
+    return result;
+  }
+
+  public void testFirstResult() {
+    final InMemoryViewComputationResultModel result = createResult(10, 0);
+    final ViewDeltaResultModel delta = ViewDeltaResultCalculator.computeDeltaModel(createViewDefinition(), null, result);
+    assertEquals(result.getAllResults(), delta.getAllResults());
+  }
+
+  public void testDelta() {
+    final ViewDeltaResultModel delta = ViewDeltaResultCalculator.computeDeltaModel(createViewDefinition(), createResult(10, 0), createResult(10, 1));
+    // CONFIG_1 ignores changes beyond two decimal places, CONFIG_2 compares exactly
+    int config1 = 0;
+    int config2 = 0;
+    for (int i = 0; i < delta.getAllResults().size(); i++) {
+      if (CONFIG_1.equals(delta.getAllResults().get(i).getCalculationConfiguration())) {
+        config1++;
+      } else {
+        config2++;
+      }
+    }
+    assertEquals(10, config1);
+    assertEquals(20, config2);
+  }
+
+  public void testParallelMatchesSerial() {
+    final ViewDefinition viewDefinition = createViewDefinition();
+    final InMemoryViewComputationResultModel previousResult = createResult(5000, 0);
+    final InMemoryViewComputationResultModel result = createResult(5000, 1);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final ViewDeltaResultModel serial = ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result);
+      final ViewDeltaResultModel parallel = ViewDeltaResultCalculator.computeDeltaModel(viewDefinition, previousResult, result, executor);
+      assertEquals(serial.getAllResults(), parallel.getAllResults());
+      assertEquals(serial.getAllTargets(), parallel.getAllTargets());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.PositionSource;
+import com.opengamma.core.position.Trade;
+import com.opengamma.core.position.impl.PortfolioImpl;
+import com.opengamma.core.position.impl.PortfolioNodeImpl;
+import com.opengamma.core.position.impl.PositionImpl;
+import com.opengamma.core.security.Security;
+import com.opengamma.engine.CachingComputationTargetResolver;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.DefaultComputationTargetResolver;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.AbstractFunction;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
+import com.opengamma.engine.function.CompiledFunctionService;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
+import com.opengamma.engine.marketdata.InMemoryLKVMarketDataProvider;
+import com.opengamma.engine.test.MockSecurity;
+import com.opengamma.engine.test.MockSecuritySource;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ResultOutputMode;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.ObjectIdentifier;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests that incrementally compiled graphs, grafted by {@link DependencyGraphGrafter}, match a full compilation.
+ */
+@Test
+public class DependencyGraphGrafterTest {
+
+  private static final String VALUE = "Value";
+  private static final UniqueIdentifier PORTFOLIO = UniqueIdentifier.of("Port", "1");
+  private static final UniqueIdentifier ROOT = UniqueIdentifier.of("Node", "Root", "1");
+  private static final UniqueIdentifier CHILD = UniqueIdentifier.of("Node", "Child", "1");
+  private static final UniqueIdentifier POSITION_1 = UniqueIdentifier.of("Pos", "1", "1");
+  private static final UniqueIdentifier POSITION_2 = UniqueIdentifier.of("Pos", "2", "1");
+  private static final UniqueIdentifier POSITION_3 = UniqueIdentifier.of("Pos", "3", "1");
+  private static final Security SECURITY_1 = new MockSecurity(UniqueIdentifier.of("Sec", "1", "1"), "1", "EQUITY", IdentifierBundle.EMPTY);
+  private static final Security SECURITY_2 = new MockSecurity(UniqueIdentifier.of("Sec", "2", "1"), "2", "EQUITY", IdentifierBundle.EMPTY);
+  private static final Security SECURITY_3 = new MockSecurity(UniqueIdentifier.of("Sec", "3", "1"), "3", "EQUITY", IdentifierBundle.EMPTY);
+
+  /**
+   * A position source holding every version of the positions it has been given.
+   */
+  private static class VersionedPositionSource implements PositionSource {
+
+    private final Map<UniqueIdentifier, PortfolioNode> _nodes = new HashMap<UniqueIdentifier, PortfolioNode>();
+    private final Map<UniqueIdentifier, Position> _positions = new HashMap<UniqueIdentifier, Position>();
+    private Portfolio _portfolio;
+
+    public void setPortfolio(final Portfolio portfolio) {
+      _portfolio = portfolio;
+      index(portfolio.getRootNode());
+    }
+
+    private void index(final PortfolioNode node) {
+      _nodes.put(node.getUniqueId(), node);
+      for (Position position : node.getPositions()) {
+        _positions.put(position.getUniqueId(), position);
+      }
+      for (PortfolioNode child : node.getChildNodes()) {
+        index(child);
+      }
+    }
+
+    @Override
+    public Portfolio getPortfolio(final UniqueIdentifier uniqueId) {
+      return PORTFOLIO.equals(uniqueId) ? _portfolio : null;
+    }
+
+    @Override
+    public PortfolioNode getPortfolioNode(final UniqueIdentifier uniqueId) {
+      return _nodes.get(uniqueId);
+    }
+
+    @Override
+    public Position getPosition(final UniqueIdentifier uniqueId) {
+      return _positions.get(uniqueId);
+    }
+
+    @Override
+    public Trade getTrade(final UniqueIdentifier uniqueId) {
+      return null;
+    }
+
+  }
+
+  /**
+   * Resolves targets without caching, so that each version of a portfolio node is seen.
+   */
+  private static class NonCachingTargetResolver extends DefaultComputationTargetResolver implements CachingComputationTargetResolver {
+
+    public NonCachingTargetResolver(final PositionSource positionSource) {
+      super(new MockSecuritySource(), positionSource);
+    }
+
+    @Override
+    public void cachePositions(final Collection<Position> positions) {
+    }
+
+    @Override
+    public void cacheSecurities(final Collection<Security> securities) {
+    }
+
+    @Override
+    public void cachePortfolioNodeHierarchy(final PortfolioNode root) {
+    }
+
+    @Override
+    public void cacheTrades(final Collection<Trade> trades) {
+    }
+
+  }
+
+  private abstract static class ValueFunction extends AbstractFunction.NonCompiledInvoker {
+
+    private final ComputationTargetType _targetType;
+
+    public ValueFunction(final ComputationTargetType targetType) {
+      _targetType = targetType;
+    }
+
+    @Override
+    public ComputationTargetType getTargetType() {
+      return _targetType;
+    }
+
+    @Override
+    public boolean canApplyTo(final FunctionCompilationContext context, final ComputationTarget target) {
+      return target.getType() == _targetType;
+    }
+
+    @Override
+    public Set<ValueSpecification> getResults(final FunctionCompilationContext context, final ComputationTarget target) {
+      return Collections.singleton(new ValueSpecification(VALUE, target.toSpecification(), createValueProperties().get()));
+    }
+
+    @Override
+    public Set<ComputedValue> execute(final FunctionExecutionContext executionContext, final FunctionInputs inputs, final ComputationTarget target,
+        final Set<ValueRequirement> desiredValues) {
+      return null;
+    }
+
+  }
+
+  private static class PositionValueFunction extends ValueFunction {
+
+    public PositionValueFunction() {
+      super(ComputationTargetType.POSITION);
+    }
+
+    @Override
+    public String getShortName() {
+      return "PositionValue";
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(final FunctionCompilationContext context, final ComputationTarget target, final ValueRequirement desiredValue) {
+      return Collections.emptySet();
+    }
+
+  }
+
+  /**
+   * Sums the values of the positions and nodes directly beneath a node, recording the nodes it has been resolved for.
+   */
+  private static class NodeValueFunction extends ValueFunction {
+
+    private final Set<UniqueIdentifier> _resolved = Collections.synchronizedSet(new HashSet<UniqueIdentifier>());
+
+    public NodeValueFunction() {
+      super(ComputationTargetType.PORTFOLIO_NODE);
+    }
+
+    @Override
+    public String getShortName() {
+      return "NodeValue";
+    }
+
+    @Override
+    public Set<ValueRequirement> getRequirements(final FunctionCompilationContext context, final ComputationTarget target, final ValueRequirement desiredValue) {
+      _resolved.add(target.getUniqueId());
+      final Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+      for (Position position : target.getPortfolioNode().getPositions()) {
+        requirements.add(new ValueRequirement(VALUE, new ComputationTargetSpecification(ComputationTargetType.POSITION, position.getUniqueId())));
+      }
+      for (PortfolioNode child : target.getPortfolioNode().getChildNodes()) {
+        requirements.add(new ValueRequirement(VALUE, new ComputationTargetSpecification(ComputationTargetType.PORTFOLIO_NODE, child.getUniqueId())));
+      }
+      return requirements;
+    }
+
+    public Set<UniqueIdentifier> getResolved() {
+      return _resolved;
+    }
+
+  }
+
+  private VersionedPositionSource _positionSource;
+  private NodeValueFunction _nodeValueFunction;
+  private ViewCompilationServices _compilationServices;
+  private ViewDefinition _viewDefinition;
+  private ExecutorService _executorService;
+  private Instant _valuationTime;
+
+  @BeforeMethod
+  public void setUp() {
+    _positionSource = new VersionedPositionSource();
+    _nodeValueFunction = new NodeValueFunction();
+    final InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    functionRepo.addFunction(new PositionValueFunction());
+    functionRepo.addFunction(_nodeValueFunction);
+    final FunctionCompilationContext functionCompilationContext = new FunctionCompilationContext();
+    functionCompilationContext.setFunctionInitId(123);
+    final DefaultFunctionResolver functionResolver = new DefaultFunctionResolver(new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(),
+        functionCompilationContext));
+    _executorService = Executors.newSingleThreadExecutor();
+    _compilationServices = new ViewCompilationServices(new InMemoryLKVMarketDataProvider(), functionResolver, functionCompilationContext,
+        new NonCachingTargetResolver(_positionSource), _executorService, new MockSecuritySource(), _positionSource);
+    _viewDefinition = new ViewDefinition("Test", PORTFOLIO, "test");
+    final ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(_viewDefinition, "Default");
+    calcConfig.addPortfolioRequirementName("EQUITY", VALUE);
+    _viewDefinition.addViewCalculationConfiguration(calcConfig);
+    _valuationTime = Instant.now();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    _executorService.shutdown();
+  }
+
+  private static Portfolio createPortfolio(final PositionImpl... childPositions) {
+    final PortfolioNodeImpl root = new PortfolioNodeImpl(ROOT, "Root");
+    root.addPosition(new PositionImpl(POSITION_1, BigDecimal.ONE, SECURITY_1));
+    final PortfolioNodeImpl child = new PortfolioNodeImpl(CHILD, "Child");
+    for (PositionImpl position : childPositions) {
+      child.addPosition(position);
+    }
+    root.addChildNode(child);
+    return new PortfolioImpl(PORTFOLIO, "Portfolio", root);
+  }
+
+  /**
+   * Describes the nodes and terminal outputs of a graph independently of the node instances.
+   */
+  private static Set<List<Object>> describe(final DependencyGraph graph) {
+    final Set<List<Object>> description = new HashSet<List<Object>>();
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      description.add(Arrays.<Object>asList(node.getComputationTarget().toSpecification(), node.getFunction().getFunction().getFunctionDefinition().getUniqueId(),
+          node.getInputValues(), node.getOutputValues(), node.getTerminalOutputValues()));
+    }
+    description.add(Arrays.<Object>asList(graph.getTerminalOutputSpecifications()));
+    return description;
+  }
+
+  /**
+   * Compiles the first portfolio, then incrementally compiles the second and compares that with a full compilation.
+   *
+   * @return the nodes resolved by the incremental compilation
+   */
+  private Set<UniqueIdentifier> assertIncrementalMatchesFull(final Portfolio previous, final Portfolio portfolio, final ObjectIdentifier... changed) {
+    _positionSource.setPortfolio(previous);
+    final CompiledViewDefinitionWithGraphsImpl compiled = ViewDefinitionCompiler.compile(_viewDefinition, _compilationServices, _valuationTime);
+    _positionSource.setPortfolio(portfolio);
+    _nodeValueFunction.getResolved().clear();
+    final CompiledViewDefinitionWithGraphsImpl incremental = ViewDefinitionCompiler.compileIncremental(_viewDefinition, _compilationServices, _valuationTime, compiled,
+        new HashSet<ObjectIdentifier>(Arrays.asList(changed)));
+    final Set<UniqueIdentifier> resolved = new HashSet<UniqueIdentifier>(_nodeValueFunction.getResolved());
+    final CompiledViewDefinitionWithGraphsImpl full = ViewDefinitionCompiler.compile(_viewDefinition, _compilationServices, _valuationTime);
+    assertEquals(describe(full.getDependencyGraph("Default")), describe(incremental.getDependencyGraph("Default")));
+    return resolved;
+  }
+
+  //-------------------------------------------------------------------------
+  public void testPositionAdded() {
+    final Set<UniqueIdentifier> resolved = assertIncrementalMatchesFull(createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2)),
+        createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2), new PositionImpl(POSITION_3, BigDecimal.ONE, SECURITY_3)));
+    assertTrue(resolved.contains(CHILD));
+    assertFalse(resolved.contains(ROOT));
+  }
+
+  public void testPositionRemoved() {
+    final Set<UniqueIdentifier> resolved = assertIncrementalMatchesFull(
+        createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2), new PositionImpl(POSITION_3, BigDecimal.ONE, SECURITY_3)),
+        createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2)));
+    assertTrue(resolved.contains(CHILD));
+    assertFalse(resolved.contains(ROOT));
+  }
+
+  public void testPositionChanged() {
+    final Set<UniqueIdentifier> resolved = assertIncrementalMatchesFull(createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2)),
+        createPortfolio(new PositionImpl(POSITION_2.withVersion("2"), BigDecimal.TEN, SECURITY_2)), POSITION_2.getObjectId());
+    assertTrue(resolved.isEmpty());
+  }
+
+  public void testPositionChangedWithoutPositionOutputs() {
+    // The position values are only needed by the aggregates so must still be added to re-wire them
+    _viewDefinition.getResultModelDefinition().setPositionOutputMode(ResultOutputMode.NONE);
+    final Set<UniqueIdentifier> resolved = assertIncrementalMatchesFull(createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2)),
+        createPortfolio(new PositionImpl(POSITION_2.withVersion("2"), BigDecimal.TEN, SECURITY_2)), POSITION_2.getObjectId());
+    assertTrue(resolved.isEmpty());
+  }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.impl.PortfolioImpl;
+import com.opengamma.core.position.impl.PortfolioNodeImpl;
+import com.opengamma.core.position.impl.PositionImpl;
+import com.opengamma.core.security.Security;
+import com.opengamma.engine.test.MockSecurity;
+import com.opengamma.id.Identifier;
+import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.ObjectIdentifier;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests the incremental change detection in {@link PortfolioCompiler}.
+ */
+@Test
+public class PortfolioCompilerTest {
+
+  private static final UniqueIdentifier ROOT = UniqueIdentifier.of("Node", "Root", "1");
+  private static final UniqueIdentifier CHILD = UniqueIdentifier.of("Node", "Child", "1");
+  private static final UniqueIdentifier POSITION_1 = UniqueIdentifier.of("Pos", "1", "1");
+  private static final UniqueIdentifier POSITION_2 = UniqueIdentifier.of("Pos", "2", "1");
+  private static final Security SECURITY_1 = new MockSecurity(UniqueIdentifier.of("Sec", "1", "1"), "1", "EQUITY", IdentifierBundle.EMPTY);
+  private static final Security SECURITY_2 = new MockSecurity(UniqueIdentifier.of("Sec", "2", "1"), "2", "EQUITY", IdentifierBundle.EMPTY);
+
+  private static Portfolio createPortfolio(final PositionImpl... childPositions) {
+    final PortfolioNodeImpl root = new PortfolioNodeImpl(ROOT, "Root");
+    root.addPosition(new PositionImpl(POSITION_1, BigDecimal.ONE, SECURITY_1));
+    final PortfolioNodeImpl child = new PortfolioNodeImpl(CHILD, "Child");
+    for (PositionImpl position : childPositions) {
+      child.addPosition(position);
+    }
+    root.addChildNode(child);
+    return new PortfolioImpl(UniqueIdentifier.of("Port", "1"), "Portfolio", root);
+  }
+
+  private static Set<UniqueIdentifier> getChangedTargets(final Portfolio previous, final Portfolio portfolio, final Set<ObjectIdentifier> changedIdentifiers) {
+    return PortfolioCompiler.getChangedTargets(previous, portfolio, changedIdentifiers);
+  }
+
+  public void testUnchanged() {
+    final Portfolio previous = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    final Portfolio portfolio = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    assertTrue(getChangedTargets(previous, portfolio, Collections.<ObjectIdentifier>emptySet()).isEmpty());
+  }
+
+  public void testPositionAdded() {
+    final Portfolio previous = createPortfolio();
+    final Portfolio portfolio = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    assertEquals(Sets.newHashSet(CHILD, POSITION_2, SECURITY_2.getUniqueId()), getChangedTargets(previous, portfolio, Collections.<ObjectIdentifier>emptySet()));
+  }
+
+  public void testPositionRemoved() {
+    final Portfolio previous = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    final Portfolio portfolio = createPortfolio();
+    assertEquals(Sets.newHashSet(CHILD, POSITION_2, SECURITY_2.getUniqueId()), getChangedTargets(previous, portfolio, Collections.<ObjectIdentifier>emptySet()));
+  }
+
+  public void testPositionUpdated() {
+    final Portfolio previous = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    final UniqueIdentifier newPosition = POSITION_2.withVersion("2");
+    final Portfolio portfolio = createPortfolio(new PositionImpl(newPosition, BigDecimal.TEN, SECURITY_2));
+    // The node above the position only needs its inputs re-wired
+    assertEquals(Sets.newHashSet(POSITION_2, newPosition, SECURITY_2.getUniqueId()), getChangedTargets(previous, portfolio, Collections.<ObjectIdentifier>emptySet()));
+  }
+
+  public void testSecurityReportedChanged() {
+    final Portfolio previous = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    final Portfolio portfolio = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    final Set<UniqueIdentifier> changed = getChangedTargets(previous, portfolio, Collections.singleton(SECURITY_1.getUniqueId().getObjectId()));
+    // Only the position on the root node references the first security
+    assertEquals(Sets.newHashSet(POSITION_1, SECURITY_1.getUniqueId()), changed);
+  }
+
+  public void testSecurityTypeChanged() {
+    final Portfolio previous = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, SECURITY_2));
+    final Security bond = new MockSecurity(SECURITY_2.getUniqueId().withVersion("2"), "2", "BOND", IdentifierBundle.EMPTY);
+    final Portfolio portfolio = createPortfolio(new PositionImpl(POSITION_2, BigDecimal.ONE, bond));
+    // The requirements on the nodes above depend on the security types beneath them
+    assertEquals(Sets.newHashSet(ROOT, CHILD, POSITION_2, SECURITY_2.getUniqueId(), bond.getUniqueId()),
+        getChangedTargets(previous, portfolio, Collections.<ObjectIdentifier>emptySet()));
+  }
+
+  public void testUnidentifiedPosition() {
+    final Portfolio previous = createPortfolio();
+    final Portfolio portfolio = createPortfolio(new PositionImpl(BigDecimal.ONE, Identifier.of("Sec", "2")));
+    assertNull(getChangedTargets(previous, portfolio, Collections.<ObjectIdentifier>emptySet()));
+  }
+
+}
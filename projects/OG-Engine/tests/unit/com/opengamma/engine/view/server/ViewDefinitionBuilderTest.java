@@ -36,6 +36,7 @@ public class ViewDefinitionBuilderTest {
     ViewDefinition viewDef = new ViewDefinition("Test View", UniqueIdentifier.of("Test Scheme", "Port1"), "someuser");
     viewDef.setMaxDeltaCalculationPeriod(1000L);
     viewDef.setMaxFullCalculationPeriod(60000L);
+    viewDef.setTargetResultLatency(250L);
     viewDef.getResultModelDefinition().setAggregatePositionOutputMode(ResultOutputMode.ALL);
     
     ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDef, "Test config");
@@ -28,6 +28,7 @@ import org.springframework.context.Lifecycle;
 
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.view.ViewProcessorInternal;
+import com.opengamma.id.ObjectIdentifier;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.id.VersionCorrection;
 import com.opengamma.master.VersionedSource;
@@ -53,6 +54,8 @@ public class ViewProcessorManager implements Lifecycle {
   private final Map<NotifyingMaster, VersionedSource> _masterToSource = new HashMap<NotifyingMaster, VersionedSource>();
   private final Map<NotifyingMaster, MasterChangeListener> _masterToListener = new HashMap<NotifyingMaster, MasterChangeListener>();
   private Map<VersionedSource, Instant> _latchInstants = new HashMap<VersionedSource, Instant>();
+  private Map<VersionedSource, Instant> _targetLatchInstants = new HashMap<VersionedSource, Instant>();
+  private List<ObjectIdentifier> _changedTargets = new ArrayList<ObjectIdentifier>();
   private final ReentrantLock _lifecycleLock = new ReentrantLock();
   private final ReentrantLock _changeLock = new ReentrantLock();
   private final ExecutorService _executor = Executors.newCachedThreadPool();
@@ -136,6 +139,8 @@ public class ViewProcessorManager implements Lifecycle {
               public void masterChanged(MasterChanged event) {
                 if (_watchSet.contains(event.getBeforeId())) {
                   ViewProcessorManager.this.onMasterChanged(Instant.now(), source, event.getBeforeId());
+                } else {
+                  ViewProcessorManager.this.onTargetChanged(Instant.now(), source, event);
                 }
               }
             };
@@ -216,27 +221,113 @@ public class ViewProcessorManager implements Lifecycle {
     }
   }
 
-  private void latchSources() {
+  /**
+   * Handles a change to something outside of the watch set, such as a position or security. These do not affect the
+   * functions so they need not be reinitialized, but the view processors are still suspended while the source is
+   * latched to the change so that no cycle sees it part-way through. The view processors are then notified so that
+   * views referencing the changed item can update their compilations.
+   */
+  private void onTargetChanged(final Instant latchInstant, final VersionedSource source, final MasterChanged event) {
+    final List<ObjectIdentifier> changed = new ArrayList<ObjectIdentifier>(2);
+    if (event.getBeforeId() != null) {
+      changed.add(event.getBeforeId().getObjectId());
+    }
+    if (event.getAfterId() != null) {
+      changed.add(event.getAfterId().getObjectId());
+    }
+    s_logger.debug("Change timestamp {} for {} - target change {}", new Object[] {latchInstant, source, changed});
+    _changeLock.lock();
+    try {
+      if (!_latchInstants.isEmpty()) {
+        // A full latch is pending which will pick up this change and cause a full recompilation
+        final Instant previousInstant = _latchInstants.get(source);
+        if ((previousInstant == null) || previousInstant.isBefore(latchInstant)) {
+          _latchInstants.put(source, latchInstant);
+        }
+        return;
+      }
+      if (_targetLatchInstants.isEmpty()) {
+        s_logger.debug("Starting target latching job");
+        _executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            latchTargets();
+          }
+        });
+      } else {
+        s_logger.debug("Target latching job already active");
+      }
+      final Instant previousInstant = _targetLatchInstants.get(source);
+      if ((previousInstant == null) || previousInstant.isBefore(latchInstant)) {
+        _targetLatchInstants.put(source, latchInstant);
+      }
+      _changedTargets.addAll(changed);
+    } finally {
+      _changeLock.unlock();
+    }
+  }
+
+  private List<Runnable> suspendViewProcessors() {
+    final List<Runnable> resumes = new ArrayList<Runnable>(_viewProcessors.size());
+    final List<Future<Runnable>> suspends = new ArrayList<Future<Runnable>>(_viewProcessors.size());
+    s_logger.debug("Suspending view processors");
+    for (ViewProcessorInternal viewProcessor : _viewProcessors) {
+      suspends.add(viewProcessor.suspend(_executor));
+    }
+    while (!suspends.isEmpty()) {
+      final Future<Runnable> future = suspends.remove(suspends.size() - 1);
+      try {
+        resumes.add(future.get(3000, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        s_logger.warn("Timeout waiting for view to suspend");
+        suspends.add(future);
+      } catch (Throwable t) {
+        s_logger.warn("Couldn't suspend view", t);
+      }
+    }
+    return resumes;
+  }
+
+  private void latchTargets() {
     _lifecycleLock.lock();
-    s_logger.info("Begin configuration change");
+    s_logger.info("Begin target change");
     try {
-      final List<Runnable> resumes = new ArrayList<Runnable>(_viewProcessors.size());
-      final List<Future<Runnable>> suspends = new ArrayList<Future<Runnable>>(_viewProcessors.size());
-      s_logger.debug("Suspending view processors");
-      for (ViewProcessorInternal viewProcessor : _viewProcessors) {
-        suspends.add(viewProcessor.suspend(_executor));
+      final List<Runnable> resumes = suspendViewProcessors();
+      final Map<VersionedSource, Instant> latchInstants;
+      final List<ObjectIdentifier> changed;
+      _changeLock.lock();
+      try {
+        latchInstants = _targetLatchInstants;
+        changed = _changedTargets;
+        _targetLatchInstants = new HashMap<VersionedSource, Instant>();
+        _changedTargets = new ArrayList<ObjectIdentifier>();
+      } finally {
+        _changeLock.unlock();
       }
-      while (!suspends.isEmpty()) {
-        final Future<Runnable> future = suspends.remove(suspends.size() - 1);
-        try {
-          resumes.add(future.get(3000, TimeUnit.MILLISECONDS));
-        } catch (TimeoutException e) {
-          s_logger.warn("Timeout waiting for view to suspend");
-          suspends.add(future);
-        } catch (Throwable t) {
-          s_logger.warn("Couldn't suspend view", t);
+      for (Map.Entry<VersionedSource, Instant> entry : latchInstants.entrySet()) {
+        s_logger.debug("Latching {} to {}", entry.getKey(), entry.getValue());
+        entry.getKey().setVersionCorrection(VersionCorrection.ofVersionAsOf(entry.getValue()));
+      }
+      if (!changed.isEmpty()) {
+        for (ViewProcessorInternal viewProcessor : _viewProcessors) {
+          viewProcessor.targetsChanged(changed);
         }
       }
+      s_logger.debug("Resuming view processors");
+      for (Runnable resume : resumes) {
+        resume.run();
+      }
+      s_logger.info("Target change complete");
+    } finally {
+      _lifecycleLock.unlock();
+    }
+  }
+
+  private void latchSources() {
+    _lifecycleLock.lock();
+    s_logger.info("Begin configuration change");
+    try {
+      final List<Runnable> resumes = suspendViewProcessors();
       Map<VersionedSource, Instant> latchInstants;
       _changeLock.lock();
       try {
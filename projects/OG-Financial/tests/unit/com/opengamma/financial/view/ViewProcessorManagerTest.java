@@ -34,6 +34,7 @@ import com.opengamma.engine.view.calc.EngineResourceManager;
 import com.opengamma.engine.view.calc.ViewCycle;
 import com.opengamma.engine.view.client.ViewClient;
 import com.opengamma.engine.view.event.ViewProcessorEventListenerRegistry;
+import com.opengamma.id.ObjectIdentifier;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.id.VersionCorrection;
 import com.opengamma.livedata.UserPrincipal;
@@ -54,6 +55,7 @@ public class ViewProcessorManagerTest {
   private static class MockViewProcessor implements ViewProcessorInternal {
     private final CompiledFunctionService _compiledFunctionService;
     private final LinkedBlockingQueue<Boolean> _suspendState = new LinkedBlockingQueue<Boolean>();
+    private final LinkedBlockingQueue<Collection<ObjectIdentifier>> _targetsChanged = new LinkedBlockingQueue<Collection<ObjectIdentifier>>();
     private boolean _running;
     private boolean _suspended;
 
@@ -95,6 +97,15 @@ public class ViewProcessorManagerTest {
       });
     }
 
+    @Override
+    public void targetsChanged(final Collection<ObjectIdentifier> changedIdentifiers) {
+      _targetsChanged.add(changedIdentifiers);
+    }
+
+    public Collection<ObjectIdentifier> getTargetsChanged(final long timeout) throws InterruptedException {
+      return _targetsChanged.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public synchronized boolean isRunning() {
       return _running;
@@ -246,7 +257,13 @@ public class ViewProcessorManagerTest {
     // Notify it of a change to the master
     Thread.sleep(10);
     changeManger.notifyListenerUnwatchedIdentifier();
-    assertNull(vp.isSuspended(Timeout.standardTimeoutMillis()));
+    // a target change latches the source while the view processors are suspended, without reinitializing functions
+    assertEquals(Boolean.TRUE, vp.isSuspended(Timeout.standardTimeoutMillis()));
+    final Collection<ObjectIdentifier> targetsChanged = vp.getTargetsChanged(Timeout.standardTimeoutMillis());
+    assertNotNull(targetsChanged);
+    assertTrue(targetsChanged.contains(UniqueIdentifier.of("Test", "Unwatched").getObjectId()));
+    assertEquals(Boolean.FALSE, vp.isSuspended(Timeout.standardTimeoutMillis()));
+    assertEquals(initialId, vp.getFunctionCompilationService().getFunctionCompilationContext().getFunctionInitId());
     changeManger.notifyListenerWatchedIdentifier();
     assertEquals(Boolean.TRUE, vp.isSuspended(Timeout.standardTimeoutMillis()));
     VersionCorrection newVersion = source.getVersionCorrection();
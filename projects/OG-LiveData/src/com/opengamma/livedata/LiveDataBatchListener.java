@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata;
+
+import java.util.Collection;
+
+import com.opengamma.util.PublicAPI;
+
+/**
+ * A {@link LiveDataListener} that can receive several market data updates at once.
+ * <p>
+ * When the LiveData client conflates updates, a listener implementing this interface receives each batch of updates
+ * with a single call rather than one call per update, so that it can process them together.
+ */
+@PublicAPI
+public interface LiveDataBatchListener extends LiveDataListener {
+
+  /**
+   * Called when market data updates are received from the LiveData server.
+   * <p>
+   * There is at most one update for each specification in a batch. The same rules apply as to
+   * {@link #valueUpdate(LiveDataValueUpdate)}; <i>this method must execute quickly.</i>
+   *
+   * @param valueUpdates new market data, not empty
+   */
+  void valueUpdates(Collection<LiveDataValueUpdate> valueUpdates);
+
+}
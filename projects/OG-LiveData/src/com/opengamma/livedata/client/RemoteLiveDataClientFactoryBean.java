@@ -5,6 +5,8 @@
  */
 package com.opengamma.livedata.client;
 
+import java.util.concurrent.Executors;
+
 import javax.jms.ConnectionFactory;
 
 import org.springframework.jms.core.JmsTemplate;
@@ -13,6 +15,7 @@ import com.opengamma.livedata.LiveDataClient;
 import com.opengamma.transport.ByteArrayFudgeRequestSender;
 import com.opengamma.transport.jms.JmsByteArrayMessageSender;
 import com.opengamma.transport.jms.JmsByteArrayRequestSender;
+import com.opengamma.util.NamedThreadPoolFactory;
 import com.opengamma.util.SingletonFactoryBean;
 import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
 
@@ -25,6 +28,7 @@ public class RemoteLiveDataClientFactoryBean extends SingletonFactoryBean<LiveDa
   private String _subscriptionTopic;
   private String _entitlementTopic;
   private String _heartbeatTopic;
+  private Long _conflationPeriod;
   
   public void setConnectionFactory(final ConnectionFactory connectionFactory) {
     _connectionFactory = connectionFactory;
@@ -58,6 +62,21 @@ public class RemoteLiveDataClientFactoryBean extends SingletonFactoryBean<LiveDa
     return _heartbeatTopic;
   }
   
+  /**
+   * Sets the period on which updates are conflated and delivered to listeners in batches, see
+   * {@link ValueDistributor#setConflation}. By default updates are not conflated.
+   * 
+   * @param conflationPeriod the period in milliseconds, 0 to deliver each batch as soon as the previous one has
+   * been handled, null to deliver every update as it arrives
+   */
+  public void setConflationPeriod(Long conflationPeriod) {
+    _conflationPeriod = conflationPeriod;
+  }
+  
+  public Long getConflationPeriod() {
+    return _conflationPeriod;
+  }
+  
   @Override
   protected LiveDataClient createObject() {
     final JmsTemplate jmsTemplate = new JmsTemplate();
@@ -81,6 +100,10 @@ public class RemoteLiveDataClientFactoryBean extends SingletonFactoryBean<LiveDa
       JmsByteArrayMessageSender jmsHeartbeatSender = new JmsByteArrayMessageSender(getHeartbeatTopic(), jmsTemplate);
       liveDataClient.setHeartbeatMessageSender(jmsHeartbeatSender);
     }
+    if (getConflationPeriod() != null) {
+      liveDataClient.getValueDistributor().setConflation(
+          Executors.newSingleThreadScheduledExecutor(new NamedThreadPoolFactory("LiveDataConflation", true)), getConflationPeriod());
+    }
     liveDataClient.start();
     return liveDataClient;
   }
@@ -5,26 +5,91 @@
  */
 package com.opengamma.livedata.client;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.livedata.LiveDataBatchListener;
 import com.opengamma.livedata.LiveDataListener;
 import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.LiveDataValueUpdate;
 import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
 
 /**
  * A stand-alone class which distributes live data values to all subscribed
  * {@link LiveDataListener}'s.
  * This is separate from all live data client instances as it needs to be
  * compact to be able to have efficient concurrency.
- *
+ * <p>
+ * By default each update is passed to the listeners on the thread that received it. Alternatively the distributor
+ * can conflate updates: only the latest update for each specification is kept, with the fields of any earlier
+ * update it replaces merged in, and the pending updates are delivered as a batch on an executor. A batch is delivered
+ * either on a fixed cadence or, with a period of zero, as soon as the listeners have finished with the previous one.
+ * Only one batch is delivered at a time, so updates for a specification are still seen in order.
+ * Listeners implementing {@link LiveDataBatchListener} receive each batch with a single call.
  */
 public class ValueDistributor {
+  private static final Logger s_logger = LoggerFactory.getLogger(ValueDistributor.class);
+  
   private final ConcurrentMap<LiveDataSpecification, Set<LiveDataListener>> _listenersBySpec =
     new ConcurrentHashMap<LiveDataSpecification, Set<LiveDataListener>>();
   
+  private final Map<LiveDataSpecification, LiveDataValueUpdateBean> _pendingUpdates = new LinkedHashMap<LiveDataSpecification, LiveDataValueUpdateBean>();
+  private boolean _deliveryScheduled;
+  private volatile ScheduledExecutorService _conflationExecutor;
+  private volatile long _conflationPeriod;
+  private final Runnable _delivery = new Runnable() {
+    @Override
+    public void run() {
+      deliverPendingUpdates();
+    }
+  };
+  
+  /**
+   * Switches conflation on or off. Updates already pending are delivered by the previous executor.
+   * 
+   * @param executor the executor to deliver batches of updates on, null to deliver each update on the thread that
+   * received it
+   * @param periodMillis the time between batches in milliseconds, 0 to deliver each batch as soon as the listeners have
+   * finished with the previous one
+   */
+  public void setConflation(ScheduledExecutorService executor, long periodMillis) {
+    ArgumentChecker.isTrue(periodMillis >= 0, "periodMillis must not be negative");
+    _conflationPeriod = periodMillis;
+    _conflationExecutor = executor;
+  }
+  
+  /**
+   * @return the executor batches of updates are delivered on, null if updates are not conflated
+   */
+  public ScheduledExecutorService getConflationExecutor() {
+    return _conflationExecutor;
+  }
+  
+  /**
+   * @return the time between batches of updates in milliseconds
+   */
+  public long getConflationPeriod() {
+    return _conflationPeriod;
+  }
+  
   public Set<LiveDataSpecification> getActiveSpecifications() {
     return new HashSet<LiveDataSpecification>(_listenersBySpec.keySet());
   }
@@ -67,15 +132,144 @@ public class ValueDistributor {
     }
   }
   
-  // TODO kirk 2009-09-29 -- This should be handed an executor service to
-  // invoke the updates asynchronously.
   public void notifyListeners(LiveDataValueUpdateBean updateBean) {
-    Set<LiveDataListener> listeners = _listenersBySpec.get(updateBean.getSpecification());
-    if (listeners == null) {
+    final ScheduledExecutorService executor = _conflationExecutor;
+    if (executor == null) {
+      Set<LiveDataListener> listeners = _listenersBySpec.get(updateBean.getSpecification());
+      if (listeners == null) {
+        return;
+      }
+      for (LiveDataListener listener : listeners) {
+        listener.valueUpdate(updateBean);
+      }
       return;
     }
-    for (LiveDataListener listener : listeners) {
-      listener.valueUpdate(updateBean);
+    synchronized (_pendingUpdates) {
+      final LiveDataValueUpdateBean previous = _pendingUpdates.remove(updateBean.getSpecification());
+      _pendingUpdates.put(updateBean.getSpecification(), (previous != null) ? conflate(previous, updateBean) : updateBean);
+      if (_deliveryScheduled) {
+        return;
+      }
+      _deliveryScheduled = true;
+    }
+    scheduleDelivery(executor);
+  }
+  
+  /**
+   * Merges two updates for the same specification. The fields of the later update replace those of the same name in
+   * the earlier one.
+   */
+  private static LiveDataValueUpdateBean conflate(LiveDataValueUpdateBean earlier, LiveDataValueUpdateBean later) {
+    final FudgeMsg laterFields = later.getFields();
+    final MutableFudgeMsg fields = OpenGammaFudgeContext.getInstance().newMessage();
+    for (FudgeField field : earlier.getFields().getAllFields()) {
+      if ((field.getName() != null) && (laterFields.getByName(field.getName()) == null)) {
+        fields.add(field);
+      }
+    }
+    for (FudgeField field : laterFields.getAllFields()) {
+      fields.add(field);
+    }
+    return new LiveDataValueUpdateBean(later.getSequenceNumber(), later.getSpecification(), fields);
+  }
+  
+  private void scheduleDelivery(ScheduledExecutorService executor) {
+    try {
+      if (_conflationPeriod > 0) {
+        executor.schedule(_delivery, _conflationPeriod, TimeUnit.MILLISECONDS);
+      } else {
+        executor.execute(_delivery);
+      }
+    } catch (RejectedExecutionException e) {
+      s_logger.warn("Conflation executor rejected delivery; delivering on the calling thread", e);
+      _delivery.run();
+    }
+  }
+  
+  private void deliverPendingUpdates() {
+    // Set once the flag has been cleared or passed on to another delivery, so that it is cleared if anything else
+    // (such as an Error from a listener) ends this one; otherwise no further delivery would ever be scheduled
+    boolean handedOff = false;
+    try {
+      while (true) {
+        final List<LiveDataValueUpdateBean> updates;
+        synchronized (_pendingUpdates) {
+          updates = new ArrayList<LiveDataValueUpdateBean>(_pendingUpdates.values());
+          _pendingUpdates.clear();
+        }
+        deliver(updates);
+        final ScheduledExecutorService executor;
+        synchronized (_pendingUpdates) {
+          if (_pendingUpdates.isEmpty()) {
+            _deliveryScheduled = false;
+            handedOff = true;
+            return;
+          }
+          executor = _conflationExecutor;
+        }
+        if (executor != null) {
+          scheduleDelivery(executor);
+          handedOff = true;
+          return;
+        }
+        // Conflation was switched off with updates still pending, so deliver them now
+      }
+    } finally {
+      if (!handedOff) {
+        // Updates that arrived during the failed delivery were not scheduled, as this one was in progress
+        final boolean pending;
+        final ScheduledExecutorService executor;
+        synchronized (_pendingUpdates) {
+          pending = !_pendingUpdates.isEmpty();
+          _deliveryScheduled = pending;
+          executor = _conflationExecutor;
+        }
+        if (pending) {
+          if (executor != null) {
+            scheduleDelivery(executor);
+          } else {
+            deliverPendingUpdates();
+          }
+        }
+      }
+    }
+  }
+  
+  private void deliver(Collection<LiveDataValueUpdateBean> updates) {
+    final Map<LiveDataBatchListener, List<LiveDataValueUpdate>> batches = new LinkedHashMap<LiveDataBatchListener, List<LiveDataValueUpdate>>();
+    for (LiveDataValueUpdateBean update : updates) {
+      final Set<LiveDataListener> actualListeners = _listenersBySpec.get(update.getSpecification());
+      if (actualListeners == null) {
+        continue;
+      }
+      // Listeners are added and removed while batches are delivered, so work from a copy
+      final List<LiveDataListener> listeners;
+      synchronized (actualListeners) {
+        listeners = new ArrayList<LiveDataListener>(actualListeners);
+      }
+      for (LiveDataListener listener : listeners) {
+        if (listener instanceof LiveDataBatchListener) {
+          List<LiveDataValueUpdate> batch = batches.get(listener);
+          if (batch == null) {
+            batch = new ArrayList<LiveDataValueUpdate>();
+            batches.put((LiveDataBatchListener) listener, batch);
+          }
+          batch.add(update);
+        } else {
+          try {
+            listener.valueUpdate(update);
+          } catch (RuntimeException e) {
+            s_logger.error("Error delivering update to " + listener, e);
+          }
+        }
+      }
+    }
+    for (Map.Entry<LiveDataBatchListener, List<LiveDataValueUpdate>> batch : batches.entrySet()) {
+      try {
+        batch.getKey().valueUpdates(batch.getValue());
+      } catch (RuntimeException e) {
+        s_logger.error("Error delivering updates to " + batch.getKey(), e);
+      }
     }
   }
 
@@ -28,6 +28,14 @@ public class FieldNameChange implements NormalizationRule {
     _to = to;
   }
   
+  public String getFrom() {
+    return _from;
+  }
+
+  public String getTo() {
+    return _to;
+  }
+
   @Override
   public MutableFudgeMsg apply(
       MutableFudgeMsg msg,
@@ -0,0 +1,345 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * A compiled form of the leading field-level rules of a {@link NormalizationRuleSet}.
+ * <p>
+ * {@link FieldFilter}, {@link FieldNameChange}, {@link UnitChange} and {@link RequiredFieldFilter} only look at field
+ * names, so each name they mention is given an ordinal when the rule set is created. A raw message is then read in a
+ * single pass into reusable per-thread buffers, each field tagged with its ordinal, and the rules are applied to the
+ * buffers by ordinal rather than by scanning a message for each rule. Only if the message survives all of them is the
+ * output message written, so a rejected message is never copied. The output is the same, field for field and in the
+ * same order, as applying the rules to a copy of the raw message.
+ * <p>
+ * If a unit change meets a value that is not a number, the message is passed through the original rules instead so
+ * that the value is converted in the same way.
+ */
+/* package */final class NormalizationPlan {
+
+  /** Ordinal of a named field that no rule in the plan mentions. */
+  private static final int UNKNOWN = -1;
+  /** Ordinal of a field that has been removed. */
+  private static final int REMOVED = -2;
+
+  private static final int CONTINUE = 0;
+  private static final int REJECT = 1;
+  private static final int FALLBACK = 2;
+
+  /**
+   * Working buffers for one message.
+   */
+  private static final class Fields {
+
+    private int _size;
+    private int[] _ordinals = new int[32];
+    private FudgeField[] _fields = new FudgeField[32];
+    private Object[] _values = new Object[32];
+
+    private void clear() {
+      // Release the references so the buffers don't hold on to the last message
+      for (int i = 0; i < _size; i++) {
+        _fields[i] = null;
+        _values[i] = null;
+      }
+      _size = 0;
+    }
+
+    private void add(final int ordinal, final FudgeField field, final Object value) {
+      if (_size == _ordinals.length) {
+        final int capacity = _size * 2;
+        final int[] ordinals = new int[capacity];
+        System.arraycopy(_ordinals, 0, ordinals, 0, _size);
+        _ordinals = ordinals;
+        final FudgeField[] fields = new FudgeField[capacity];
+        System.arraycopy(_fields, 0, fields, 0, _size);
+        _fields = fields;
+        final Object[] values = new Object[capacity];
+        System.arraycopy(_values, 0, values, 0, _size);
+        _values = values;
+      }
+      _ordinals[_size] = ordinal;
+      _fields[_size] = field;
+      _values[_size] = value;
+      _size++;
+    }
+
+    private int find(final int ordinal) {
+      for (int i = 0; i < _size; i++) {
+        if (_ordinals[i] == ordinal) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private void removeAll(final int ordinal) {
+      for (int i = 0; i < _size; i++) {
+        if (_ordinals[i] == ordinal) {
+          _ordinals[i] = REMOVED;
+        }
+      }
+    }
+
+  }
+
+  private abstract static class Step {
+
+    abstract int apply(Fields fields);
+
+  }
+
+  private static final class Filter extends Step {
+
+    private final boolean[] _accept;
+
+    private Filter(final boolean[] accept) {
+      _accept = accept;
+    }
+
+    @Override
+    int apply(final Fields fields) {
+      boolean accepted = false;
+      for (int i = 0; i < fields._size; i++) {
+        final int ordinal = fields._ordinals[i];
+        if (ordinal >= 0 && _accept[ordinal]) {
+          accepted = true;
+        } else {
+          fields._ordinals[i] = REMOVED;
+        }
+      }
+      return accepted ? CONTINUE : REJECT;
+    }
+
+  }
+
+  private static final class Rename extends Step {
+
+    private final int _from;
+    private final int _to;
+
+    private Rename(final int from, final int to) {
+      _from = from;
+      _to = to;
+    }
+
+    @Override
+    int apply(final Fields fields) {
+      final int index = fields.find(_from);
+      if (index >= 0) {
+        final Object value = fields._values[index];
+        fields.removeAll(_from);
+        fields.add(_to, null, value);
+      }
+      return CONTINUE;
+    }
+
+  }
+
+  private static final class Scale extends Step {
+
+    private final int _field;
+    private final double _multiplier;
+
+    private Scale(final int field, final double multiplier) {
+      _field = field;
+      _multiplier = multiplier;
+    }
+
+    @Override
+    int apply(final Fields fields) {
+      final int index = fields.find(_field);
+      if (index >= 0) {
+        final Object value = fields._values[index];
+        if (!(value instanceof Number)) {
+          return FALLBACK;
+        }
+        fields.removeAll(_field);
+        fields.add(_field, null, ((Number) value).doubleValue() * _multiplier);
+      }
+      return CONTINUE;
+    }
+
+  }
+
+  private static final class Require extends Step {
+
+    private final int[] _required;
+
+    private Require(final int[] required) {
+      _required = required;
+    }
+
+    @Override
+    int apply(final Fields fields) {
+      for (int required : _required) {
+        if (fields.find(required) < 0) {
+          return REJECT;
+        }
+      }
+      return CONTINUE;
+    }
+
+  }
+
+  private final List<NormalizationRule> _rules;
+  private final Map<String, Integer> _ordinals;
+  private final String[] _names;
+  private final Step[] _steps;
+  private final ThreadLocal<Fields> _buffers = new ThreadLocal<Fields>() {
+    @Override
+    protected Fields initialValue() {
+      return new Fields();
+    }
+  };
+
+  private NormalizationPlan(final List<NormalizationRule> rules, final Map<String, Integer> ordinals, final List<Step> steps) {
+    _rules = rules;
+    _ordinals = ordinals;
+    _names = new String[ordinals.size()];
+    for (Map.Entry<String, Integer> ordinal : ordinals.entrySet()) {
+      _names[ordinal.getValue()] = ordinal.getKey();
+    }
+    _steps = steps.toArray(new Step[steps.size()]);
+  }
+
+  /**
+   * Compiles the leading field-level rules of a rule set.
+   *
+   * @param rules the rules of the rule set, not null
+   * @return the plan, or null if the first rule cannot be compiled
+   */
+  public static NormalizationPlan compile(final List<NormalizationRule> rules) {
+    final Map<String, Integer> ordinals = new HashMap<String, Integer>();
+    int count = 0;
+    // Only the exact classes are compiled; a subclass may have changed what the rule does
+    for (NormalizationRule rule : rules) {
+      if (rule.getClass() == FieldFilter.class) {
+        for (String field : ((FieldFilter) rule).getFieldsToAccept()) {
+          ordinal(ordinals, field);
+        }
+      } else if (rule.getClass() == FieldNameChange.class) {
+        ordinal(ordinals, ((FieldNameChange) rule).getFrom());
+        ordinal(ordinals, ((FieldNameChange) rule).getTo());
+      } else if (rule.getClass() == UnitChange.class) {
+        ordinal(ordinals, ((UnitChange) rule).getField());
+      } else if (rule.getClass() == RequiredFieldFilter.class) {
+        for (String field : ((RequiredFieldFilter) rule).getRequiredFieldNames()) {
+          ordinal(ordinals, field);
+        }
+      } else {
+        break;
+      }
+      count++;
+    }
+    if (count == 0) {
+      return null;
+    }
+    final List<Step> steps = new ArrayList<Step>(count);
+    for (NormalizationRule rule : rules.subList(0, count)) {
+      if (rule instanceof FieldFilter) {
+        final boolean[] accept = new boolean[ordinals.size()];
+        for (String field : ((FieldFilter) rule).getFieldsToAccept()) {
+          accept[ordinals.get(field)] = true;
+        }
+        steps.add(new Filter(accept));
+      } else if (rule instanceof FieldNameChange) {
+        steps.add(new Rename(ordinals.get(((FieldNameChange) rule).getFrom()), ordinals.get(((FieldNameChange) rule).getTo())));
+      } else if (rule instanceof UnitChange) {
+        steps.add(new Scale(ordinals.get(((UnitChange) rule).getField()), ((UnitChange) rule).getMultiplier()));
+      } else {
+        final int[] required = new int[((RequiredFieldFilter) rule).getRequiredFieldNames().size()];
+        int i = 0;
+        for (String field : ((RequiredFieldFilter) rule).getRequiredFieldNames()) {
+          required[i++] = ordinals.get(field);
+        }
+        steps.add(new Require(required));
+      }
+    }
+    return new NormalizationPlan(new ArrayList<NormalizationRule>(rules.subList(0, count)), ordinals, steps);
+  }
+
+  private static void ordinal(final Map<String, Integer> ordinals, final String field) {
+    if (!ordinals.containsKey(field)) {
+      ordinals.put(field, ordinals.size());
+    }
+  }
+
+  /**
+   * Returns the number of leading rules of the rule set the plan replaces.
+   *
+   * @return the number of rules
+   */
+  public int getRuleCount() {
+    return _rules.size();
+  }
+
+  /**
+   * Applies the compiled rules to a raw message.
+   *
+   * @param msg the raw message, not null
+   * @param fieldHistory the field history, not null
+   * @return the partially normalized message, or null if one of the rules rejected the message
+   */
+  public MutableFudgeMsg apply(final FudgeMsg msg, final FieldHistoryStore fieldHistory) {
+    final Fields fields = _buffers.get();
+    try {
+      for (FudgeField field : msg.getAllFields()) {
+        // Unnamed fields are never matched by name, so are treated as unknown; filters remove them
+        final Integer ordinal = (field.getName() != null) ? _ordinals.get(field.getName()) : null;
+        fields.add((ordinal != null) ? ordinal : UNKNOWN, field, field.getValue());
+      }
+      for (Step step : _steps) {
+        switch (step.apply(fields)) {
+          case REJECT:
+            return null;
+          case FALLBACK:
+            return applyRules(msg, fieldHistory);
+          default:
+            break;
+        }
+      }
+      final MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage();
+      for (int i = 0; i < fields._size; i++) {
+        final int ordinal = fields._ordinals[i];
+        if (ordinal != REMOVED) {
+          if (fields._fields[i] != null) {
+            normalizedMsg.add(fields._fields[i]);
+          } else {
+            normalizedMsg.add(_names[ordinal], fields._values[i]);
+          }
+        }
+      }
+      return normalizedMsg;
+    } finally {
+      fields.clear();
+    }
+  }
+
+  private MutableFudgeMsg applyRules(final FudgeMsg msg, final FieldHistoryStore fieldHistory) {
+    MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
+    for (NormalizationRule rule : _rules) {
+      normalizedMsg = rule.apply(normalizedMsg, fieldHistory);
+      if (normalizedMsg == null) {
+        break;
+      }
+    }
+    return normalizedMsg;
+  }
+
+}
@@ -25,6 +25,10 @@ public class NormalizationRuleSet {
   private final String _id;
   private final String _jmsTopicSuffix;
   private final List<NormalizationRule> _rules;
+  /**
+   * The compiled form of the leading field-level rules, null if there are none.
+   */
+  private final NormalizationPlan _plan;
   
   /* Useful for tests */
   public NormalizationRuleSet(String id) {
@@ -51,6 +55,7 @@ public class NormalizationRuleSet {
     }
     
     _rules = new ArrayList<NormalizationRule>(rules);    
+    _plan = NormalizationPlan.compile(_rules);
   }
   
   /**
@@ -66,13 +71,19 @@ public class NormalizationRuleSet {
   public FudgeMsg getNormalizedMessage(
       FudgeMsg msg,
       FieldHistoryStore fieldHistory) {
-    MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
-    for (NormalizationRule rule : _rules) {
-      normalizedMsg = rule.apply(normalizedMsg, fieldHistory);
-      if (normalizedMsg == null) {
-        // One of the rules rejected the message entirely.
-        break;
-      }
+    MutableFudgeMsg normalizedMsg;
+    int firstRule;
+    if (_plan != null) {
+      // The plan only copies the fields it keeps, and nothing at all if it rejects the message
+      normalizedMsg = _plan.apply(msg, fieldHistory);
+      firstRule = _plan.getRuleCount();
+    } else {
+      normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
+      firstRule = 0;
+    }
+    for (int i = firstRule; (normalizedMsg != null) && (i < _rules.size()); i++) {
+      // A null message means one of the rules rejected the message entirely.
+      normalizedMsg = _rules.get(i).apply(normalizedMsg, fieldHistory);
     }
     return normalizedMsg;
   }
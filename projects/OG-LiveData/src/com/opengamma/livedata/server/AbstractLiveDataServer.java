@@ -73,6 +73,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
 
   private DistributionSpecificationResolver _distributionSpecificationResolver = new NaiveDistributionSpecificationResolver();
   private LiveDataEntitlementChecker _entitlementChecker = new PermissiveLiveDataEntitlementChecker();
+  private volatile FieldHistoryJournal _fieldHistoryJournal;
   
   private volatile ConnectionStatus _connectionStatus = ConnectionStatus.NOT_CONNECTED;
 
@@ -100,6 +101,25 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     _marketDataSenderFactory = marketDataSenderFactory;
   }
 
+  /**
+   * @return the journal field histories are recorded in, null if they are not recorded
+   */
+  public FieldHistoryJournal getFieldHistoryJournal() {
+    return _fieldHistoryJournal;
+  }
+
+  /**
+   * Sets a journal to record the field history of each security in. When a subscription is created for a security
+   * the journal already has a history for, such as after a restart, the history is used in place of the initial
+   * snapshot from the underlying market data API, provided it is no older than the journal's maximum age. The
+   * history of a security is removed from the journal when it is unsubscribed. The server does not close the journal.
+   * 
+   * @param fieldHistoryJournal the journal, null to not record field histories
+   */
+  public void setFieldHistoryJournal(FieldHistoryJournal fieldHistoryJournal) {
+    _fieldHistoryJournal = fieldHistoryJournal;
+  }
+
   public void addSubscriptionListener(SubscriptionListener subscriptionListener) {
     ArgumentChecker.notNull(subscriptionListener, "Subscription Listener");
     _subscriptionListeners.add(subscriptionListener);
@@ -388,10 +408,15 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       }
       
       // In some cases, the underlying market data API may not, when the subscription is started,
-      // return a full image of all fields. If so, we need to get the full image explicitly.
+      // return a full image of all fields. If so, we need to get the full image explicitly, unless
+      // we recorded the history of the fields before.
+      FieldHistoryJournal journal = getFieldHistoryJournal();
       Collection<String> newSubscriptionsForWhichSnapshotIsRequired = new ArrayList<String>();
       for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
-        if (snapshotOnSubscriptionStartRequired(subscription)) {
+        FudgeMsg history = (journal != null) ? journal.getHistory(subscription.getSecurityUniqueId()) : null;
+        if (history != null) {
+          subscription.initialSnapshotReceived(history);
+        } else if (snapshotOnSubscriptionStartRequired(subscription)) {
           newSubscriptionsForWhichSnapshotIsRequired.add(subscription.getSecurityUniqueId());
         }
       }
@@ -401,6 +426,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       for (Map.Entry<String, FudgeMsg> snapshot : snapshots.entrySet()) {
         Subscription subscription = securityUniqueId2NewSubscription.get(snapshot.getKey());
         subscription.initialSnapshotReceived(snapshot.getValue());
+        recordFieldHistory(snapshot.getKey(), snapshot.getValue(), true);
       }
     
       // Setup the subscriptions in the underlying data provider.
@@ -732,6 +758,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
         _currentlyActiveSubscriptions.remove(subscription);
         _securityUniqueId2Subscription.remove(subscription
             .getSecurityUniqueId());
+        removeFieldHistory(subscription.getSecurityUniqueId());
         
         for (MarketDataDistributor distributor : subscription.getDistributors()) {
           _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
@@ -838,6 +865,35 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     }
       
     subscription.liveDataReceived(liveDataFields);
+    recordFieldHistory(securityUniqueId, liveDataFields, false);
+  }
+
+  private void recordFieldHistory(String securityUniqueId, FudgeMsg liveDataFields, boolean snapshot) {
+    FieldHistoryJournal journal = getFieldHistoryJournal();
+    if (journal == null) {
+      return;
+    }
+    try {
+      if (snapshot) {
+        journal.snapshotReceived(securityUniqueId, liveDataFields);
+      } else {
+        journal.liveDataReceived(securityUniqueId, liveDataFields);
+      }
+    } catch (RuntimeException e) {
+      s_logger.error("Could not record field history of " + securityUniqueId, e);
+    }
+  }
+
+  private void removeFieldHistory(String securityUniqueId) {
+    FieldHistoryJournal journal = getFieldHistoryJournal();
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.remove(securityUniqueId);
+    } catch (RuntimeException e) {
+      s_logger.error("Could not remove field history of " + securityUniqueId, e);
+    }
   }
 
   public Set<String> getActiveDistributionSpecs() {
@@ -0,0 +1,698 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * A durable store of the field history of each security, kept in a local file so that it survives a server restart.
+ * <p>
+ * Every tick is appended to a memory-mapped file as a record of the security unique ID, the time it was received and
+ * the raw fields, and merged into an in-memory {@link FieldHistoryStore} for the security. When the journal is opened
+ * the records are replayed, so the histories are available as soon as the server starts. Appending costs a copy into
+ * the mapped file rather than a write system call; the operating system writes the pages out, so the data survives
+ * the process stopping but not necessarily the machine.
+ * <p>
+ * Ticks are queued by the thread delivering them and recorded by a background writer, so recording costs the
+ * delivering thread no more than a queue insertion. If the queue is full the tick is dropped and a marker is recorded
+ * in its place, so the history of that security is no longer served, even after a restart, until a full image of it is
+ * recorded with {@link #snapshotReceived}. A history is also not served once its last tick is older than the maximum
+ * age, as the values are likely to be stale.
+ * <p>
+ * Once the file has grown to twice its size after the last compaction, it is compacted in the background: the
+ * histories are written out with one record per security to a new file, which then replaces the journal. Histories
+ * that would not be served, and those of securities that have been removed, are dropped, keeping the marker of any
+ * that missed ticks. Ticks arriving while the new file is written are appended to it before the swap.
+ * <p>
+ * A record is only committed once its length has been written, after its content, so a record left incomplete by a
+ * crash is ignored when the journal is next opened.
+ */
+public class FieldHistoryJournal {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(FieldHistoryJournal.class);
+
+  /**
+   * The default size the file is mapped at, in bytes.
+   */
+  public static final int DEFAULT_INITIAL_CAPACITY = 64 * 1024 * 1024;
+  /**
+   * The default age in milliseconds after which a history is no longer served.
+   */
+  public static final long DEFAULT_MAX_AGE = 5 * 60 * 1000L;
+  /**
+   * The default number of ticks that can be waiting to be recorded.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+
+  private static final int MAGIC = 0x4F474648;
+  private static final int VERSION = 3;
+  private static final byte TICK = 0;
+  private static final byte IMAGE = 1;
+  private static final byte REMOVAL = 2;
+  private static final byte INCOMPLETE = 3;
+  private static final int WRITE_BATCH_SIZE = 1024;
+  private static final long CLOSE_TIMEOUT_SECONDS = 30;
+  private static final int HEADER_SIZE = 8;
+  private static final int MIN_COMPACTION_SIZE = 1024 * 1024;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File _file;
+  private final int _initialCapacity;
+  private final FudgeContext _fudgeContext = OpenGammaFudgeContext.getInstance();
+  private final Map<String, FieldHistoryStore> _histories = new HashMap<String, FieldHistoryStore>();
+  private final Map<String, Long> _lastReceived = new HashMap<String, Long>();
+  /**
+   * Securities with ticks that were dropped since their last full image.
+   */
+  private final Set<String> _incomplete = new HashSet<String>();
+  /**
+   * Securities with a marker queued to be recorded.
+   */
+  private final Set<String> _incompleteQueued = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final BlockingQueue<Update> _queue = new LinkedBlockingQueue<Update>();
+  private final int _queueCapacity;
+  private final AtomicBoolean _writeScheduled = new AtomicBoolean();
+  private final AtomicLong _updatesDropped = new AtomicLong();
+  private final ExecutorService _writer = Executors.newSingleThreadExecutor(new NamedThreadPoolFactory("FieldHistoryJournalWriter", true));
+  private final Runnable _write = new Runnable() {
+    @Override
+    public void run() {
+      do {
+        writeUpdates();
+        _writeScheduled.set(false);
+      } while (!_queue.isEmpty() && _writeScheduled.compareAndSet(false, true));
+    }
+  };
+  private final ExecutorService _compactor = Executors.newSingleThreadExecutor(new NamedThreadPoolFactory("FieldHistoryJournal", true));
+  private final Runnable _compaction = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        doCompact();
+      } catch (RuntimeException e) {
+        s_logger.error("Compaction of " + _file + " failed", e);
+      }
+    }
+  };
+
+  private volatile long _maxAge = DEFAULT_MAX_AGE;
+  private volatile boolean _closed;
+  private RandomAccessFile _raf;
+  private MappedByteBuffer _buffer;
+  private int _position;
+  private int _compactedSize;
+  private boolean _compacting;
+  /**
+   * Records appended while the compacted file is written, null if it is not being written.
+   */
+  private List<byte[]> _backlog;
+  private long _recordsWritten;
+  private long _compactions;
+
+  /**
+   * Opens a journal, creating the file if it does not exist.
+   *
+   * @param file the file, not null
+   */
+  public FieldHistoryJournal(File file) {
+    this(file, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /**
+   * Opens a journal, creating the file if it does not exist.
+   *
+   * @param file the file, not null
+   * @param initialCapacity the size the file is mapped at, in bytes; the mapping grows as needed
+   */
+  public FieldHistoryJournal(File file, int initialCapacity) {
+    this(file, initialCapacity, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Opens a journal, creating the file if it does not exist.
+   *
+   * @param file the file, not null
+   * @param initialCapacity the size the file is mapped at, in bytes; the mapping grows as needed
+   * @param queueCapacity the number of ticks that can be waiting to be recorded before further ones are dropped
+   */
+  public FieldHistoryJournal(File file, int initialCapacity, int queueCapacity) {
+    ArgumentChecker.notNull(file, "file");
+    ArgumentChecker.isTrue(initialCapacity >= HEADER_SIZE, "initialCapacity must be at least " + HEADER_SIZE);
+    ArgumentChecker.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+    _file = file;
+    _initialCapacity = initialCapacity;
+    _queueCapacity = queueCapacity;
+    // A compaction that was interrupted never replaced the journal
+    getCompactionFile().delete();
+    try {
+      open(true);
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Could not open field history journal " + file, e);
+    }
+    s_logger.info("Recovered field history for {} securities from {}", _histories.size(), file);
+  }
+
+  public File getFile() {
+    return _file;
+  }
+
+  private File getCompactionFile() {
+    return new File(_file.getPath() + ".compact");
+  }
+
+  /**
+   * @return the age in milliseconds after which a history is no longer served, zero or negative for no limit
+   */
+  public long getMaxAge() {
+    return _maxAge;
+  }
+
+  /**
+   * Sets the age after which a history is no longer served. The age of a history is the time since its last tick was
+   * received, including any time the server was not running.
+   *
+   * @param maxAge the age in milliseconds, zero or negative for no limit
+   */
+  public void setMaxAge(long maxAge) {
+    _maxAge = maxAge;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns the field history of a security.
+   *
+   * @param securityUniqueId the security unique ID, not null
+   * @return a copy of the last known value of each field, null if nothing has been recorded for the security, or
+   *  if the history may have missed ticks or is older than the maximum age
+   */
+  public synchronized FudgeMsg getHistory(String securityUniqueId) {
+    final FieldHistoryStore history = _histories.get(securityUniqueId);
+    if ((history == null) || !isServable(securityUniqueId, System.currentTimeMillis())) {
+      return null;
+    }
+    return _fudgeContext.newMessage(history.getLastKnownValues());
+  }
+
+  // caller must hold the lock
+  private boolean isServable(String securityUniqueId, long now) {
+    if (_incomplete.contains(securityUniqueId)) {
+      return false;
+    }
+    final long maxAge = getMaxAge();
+    if (maxAge > 0) {
+      final Long lastReceived = _lastReceived.get(securityUniqueId);
+      return (lastReceived != null) && (now - lastReceived <= maxAge);
+    }
+    return true;
+  }
+
+  public synchronized Set<String> getSecurityUniqueIds() {
+    return new HashSet<String>(_histories.keySet());
+  }
+
+  /**
+   * Queues market data for a security to be recorded.
+   *
+   * @param securityUniqueId the security unique ID, not null
+   * @param liveDataFields the market data from the underlying market data API, in its native format, not null
+   */
+  public void liveDataReceived(String securityUniqueId, FudgeMsg liveDataFields) {
+    ArgumentChecker.notNull(securityUniqueId, "securityUniqueId");
+    ArgumentChecker.notNull(liveDataFields, "liveDataFields");
+    queue(new Update(securityUniqueId, System.currentTimeMillis(), TICK, liveDataFields));
+  }
+
+  /**
+   * Queues a full image of the market data for a security to be recorded. The image replaces the history of the
+   * security, which is served again if it had missed ticks.
+   *
+   * @param securityUniqueId the security unique ID, not null
+   * @param snapshot the full image from the underlying market data API, in its native format, not null
+   */
+  public void snapshotReceived(String securityUniqueId, FudgeMsg snapshot) {
+    ArgumentChecker.notNull(securityUniqueId, "securityUniqueId");
+    ArgumentChecker.notNull(snapshot, "snapshot");
+    queue(new Update(securityUniqueId, System.currentTimeMillis(), IMAGE, snapshot));
+  }
+
+  /**
+   * Queues the removal of the history of a security, for example because it is no longer subscribed to.
+   *
+   * @param securityUniqueId the security unique ID, not null
+   */
+  public void remove(String securityUniqueId) {
+    ArgumentChecker.notNull(securityUniqueId, "securityUniqueId");
+    queue(new Update(securityUniqueId, System.currentTimeMillis(), REMOVAL, null));
+  }
+
+  private void queue(Update update) {
+    if (_closed) {
+      throw new IllegalStateException("Field history journal " + _file + " has been closed");
+    }
+    Update queued = update;
+    // Removals and markers are queued regardless of the capacity so they are recorded after the ticks before them
+    if ((update._type != REMOVAL) && (_queue.size() >= _queueCapacity)) {
+      _updatesDropped.incrementAndGet();
+      if (!_incompleteQueued.add(update._securityUniqueId)) {
+        return;
+      }
+      s_logger.warn("Field history journal {} is full; no longer serving the history of {}", _file, update._securityUniqueId);
+      queued = new Update(update._securityUniqueId, update._received, INCOMPLETE, null);
+    }
+    _queue.add(queued);
+    if (_writeScheduled.compareAndSet(false, true)) {
+      try {
+        _writer.execute(_write);
+      } catch (RejectedExecutionException e) {
+        throw new IllegalStateException("Field history journal " + _file + " has been closed");
+      }
+    }
+  }
+
+  /**
+   * Waits until the ticks and removals queued so far have been recorded.
+   */
+  public void flush() {
+    try {
+      _writer.submit(new Runnable() {
+        @Override
+        public void run() {
+          // Runs after any write already scheduled, which drains everything queued before it
+        }
+      }).get();
+    } catch (RejectedExecutionException e) {
+      // Closed, so everything has been recorded
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted waiting for " + _file, e);
+    } catch (ExecutionException e) {
+      throw new OpenGammaRuntimeException("Could not flush " + _file, e.getCause());
+    }
+  }
+
+  private void writeUpdates() {
+    final List<Update> updates = new ArrayList<Update>();
+    while (_queue.drainTo(updates, WRITE_BATCH_SIZE) > 0) {
+      try {
+        final List<byte[]> records = new ArrayList<byte[]>(updates.size());
+        for (Update update : updates) {
+          records.add(encode(update._securityUniqueId, update._received, update._type, update._fields));
+        }
+        synchronized (this) {
+          if (_raf == null) {
+            return;
+          }
+          for (int i = 0; i < records.size(); i++) {
+            final Update update = updates.get(i);
+            final byte[] record = records.get(i);
+            apply(update._securityUniqueId, update._received, update._type, update._fields);
+            if (update._type == INCOMPLETE) {
+              _incompleteQueued.remove(update._securityUniqueId);
+            }
+            append(record);
+            if (_backlog != null) {
+              _backlog.add(record);
+            }
+          }
+          if (!_compacting && (_position > 2L * Math.max(_compactedSize, MIN_COMPACTION_SIZE))) {
+            _compacting = true;
+            _compactor.execute(_compaction);
+          }
+        }
+      } catch (RuntimeException e) {
+        s_logger.error("Could not record " + updates.size() + " updates in " + _file, e);
+      }
+      updates.clear();
+    }
+  }
+
+  // caller must hold the lock
+  private void apply(String securityUniqueId, long received, byte type, FudgeMsg fields) {
+    switch (type) {
+      case TICK:
+        break;
+      case IMAGE:
+        // Replaces the history, including any gaps in it
+        _histories.remove(securityUniqueId);
+        _incomplete.remove(securityUniqueId);
+        break;
+      case REMOVAL:
+        _histories.remove(securityUniqueId);
+        _lastReceived.remove(securityUniqueId);
+        _incomplete.remove(securityUniqueId);
+        return;
+      case INCOMPLETE:
+        _incomplete.add(securityUniqueId);
+        return;
+      default:
+        throw new OpenGammaRuntimeException("Invalid record type " + type);
+    }
+    FieldHistoryStore history = _histories.get(securityUniqueId);
+    if (history == null) {
+      history = new FieldHistoryStore();
+      _histories.put(securityUniqueId, history);
+    }
+    history.liveDataReceived(fields);
+    _lastReceived.put(securityUniqueId, received);
+  }
+
+  /**
+   * Rewrites the journal with a single record for each security. Does nothing if a compaction is already in
+   * progress.
+   */
+  public void compact() {
+    synchronized (this) {
+      if (_compacting) {
+        return;
+      }
+      _compacting = true;
+    }
+    doCompact();
+  }
+
+  private void doCompact() {
+    final Map<String, FudgeMsg> histories = new HashMap<String, FudgeMsg>();
+    final Map<String, Long> lastReceived = new HashMap<String, Long>();
+    final List<String> incomplete;
+    synchronized (this) {
+      if (_raf == null) {
+        _compacting = false;
+        return;
+      }
+      _backlog = new ArrayList<byte[]>();
+      final long now = System.currentTimeMillis();
+      final Iterator<Map.Entry<String, FieldHistoryStore>> iterator = _histories.entrySet().iterator();
+      while (iterator.hasNext()) {
+        final Map.Entry<String, FieldHistoryStore> history = iterator.next();
+        if (isServable(history.getKey(), now)) {
+          histories.put(history.getKey(), _fudgeContext.newMessage(history.getValue().getLastKnownValues()));
+          lastReceived.put(history.getKey(), _lastReceived.get(history.getKey()));
+        } else {
+          // Won't be served again, so prune it
+          iterator.remove();
+          _lastReceived.remove(history.getKey());
+        }
+      }
+      incomplete = new ArrayList<String>(_incomplete);
+    }
+    final File compactionFile = getCompactionFile();
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactionFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (Map.Entry<String, FudgeMsg> history : histories.entrySet()) {
+          final Long received = lastReceived.get(history.getKey());
+          final byte[] record = encode(history.getKey(), (received != null) ? received : 0L, TICK, history.getValue());
+          out.writeInt(record.length);
+          out.write(record);
+        }
+        // Ticks recorded after the compaction must not make the history servable again
+        for (String securityUniqueId : incomplete) {
+          final byte[] record = encode(securityUniqueId, 0L, INCOMPLETE, null);
+          out.writeInt(record.length);
+          out.write(record);
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      abortCompaction(compactionFile);
+      throw new OpenGammaRuntimeException("Could not write compacted field history to " + compactionFile, e);
+    }
+    synchronized (this) {
+      try {
+        if (_raf == null) {
+          compactionFile.delete();
+          return;
+        }
+        // The existing mapping stays valid until it is closed, so a failed rename leaves the journal as it was
+        if (!compactionFile.renameTo(_file)) {
+          throw new OpenGammaRuntimeException("Could not replace " + _file + " with " + compactionFile);
+        }
+        final long previousSize = _position;
+        close(_raf);
+        open(false);
+        for (byte[] record : _backlog) {
+          append(record);
+        }
+        _compactedSize = _position;
+        _compactions++;
+        s_logger.info("Compacted {} from {} to {} bytes", new Object[] {_file, previousSize, _position});
+      } catch (IOException e) {
+        _raf = null;
+        throw new OpenGammaRuntimeException("Could not reopen field history journal " + _file + " after compaction", e);
+      } finally {
+        _backlog = null;
+        _compacting = false;
+      }
+    }
+  }
+
+  private synchronized void abortCompaction(File compactionFile) {
+    _backlog = null;
+    _compacting = false;
+    compactionFile.delete();
+  }
+
+  /**
+   * Closes the journal after recording any queued ticks. The histories remain readable, but no more market data can
+   * be recorded.
+   */
+  public void close() {
+    _closed = true;
+    _writer.shutdown();
+    try {
+      if (!_writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        s_logger.warn("Timed out recording queued ticks in {}", _file);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      _compactor.shutdown();
+      if (_raf != null) {
+        _buffer.force();
+        close(_raf);
+        _raf = null;
+        _buffer = null;
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns the size of the journal, excluding the unused part of the mapping.
+   *
+   * @return the size in bytes
+   */
+  public synchronized int getSize() {
+    return _position;
+  }
+
+  public synchronized long getRecordsWritten() {
+    return _recordsWritten;
+  }
+
+  public synchronized long getCompactions() {
+    return _compactions;
+  }
+
+  /**
+   * Returns the number of ticks dropped because the queue was full.
+   *
+   * @return the number dropped
+   */
+  public long getUpdatesDropped() {
+    return _updatesDropped.get();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Encodes a record as the length of the key, the key, the time received, the record type and the fields. A removal
+   * or marker has no fields.
+   */
+  private byte[] encode(String securityUniqueId, long received, byte type, FudgeMsg msg) {
+    final byte[] key = securityUniqueId.getBytes(UTF8);
+    final byte[] fields = (msg != null) ? _fudgeContext.toByteArray(msg) : new byte[0];
+    final ByteBuffer record = ByteBuffer.allocate(4 + key.length + 8 + 1 + fields.length);
+    record.putInt(key.length);
+    record.put(key);
+    record.putLong(received);
+    record.put(type);
+    record.put(fields);
+    return record.array();
+  }
+
+  private void append(byte[] record) {
+    final long end = (long) _position + 4 + record.length;
+    if (end > _buffer.capacity()) {
+      final long capacity = Math.max(2L * _buffer.capacity(), end);
+      if (capacity > Integer.MAX_VALUE) {
+        throw new OpenGammaRuntimeException("Field history journal " + _file + " is too large to map");
+      }
+      try {
+        map((int) capacity);
+      } catch (IOException e) {
+        throw new OpenGammaRuntimeException("Could not grow field history journal " + _file, e);
+      }
+    }
+    _buffer.position(_position + 4);
+    _buffer.put(record);
+    // Writing the length commits the record
+    _buffer.putInt(_position, record.length);
+    _position = (int) end;
+    _recordsWritten++;
+  }
+
+  private void map(int capacity) throws IOException {
+    _buffer = _raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+  }
+
+  /**
+   * Maps the file and finds the end of the committed records.
+   *
+   * @param recover true to replay the records into the histories
+   */
+  private void open(boolean recover) throws IOException {
+    _raf = new RandomAccessFile(_file, "rw");
+    long length = _raf.length();
+    if (length > Integer.MAX_VALUE) {
+      throw new OpenGammaRuntimeException("Field history journal " + _file + " is too large to map");
+    }
+    if (length >= HEADER_SIZE) {
+      if (_raf.readInt() != MAGIC) {
+        close(_raf);
+        _raf = null;
+        throw new OpenGammaRuntimeException(_file + " is not a field history journal");
+      }
+      final int version = _raf.readInt();
+      if (version != VERSION) {
+        s_logger.warn("Discarding field history journal {} written with version {}", _file, version);
+        _raf.setLength(0);
+        length = 0;
+      }
+    }
+    map((int) Math.max(length, _initialCapacity));
+    if (length < HEADER_SIZE) {
+      _buffer.putInt(0, MAGIC);
+      _buffer.putInt(4, VERSION);
+      _position = HEADER_SIZE;
+    } else {
+      _position = replay(recover);
+    }
+    _compactedSize = _position;
+  }
+
+  private int replay(boolean recover) {
+    int position = HEADER_SIZE;
+    final int limit = (int) Math.min(_buffer.capacity(), Integer.MAX_VALUE);
+    while (position + 4 <= limit) {
+      final int length = _buffer.getInt(position);
+      if ((length < 13) || (length > limit - position - 4)) {
+        // The end of the committed records
+        break;
+      }
+      if (recover) {
+        final byte[] record = new byte[length];
+        _buffer.position(position + 4);
+        _buffer.get(record);
+        try {
+          replay(record);
+        } catch (RuntimeException e) {
+          s_logger.warn("Ignoring corrupt record at offset " + position + " of " + _file + " and any that follow", e);
+          break;
+        }
+      }
+      position += 4 + length;
+    }
+    return position;
+  }
+
+  private void replay(byte[] record) {
+    final ByteBuffer buffer = ByteBuffer.wrap(record);
+    final int keyLength = buffer.getInt();
+    if ((keyLength < 0) || (keyLength > record.length - 13)) {
+      throw new OpenGammaRuntimeException("Invalid security unique ID length " + keyLength);
+    }
+    final String securityUniqueId = new String(record, 4, keyLength, UTF8);
+    buffer.position(4 + keyLength);
+    final long received = buffer.getLong();
+    final byte type = buffer.get();
+    final int fieldsLength = buffer.remaining();
+    final FudgeMsg msg = (fieldsLength > 0) ? _fudgeContext.deserialize(Arrays.copyOfRange(record, buffer.position(), record.length)).getMessage() : null;
+    if ((msg == null) && ((type == TICK) || (type == IMAGE))) {
+      throw new OpenGammaRuntimeException("Missing fields for " + securityUniqueId);
+    }
+    apply(securityUniqueId, received, type, msg);
+  }
+
+  /**
+   * A tick, image, removal or marker waiting to be recorded.
+   */
+  private static final class Update {
+
+    private final String _securityUniqueId;
+    private final long _received;
+    private final byte _type;
+    private final FudgeMsg _fields;
+
+    private Update(String securityUniqueId, long received, byte type, FudgeMsg fields) {
+      _securityUniqueId = securityUniqueId;
+      _received = received;
+      _type = type;
+      _fields = fields;
+    }
+
+  }
+
+  private void close(RandomAccessFile raf) {
+    try {
+      raf.close();
+    } catch (IOException e) {
+      s_logger.warn("Could not close " + _file, e);
+    }
+  }
+
+}
@@ -5,6 +5,8 @@
  */
 package com.opengamma.livedata.server;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -17,6 +19,7 @@ import org.springframework.jmx.export.annotation.ManagedResource;
 
 import com.opengamma.livedata.msg.LiveDataSubscriptionResponse;
 import com.opengamma.livedata.msg.LiveDataSubscriptionResult;
+import com.opengamma.livedata.server.distribution.LaneMarketDataSenderFactory;
 import com.opengamma.util.ArgumentChecker;
 
 /**
@@ -88,6 +91,26 @@ public class LiveDataServerMBean {
     }
   }
   
+  @ManagedAttribute(description = "Per-lane queue size, messages sent, updates conflated and mean/max latency in ms"
+      + " of the distribution lanes, if the server distributes market data through lanes.")
+  public List<String> getDistributionLaneStatistics() {
+    try {
+      List<String> statistics = new ArrayList<String>();
+      if (_server.getMarketDataSenderFactory() instanceof LaneMarketDataSenderFactory) {
+        LaneMarketDataSenderFactory lanes = (LaneMarketDataSenderFactory) _server.getMarketDataSenderFactory();
+        for (int i = 0; i < lanes.getLaneCount(); i++) {
+          statistics.add("Lane " + i + ": queueSize=" + lanes.getQueueSize(i) + ", messagesSent=" + lanes.getMessagesSent(i)
+              + ", updatesConflated=" + lanes.getUpdatesConflated(i) + ", meanLatencyMs=" + lanes.getMeanLatencyMillis(i)
+              + ", maxLatencyMs=" + lanes.getMaxLatencyMillis(i));
+        }
+      }
+      return statistics;
+    } catch (RuntimeException e) {
+      s_logger.error("getDistributionLaneStatistics() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+  
   @ManagedOperation(description = "Subscribes to market data. The subscription will be non-persistent."
       + " If the server already subscribes to the given market data, this method is a "
       + " no-op. Returns the name of the JMS topic market data will be published on.")
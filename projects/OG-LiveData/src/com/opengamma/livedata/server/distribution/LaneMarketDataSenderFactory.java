@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.distribution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+
+/**
+ * Creates senders that hand market data to a fixed set of distribution lanes rather than sending it on the thread
+ * that delivered the tick.
+ * <p>
+ * Each ticker is assigned to one lane, and each lane has a single thread that calls the underlying senders, so
+ * updates for a ticker are sent in the order they were distributed while different lanes send in parallel. A slow
+ * send for one ticker therefore holds up only the other tickers on its lane, and no longer holds up normalization or
+ * the field history updates on the delivering thread.
+ * <p>
+ * If a ticker already has an update waiting on its lane when another arrives, the two are conflated: the fields are
+ * merged, as {@link JmsSender} does while its transport is interrupted, and only the latest sequence number is sent.
+ * Each ticker is therefore queued at most once, and a lane's queue only fills up if more distinct tickers are waiting
+ * than its capacity, in which case the delivering thread blocks until there is space.
+ * <p>
+ * Until the factory is started, or after it has been stopped, updates are sent on the delivering thread. Stopping the
+ * factory waits, for up to {@link #STOP_TIMEOUT_MILLIS}, for the lanes to send the updates already queued on them.
+ */
+public class LaneMarketDataSenderFactory implements MarketDataSenderFactory, Lifecycle {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(LaneMarketDataSenderFactory.class);
+
+  /**
+   * The default number of distinct tickers that can be waiting on each lane.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+  /**
+   * The time, in milliseconds, that stopping the factory waits for the lanes to send the updates queued on them.
+   */
+  public static final long STOP_TIMEOUT_MILLIS = 5000;
+
+  private static final long POLL_MILLIS = 100;
+
+  private final MarketDataSenderFactory _underlying;
+  private final Lane[] _lanes;
+  private volatile boolean _running;
+
+  /**
+   * Creates a factory with one lane per processor.
+   *
+   * @param underlying the factory for the senders that publish the data, not null
+   */
+  public LaneMarketDataSenderFactory(MarketDataSenderFactory underlying) {
+    this(underlying, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * @param underlying the factory for the senders that publish the data, not null
+   * @param lanes the number of lanes, at least one
+   * @param queueCapacity the number of distinct tickers that can be waiting on each lane, at least one
+   */
+  public LaneMarketDataSenderFactory(MarketDataSenderFactory underlying, int lanes, int queueCapacity) {
+    ArgumentChecker.notNull(underlying, "Underlying market data sender factory");
+    ArgumentChecker.isTrue(lanes > 0, "lanes must be positive");
+    ArgumentChecker.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+    _underlying = underlying;
+    _lanes = new Lane[lanes];
+    for (int i = 0; i < lanes; i++) {
+      _lanes[i] = new Lane(queueCapacity);
+    }
+  }
+
+  public MarketDataSenderFactory getUnderlying() {
+    return _underlying;
+  }
+
+  @Override
+  public Collection<MarketDataSender> create(MarketDataDistributor distributor) {
+    final Collection<MarketDataSender> senders = getUnderlying().create(distributor);
+    if (senders == null) {
+      throw new IllegalStateException("Null returned by " + getUnderlying());
+    }
+    // All distributors for a ticker share a lane
+    final int lane = (distributor.getSubscription().getSecurityUniqueId().hashCode() & Integer.MAX_VALUE) % _lanes.length;
+    return Collections.<MarketDataSender>singleton(new LaneSender(distributor, senders, _lanes[lane]));
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public synchronized void start() {
+    if (_running) {
+      return;
+    }
+    final ThreadFactory threads = new NamedThreadPoolFactory("MarketDataDistribution", true);
+    for (Lane lane : _lanes) {
+      lane.start(threads);
+    }
+    _running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (!_running) {
+      return;
+    }
+    _running = false;
+    final Thread[] threads = new Thread[_lanes.length];
+    for (int i = 0; i < _lanes.length; i++) {
+      threads[i] = _lanes[i].stop();
+    }
+    final long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MILLIS;
+    for (Thread thread : threads) {
+      try {
+        thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (thread.isAlive()) {
+        s_logger.warn("Timed out waiting for {} to send the updates queued on it", thread.getName());
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return _running;
+  }
+
+  //-------------------------------------------------------------------------
+  public int getLaneCount() {
+    return _lanes.length;
+  }
+
+  /**
+   * Returns the number of tickers waiting to be sent on a lane.
+   *
+   * @param lane the lane index
+   * @return the number of tickers waiting
+   */
+  public int getQueueSize(int lane) {
+    return _lanes[lane]._queue.size();
+  }
+
+  /**
+   * Returns the number of messages a lane has passed to the underlying senders.
+   *
+   * @param lane the lane index
+   * @return the number of messages sent
+   */
+  public long getMessagesSent(int lane) {
+    return _lanes[lane]._messagesSent.get();
+  }
+
+  /**
+   * Returns the number of updates a lane has merged into an update that was already waiting.
+   *
+   * @param lane the lane index
+   * @return the number of updates conflated
+   */
+  public long getUpdatesConflated(int lane) {
+    return _lanes[lane]._updatesConflated.get();
+  }
+
+  /**
+   * Returns the mean time from an update being queued on a lane to it having been sent.
+   *
+   * @param lane the lane index
+   * @return the mean latency in milliseconds, 0 if nothing has been sent
+   */
+  public double getMeanLatencyMillis(int lane) {
+    final Lane l = _lanes[lane];
+    final long sent = l._messagesSent.get();
+    return (sent > 0) ? (double) l._totalLatencyNanos.get() / sent / 1000000d : 0d;
+  }
+
+  /**
+   * Returns the longest time from an update being queued on a lane to it having been sent.
+   *
+   * @param lane the lane index
+   * @return the maximum latency in milliseconds
+   */
+  public double getMaxLatencyMillis(int lane) {
+    return _lanes[lane]._maxLatencyNanos.get() / 1000000d;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A queue of tickers with updates to send, and the single thread that sends them.
+   */
+  private static final class Lane implements Runnable {
+
+    private final BlockingQueue<LaneSender> _queue;
+    private final AtomicLong _messagesSent = new AtomicLong();
+    private final AtomicLong _updatesConflated = new AtomicLong();
+    private final AtomicLong _totalLatencyNanos = new AtomicLong();
+    private final AtomicLong _maxLatencyNanos = new AtomicLong();
+    private volatile Thread _thread;
+
+    private Lane(int queueCapacity) {
+      _queue = new ArrayBlockingQueue<LaneSender>(queueCapacity);
+    }
+
+    private void start(final ThreadFactory threads) {
+      _thread = threads.newThread(this);
+      _thread.start();
+    }
+
+    /**
+     * Stops the lane once it has sent everything queued on it.
+     *
+     * @return the thread that will exit once the queue is empty
+     */
+    private Thread stop() {
+      final Thread thread = _thread;
+      _thread = null;
+      return thread;
+    }
+
+    private void enqueue(final LaneSender sender) {
+      try {
+        _queue.put(sender);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        s_logger.warn("Interrupted while queueing update for {}; sending directly", sender.getDistributor());
+        sender.send();
+      }
+    }
+
+    private void sent(final long latencyNanos) {
+      _messagesSent.incrementAndGet();
+      _totalLatencyNanos.addAndGet(latencyNanos);
+      long max = _maxLatencyNanos.get();
+      while ((latencyNanos > max) && !_maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+        max = _maxLatencyNanos.get();
+      }
+    }
+
+    @Override
+    public void run() {
+      final Thread self = Thread.currentThread();
+      try {
+        while (true) {
+          final LaneSender sender = _queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (sender != null) {
+            sender.send();
+          } else if (_thread != self) {
+            // Stopped, and nothing left to send
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        s_logger.debug("Distribution lane interrupted");
+      }
+      // Send anything still queued before exiting
+      LaneSender sender = _queue.poll();
+      while (sender != null) {
+        sender.send();
+        sender = _queue.poll();
+      }
+    }
+
+  }
+
+  /**
+   * Holds the unsent update for a distributor and queues it on the distributor's lane.
+   */
+  private final class LaneSender implements MarketDataSender {
+
+    private final MarketDataDistributor _distributor;
+    private final Collection<MarketDataSender> _senders;
+    private final Lane _lane;
+    private final FieldHistoryStore _pending = new FieldHistoryStore();
+    private final Object _sendLock = new Object();
+    private long _lastSequenceNumber;
+    private long _queuedNanos;
+    private boolean _queued;
+
+    private LaneSender(final MarketDataDistributor distributor, final Collection<MarketDataSender> senders, final Lane lane) {
+      _distributor = distributor;
+      _senders = new ArrayList<MarketDataSender>(senders);
+      _lane = lane;
+    }
+
+    @Override
+    public MarketDataDistributor getDistributor() {
+      return _distributor;
+    }
+
+    @Override
+    public void sendMarketData(final LiveDataValueUpdateBean data) {
+      final boolean running = isRunning();
+      synchronized (this) {
+        _pending.liveDataReceived(data.getFields());
+        _lastSequenceNumber = data.getSequenceNumber();
+        if (_queued) {
+          _lane._updatesConflated.incrementAndGet();
+          if (running) {
+            return;
+          }
+        } else {
+          _queued = true;
+          _queuedNanos = System.nanoTime();
+        }
+      }
+      if (running) {
+        _lane.enqueue(this);
+      } else {
+        send();
+      }
+    }
+
+    /**
+     * Sends the pending update, if there is one. The update is taken and sent under a lock that the delivering thread
+     * only contends for when the lanes are not running, so updates stay in order across a start or stop.
+     */
+    private void send() {
+      synchronized (_sendLock) {
+        final LiveDataValueUpdateBean data;
+        final long queuedNanos;
+        synchronized (this) {
+          if (!_queued) {
+            return;
+          }
+          data = new LiveDataValueUpdateBean(_lastSequenceNumber, getDistributor().getFullyQualifiedLiveDataSpecification(), _pending.getLastKnownValues());
+          queuedNanos = _queuedNanos;
+          _pending.clear();
+          _queued = false;
+        }
+        sendToAll(data);
+        _lane.sent(System.nanoTime() - queuedNanos);
+      }
+    }
+
+    private void sendToAll(final LiveDataValueUpdateBean data) {
+      for (MarketDataSender sender : _senders) {
+        try {
+          sender.sendMarketData(data);
+        } catch (RuntimeException e) {
+          s_logger.error(sender + " failed", e);
+        }
+      }
+    }
+
+  }
+
+}
@@ -9,11 +9,20 @@ import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 import org.testng.annotations.Test;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.fudgemsg.FudgeContext;
+import org.fudgemsg.MutableFudgeMsg;
+
 import com.opengamma.id.Identifier;
+import com.opengamma.livedata.LiveDataBatchListener;
 import com.opengamma.livedata.LiveDataSpecification;
 import com.opengamma.livedata.LiveDataValueUpdate;
 import com.opengamma.livedata.LiveDataValueUpdateBean;
@@ -99,5 +108,100 @@ public class ValueDistributorTest {
     assertEquals(spec1, update.getSpecification());
     assertNotNull(update.getFields());
   }
+  
+  private static class CollectingBatchListener extends CollectingLiveDataListener implements LiveDataBatchListener {
+    private final List<Collection<LiveDataValueUpdate>> _batches = new ArrayList<Collection<LiveDataValueUpdate>>();
+    
+    @Override
+    public synchronized void valueUpdates(Collection<LiveDataValueUpdate> valueUpdates) {
+      _batches.add(valueUpdates);
+    }
+  }
+  
+  private LiveDataValueUpdateBean update(long sequenceNumber, LiveDataSpecification spec, String field, double value) {
+    MutableFudgeMsg msg = _fudgeContext.newMessage();
+    msg.add(field, value);
+    return new LiveDataValueUpdateBean(sequenceNumber, spec, msg);
+  }
+  
+  @Test
+  public void conflatedDistribution() throws Exception {
+    ValueDistributor distributor = new ValueDistributor();
+    CollectingLiveDataListener listener1 = new CollectingLiveDataListener();
+    CollectingBatchListener listener2 = new CollectingBatchListener();
+    LiveDataSpecification spec1 = new LiveDataSpecification("foo", Identifier.of("bar", "baz1"));
+    LiveDataSpecification spec2 = new LiveDataSpecification("foo", Identifier.of("bar", "baz2"));
+    distributor.addListener(spec1, listener1);
+    distributor.addListener(spec1, listener2);
+    distributor.addListener(spec2, listener2);
+    
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    final CountDownLatch release = new CountDownLatch(1);
+    // Hold up the executor so that the updates are conflated
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    distributor.setConflation(executor, 0);
+    distributor.notifyListeners(update(1, spec1, "Bid", 1.0));
+    distributor.notifyListeners(update(2, spec2, "Bid", 2.0));
+    distributor.notifyListeners(update(3, spec1, "Ask", 3.0));
+    distributor.notifyListeners(update(4, spec1, "Bid", 4.0));
+    assertTrue(listener1.getValueUpdates().isEmpty());
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    
+    List<LiveDataValueUpdate> updates = listener1.getValueUpdates();
+    assertEquals(1, updates.size());
+    LiveDataValueUpdate update = updates.get(0);
+    assertEquals(4, update.getSequenceNumber());
+    assertEquals(4.0, update.getFields().getDouble("Bid"), 0d);
+    assertEquals(3.0, update.getFields().getDouble("Ask"), 0d);
+    
+    assertTrue(listener2.getValueUpdates().isEmpty());
+    assertEquals(1, listener2._batches.size());
+    assertEquals(2, listener2._batches.get(0).size());
+  }
+  
+  @Test
+  public void conflatedDistributionContinuesAfterError() throws Exception {
+    ValueDistributor distributor = new ValueDistributor();
+    final CountDownLatch failed = new CountDownLatch(1);
+    final CountDownLatch delivered = new CountDownLatch(1);
+    CollectingLiveDataListener listener = new CollectingLiveDataListener() {
+      @Override
+      public synchronized void valueUpdate(LiveDataValueUpdate valueUpdate) {
+        if (valueUpdate.getSequenceNumber() == 1) {
+          failed.countDown();
+          throw new AssertionError("Test error");
+        }
+        super.valueUpdate(valueUpdate);
+        delivered.countDown();
+      }
+    };
+    LiveDataSpecification spec1 = new LiveDataSpecification("foo", Identifier.of("bar", "baz1"));
+    distributor.addListener(spec1, listener);
+    
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    distributor.setConflation(executor, 0);
+    distributor.notifyListeners(update(1, spec1, "Bid", 1.0));
+    assertTrue(failed.await(5, TimeUnit.SECONDS));
+    // The failed delivery must not prevent later ones, even one arriving before it has finished failing
+    distributor.notifyListeners(update(2, spec1, "Bid", 2.0));
+    assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    
+    List<LiveDataValueUpdate> updates = listener.getValueUpdates();
+    assertEquals(1, updates.size());
+    assertEquals(2, updates.get(0).getSequenceNumber());
+  }
 
 }
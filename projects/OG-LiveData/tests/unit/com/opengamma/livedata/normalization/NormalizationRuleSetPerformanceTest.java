@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.Random;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * Compares the per-tick cost of normalizing raw ticks with the compiled rule set against applying the rules one by
+ * one to a copy of each tick.
+ */
+@Test(enabled = false)
+public class NormalizationRuleSetPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(NormalizationRuleSetPerformanceTest.class);
+
+  private static final int NUM_TICKS = 10000;
+  private static final int ITERATIONS = 50;
+
+  /**
+   * Fields of a typical raw equity tick; most of them are filtered out.
+   */
+  private static final String[] RAW_FIELDS = new String[] {"BID", "ASK", "LAST_PRICE", "VOLUME", "BID_SIZE", "ASK_SIZE", "HIGH", "LOW", "OPEN",
+    "TIME", "TRADE_COND", "EXCH_CODE", "BID_EXCH", "ASK_EXCH", "RT_PX_CHG", "RT_PX_CHG_PCT", "VWAP", "TURNOVER", "NUM_TRADES", "IND_BID_FLAG" };
+
+  private final NormalizationRule[] _rules = new NormalizationRule[] {
+    new FieldFilter("BID", "ASK", "LAST_PRICE", "VOLUME"),
+    new FieldNameChange("LAST_PRICE", "LAST"),
+    new UnitChange("BID", 0.01),
+    new UnitChange("ASK", 0.01),
+    new UnitChange("LAST", 0.01),
+    new FieldHistoryUpdater(),
+    new MarketValueCalculator(),
+    new FieldHistoryUpdater() };
+
+  private FudgeMsg[] createTicks() {
+    final Random random = new Random(1L);
+    final FudgeMsg[] ticks = new FudgeMsg[NUM_TICKS];
+    for (int i = 0; i < NUM_TICKS; i++) {
+      final MutableFudgeMsg tick = FudgeContext.GLOBAL_DEFAULT.newMessage();
+      for (String field : RAW_FIELDS) {
+        // Each update carries roughly half of the fields
+        if (random.nextBoolean()) {
+          tick.add(field, 10000.0 + random.nextInt(100));
+        }
+      }
+      ticks[i] = tick;
+    }
+    return ticks;
+  }
+
+  private long runRules(final FudgeMsg[] ticks, final FieldHistoryStore history) {
+    final long start = System.nanoTime();
+    for (FudgeMsg tick : ticks) {
+      MutableFudgeMsg normalizedMsg = FudgeContext.GLOBAL_DEFAULT.newMessage(tick);
+      for (NormalizationRule rule : _rules) {
+        normalizedMsg = rule.apply(normalizedMsg, history);
+        if (normalizedMsg == null) {
+          break;
+        }
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private long runCompiled(final NormalizationRuleSet ruleSet, final FudgeMsg[] ticks, final FieldHistoryStore history) {
+    final long start = System.nanoTime();
+    for (FudgeMsg tick : ticks) {
+      ruleSet.getNormalizedMessage(tick, history);
+    }
+    return System.nanoTime() - start;
+  }
+
+  public void compareRuleSets() {
+    final FudgeMsg[] ticks = createTicks();
+    final NormalizationRuleSet ruleSet = new NormalizationRuleSet("Benchmark", _rules);
+    final FieldHistoryStore history = new FieldHistoryStore();
+    // Warm up
+    for (int i = 0; i < ITERATIONS; i++) {
+      runRules(ticks, history);
+      runCompiled(ruleSet, ticks, history);
+    }
+    long rules = 0;
+    long compiled = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      rules += runRules(ticks, history);
+      compiled += runCompiled(ruleSet, ticks, history);
+    }
+    final double count = (double) NUM_TICKS * ITERATIONS;
+    s_logger.info("Rules: {} ns/tick, compiled: {} ns/tick", rules / count, compiled / count);
+  }
+
+}
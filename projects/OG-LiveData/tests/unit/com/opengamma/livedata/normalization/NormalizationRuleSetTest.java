@@ -5,9 +5,14 @@
  */
 package com.opengamma.livedata.normalization;
 
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNull;
+
+import java.util.Iterator;
+
 import org.testng.annotations.Test;
 import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.MutableFudgeMsg;
 import com.opengamma.livedata.server.FieldHistoryStore;
@@ -36,4 +41,64 @@ public class NormalizationRuleSetTest {
     FudgeMsg normalizedMsg = ruleSet.getNormalizedMessage(msg, new FieldHistoryStore());
     assertNull(normalizedMsg);
   }
+  
+  private static FudgeMsg applyRules(FudgeMsg msg, FieldHistoryStore history, NormalizationRule... rules) {
+    MutableFudgeMsg normalizedMsg = FudgeContext.GLOBAL_DEFAULT.newMessage(msg);
+    for (NormalizationRule rule : rules) {
+      normalizedMsg = rule.apply(normalizedMsg, history);
+      if (normalizedMsg == null) {
+        break;
+      }
+    }
+    return normalizedMsg;
+  }
+  
+  private static void assertFieldsEqual(FudgeMsg expected, FudgeMsg actual) {
+    assertEquals(expected.getNumFields(), actual.getNumFields());
+    Iterator<FudgeField> actualFields = actual.getAllFields().iterator();
+    for (FudgeField expectedField : expected.getAllFields()) {
+      FudgeField actualField = actualFields.next();
+      assertEquals(expectedField.getName(), actualField.getName());
+      assertEquals(expectedField.getValue(), actualField.getValue());
+    }
+  }
+  
+  /**
+   * The compiled leading rules must give exactly the same message, including field order, as applying the rules
+   * one by one.
+   */
+  @Test
+  public void compiledRulesMatchRules() {
+    NormalizationRule[] rules = new NormalizationRule[] {
+      new FieldFilter("BID", "ASK", "LAST_PRICE", "VOLUME", "Foo"),
+      new FieldNameChange("LAST_PRICE", "LAST"),
+      new UnitChange("BID", 0.01),
+      new UnitChange("VOLUME", 1000),
+      new RequiredFieldFilter("ASK"),
+      new FieldHistoryUpdater(),
+      new MarketValueCalculator() };
+    NormalizationRuleSet ruleSet = new NormalizationRuleSet("Testing", rules);
+    
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("BID", 100.0);
+    msg.add("Ignored", "x");
+    msg.add("ASK", 101.0);
+    msg.add("LAST_PRICE", 100.5);
+    msg.add("LAST_PRICE", 100.25);
+    msg.add("VOLUME", 12);
+    msg.add(null, 7, "unnamed");
+    assertFieldsEqual(applyRules(msg, new FieldHistoryStore(), rules), ruleSet.getNormalizedMessage(msg, new FieldHistoryStore()));
+    
+    // Rejected by the required field filter
+    msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("BID", 100.0);
+    assertNull(ruleSet.getNormalizedMessage(msg, new FieldHistoryStore()));
+    
+    // Rejected by the field filter
+    msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("Ignored", 100.0);
+    assertNull(ruleSet.getNormalizedMessage(msg, new FieldHistoryStore()));
+
+  }
+  
 }
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link FieldHistoryJournal}.
+ */
+@Test
+public class FieldHistoryJournalTest {
+
+  private File _file;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    _file = File.createTempFile("FieldHistoryJournalTest", ".journal");
+    _file.delete();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    _file.delete();
+  }
+
+  private FudgeMsg message(String field, Object value) {
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add(field, value);
+    return msg;
+  }
+
+  public void recoversHistoryOnReopen() {
+    FieldHistoryJournal journal = new FieldHistoryJournal(_file, 1024);
+    assertNull(journal.getHistory("AAPL"));
+    journal.liveDataReceived("AAPL", message("BID", 1.0));
+    journal.liveDataReceived("AAPL", message("ASK", 2.0));
+    journal.liveDataReceived("MSFT", message("BID", 3.0));
+    journal.liveDataReceived("AAPL", message("BID", 4.0));
+    journal.flush();
+    assertEquals(4.0, journal.getHistory("AAPL").getDouble("BID"), 0d);
+    journal.close();
+
+    journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      assertEquals(2, journal.getSecurityUniqueIds().size());
+      FudgeMsg history = journal.getHistory("AAPL");
+      assertEquals(2, history.getNumFields());
+      assertEquals(4.0, history.getDouble("BID"), 0d);
+      assertEquals(2.0, history.getDouble("ASK"), 0d);
+      assertEquals(3.0, journal.getHistory("MSFT").getDouble("BID"), 0d);
+      // Appending continues after the recovered records
+      journal.liveDataReceived("MSFT", message("BID", 5.0));
+    } finally {
+      journal.close();
+    }
+
+    journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      assertEquals(5.0, journal.getHistory("MSFT").getDouble("BID"), 0d);
+    } finally {
+      journal.close();
+    }
+  }
+
+  public void compactionKeepsLatestValues() {
+    // A small mapping also makes the journal grow
+    FieldHistoryJournal journal = new FieldHistoryJournal(_file, 64);
+    for (int i = 0; i < 1000; i++) {
+      journal.liveDataReceived("AAPL", message("BID", (double) i));
+      journal.liveDataReceived("MSFT", message("ASK", (double) i));
+    }
+    journal.flush();
+    int size = journal.getSize();
+    journal.compact();
+    assertEquals(1, journal.getCompactions());
+    assertTrue(journal.getSize() < size);
+    journal.liveDataReceived("AAPL", message("ASK", 1.0));
+    journal.close();
+
+    journal = new FieldHistoryJournal(_file);
+    try {
+      assertEquals(999.0, journal.getHistory("AAPL").getDouble("BID"), 0d);
+      assertEquals(1.0, journal.getHistory("AAPL").getDouble("ASK"), 0d);
+      assertEquals(999.0, journal.getHistory("MSFT").getDouble("ASK"), 0d);
+    } finally {
+      journal.close();
+    }
+  }
+
+  public void staleHistoryNotServed() throws InterruptedException {
+    FieldHistoryJournal journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      journal.setMaxAge(50);
+      journal.liveDataReceived("AAPL", message("BID", 1.0));
+      journal.flush();
+      assertEquals(1.0, journal.getHistory("AAPL").getDouble("BID"), 0d);
+      Thread.sleep(100);
+      assertNull(journal.getHistory("AAPL"));
+      journal.setMaxAge(0);
+      assertEquals(1.0, journal.getHistory("AAPL").getDouble("BID"), 0d);
+    } finally {
+      journal.close();
+    }
+  }
+
+  public void removedHistoryPruned() throws InterruptedException {
+    FieldHistoryJournal journal = new FieldHistoryJournal(_file, 1024);
+    journal.liveDataReceived("AAPL", message("BID", 1.0));
+    journal.liveDataReceived("MSFT", message("BID", 2.0));
+    journal.remove("AAPL");
+    journal.close();
+
+    journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      assertNull(journal.getHistory("AAPL"));
+      assertEquals(2.0, journal.getHistory("MSFT").getDouble("BID"), 0d);
+      journal.setMaxAge(1);
+      Thread.sleep(10);
+      journal.compact();
+      // The stale history is dropped rather than compacted
+      assertEquals(0, journal.getSecurityUniqueIds().size());
+    } finally {
+      journal.close();
+    }
+  }
+
+  public void droppedTicksStopHistoryBeingServed() {
+    FieldHistoryJournal journal = new FieldHistoryJournal(_file, 1024, 1);
+    boolean dropped;
+    try {
+      for (int i = 0; i < 1000; i++) {
+        journal.liveDataReceived("AAPL", message("BID", (double) i));
+      }
+      journal.flush();
+      dropped = journal.getUpdatesDropped() > 0;
+      if (dropped) {
+        assertNull(journal.getHistory("AAPL"));
+      } else {
+        assertEquals(999.0, journal.getHistory("AAPL").getDouble("BID"), 0d);
+      }
+    } finally {
+      journal.close();
+    }
+
+    journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      if (dropped) {
+        // The gap is remembered across a restart, and survives compaction
+        assertNull(journal.getHistory("AAPL"));
+        journal.compact();
+        journal.liveDataReceived("AAPL", message("BID", 1000.0));
+        journal.flush();
+        assertNull(journal.getHistory("AAPL"));
+      }
+      journal.snapshotReceived("AAPL", message("ASK", 1.0));
+      journal.flush();
+      assertEquals(1.0, journal.getHistory("AAPL").getDouble("ASK"), 0d);
+    } finally {
+      journal.close();
+    }
+
+    journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      assertEquals(1.0, journal.getHistory("AAPL").getDouble("ASK"), 0d);
+    } finally {
+      journal.close();
+    }
+  }
+
+  public void snapshotReplacesHistory() {
+    FieldHistoryJournal journal = new FieldHistoryJournal(_file, 1024);
+    journal.liveDataReceived("AAPL", message("BID", 1.0));
+    journal.snapshotReceived("AAPL", message("ASK", 2.0));
+    journal.liveDataReceived("AAPL", message("LAST", 3.0));
+    journal.close();
+
+    journal = new FieldHistoryJournal(_file, 1024);
+    try {
+      FudgeMsg history = journal.getHistory("AAPL");
+      assertEquals(2, history.getNumFields());
+      assertEquals(2.0, history.getDouble("ASK"), 0d);
+      assertEquals(3.0, history.getDouble("LAST"), 0d);
+    } finally {
+      journal.close();
+    }
+  }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.distribution;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+
+/**
+ * Tests {@link LaneMarketDataSenderFactory}.
+ */
+@Test
+public class LaneMarketDataSenderFactoryTest {
+
+  private static class CollectingSenderFactory implements MarketDataSenderFactory {
+
+    private final List<LiveDataValueUpdateBean> _sent = new CopyOnWriteArrayList<LiveDataValueUpdateBean>();
+    private final CountDownLatch _firstSend = new CountDownLatch(1);
+    private final CountDownLatch _release;
+
+    public CollectingSenderFactory(final CountDownLatch release) {
+      _release = release;
+    }
+
+    @Override
+    public Collection<MarketDataSender> create(final MarketDataDistributor distributor) {
+      return Collections.<MarketDataSender>singleton(new MarketDataSender() {
+
+        @Override
+        public void sendMarketData(final LiveDataValueUpdateBean data) {
+          _firstSend.countDown();
+          try {
+            _release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          _sent.add(data);
+        }
+
+        @Override
+        public MarketDataDistributor getDistributor() {
+          return distributor;
+        }
+
+      });
+    }
+
+  }
+
+  private FudgeMsg message(final String field, final Object value) {
+    final MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add(field, value);
+    return msg;
+  }
+
+  public void sendsDirectlyUntilStarted() {
+    final CollectingSenderFactory underlying = new CollectingSenderFactory(new CountDownLatch(0));
+    final LaneMarketDataSenderFactory factory = new LaneMarketDataSenderFactory(underlying, 2, 10);
+    final MarketDataDistributor distributor = MarketDataDistributorTest.getTestDistributor(factory);
+    distributor.distributeLiveData(message("Bid", 1.0));
+    distributor.distributeLiveData(message("Bid", 2.0));
+    assertEquals(2, underlying._sent.size());
+    assertEquals(2.0, underlying._sent.get(1).getFields().getDouble("Bid"), 0d);
+  }
+
+  public void conflatesWhileSending() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CollectingSenderFactory underlying = new CollectingSenderFactory(release);
+    final LaneMarketDataSenderFactory factory = new LaneMarketDataSenderFactory(underlying, 2, 10);
+    factory.start();
+    try {
+      final MarketDataDistributor distributor = MarketDataDistributorTest.getTestDistributor(factory);
+      distributor.distributeLiveData(message("Bid", 1.0));
+      // The lane is now blocked sending the first update
+      assertEquals(true, underlying._firstSend.await(5, TimeUnit.SECONDS));
+      distributor.distributeLiveData(message("Bid", 2.0));
+      distributor.distributeLiveData(message("Ask", 3.0));
+      distributor.distributeLiveData(message("Bid", 4.0));
+      release.countDown();
+      final long timeout = System.currentTimeMillis() + 5000;
+      while ((underlying._sent.size() < 2) && (System.currentTimeMillis() < timeout)) {
+        Thread.sleep(10);
+      }
+      assertEquals(2, underlying._sent.size());
+      final LiveDataValueUpdateBean conflated = underlying._sent.get(1);
+      assertEquals(3, conflated.getSequenceNumber());
+      assertEquals(4.0, conflated.getFields().getDouble("Bid"), 0d);
+      assertEquals(3.0, conflated.getFields().getDouble("Ask"), 0d);
+      int lane = 0;
+      while (factory.getMessagesSent(lane) == 0) {
+        lane++;
+      }
+      assertEquals(2, factory.getMessagesSent(lane));
+      assertEquals(2, factory.getUpdatesConflated(lane));
+    } finally {
+      factory.stop();
+    }
+  }
+
+  public void stopSendsQueuedUpdates() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CollectingSenderFactory underlying = new CollectingSenderFactory(release);
+    final LaneMarketDataSenderFactory factory = new LaneMarketDataSenderFactory(underlying, 1, 10);
+    factory.start();
+    final MarketDataDistributor distributor = MarketDataDistributorTest.getTestDistributor(factory);
+    distributor.distributeLiveData(message("Bid", 1.0));
+    assertEquals(true, underlying._firstSend.await(5, TimeUnit.SECONDS));
+    distributor.distributeLiveData(message("Bid", 2.0));
+    final Thread stopper = new Thread() {
+      @Override
+      public void run() {
+        factory.stop();
+      }
+    };
+    stopper.start();
+    // The send in progress is not interrupted, and the queued update is sent before stop returns
+    release.countDown();
+    stopper.join(LaneMarketDataSenderFactory.STOP_TIMEOUT_MILLIS * 2);
+    assertEquals(false, stopper.isAlive());
+    assertEquals(2, underlying._sent.size());
+    assertEquals(2.0, underlying._sent.get(1).getFields().getDouble("Bid"), 0d);
+  }
+
+}
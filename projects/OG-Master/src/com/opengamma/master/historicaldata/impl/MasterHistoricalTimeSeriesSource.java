@@ -5,20 +5,23 @@
  */
 package com.opengamma.master.historicaldata.impl;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.time.calendar.LocalDate;
 
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.core.historicaldata.HistoricalTimeSeries;
 import com.opengamma.core.historicaldata.HistoricalTimeSeriesSource;
+import com.opengamma.id.Identifier;
 import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.IdentifierWithDates;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.master.historicaldata.HistoricalTimeSeriesDocument;
 import com.opengamma.master.historicaldata.HistoricalTimeSeriesGetRequest;
@@ -228,8 +231,67 @@ public class MasterHistoricalTimeSeriesSource implements HistoricalTimeSeriesSou
   public Map<IdentifierBundle, HistoricalTimeSeries> getHistoricalTimeSeries(
       Set<IdentifierBundle> identifierSet, String dataSource, String dataProvider, String dataField, LocalDate start,
       boolean inclusiveStart, LocalDate end, boolean exclusiveEnd) {
-    // TODO [PLAT-1046]
-    throw new NotImplementedException();
+    ArgumentChecker.noNulls(identifierSet, "identifierSet");
+    ArgumentChecker.notNull(dataSource, "dataSource");
+    ArgumentChecker.notNull(dataField, "field");
+    if (start != null && !inclusiveStart) {
+      start = start.plusDays(1);
+    }
+    if (end != null && exclusiveEnd) {
+      end = end.minusDays(1);
+    }
+    Map<IdentifierBundle, HistoricalTimeSeries> result = new HashMap<IdentifierBundle, HistoricalTimeSeries>();
+    if (identifierSet.isEmpty()) {
+      return result;
+    }
+    
+    // a single search for the union of the identifiers, matched back to each bundle
+    Set<Identifier> identifiers = new HashSet<Identifier>();
+    for (IdentifierBundle bundle : identifierSet) {
+      identifiers.addAll(bundle.getIdentifiers());
+    }
+    HistoricalTimeSeriesSearchRequest request = new HistoricalTimeSeriesSearchRequest();
+    request.setIdentifiers(identifiers);
+    request.setDataSource(dataSource);
+    request.setDataProvider(dataProvider);
+    request.setDataField(dataField);
+    request.setStart(start);
+    request.setEnd(end);
+    request.setLoadTimeSeries(true);
+    
+    HistoricalTimeSeriesSearchResult searchResult = getMaster().search(request);
+    Map<Identifier, HistoricalTimeSeriesDocument> documentsByIdentifier = new HashMap<Identifier, HistoricalTimeSeriesDocument>();
+    for (HistoricalTimeSeriesDocument doc : searchResult.getDocuments()) {
+      if (doc.getSeries().getIdentifiers() == null) {
+        continue;
+      }
+      for (IdentifierWithDates identifierWithDates : doc.getSeries().getIdentifiers()) {
+        Identifier identifier = identifierWithDates.asIdentifier();
+        if (documentsByIdentifier.containsKey(identifier) == false) {
+          documentsByIdentifier.put(identifier, doc);
+        }
+      }
+    }
+    for (IdentifierBundle bundle : identifierSet) {
+      HistoricalTimeSeriesDocument match = null;
+      for (Identifier identifier : bundle) {
+        HistoricalTimeSeriesDocument doc = documentsByIdentifier.get(identifier);
+        if (doc == null) {
+          continue;
+        }
+        if (match == null) {
+          match = doc;
+        } else if (match != doc) {
+          Object[] param = new Object[]{bundle, dataSource, dataProvider, dataField, start, end};
+          s_logger.warn("multiple timeseries returned for identifiers={}, dataSource={}, dataProvider={}, dataField={}, start={} end={}", param);
+          break;
+        }
+      }
+      if (match != null) {
+        result.put(bundle, match.getSeries());
+      }
+    }
+    return result;
   }
 
   //-------------------------------------------------------------------------
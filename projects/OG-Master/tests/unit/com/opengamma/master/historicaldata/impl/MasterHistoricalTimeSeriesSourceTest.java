@@ -6,11 +6,16 @@
 package com.opengamma.master.historicaldata.impl;
 
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.Map;
+import java.util.Set;
 
 import javax.time.calendar.LocalDate;
 
@@ -18,10 +23,12 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Sets;
 import com.opengamma.core.historicaldata.HistoricalTimeSeries;
 import com.opengamma.core.historicaldata.HistoricalTimeSeriesFields;
 import com.opengamma.id.Identifier;
 import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.IdentifierBundleWithDates;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.master.historicaldata.HistoricalTimeSeriesDocument;
 import com.opengamma.master.historicaldata.HistoricalTimeSeriesGetRequest;
@@ -204,4 +211,35 @@ public class MasterHistoricalTimeSeriesSourceTest {
     assertEquals(doc.getSeries().getTimeSeries().values(), hts.getTimeSeries().values());
   }
 
+  public void getHistoricalTimeSeriesMultiple() throws Exception {
+    IdentifierBundle bundle1 = IdentifierBundle.of(Identifier.of("A", "B"), Identifier.of("C", "D"));
+    IdentifierBundle bundle2 = IdentifierBundle.of(Identifier.of("E", "F"));
+    IdentifierBundle bundle3 = IdentifierBundle.of(Identifier.of("G", "H"));
+    Set<IdentifierBundle> bundles = Sets.newHashSet(bundle1, bundle2, bundle3);
+    
+    HistoricalTimeSeriesSearchResult searchResult = new HistoricalTimeSeriesSearchResult();
+    HistoricalTimeSeriesDocument doc1 = new HistoricalTimeSeriesDocument();
+    doc1.getSeries().setIdentifiers(IdentifierBundleWithDates.of(IdentifierBundle.of(Identifier.of("C", "D"))));
+    doc1.getSeries().setTimeSeries(randomTimeSeries());
+    doc1.setUniqueId(UID);
+    searchResult.getDocuments().add(doc1);
+    HistoricalTimeSeriesDocument doc2 = new HistoricalTimeSeriesDocument();
+    doc2.getSeries().setIdentifiers(IdentifierBundleWithDates.of(bundle2));
+    doc2.getSeries().setTimeSeries(randomTimeSeries());
+    doc2.setUniqueId(UniqueIdentifier.of("A", "2"));
+    searchResult.getDocuments().add(doc2);
+    
+    when(_mockMaster.search(any(HistoricalTimeSeriesSearchRequest.class))).thenReturn(searchResult);
+    
+    Map<IdentifierBundle, HistoricalTimeSeries> result = _tsSource.getHistoricalTimeSeries(
+        bundles, BBG_DATA_SOURCE, CMPL_DATA_PROVIDER, CLOSE_DATA_FIELD, null, true, null, false);
+    verify(_mockMaster, times(1)).search(any(HistoricalTimeSeriesSearchRequest.class));
+    
+    assertEquals(2, result.size());
+    assertEquals(UID, result.get(bundle1).getUniqueId());
+    assertEquals(doc1.getSeries().getTimeSeries(), result.get(bundle1).getTimeSeries());
+    assertEquals(doc2.getUniqueId(), result.get(bundle2).getUniqueId());
+    assertNull(result.get(bundle3));
+  }
+
 }
@@ -0,0 +1 @@
+    create sequence hibernate_sequence start 1 increment 1;
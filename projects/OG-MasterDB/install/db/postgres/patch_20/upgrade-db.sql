@@ -0,0 +1,15 @@
+-- Chunked storage of daily data points, see ChunkedLocalDateDbHistoricalTimeSeriesMaster.
+-- The chunks are encoded in Java, so existing points are not copied by this script.
+-- Before switching opengamma.tss.dao to the chunked master, copy them by calling
+-- ChunkedLocalDateDbHistoricalTimeSeriesMaster.migrateDataPoints() once against the upgraded database.
+-- The migration can be re-run safely, series which already have chunks are skipped.
+CREATE TABLE tss_data_point_chunk (
+	meta_data_id BIGINT NOT NULL
+	  constraint fk_dp_chunk_meta_data  REFERENCES tss_meta_data (id),
+	first_date date NOT NULL,
+	last_date date NOT NULL,
+	point_count INTEGER NOT NULL,
+	chunk_data BYTEA NOT NULL,
+	PRIMARY KEY (meta_data_id, first_date)
+);
+CREATE INDEX idx_dp_chunk_last_date ON tss_data_point_chunk (meta_data_id, last_date);
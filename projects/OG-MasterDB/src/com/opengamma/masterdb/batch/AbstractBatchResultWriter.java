@@ -102,6 +102,11 @@ public abstract class AbstractBatchResultWriter {
    */
   private final ResultConverterCache _resultConverterCache;
   
+  /**
+   * Writes risk values in the background, null to write them synchronously
+   */
+  private volatile AsynchronousRiskValueWriter _riskValueWriter;
+  
   // Variables set in initialize()
   
   /**
@@ -426,7 +431,7 @@ public abstract class AbstractBatchResultWriter {
     s_logger.info("Inserted {} {} rows into DB", rows.size(), rowType);
   }
 
-  private int checkCount(String rowType, SqlParameterSource[] batchArgsArray, int[] counts) {
+  /*package*/ static int checkCount(String rowType, SqlParameterSource[] batchArgsArray, int[] counts) {
     int totalCount = 0;
     for (int count : counts) {
       totalCount += count;
@@ -440,15 +445,121 @@ public abstract class AbstractBatchResultWriter {
   
   // --------------------------------------------------------------------------
   
+  /**
+   * Writes successful risk values and marks their targets as succeeded.
+   * <p>
+   * If an asynchronous risk value writer has been set, the rows and the status
+   * entries are queued and written together in the background. Otherwise they
+   * are written immediately.
+   * 
+   * @param job  the job that produced the values, not null
+   * @param riskValues  the risk values, not null
+   * @param successfulTargets  the targets to mark as succeeded, not null
+   */
+  public void writeRiskValues(
+      CalculationJobSpecification job,
+      List<RiskValue> riskValues,
+      Set<ComputationTargetSpecification> successfulTargets) {
+    if (_riskValueWriter == null) {
+      List<SqlParameterSource> rows = new ArrayList<SqlParameterSource>(riskValues.size());
+      for (RiskValue riskValue : riskValues) {
+        rows.add(riskValue.toSqlParameterSource());
+      }
+      insertRows("risk", RiskValue.sqlInsertRisk(), rows);
+      upsertStatusEntries(job, StatusEntry.Status.SUCCESS, successfulTargets);
+    } else {
+      List<SqlParameterSource> inserts = new ArrayList<SqlParameterSource>();
+      List<SqlParameterSource> updates = new ArrayList<SqlParameterSource>();
+      prepareStatusEntries(job, StatusEntry.Status.SUCCESS, successfulTargets, inserts, updates);
+      _riskValueWriter.write(getCalculationConfigurationId(job.getCalcConfigName()), riskValues, inserts, updates);
+    }
+  }
+
+  /**
+   * Waits until all queued risk values have been written.
+   * Does nothing if risk values are written synchronously.
+   */
+  public void flushRiskValues() {
+    if (_riskValueWriter != null) {
+      _riskValueWriter.flush();
+    }
+  }
+
+  /**
+   * Gets the number of risk values queued but not yet written.
+   * 
+   * @return the write backlog, zero if risk values are written synchronously
+   */
+  public long getRiskValueBacklog() {
+    return _riskValueWriter != null ? _riskValueWriter.getBacklog() : 0;
+  }
+
+  /**
+   * Gets the number of risk values of one calculation configuration queued but not yet written.
+   * 
+   * @param calcConfName  the calculation configuration name, not null
+   * @return the write backlog, zero if risk values are written synchronously
+   */
+  public long getRiskValueBacklog(String calcConfName) {
+    return _riskValueWriter != null ? _riskValueWriter.getBacklog(getCalculationConfigurationId(calcConfName)) : 0;
+  }
+
+  public AsynchronousRiskValueWriter getRiskValueWriter() {
+    return _riskValueWriter;
+  }
+
+  /**
+   * Sets the writer used to write risk values in the background.
+   * 
+   * @param riskValueWriter  the writer, null to write risk values synchronously
+   */
+  public void setRiskValueWriter(AsynchronousRiskValueWriter riskValueWriter) {
+    _riskValueWriter = riskValueWriter;
+  }
+
+  // --------------------------------------------------------------------------
+  
   public void upsertStatusEntries(
       CalculationJobSpecification job,
       StatusEntry.Status status, 
       Set<ComputationTargetSpecification> targets) {
     
-    Integer calcConfId = getCalculationConfigurationId(job.getCalcConfigName());
-    
     List<SqlParameterSource> inserts = new ArrayList<SqlParameterSource>();
     List<SqlParameterSource> updates = new ArrayList<SqlParameterSource>();
+    prepareStatusEntries(job, status, targets, inserts, updates);
+    
+    if (_riskValueWriter != null) {
+      // _searchKey2StatusEntry may refer to status entries that are still queued,
+      // so every status write of the calculation configuration must go through
+      // the same queue to keep each update behind the insert of its row
+      _riskValueWriter.write(getCalculationConfigurationId(job.getCalcConfigName()), 
+          Collections.<RiskValue>emptyList(), inserts, updates);
+      return;
+    }
+    
+    s_logger.info("Inserting {} and updating {} {} status entries", 
+        new Object[] {inserts.size(), updates.size(), status});
+    
+    SqlParameterSource[] batchArgsArray = inserts.toArray(new SqlParameterSource[0]);
+    int[] counts = getJdbcTemplate().batchUpdate(StatusEntry.sqlInsert(), batchArgsArray);
+    checkCount(status + " insert", batchArgsArray, counts);
+    
+    batchArgsArray = updates.toArray(new SqlParameterSource[0]);
+    counts = getJdbcTemplate().batchUpdate(StatusEntry.sqlUpdate(), batchArgsArray);
+    checkCount(status + " update", batchArgsArray, counts);
+    
+    s_logger.info("Inserted {} and updated {} {} status entries", 
+        new Object[] {inserts.size(), updates.size(), status});
+  }
+
+  private void prepareStatusEntries(
+      CalculationJobSpecification job,
+      StatusEntry.Status status, 
+      Set<ComputationTargetSpecification> targets,
+      List<SqlParameterSource> inserts,
+      List<SqlParameterSource> updates) {
+    
+    Integer calcConfId = getCalculationConfigurationId(job.getCalcConfigName());
     
     for (ComputationTargetSpecification target : targets) {
       Integer computationTargetId = getComputationTargetId(target);
@@ -480,20 +591,6 @@ public abstract class AbstractBatchResultWriter {
         inserts.add(params);
       }
     }
-    
-    s_logger.info("Inserting {} and updating {} {} status entries", 
-        new Object[] {inserts.size(), updates.size(), status});
-    
-    SqlParameterSource[] batchArgsArray = inserts.toArray(new SqlParameterSource[0]);
-    int[] counts = getJdbcTemplate().batchUpdate(StatusEntry.sqlInsert(), batchArgsArray);
-    checkCount(status + " insert", batchArgsArray, counts);
-    
-    batchArgsArray = updates.toArray(new SqlParameterSource[0]);
-    counts = getJdbcTemplate().batchUpdate(StatusEntry.sqlUpdate(), batchArgsArray);
-    checkCount(status + " update", batchArgsArray, counts);
-    
-    s_logger.info("Inserted {} and updated {} {} status entries", 
-        new Object[] {inserts.size(), updates.size(), status});
   }
   
   public StatusEntry.Status getStatus(String calcConfName, ComputationTargetSpecification ct) {
@@ -0,0 +1,618 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.batch;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+import com.opengamma.util.db.DbSource;
+import com.opengamma.util.db.PostgreSQLDbHelper;
+
+/**
+ * Writes risk values into {@code rsk_value} on background threads.
+ * <p>
+ * Rows are buffered in a bounded queue per calculation configuration and written
+ * in large batches, so the thread delivering results only blocks when a queue is full.
+ * The status entries of the targets whose values are queued are written in the same
+ * transaction as the values, so a restarted batch never finds a {@code SUCCESS}
+ * status without the values behind it.
+ * <p>
+ * On PostgreSQL the rows are loaded with {@code COPY}, otherwise with a JDBC batch insert.
+ * A partly filled batch is only written when {@link #flush()} is called, which
+ * must happen before the run is ended, or when a thread is waiting for space in its queue.
+ * <p>
+ * After a failed write the writer discards everything queued and rethrows the
+ * failure to every later caller, so the run must be restarted.
+ * <p>
+ * This class is thread-safe.
+ */
+public class AsynchronousRiskValueWriter {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(AsynchronousRiskValueWriter.class);
+
+  /**
+   * The default maximum number of rows queued per calculation configuration.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 200000;
+  /**
+   * The default number of rows written in one batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 20000;
+  /**
+   * The default number of writer threads.
+   */
+  public static final int DEFAULT_WRITER_THREADS = 2;
+  /**
+   * How often flush() checks for units queued while it waits.
+   */
+  private static final long FLUSH_POLL_MILLIS = 100;
+  /**
+   * How often a thread waiting for space in a queue checks for a failure.
+   */
+  private static final long ACQUIRE_POLL_MILLIS = 100;
+
+  /**
+   * DB configuration
+   */
+  private final DbSource _dbSource;
+  /**
+   * Maximum number of rows queued per calculation configuration
+   */
+  private final int _queueCapacity;
+  /**
+   * Number of rows written in one batch
+   */
+  private final int _batchSize;
+  /**
+   * Runs the flushes
+   */
+  private final ExecutorService _executor;
+  /**
+   * Key is rsk_calculation_configuration(id)
+   */
+  private final ConcurrentMap<Integer, WriteQueue> _queues = new ConcurrentHashMap<Integer, WriteQueue>();
+  /**
+   * Rows queued or being written, across all calculation configurations
+   */
+  private final AtomicLong _backlog = new AtomicLong();
+  /**
+   * Units queued or being written, including those without risk values
+   */
+  private final AtomicLong _pendingUnits = new AtomicLong();
+  /**
+   * Number of callers waiting in flush()
+   */
+  private final AtomicInteger _flushing = new AtomicInteger();
+  /**
+   * Rows written since the writer was created
+   */
+  private final AtomicLong _rowsWritten = new AtomicLong();
+  /**
+   * Transactions committed since the writer was created
+   */
+  private final AtomicLong _batchesWritten = new AtomicLong();
+  /**
+   * Notified whenever the backlog falls or a write fails
+   */
+  private final Object _flushLock = new Object();
+  /**
+   * Whether COPY can be used, cleared if the connection does not expose the PostgreSQL API
+   */
+  private volatile boolean _copySupported;
+  /**
+   * The first failure of a background write, rethrown to callers
+   */
+  private volatile Throwable _failure;
+  /**
+   * Set once closed
+   */
+  private volatile boolean _closed;
+
+  public AsynchronousRiskValueWriter(DbSource dbSource) {
+    this(dbSource, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_WRITER_THREADS);
+  }
+
+  public AsynchronousRiskValueWriter(DbSource dbSource, int queueCapacity, int batchSize, int writerThreads) {
+    ArgumentChecker.notNull(dbSource, "dbSource");
+    ArgumentChecker.isTrue(queueCapacity > 0, "queueCapacity must be greater than zero");
+    ArgumentChecker.isTrue(batchSize > 0, "batchSize must be greater than zero");
+    ArgumentChecker.isTrue(writerThreads > 0, "writerThreads must be greater than zero");
+    ArgumentChecker.isTrue(queueCapacity >= batchSize, "queueCapacity must not be less than batchSize");
+    _dbSource = dbSource;
+    _queueCapacity = queueCapacity;
+    _batchSize = batchSize;
+    _executor = Executors.newFixedThreadPool(writerThreads, new NamedThreadPoolFactory("AsynchronousRiskValueWriter"));
+    _copySupported = dbSource.getDialect() instanceof PostgreSQLDbHelper;
+  }
+
+  // --------------------------------------------------------------------------
+
+  public int getQueueCapacity() {
+    return _queueCapacity;
+  }
+
+  public int getBatchSize() {
+    return _batchSize;
+  }
+
+  public boolean isCopySupported() {
+    return _copySupported;
+  }
+
+  /**
+   * Gets the number of rows queued or being written.
+   *
+   * @return the write backlog
+   */
+  public long getBacklog() {
+    return _backlog.get();
+  }
+
+  /**
+   * Gets the number of rows of one calculation configuration queued or being written.
+   *
+   * @param calcConfId  the calculation configuration, references rsk_calculation_configuration(id)
+   * @return the write backlog
+   */
+  public long getBacklog(int calcConfId) {
+    WriteQueue queue = _queues.get(calcConfId);
+    return queue != null ? queue._rows.get() : 0;
+  }
+
+  /**
+   * Gets the number of rows written since the writer was created.
+   *
+   * @return the row count
+   */
+  public long getRowsWritten() {
+    return _rowsWritten.get();
+  }
+
+  /**
+   * Gets the number of transactions committed since the writer was created.
+   *
+   * @return the batch count
+   */
+  public long getBatchesWritten() {
+    return _batchesWritten.get();
+  }
+
+  /**
+   * Gets the failure that stopped the writer.
+   *
+   * @return the failure, null if no write has failed
+   */
+  public Throwable getFailure() {
+    return _failure;
+  }
+
+  public boolean isClosed() {
+    return _closed;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Queues risk values, blocking while the queue of the calculation configuration is full.
+   *
+   * @param calcConfId  the calculation configuration, references rsk_calculation_configuration(id)
+   * @param riskValues  the risk values, not null
+   * @param statusInserts  the rsk_run_status rows to insert with the values, not null
+   * @param statusUpdates  the rsk_run_status rows to update with the values, not null
+   */
+  public void write(int calcConfId, List<RiskValue> riskValues, List<SqlParameterSource> statusInserts, List<SqlParameterSource> statusUpdates) {
+    ArgumentChecker.notNull(riskValues, "riskValues");
+    ArgumentChecker.notNull(statusInserts, "statusInserts");
+    ArgumentChecker.notNull(statusUpdates, "statusUpdates");
+    checkWritable();
+    if (riskValues.isEmpty() && statusInserts.isEmpty() && statusUpdates.isEmpty()) {
+      return;
+    }
+
+    WriteQueue queue = getQueue(calcConfId);
+    WriteUnit unit = new WriteUnit(riskValues, statusInserts, statusUpdates, Math.min(riskValues.size(), _queueCapacity));
+    acquire(queue, unit._permits);
+    _backlog.addAndGet(riskValues.size());
+    _pendingUnits.incrementAndGet();
+    queue._rows.addAndGet(riskValues.size());
+    queue._units.add(unit);
+    if (_failure != null) {
+      // the failing thread may already have discarded the queue
+      discard(queue);
+      checkFailure();
+    }
+    if (queue._rows.get() >= _batchSize) {
+      schedule(queue);
+    }
+  }
+
+  private void acquire(WriteQueue queue, int permits) {
+    if (queue._capacity.tryAcquire(permits)) {
+      return;
+    }
+    try {
+      do {
+        // a waiting thread makes the drain write partly filled batches
+        schedule(queue);
+        checkWritable();
+      } while (!queue._capacity.tryAcquire(permits, ACQUIRE_POLL_MILLIS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted while waiting to queue risk values", e);
+    }
+  }
+
+  /**
+   * Writes all queued rows, including partly filled batches, and waits for them.
+   *
+   * @throws RuntimeException if a background write has failed
+   */
+  public void flush() {
+    _flushing.incrementAndGet();
+    try {
+      synchronized (_flushLock) {
+        while (_pendingUnits.get() > 0 && _failure == null) {
+          // rescheduled on every pass to pick up units queued while flushing
+          for (WriteQueue queue : _queues.values()) {
+            schedule(queue);
+          }
+          _flushLock.wait(FLUSH_POLL_MILLIS);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted while flushing risk values", e);
+    } finally {
+      _flushing.decrementAndGet();
+    }
+    checkFailure();
+  }
+
+  /**
+   * Flushes the queued rows and stops the writer threads.
+   */
+  public void close() {
+    try {
+      flush();
+    } finally {
+      _closed = true;
+      _executor.shutdown();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  private WriteQueue getQueue(int calcConfId) {
+    WriteQueue queue = _queues.get(calcConfId);
+    if (queue == null) {
+      WriteQueue newQueue = new WriteQueue(calcConfId, _queueCapacity);
+      queue = _queues.putIfAbsent(calcConfId, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    return queue;
+  }
+
+  private void checkWritable() {
+    if (_closed) {
+      throw new IllegalStateException("Writer has been closed");
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() {
+    Throwable failure = _failure;
+    if (failure != null) {
+      throw new OpenGammaRuntimeException("Failed to write risk values", failure);
+    }
+  }
+
+  private void schedule(final WriteQueue queue) {
+    if (queue._units.isEmpty() || !queue._scheduled.compareAndSet(false, true)) {
+      return;
+    }
+    _executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        drain(queue);
+      }
+    });
+  }
+
+  private void drain(WriteQueue queue) {
+    try {
+      while (_failure == null) {
+        List<WriteUnit> units = new ArrayList<WriteUnit>();
+        int rows = 0;
+        while (rows < _batchSize) {
+          WriteUnit unit = queue._units.poll();
+          if (unit == null) {
+            break;
+          }
+          units.add(unit);
+          rows += unit._riskValues.size();
+        }
+        if (units.isEmpty()) {
+          break;
+        }
+        try {
+          writeUnits(queue, units, rows);
+        } catch (Throwable t) {
+          // recorded before the units are released, so flush() never mistakes them for written
+          s_logger.error("Failed to write risk values for calculation configuration " + queue._calcConfId, t);
+          if (_failure == null) {
+            _failure = t;
+          }
+        } finally {
+          release(queue, units, rows);
+        }
+        if (!isDrainRequired(queue)) {
+          // leave a partly filled batch to fill up
+          break;
+        }
+      }
+    } finally {
+      queue._scheduled.set(false);
+    }
+    if (_failure != null) {
+      for (WriteQueue failedQueue : _queues.values()) {
+        discard(failedQueue);
+      }
+    } else if (isDrainRequired(queue)) {
+      schedule(queue);
+    }
+  }
+
+  private boolean isDrainRequired(WriteQueue queue) {
+    return _flushing.get() > 0 || queue._rows.get() >= _batchSize || queue._capacity.hasQueuedThreads();
+  }
+
+  /**
+   * Drops the queued units after a failure, releasing any thread waiting for space.
+   */
+  private void discard(WriteQueue queue) {
+    List<WriteUnit> units = new ArrayList<WriteUnit>();
+    int rows = 0;
+    WriteUnit unit = queue._units.poll();
+    while (unit != null) {
+      units.add(unit);
+      rows += unit._riskValues.size();
+      unit = queue._units.poll();
+    }
+    if (!units.isEmpty()) {
+      s_logger.warn("Discarding {} risk values for calculation configuration {}", rows, queue._calcConfId);
+      release(queue, units, rows);
+    }
+  }
+
+  private void release(WriteQueue queue, List<WriteUnit> units, int rows) {
+    for (WriteUnit unit : units) {
+      queue._capacity.release(unit._permits);
+    }
+    queue._rows.addAndGet(-rows);
+    _backlog.addAndGet(-rows);
+    _pendingUnits.addAndGet(-units.size());
+    synchronized (_flushLock) {
+      _flushLock.notifyAll();
+    }
+  }
+
+  private void writeUnits(final WriteQueue queue, final List<WriteUnit> units, final int rows) {
+    TransactionTemplate transactionTemplate = _dbSource.getTransactionTemplate();
+    if (transactionTemplate == null) {
+      writeUnitsImpl(units, rows);
+    } else {
+      transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+        @Override
+        protected void doInTransactionWithoutResult(TransactionStatus status) {
+          writeUnitsImpl(units, rows);
+        }
+      });
+    }
+    _rowsWritten.addAndGet(rows);
+    _batchesWritten.incrementAndGet();
+    s_logger.debug("Wrote {} risk values for calculation configuration {}, backlog {}",
+        new Object[] {rows, queue._calcConfId, _backlog.get() - rows});
+  }
+
+  private void writeUnitsImpl(List<WriteUnit> units, int rows) {
+    List<RiskValue> riskValues = new ArrayList<RiskValue>(rows);
+    List<SqlParameterSource> statusInserts = new ArrayList<SqlParameterSource>();
+    List<SqlParameterSource> statusUpdates = new ArrayList<SqlParameterSource>();
+    for (WriteUnit unit : units) {
+      riskValues.addAll(unit._riskValues);
+      statusInserts.addAll(unit._statusInserts);
+      statusUpdates.addAll(unit._statusUpdates);
+    }
+
+    if (!riskValues.isEmpty()) {
+      if (!_copySupported || !copyRiskValues(riskValues)) {
+        insertRiskValues(riskValues);
+      }
+    }
+    if (!statusInserts.isEmpty()) {
+      SqlParameterSource[] batchArgsArray = statusInserts.toArray(new SqlParameterSource[0]);
+      int[] counts = _dbSource.getJdbcTemplate().batchUpdate(StatusEntry.sqlInsert(), batchArgsArray);
+      AbstractBatchResultWriter.checkCount("status insert", batchArgsArray, counts);
+    }
+    if (!statusUpdates.isEmpty()) {
+      SqlParameterSource[] batchArgsArray = statusUpdates.toArray(new SqlParameterSource[0]);
+      int[] counts = _dbSource.getJdbcTemplate().batchUpdate(StatusEntry.sqlUpdate(), batchArgsArray);
+      AbstractBatchResultWriter.checkCount("status update", batchArgsArray, counts);
+    }
+  }
+
+  private void insertRiskValues(List<RiskValue> riskValues) {
+    SqlParameterSource[] batchArgsArray = new SqlParameterSource[riskValues.size()];
+    for (int i = 0; i < batchArgsArray.length; i++) {
+      batchArgsArray[i] = riskValues.get(i).toSqlParameterSource();
+    }
+    int[] counts = _dbSource.getJdbcTemplate().batchUpdate(RiskValue.sqlInsertRisk(), batchArgsArray);
+    AbstractBatchResultWriter.checkCount("risk", batchArgsArray, counts);
+  }
+
+  /**
+   * Loads the rows with PostgreSQL {@code COPY}.
+   *
+   * @param riskValues  the rows, not null
+   * @return false if the connection does not expose the PostgreSQL API
+   */
+  private boolean copyRiskValues(List<RiskValue> riskValues) {
+    final String data = toCopyText(riskValues);
+    Long count = _dbSource.getJdbcTemplate().getJdbcOperations().execute(new ConnectionCallback<Long>() {
+      @Override
+      public Long doInConnection(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(PGConnection.class)) {
+          return null;
+        }
+        try {
+          return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(RiskValue.sqlCopyRisk(), new StringReader(data));
+        } catch (IOException e) {
+          throw new SQLException(e);
+        }
+      }
+    });
+    if (count == null) {
+      s_logger.warn("Connection does not expose the PostgreSQL API, falling back to batch insert");
+      _copySupported = false;
+      return false;
+    }
+    if (count != riskValues.size()) {
+      throw new RuntimeException("risk copy count is wrong: expected = " + riskValues.size() + " actual = " + count);
+    }
+    return true;
+  }
+
+  /**
+   * Formats rows in the text format of {@code COPY}, in the column order of {@link RiskValue#sqlCopyRisk()}.
+   *
+   * @param riskValues  the rows, not null
+   * @return the text, not null
+   */
+  /*package*/ static String toCopyText(List<RiskValue> riskValues) {
+    // same local time representation as the JDBC driver uses for a timestamp parameter
+    SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    StringBuilder buf = new StringBuilder(riskValues.size() * 80);
+    for (RiskValue riskValue : riskValues) {
+      buf.append(riskValue.getId()).append('\t')
+        .append(riskValue.getCalculationConfigurationId()).append('\t')
+        .append(riskValue.getValueNameId()).append('\t')
+        .append(escapeCopyText(String.valueOf(riskValue.getFunctionUniqueId()))).append('\t')
+        .append(riskValue.getComputationTargetId()).append('\t')
+        .append(riskValue.getRunId()).append('\t')
+        .append(riskValue.getValue()).append('\t')
+        .append(timestampFormat.format(riskValue.getEvalInstant())).append('\t')
+        .append(riskValue.getComputeNodeId()).append('\n');
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Escapes the characters that delimit the text format of {@code COPY}.
+   *
+   * @param value  the column value, not null
+   * @return the escaped value, not null
+   */
+  /*package*/ static String escapeCopyText(String value) {
+    StringBuilder buf = null;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      String escape;
+      switch (c) {
+        case '\\':
+          escape = "\\\\";
+          break;
+        case '\t':
+          escape = "\\t";
+          break;
+        case '\n':
+          escape = "\\n";
+          break;
+        case '\r':
+          escape = "\\r";
+          break;
+        default:
+          escape = null;
+      }
+      if (escape != null && buf == null) {
+        buf = new StringBuilder(value.length() + 8).append(value, 0, i);
+      }
+      if (buf != null) {
+        if (escape != null) {
+          buf.append(escape);
+        } else {
+          buf.append(c);
+        }
+      }
+    }
+    return buf != null ? buf.toString() : value;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * The queue of one calculation configuration.
+   */
+  private static final class WriteQueue {
+    private final int _calcConfId;
+    private final Queue<WriteUnit> _units = new ConcurrentLinkedQueue<WriteUnit>();
+    private final Semaphore _capacity;
+    private final AtomicLong _rows = new AtomicLong();
+    private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+    private WriteQueue(int calcConfId, int capacity) {
+      _calcConfId = calcConfId;
+      _capacity = new Semaphore(capacity);
+    }
+  }
+
+  /**
+   * The rows queued by one call to write, which are always written in the same transaction.
+   */
+  private static final class WriteUnit {
+    private final List<RiskValue> _riskValues;
+    private final List<SqlParameterSource> _statusInserts;
+    private final List<SqlParameterSource> _statusUpdates;
+    private final int _permits;
+
+    private WriteUnit(List<RiskValue> riskValues, List<SqlParameterSource> statusInserts, List<SqlParameterSource> statusUpdates, int permits) {
+      _riskValues = riskValues;
+      _statusInserts = statusInserts;
+      _statusUpdates = statusUpdates;
+      _permits = permits;
+    }
+  }
+
+}
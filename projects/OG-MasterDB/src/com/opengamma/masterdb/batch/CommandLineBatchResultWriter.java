@@ -287,7 +287,7 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
     
     }
     
-    List<SqlParameterSource> successes = new ArrayList<SqlParameterSource>();
+    List<RiskValue> successes = new ArrayList<RiskValue>();
     List<SqlParameterSource> failures = new ArrayList<SqlParameterSource>();
     List<SqlParameterSource> failureReasons = new ArrayList<SqlParameterSource>();
     
@@ -339,7 +339,7 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
             riskValue.setValue(riskValueEntry.getValue());
             riskValue.setEvalInstant(evalInstant);
             riskValue.setComputeNodeId(computeNodeId);
-            successes.add(riskValue.toSqlParameterSource());
+            successes.add(riskValue);
           }
         }
         
@@ -420,12 +420,13 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
     getSessionFactory().getCurrentSession().getTransaction().commit();
     getSessionFactory().getCurrentSession().beginTransaction();
     
-    insertRows("risk", RiskValue.sqlInsertRisk(), successes);
     insertRows("risk failure", RiskFailure.sqlInsertRiskFailure(), failures);
     insertRows("risk failure reason", FailureReason.sqlInsertRiskFailureReason(), failureReasons);
-      
-    upsertStatusEntries(result.getSpecification(), StatusEntry.Status.SUCCESS, successfulTargets);
     upsertStatusEntries(result.getSpecification(), StatusEntry.Status.FAILURE, failedTargets);
+    
+    // the SUCCESS status entries are written together with the risk values,
+    // so a restarted batch never skips a target whose values were not written
+    writeRiskValues(result.getSpecification(), successes, successfulTargets);
   }
   
   // --------------------------------------------------------------------------
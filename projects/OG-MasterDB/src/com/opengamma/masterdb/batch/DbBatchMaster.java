@@ -15,6 +15,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.time.Instant;
 import javax.time.calendar.LocalDate;
 import javax.time.calendar.OffsetTime;
@@ -104,6 +107,23 @@ public class DbBatchMaster extends AbstractDbMaster implements BatchMaster, Batc
    * The Hibernate template.
    */
   private HibernateTemplate _hibernateTemplate;
+  /**
+   * Maximum number of risk values queued per calculation configuration,
+   * zero to write them synchronously.
+   */
+  private int _riskValueQueueCapacity;
+  /**
+   * Number of risk values written in one batch when writing asynchronously.
+   */
+  private int _riskValueBatchSize = AsynchronousRiskValueWriter.DEFAULT_BATCH_SIZE;
+  /**
+   * Number of threads writing risk values when writing asynchronously.
+   */
+  private int _riskValueWriterThreads = AsynchronousRiskValueWriter.DEFAULT_WRITER_THREADS;
+  /**
+   * Registers the asynchronous risk value writers, null to not register them.
+   */
+  private MBeanServer _mbeanServer;
 
   /**
    * Creates an instance.
@@ -148,6 +168,59 @@ public class DbBatchMaster extends AbstractDbMaster implements BatchMaster, Batc
     return _hibernateTemplate;
   }
 
+  /**
+   * Gets the maximum number of risk values queued per calculation configuration.
+   * 
+   * @return the queue capacity, zero if risk values are written synchronously
+   */
+  public int getRiskValueQueueCapacity() {
+    return _riskValueQueueCapacity;
+  }
+
+  /**
+   * Sets the maximum number of risk values queued per calculation configuration.
+   * A value greater than zero makes batches write risk values in the background,
+   * see {@link AsynchronousRiskValueWriter}.
+   * 
+   * @param riskValueQueueCapacity  the queue capacity, zero to write synchronously
+   */
+  public void setRiskValueQueueCapacity(int riskValueQueueCapacity) {
+    ArgumentChecker.isTrue(riskValueQueueCapacity >= 0, "riskValueQueueCapacity must not be negative");
+    _riskValueQueueCapacity = riskValueQueueCapacity;
+  }
+
+  public int getRiskValueBatchSize() {
+    return _riskValueBatchSize;
+  }
+
+  public void setRiskValueBatchSize(int riskValueBatchSize) {
+    ArgumentChecker.isTrue(riskValueBatchSize > 0, "riskValueBatchSize must be greater than zero");
+    _riskValueBatchSize = riskValueBatchSize;
+  }
+
+  public int getRiskValueWriterThreads() {
+    return _riskValueWriterThreads;
+  }
+
+  public void setRiskValueWriterThreads(int riskValueWriterThreads) {
+    ArgumentChecker.isTrue(riskValueWriterThreads > 0, "riskValueWriterThreads must be greater than zero");
+    _riskValueWriterThreads = riskValueWriterThreads;
+  }
+
+  public MBeanServer getMBeanServer() {
+    return _mbeanServer;
+  }
+
+  /**
+   * Sets the server with which the asynchronous risk value writer of each batch is
+   * registered, exposing its write backlog, for as long as the batch runs.
+   * 
+   * @param mbeanServer  the server, null to not register the writers
+   */
+  public void setMBeanServer(MBeanServer mbeanServer) {
+    _mbeanServer = mbeanServer;
+  }
+
   //-------------------------------------------------------------------------
   /*package*/OpenGammaVersion getOpenGammaVersion(final BatchJobRun job) {
     OpenGammaVersion version = getHibernateTemplate().execute(new HibernateCallback<OpenGammaVersion>() {
@@ -641,6 +714,9 @@ public class DbBatchMaster extends AbstractDbMaster implements BatchMaster, Batc
   private void endBatchImpl(BatchJobRun batch) {
     s_logger.info("Ending batch {}", batch);
     
+    // the results of the last cycle may still be queued
+    getDbHandle(batch).closeRiskValueWriter();
+    
     RiskRun run = getRiskRunFromHandle(batch);
     endRun(run);
   }
@@ -783,6 +859,55 @@ public class DbBatchMaster extends AbstractDbMaster implements BatchMaster, Batc
     private RiskRun _riskRun;
     private Set<RiskValueName> _riskValueNames;
     private Set<ComputationTarget> _computationTargets;
+    /**
+     * Shared by all cycles of the batch, null if risk values are written synchronously
+     */
+    private AsynchronousRiskValueWriter _riskValueWriter;
+    /**
+     * The JMX name of the writer, null if not registered
+     */
+    private ObjectName _riskValueWriterName;
+    /**
+     * The server the writer is registered with, null if not registered
+     */
+    private MBeanServer _riskValueWriterServer;
+    
+    private synchronized AsynchronousRiskValueWriter getOrCreateRiskValueWriter(DbBatchMaster master) {
+      if (_riskValueWriter == null && master.getRiskValueQueueCapacity() > 0) {
+        _riskValueWriter = new AsynchronousRiskValueWriter(
+            master.getDbSource(),
+            master.getRiskValueQueueCapacity(),
+            master.getRiskValueBatchSize(),
+            master.getRiskValueWriterThreads());
+        if (master.getMBeanServer() != null) {
+          try {
+            _riskValueWriterName = com.opengamma.masterdb.batch.jmx.AsynchronousRiskValueWriter.registerMBeans(
+                _riskValueWriter, "run" + _riskRun.getId(), master.getMBeanServer());
+            _riskValueWriterServer = master.getMBeanServer();
+          } catch (JMException e) {
+            s_logger.warn("Could not register risk value writer of run " + _riskRun.getId() + " with JMX", e);
+          }
+        }
+      }
+      return _riskValueWriter;
+    }
+    
+    private synchronized void closeRiskValueWriter() {
+      if (_riskValueWriter == null) {
+        return;
+      }
+      try {
+        _riskValueWriter.close();
+      } finally {
+        if (_riskValueWriterName != null) {
+          try {
+            com.opengamma.masterdb.batch.jmx.AsynchronousRiskValueWriter.unregisterMBeans(_riskValueWriterName, _riskValueWriterServer);
+          } catch (JMException e) {
+            s_logger.warn("Could not unregister " + _riskValueWriterName + " from JMX", e);
+          }
+        }
+      }
+    }
   }
   
   @Override
@@ -816,6 +941,7 @@ public class DbBatchMaster extends AbstractDbMaster implements BatchMaster, Batc
           getDbHandle(_batch)._computationTargets,
           getRiskRunFromHandle(_batch),
           getDbHandle(_batch)._riskValueNames);
+      writer.setRiskValueWriter(getDbHandle(_batch).getOrCreateRiskValueWriter(DbBatchMaster.this));
       
       // Ultimate executor of the tasks
       DependencyGraphExecutor<CalculationJobResult> level3Executor =
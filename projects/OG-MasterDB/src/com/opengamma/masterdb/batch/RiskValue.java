@@ -123,6 +123,19 @@ public class RiskValue {
               ":eval_instant, :compute_node_id)";
   }
   
+  /**
+   * Gets the PostgreSQL {@code COPY} statement loading rows in text format,
+   * with columns in the same order as {@link #sqlInsertRisk()}.
+   * 
+   * @return the SQL, not null
+   */
+  public static String sqlCopyRisk() {
+    return "COPY " + DbBatchMaster.getDatabaseSchema() + "rsk_value " +
+              "(id, calculation_configuration_id, value_name_id, function_unique_id, computation_target_id, run_id, value, " +
+              "eval_instant, compute_node_id) " +
+            "FROM STDIN";
+  }
+  
   public static String sqlDeleteRiskValues() {
     return "DELETE FROM " + DbBatchMaster.getDatabaseSchema() + "rsk_value WHERE run_id = :run_id";
   }
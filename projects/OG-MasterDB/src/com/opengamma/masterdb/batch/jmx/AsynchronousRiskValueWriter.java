@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.batch.jmx;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AsynchronousRiskValueWriterMBean implementation.
+ */
+public final class AsynchronousRiskValueWriter implements AsynchronousRiskValueWriterMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(AsynchronousRiskValueWriter.class);
+
+  private final com.opengamma.masterdb.batch.AsynchronousRiskValueWriter _underlying;
+
+  private AsynchronousRiskValueWriter(final com.opengamma.masterdb.batch.AsynchronousRiskValueWriter underlying) {
+    _underlying = underlying;
+  }
+
+  private com.opengamma.masterdb.batch.AsynchronousRiskValueWriter getUnderlying() {
+    return _underlying;
+  }
+
+  public static ObjectName registerMBeans(final com.opengamma.masterdb.batch.AsynchronousRiskValueWriter writer, final String name, final MBeanServer server)
+    throws JMException {
+    final ObjectName objectName = new ObjectName("com.opengamma:type=AsynchronousRiskValueWriter,name=" + ObjectName.quote(name));
+    final AsynchronousRiskValueWriter instance = new AsynchronousRiskValueWriter(writer);
+    try {
+      server.registerMBean(instance, objectName);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", objectName);
+      server.unregisterMBean(objectName);
+      server.registerMBean(instance, objectName);
+    }
+    return objectName;
+  }
+
+  public static void unregisterMBeans(final ObjectName objectName, final MBeanServer server) throws JMException {
+    try {
+      server.unregisterMBean(objectName);
+    } catch (InstanceNotFoundException e) {
+      s_logger.warn("JMX MBean {} not registered", objectName);
+    }
+  }
+
+  @Override
+  public int getQueueCapacity() {
+    return getUnderlying().getQueueCapacity();
+  }
+
+  @Override
+  public int getBatchSize() {
+    return getUnderlying().getBatchSize();
+  }
+
+  @Override
+  public boolean isCopySupported() {
+    return getUnderlying().isCopySupported();
+  }
+
+  @Override
+  public long getBacklog() {
+    return getUnderlying().getBacklog();
+  }
+
+  @Override
+  public long getRowsWritten() {
+    return getUnderlying().getRowsWritten();
+  }
+
+  @Override
+  public long getBatchesWritten() {
+    return getUnderlying().getBatchesWritten();
+  }
+
+  @Override
+  public String getFailure() {
+    final Throwable failure = getUnderlying().getFailure();
+    return (failure != null) ? failure.toString() : null;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return getUnderlying().isClosed();
+  }
+
+}
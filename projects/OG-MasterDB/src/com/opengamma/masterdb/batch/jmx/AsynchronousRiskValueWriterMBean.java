@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.batch.jmx;
+
+/**
+ * JMX MBean interface for the write backlog of a batch run's risk values.
+ */
+public interface AsynchronousRiskValueWriterMBean {
+
+  int getQueueCapacity();
+  int getBatchSize();
+  boolean isCopySupported();
+  long getBacklog();
+  long getRowsWritten();
+  long getBatchesWritten();
+  String getFailure();
+  boolean isClosed();
+
+}
@@ -0,0 +1,10 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+/**
+ * JMX management of batch database writing.
+ */
+package com.opengamma.masterdb.batch.jmx;
@@ -0,0 +1,640 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.historicaldata;
+
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.DELETE_DATA_POINT_CHUNK;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.DELETE_DATA_POINT_CHUNKS;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.INSERT_DATA_POINT_CHUNK;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.INSERT_TIME_SERIES_DELTA_D;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.INSERT_TIME_SERIES_DELTA_I;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.INSERT_TIME_SERIES_DELTA_U;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_DATA_POINT_CHUNKS;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_DATA_POINT_CHUNKS_BY_IDS;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_PRECEDING_DATA_POINT_CHUNK;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_UNMIGRATED_TIME_SERIES_IDS;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOCK_META_DATA;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.UPDATE_DATA_POINT_CHUNK;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.time.calendar.LocalDate;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Sets;
+import com.opengamma.DataNotFoundException;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.db.DbSource;
+import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+import com.opengamma.util.timeseries.fast.integer.FastArrayIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+
+/**
+ * A historical time-series master that stores daily points in compressed chunks.
+ * <p>
+ * Each row of {@code tss_data_point_chunk} holds a block of consecutive points of one series,
+ * encoded by {@link DataPointChunkCodec}, with the first and last date of the block.
+ * Reads only fetch the chunks overlapping the requested range and decode them straight
+ * into a primitive array time-series.
+ * Appends fill the last chunk of a series before starting a new one, and corrections
+ * rewrite only the chunks they touch.
+ * <p>
+ * The delta table is maintained exactly as by the row store, so history and corrections
+ * have the same semantics. As the chunk table has no triggers, this master always writes
+ * the delta rows itself.
+ * <p>
+ * Every change rewrites whole chunks from what it has read, so changes to a series first
+ * lock its row of {@code tss_meta_data}, serializing concurrent writers of the same series.
+ * <p>
+ * Points stored by the row store are not visible to this master until they have been
+ * copied by {@link #migrateDataPoints()}.
+ */
+public class ChunkedLocalDateDbHistoricalTimeSeriesMaster extends LocalDateDbHistoricalTimeSeriesMaster {
+
+  /**
+   * The default maximum number of points in a chunk.
+   */
+  public static final int DEFAULT_MAX_CHUNK_SIZE = 512;
+  /**
+   * List of additional keys expected in the Map containing SQL queries.
+   */
+  private static final Set<String> CHUNK_SQL_MAP_KEYS = Collections.unmodifiableSet(Sets.newHashSet(
+      LOAD_DATA_POINT_CHUNKS,
+      LOAD_DATA_POINT_CHUNKS_BY_IDS,
+      LOAD_PRECEDING_DATA_POINT_CHUNK,
+      INSERT_DATA_POINT_CHUNK,
+      UPDATE_DATA_POINT_CHUNK,
+      DELETE_DATA_POINT_CHUNK,
+      DELETE_DATA_POINT_CHUNKS,
+      LOCK_META_DATA,
+      LOAD_UNMIGRATED_TIME_SERIES_IDS));
+  /**
+   * The derived table providing the earliest and latest dates of each series.
+   */
+  private static final String CHUNK_DATES_TABLE =
+      "(SELECT meta_data_id, first_date AS ts_date FROM tss_data_point_chunk " +
+      "UNION ALL SELECT meta_data_id, last_date AS ts_date FROM tss_data_point_chunk) chunk_dates";
+
+  /**
+   * The maximum number of points in a chunk.
+   */
+  private int _maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+
+  /**
+   * Creates an instance.
+   *
+   * @param dbSource  the database information, not null
+   * @param namedSQLMap  the named SQL map, not null
+   * @param isTriggerSupported  ignored, as deltas are always written by this master
+   */
+  public ChunkedLocalDateDbHistoricalTimeSeriesMaster(
+      DbSource dbSource, Map<String, String> namedSQLMap, boolean isTriggerSupported) {
+    super(dbSource, namedSQLMap, false);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the maximum number of points in a chunk.
+   *
+   * @return the maximum chunk size
+   */
+  public int getMaxChunkSize() {
+    return _maxChunkSize;
+  }
+
+  /**
+   * Sets the maximum number of points in a chunk.
+   * Existing chunks are not resized, but are filled to the new size by appends.
+   *
+   * @param maxChunkSize  the maximum chunk size, greater than zero
+   */
+  public void setMaxChunkSize(int maxChunkSize) {
+    ArgumentChecker.isTrue(maxChunkSize > 0, "maxChunkSize must be greater than zero");
+    _maxChunkSize = maxChunkSize;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Copies the points of every series held only in the row store into chunks.
+   * <p>
+   * The chunks are encoded in Java, so the database patch creating the chunk table cannot
+   * copy the existing points. This must be run once against an upgraded database before
+   * this master replaces the row store.
+   * Each series is copied in its own transaction and series that already have chunks are
+   * skipped, so an interrupted migration may simply be run again.
+   * The rows of {@code tss_data_point} are left in place and no deltas are written.
+   *
+   * @return the number of series copied
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public int migrateDataPoints() {
+    List<Long> tsIds = getJdbcTemplate().query(getNamedSQLMap().get(LOAD_UNMIGRATED_TIME_SERIES_IDS), new RowMapper<Long>() {
+      @Override
+      public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return rs.getLong("meta_data_id");
+      }
+    }, new MapSqlParameterSource());
+    TransactionTemplate transactionTemplate = new TransactionTemplate(getDbSource().getTransactionManager());
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    int migrated = 0;
+    for (final Long tsId : tsIds) {
+      Boolean copied = transactionTemplate.execute(new TransactionCallback<Boolean>() {
+        @Override
+        public Boolean doInTransaction(TransactionStatus status) {
+          return migrateDataPoints(tsId);
+        }
+      });
+      if (copied) {
+        migrated++;
+      }
+    }
+    return migrated;
+  }
+
+  /**
+   * Copies the points of a series from the row store into chunks, unless it already has chunks.
+   *
+   * @param tsId  the time-series key
+   * @return true if the points were copied
+   */
+  private boolean migrateDataPoints(long tsId) {
+    lockTimeSeries(tsId);
+    if (!loadChunks(tsId, null, null).isEmpty()) {
+      return false;
+    }
+    LocalDateDoubleTimeSeries rows = super.loadTimeSeries(tsId, null, null);
+    PointBuffer points = new PointBuffer(Math.max(1, rows.size()));
+    for (Entry<LocalDate, Double> dataPoint : rows) {
+      points.add(dataPoint.getKey(), dataPoint.getValue());
+    }
+    insertChunks(tsId, points, 0, points.size());
+    return true;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  protected void checkNamedSQLMap(Map<String, String> namedSQLMap) {
+    super.checkNamedSQLMap(namedSQLMap);
+    for (String queryName : CHUNK_SQL_MAP_KEYS) {
+      checkSQLQuery(queryName, namedSQLMap);
+    }
+  }
+
+  @Override
+  protected String getDataPointDatesTableName() {
+    return CHUNK_DATES_TABLE;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  protected LocalDateDoubleTimeSeries loadTimeSeries(long timeSeriesKey, LocalDate start, LocalDate end) {
+    PointBuffer points = new PointBuffer();
+    for (Chunk chunk : loadChunks(timeSeriesKey, start, end)) {
+      points.decode(chunk, start, end);
+    }
+    return points.toTimeSeries();
+  }
+
+  @Override
+  protected Map<Long, LocalDateDoubleTimeSeries> loadTimeSeries(Collection<Long> timeSeriesKeys, final LocalDate start, final LocalDate end) {
+    String sql = getNamedSQLMap().get(LOAD_DATA_POINT_CHUNKS_BY_IDS);
+    MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+    if (start != null) {
+      sql += " AND last_date >= :startDate";
+      parameters.addValue("startDate", getSqlDate(start), getSqlDateType());
+    }
+
+    if (end != null) {
+      sql += " AND first_date <= :endDate";
+      parameters.addValue("endDate", getSqlDate(end), getSqlDateType());
+    }
+
+    sql += " ORDER BY meta_data_id, first_date";
+
+    final Map<Long, PointBuffer> points = new HashMap<Long, PointBuffer>();
+    for (Long timeSeriesKey : timeSeriesKeys) {
+      points.put(timeSeriesKey, new PointBuffer());
+    }
+    final ChunkRowMapper rowMapper = new ChunkRowMapper();
+    List<Long> keys = new ArrayList<Long>(points.keySet());
+    for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_QUERY) {
+      parameters.addValue("tsIDs", keys.subList(from, Math.min(keys.size(), from + MAX_KEYS_PER_QUERY)));
+      getJdbcTemplate().getNamedParameterJdbcOperations().query(sql, parameters, new RowCallbackHandler() {
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+          points.get(rs.getLong("meta_data_id")).decode(rowMapper.mapRow(rs, 0), start, end);
+        }
+      });
+    }
+
+    Map<Long, LocalDateDoubleTimeSeries> result = new HashMap<Long, LocalDateDoubleTimeSeries>();
+    for (Entry<Long, PointBuffer> entry : points.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().toTimeSeries());
+    }
+    return result;
+  }
+
+  @Override
+  protected Double findDataPointValue(long tsId, LocalDate date) {
+    PointBuffer points = new PointBuffer();
+    for (Chunk chunk : loadChunks(tsId, date, date)) {
+      points.decode(chunk, date, date);
+    }
+    return points.size() > 0 ? points.getValue(0) : null;
+  }
+
+  @Override
+  protected void insertDataPoints(LocalDateDoubleTimeSeries sqlDateDoubleTimeSeries, long tsKey) {
+    if (sqlDateDoubleTimeSeries.isEmpty()) {
+      return;
+    }
+    PointBuffer points = new PointBuffer(sqlDateDoubleTimeSeries.size());
+    for (Entry<LocalDate, Double> dataPoint : sqlDateDoubleTimeSeries) {
+      points.add(dataPoint.getKey(), dataPoint.getValue());
+    }
+    mergeDataPoints(tsKey, points);
+  }
+
+  @Override
+  protected void insertDataPoint(long tsId, LocalDate date, Double value) {
+    PointBuffer points = new PointBuffer(1);
+    points.add(date, value);
+    mergeDataPoints(tsId, points);
+  }
+
+  @Override
+  protected void deleteDataPoints(long tsId) {
+    lockTimeSeries(tsId);
+    PointBuffer points = new PointBuffer();
+    for (Chunk chunk : loadChunks(tsId, null, null)) {
+      points.decode(chunk, null, null);
+    }
+    insertDeltas(INSERT_TIME_SERIES_DELTA_D, tsId, points, 0, points.size());
+    MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("tsID", tsId, Types.BIGINT);
+    getJdbcTemplate().update(getNamedSQLMap().get(DELETE_DATA_POINT_CHUNKS), parameters);
+  }
+
+  @Override
+  protected void updateDataPoint(LocalDate date, Double value, long tsID) {
+    lockTimeSeries(tsID);
+    Chunk chunk = findChunk(tsID, date);
+    PointBuffer points = new PointBuffer(chunk.getPointCount());
+    points.decode(chunk, null, null);
+    int index = points.indexOf(date);
+    if (index < 0) {
+      throw new DataNotFoundException("Data point not found: " + tsID + "/" + date);
+    }
+    double oldValue = points.getValue(index);
+    points.setValue(index, value);
+
+    MapSqlParameterSource deltaParameters = new MapSqlParameterSource()
+      .addValue("tsID", tsID, Types.BIGINT)
+      .addValue("date", getSqlDate(date), getSqlDateType())
+      .addValue("oldValue", oldValue, Types.DOUBLE)
+      .addValue("timeStamp", new Date(System.currentTimeMillis()), Types.TIMESTAMP);
+    getJdbcTemplate().update(getNamedSQLMap().get(INSERT_TIME_SERIES_DELTA_U), deltaParameters);
+
+    MapSqlParameterSource chunkParameters = new MapSqlParameterSource()
+      .addValue("tsID", tsID, Types.BIGINT)
+      .addValue("firstDate", getSqlDate(chunk.getFirstDate()), getSqlDateType())
+      .addValue("chunkData", encode(points, 0, points.size()), Types.BLOB);
+    getJdbcTemplate().update(getNamedSQLMap().get(UPDATE_DATA_POINT_CHUNK), chunkParameters);
+  }
+
+  @Override
+  protected void removeDataPoint(long tsID, LocalDate date) {
+    lockTimeSeries(tsID);
+    Chunk chunk = findChunk(tsID, date);
+    PointBuffer points = new PointBuffer(chunk.getPointCount());
+    points.decode(chunk, null, null);
+    int index = points.indexOf(date);
+    if (index < 0) {
+      throw new DataNotFoundException("Data point not found: " + tsID + "/" + date);
+    }
+    insertDeltas(INSERT_TIME_SERIES_DELTA_D, tsID, points, index, index + 1);
+    points.remove(index);
+    deleteChunks(tsID, Collections.singletonList(chunk));
+    insertChunks(tsID, points, 0, points.size());
+  }
+
+  @Override
+  protected void removeDataPointsBefore(long tsId, LocalDate firstDateToRetain) {
+    lockTimeSeries(tsId);
+    List<Chunk> chunks = loadChunks(tsId, null, firstDateToRetain.minusDays(1));
+    if (chunks.isEmpty()) {
+      return;
+    }
+    PointBuffer points = new PointBuffer();
+    for (Chunk chunk : chunks) {
+      points.decode(chunk, null, null);
+    }
+    int retainFrom = points.lowerBound((int) firstDateToRetain.toEpochDays());
+    insertDeltas(INSERT_TIME_SERIES_DELTA_D, tsId, points, 0, retainFrom);
+    deleteChunks(tsId, chunks);
+    insertChunks(tsId, points, retainFrom, points.size());
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Merges new points into the stored chunks, rewriting the chunks they overlap.
+   * A partly filled chunk immediately before the new points is rewritten as well,
+   * so that repeated appends fill it rather than creating small chunks.
+   *
+   * @param tsId  the time-series key
+   * @param added  the new points, not null
+   */
+  private void mergeDataPoints(long tsId, PointBuffer added) {
+    lockTimeSeries(tsId);
+    LocalDate first = added.getDate(0);
+    LocalDate last = added.getDate(added.size() - 1);
+    List<Chunk> affected = new ArrayList<Chunk>();
+    Chunk preceding = loadPrecedingChunk(tsId, first);
+    if (preceding != null && preceding.getPointCount() < getMaxChunkSize()) {
+      affected.add(preceding);
+    }
+    affected.addAll(loadChunks(tsId, first, last));
+
+    PointBuffer merged;
+    if (affected.isEmpty()) {
+      merged = added;
+    } else {
+      PointBuffer existing = new PointBuffer();
+      for (Chunk chunk : affected) {
+        existing.decode(chunk, null, null);
+      }
+      merged = PointBuffer.merge(existing, added);
+      deleteChunks(tsId, affected);
+    }
+    insertChunks(tsId, merged, 0, merged.size());
+    insertDeltas(INSERT_TIME_SERIES_DELTA_I, tsId, added, 0, added.size());
+  }
+
+  /**
+   * Locks the meta-data row of a series until the end of the current transaction,
+   * so that chunks read to be rewritten cannot be changed by another writer meanwhile.
+   *
+   * @param tsId  the time-series key
+   */
+  private void lockTimeSeries(long tsId) {
+    MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("tsID", tsId, Types.BIGINT);
+    List<Long> locked = getJdbcTemplate().query(getNamedSQLMap().get(LOCK_META_DATA), new RowMapper<Long>() {
+      @Override
+      public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return rs.getLong("id");
+      }
+    }, parameters);
+    if (locked.isEmpty()) {
+      throw new DataNotFoundException("Time-series not found: " + tsId);
+    }
+  }
+
+  private Chunk findChunk(long tsId, LocalDate date) {
+    List<Chunk> chunks = loadChunks(tsId, date, date);
+    if (chunks.isEmpty()) {
+      throw new DataNotFoundException("Data point not found: " + tsId + "/" + date);
+    }
+    return chunks.get(0);
+  }
+
+  private List<Chunk> loadChunks(long tsId, LocalDate start, LocalDate end) {
+    String sql = getNamedSQLMap().get(LOAD_DATA_POINT_CHUNKS);
+    MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("tsID", tsId, Types.BIGINT);
+
+    if (start != null) {
+      sql += " AND last_date >= :startDate";
+      parameters.addValue("startDate", getSqlDate(start), getSqlDateType());
+    }
+
+    if (end != null) {
+      sql += " AND first_date <= :endDate";
+      parameters.addValue("endDate", getSqlDate(end), getSqlDateType());
+    }
+
+    sql += " ORDER BY first_date";
+    return getJdbcTemplate().query(sql, new ChunkRowMapper(), parameters);
+  }
+
+  private Chunk loadPrecedingChunk(long tsId, LocalDate date) {
+    MapSqlParameterSource parameters = new MapSqlParameterSource()
+      .addValue("tsID", tsId, Types.BIGINT)
+      .addValue("date", getSqlDate(date), getSqlDateType());
+    List<Chunk> chunks = getJdbcTemplate().query(getNamedSQLMap().get(LOAD_PRECEDING_DATA_POINT_CHUNK), new ChunkRowMapper(), parameters);
+    return chunks.isEmpty() ? null : chunks.get(0);
+  }
+
+  private void insertChunks(long tsId, PointBuffer points, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    List<SqlParameterSource> batchArgs = new ArrayList<SqlParameterSource>();
+    for (int start = from; start < to; start += getMaxChunkSize()) {
+      int end = Math.min(to, start + getMaxChunkSize());
+      MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+        .addValue("tsID", tsId, Types.BIGINT)
+        .addValue("firstDate", getSqlDate(points.getDate(start)), getSqlDateType())
+        .addValue("lastDate", getSqlDate(points.getDate(end - 1)), getSqlDateType())
+        .addValue("pointCount", end - start, Types.INTEGER)
+        .addValue("chunkData", encode(points, start, end), Types.BLOB);
+      batchArgs.add(parameterSource);
+    }
+    getJdbcTemplate().batchUpdate(getNamedSQLMap().get(INSERT_DATA_POINT_CHUNK), batchArgs.toArray(new SqlParameterSource[batchArgs.size()]));
+  }
+
+  private void deleteChunks(long tsId, List<Chunk> chunks) {
+    SqlParameterSource[] batchArgs = new MapSqlParameterSource[chunks.size()];
+    int index = 0;
+    for (Chunk chunk : chunks) {
+      batchArgs[index++] = new MapSqlParameterSource()
+        .addValue("tsID", tsId, Types.BIGINT)
+        .addValue("firstDate", getSqlDate(chunk.getFirstDate()), getSqlDateType());
+    }
+    getJdbcTemplate().batchUpdate(getNamedSQLMap().get(DELETE_DATA_POINT_CHUNK), batchArgs);
+  }
+
+  private void insertDeltas(String deltaSqlKey, long tsId, PointBuffer points, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    Date now = new Date(System.currentTimeMillis());
+    SqlParameterSource[] batchArgs = new MapSqlParameterSource[to - from];
+    for (int i = from; i < to; i++) {
+      MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+      parameterSource.addValue("timeSeriesID", tsId, Types.BIGINT);
+      parameterSource.addValue("date", getSqlDate(points.getDate(i)), getSqlDateType());
+      parameterSource.addValue("value", points.getValue(i), Types.DOUBLE);
+      parameterSource.addValue("timeStamp", now, Types.TIMESTAMP);
+      batchArgs[i - from] = parameterSource;
+    }
+    getJdbcTemplate().batchUpdate(getNamedSQLMap().get(deltaSqlKey), batchArgs);
+  }
+
+  private SqlLobValue encode(PointBuffer points, int from, int to) {
+    byte[] bytes = DataPointChunkCodec.encode(points._dates, points._values, from, to);
+    return new SqlLobValue(bytes, getDbHelper().getLobHandler());
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A stored chunk.
+   */
+  private static final class Chunk {
+    private final LocalDate _firstDate;
+    private final int _pointCount;
+    private final byte[] _data;
+
+    Chunk(LocalDate firstDate, int pointCount, byte[] data) {
+      _firstDate = firstDate;
+      _pointCount = pointCount;
+      _data = data;
+    }
+
+    LocalDate getFirstDate() {
+      return _firstDate;
+    }
+
+    int getPointCount() {
+      return _pointCount;
+    }
+
+    byte[] getData() {
+      return _data;
+    }
+  }
+
+  /**
+   * Maps a row of the chunk table.
+   */
+  private final class ChunkRowMapper implements RowMapper<Chunk> {
+    @Override
+    public Chunk mapRow(ResultSet rs, int rowNum) throws SQLException {
+      LobHandler lob = getDbHelper().getLobHandler();
+      return new Chunk(getDate(rs, "first_date"), rs.getInt("point_count"), lob.getBlobAsBytes(rs, "chunk_data"));
+    }
+  }
+
+  /**
+   * A growable buffer of points held as epoch days and primitive values.
+   */
+  private static final class PointBuffer {
+    private int[] _dates;
+    private double[] _values;
+    private int _size;
+
+    PointBuffer() {
+      this(DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    PointBuffer(int capacity) {
+      _dates = new int[capacity];
+      _values = new double[capacity];
+    }
+
+    static PointBuffer merge(PointBuffer existing, PointBuffer added) {
+      PointBuffer result = new PointBuffer(existing.size() + added.size());
+      int i = 0;
+      int j = 0;
+      while (i < existing.size() || j < added.size()) {
+        if (j == added.size() || (i < existing.size() && existing._dates[i] < added._dates[j])) {
+          result.add(existing._dates[i], existing._values[i++]);
+        } else if (i == existing.size() || added._dates[j] < existing._dates[i]) {
+          result.add(added._dates[j], added._values[j++]);
+        } else {
+          throw new IllegalArgumentException("Data point already exists at " + LocalDate.ofEpochDays(added._dates[j]));
+        }
+      }
+      return result;
+    }
+
+    int size() {
+      return _size;
+    }
+
+    LocalDate getDate(int index) {
+      return LocalDate.ofEpochDays(_dates[index]);
+    }
+
+    double getValue(int index) {
+      return _values[index];
+    }
+
+    void setValue(int index, double value) {
+      _values[index] = value;
+    }
+
+    void add(LocalDate date, double value) {
+      add((int) date.toEpochDays(), value);
+    }
+
+    void add(int date, double value) {
+      ensureCapacity(_size + 1);
+      _dates[_size] = date;
+      _values[_size++] = value;
+    }
+
+    void remove(int index) {
+      System.arraycopy(_dates, index + 1, _dates, index, _size - index - 1);
+      System.arraycopy(_values, index + 1, _values, index, _size - index - 1);
+      _size--;
+    }
+
+    void decode(Chunk chunk, LocalDate start, LocalDate end) {
+      ensureCapacity(_size + chunk.getPointCount());
+      int startDay = start != null ? (int) start.toEpochDays() : Integer.MIN_VALUE;
+      int endDay = end != null ? (int) end.toEpochDays() : Integer.MAX_VALUE;
+      _size += DataPointChunkCodec.decode(chunk.getData(), startDay, endDay, _dates, _values, _size);
+    }
+
+    int lowerBound(int date) {
+      int index = Arrays.binarySearch(_dates, 0, _size, date);
+      return index >= 0 ? index : -(index + 1);
+    }
+
+    int indexOf(LocalDate date) {
+      int index = Arrays.binarySearch(_dates, 0, _size, (int) date.toEpochDays());
+      return index >= 0 ? index : -1;
+    }
+
+    LocalDateDoubleTimeSeries toTimeSeries() {
+      int[] dates = _size == _dates.length ? _dates : Arrays.copyOf(_dates, _size);
+      double[] values = _size == _values.length ? _values : Arrays.copyOf(_values, _size);
+      return new ArrayLocalDateDoubleTimeSeries(new FastArrayIntDoubleTimeSeries(DateTimeNumericEncoding.DATE_EPOCH_DAYS, dates, values));
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > _dates.length) {
+        int newCapacity = Math.max(capacity, _dates.length * 2);
+        _dates = Arrays.copyOf(_dates, newCapacity);
+        _values = Arrays.copyOf(_values, newCapacity);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.historicaldata;
+
+import java.util.Arrays;
+
+/**
+ * Encodes blocks of daily data points into the compressed chunks of {@code tss_data_point_chunk}.
+ * <p>
+ * Dates are held as epoch days. The first is written in full and the rest as the change
+ * in the gap between successive dates, which is zero for most points of a daily series.
+ * Values are written as the XOR with the previous value, keeping only the meaningful bits.
+ * All the dates of a chunk precede all the values, so a reader can locate a date range
+ * before decoding any value.
+ * <p>
+ * This class is a thread-safe static utility.
+ */
+public final class DataPointChunkCodec {
+
+  /**
+   * Restricted constructor.
+   */
+  private DataPointChunkCodec() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Encodes a block of points.
+   *
+   * @param dates  the dates in epoch days, strictly increasing, not null
+   * @param values  the values, not null
+   * @param from  the index of the first point, inclusive
+   * @param to  the index of the last point, exclusive, greater than from
+   * @return the encoded chunk, not null
+   */
+  public static byte[] encode(final int[] dates, final double[] values, final int from, final int to) {
+    if (to <= from) {
+      throw new IllegalArgumentException("Chunk must contain at least one point");
+    }
+    final BitWriter writer = new BitWriter(16 + (to - from) * 2);
+    writer.write(to - from, 32);
+    writer.write(dates[from], 32);
+    int previousDelta = 0;
+    for (int i = from + 1; i < to; i++) {
+      final int delta = dates[i] - dates[i - 1];
+      if (delta <= 0) {
+        throw new IllegalArgumentException("Dates must be strictly increasing");
+      }
+      writeDeltaOfDelta(writer, delta - previousDelta);
+      previousDelta = delta;
+    }
+    long previousBits = Double.doubleToRawLongBits(values[from]);
+    writer.write(previousBits, 64);
+    int previousLeading = -1;
+    int previousTrailing = 0;
+    for (int i = from + 1; i < to; i++) {
+      final long bits = Double.doubleToRawLongBits(values[i]);
+      final long xor = bits ^ previousBits;
+      if (xor == 0) {
+        writer.write(0, 1);
+      } else {
+        final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        final int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+          // '10' - meaningful bits fit within the previous window
+          writer.write(2, 2);
+          writer.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+          // '11' - new window
+          final int significant = 64 - leading - trailing;
+          writer.write(3, 2);
+          writer.write(leading, 5);
+          writer.write(significant - 1, 6);
+          writer.write(xor >>> trailing, significant);
+          previousLeading = leading;
+          previousTrailing = trailing;
+        }
+      }
+      previousBits = bits;
+    }
+    return writer.toByteArray();
+  }
+
+  private static void writeDeltaOfDelta(final BitWriter writer, final int deltaOfDelta) {
+    if (deltaOfDelta == 0) {
+      writer.write(0, 1);
+      return;
+    }
+    final long zigZag = ((deltaOfDelta << 1) ^ (deltaOfDelta >> 31)) & 0xFFFFFFFFL;
+    if (zigZag < (1 << 3)) {
+      writer.write(2, 2);
+      writer.write(zigZag, 3);
+    } else if (zigZag < (1 << 8)) {
+      writer.write(6, 3);
+      writer.write(zigZag, 8);
+    } else if (zigZag < (1 << 16)) {
+      writer.write(14, 4);
+      writer.write(zigZag, 16);
+    } else {
+      writer.write(15, 4);
+      writer.write(zigZag, 32);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of points in a chunk.
+   *
+   * @param chunk  the encoded chunk, not null
+   * @return the number of points
+   */
+  public static int getPointCount(final byte[] chunk) {
+    return (int) new BitReader(chunk).read(32);
+  }
+
+  /**
+   * Decodes all the points of a chunk.
+   *
+   * @param chunk  the encoded chunk, not null
+   * @param dates  the array to receive the dates in epoch days, not null
+   * @param values  the array to receive the values, not null
+   * @param offset  the index at which to store the first point
+   * @return the number of points decoded
+   */
+  public static int decode(final byte[] chunk, final int[] dates, final double[] values, final int offset) {
+    return decode(chunk, Integer.MIN_VALUE, Integer.MAX_VALUE, dates, values, offset);
+  }
+
+  /**
+   * Decodes the points of a chunk that fall within a date range.
+   * <p>
+   * The arrays must have space from the offset for every point in the chunk,
+   * as the dates are decoded in full before the range is applied.
+   *
+   * @param chunk  the encoded chunk, not null
+   * @param start  the inclusive start date in epoch days
+   * @param end  the inclusive end date in epoch days
+   * @param dates  the array to receive the dates in epoch days, not null
+   * @param values  the array to receive the values, not null
+   * @param offset  the index at which to store the first point
+   * @return the number of points decoded
+   */
+  public static int decode(final byte[] chunk, final int start, final int end, final int[] dates, final double[] values, final int offset) {
+    final BitReader reader = new BitReader(chunk);
+    final int count = (int) reader.read(32);
+    int date = (int) reader.read(32);
+    dates[offset] = date;
+    int delta = 0;
+    for (int i = 1; i < count; i++) {
+      delta += readDeltaOfDelta(reader);
+      date += delta;
+      dates[offset + i] = date;
+    }
+    int lo = 0;
+    while (lo < count && dates[offset + lo] < start) {
+      lo++;
+    }
+    int hi = count;
+    while (hi > lo && dates[offset + hi - 1] > end) {
+      hi--;
+    }
+    if (lo == hi) {
+      return 0;
+    }
+    long bits = reader.read(64);
+    int leading = 0;
+    int trailing = 0;
+    for (int i = 0; i < hi; i++) {
+      if (i > 0 && reader.read(1) == 1) {
+        if (reader.read(1) == 1) {
+          leading = (int) reader.read(5);
+          final int significant = (int) reader.read(6) + 1;
+          trailing = 64 - leading - significant;
+        }
+        bits ^= reader.read(64 - leading - trailing) << trailing;
+      }
+      if (i >= lo) {
+        values[offset + i - lo] = Double.longBitsToDouble(bits);
+      }
+    }
+    if (lo > 0) {
+      System.arraycopy(dates, offset + lo, dates, offset, hi - lo);
+    }
+    return hi - lo;
+  }
+
+  private static int readDeltaOfDelta(final BitReader reader) {
+    if (reader.read(1) == 0) {
+      return 0;
+    }
+    final int bits;
+    if (reader.read(1) == 0) {
+      bits = 3;
+    } else if (reader.read(1) == 0) {
+      bits = 8;
+    } else if (reader.read(1) == 0) {
+      bits = 16;
+    } else {
+      bits = 32;
+    }
+    final int zigZag = (int) reader.read(bits);
+    return (zigZag >>> 1) ^ -(zigZag & 1);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes a big-endian stream of bits.
+   */
+  private static final class BitWriter {
+    private byte[] _buffer;
+    private int _size;
+    private long _pending;
+    private int _pendingBits;
+
+    BitWriter(final int capacity) {
+      _buffer = new byte[capacity];
+    }
+
+    void write(final long value, final int bits) {
+      if (bits > 32) {
+        write(value >>> 32, bits - 32);
+        write(value & 0xFFFFFFFFL, 32);
+        return;
+      }
+      _pending = (_pending << bits) | (value & ((1L << bits) - 1));
+      _pendingBits += bits;
+      while (_pendingBits >= 8) {
+        _pendingBits -= 8;
+        append((byte) (_pending >>> _pendingBits));
+      }
+      _pending &= (1L << _pendingBits) - 1;
+    }
+
+    private void append(final byte b) {
+      if (_size == _buffer.length) {
+        _buffer = Arrays.copyOf(_buffer, _size * 2);
+      }
+      _buffer[_size++] = b;
+    }
+
+    byte[] toByteArray() {
+      if (_pendingBits > 0) {
+        append((byte) (_pending << (8 - _pendingBits)));
+        _pending = 0;
+        _pendingBits = 0;
+      }
+      return Arrays.copyOf(_buffer, _size);
+    }
+  }
+
+  /**
+   * Reads a big-endian stream of bits.
+   */
+  private static final class BitReader {
+    private final byte[] _data;
+    private int _position;
+    private long _pending;
+    private int _pendingBits;
+
+    BitReader(final byte[] data) {
+      _data = data;
+    }
+
+    long read(final int bits) {
+      if (bits > 32) {
+        final long high = read(bits - 32);
+        return (high << 32) | read(32);
+      }
+      while (_pendingBits < bits) {
+        if (_position == _data.length) {
+          throw new IllegalArgumentException("Truncated data point chunk");
+        }
+        _pending = (_pending << 8) | (_data[_position++] & 0xFF);
+        _pendingBits += 8;
+      }
+      _pendingBits -= bits;
+      final long result = (_pending >>> _pendingBits) & ((1L << bits) - 1);
+      _pending &= (1L << _pendingBits) - 1;
+      return result;
+    }
+  }
+
+}
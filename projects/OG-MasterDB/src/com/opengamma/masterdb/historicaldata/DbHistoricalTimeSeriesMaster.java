@@ -45,6 +45,7 @@ import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMaster
 import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_ALL_SCHEME;
 import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_TIME_SERIES_DELTA;
 import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_TIME_SERIES_WITH_DATES;
+import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.LOAD_TIME_SERIES_WITH_DATES_BY_IDS;
 import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.OBSERVATION_TIME_COLUMN;
 import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.SCHEME;
 import static com.opengamma.masterdb.historicaldata.DbHistoricalTimeSeriesMasterConstants.SELECT_BUNDLE_FROM_IDENTIFIERS;
@@ -171,6 +172,7 @@ public abstract class DbHistoricalTimeSeriesMaster
       LOAD_ALL_SCHEME,
       LOAD_TIME_SERIES_DELTA,
       LOAD_TIME_SERIES_WITH_DATES,
+      LOAD_TIME_SERIES_WITH_DATES_BY_IDS,
       SELECT_DATA_FIELD_ID,
       SELECT_DATA_PROVIDER_ID,
       SELECT_DATA_SOURCE_ID,
@@ -187,6 +189,10 @@ public abstract class DbHistoricalTimeSeriesMaster
    * The scheme used for UniqueIdentifier objects.
    */
   public static final String IDENTIFIER_SCHEME_DEFAULT = "Tss";
+  /**
+   * The maximum number of time-series keys bound into a single IN clause.
+   */
+  protected static final int MAX_KEYS_PER_QUERY = 500;
 
   /**
    * The map of SQL
@@ -213,6 +219,7 @@ public abstract class DbHistoricalTimeSeriesMaster
     Map<String, String> namedSQLMapCorrected = new HashMap<String, String>();
     for (String key : namedSQLMap.keySet()) {
       String sql = namedSQLMap.get(key);
+      sql = sql.replaceAll("\\{tss_data_point_dates\\}", getDataPointDatesTableName());
       sql = sql.replaceAll("\\{tss_data_point\\}", getDataPointTableName());
       sql = sql.replaceAll("\\{tss_data_point_delta\\}", getDataPointDeltaTableName());
       namedSQLMapCorrected.put(key, sql);      
@@ -226,6 +233,16 @@ public abstract class DbHistoricalTimeSeriesMaster
 
   protected abstract String getDataPointDeltaTableName();
 
+  /**
+   * Gets the table, or derived table, queried for the earliest and latest dates of each series.
+   * It must provide {@code meta_data_id} and {@code ts_date} columns.
+   * 
+   * @return the table name or derived table expression, defaults to the data point table
+   */
+  protected String getDataPointDatesTableName() {
+    return getDataPointTableName();
+  }
+
   /**
    * @return See {@link java.sql.Types}.
    */
@@ -253,6 +270,15 @@ public abstract class DbHistoricalTimeSeriesMaster
     return _isTriggerSupported;
   }
 
+  /**
+   * Gets the map of SQL, with the table name placeholders resolved.
+   * 
+   * @return the unmodifiable map of SQL, not null
+   */
+  protected Map<String, String> getNamedSQLMap() {
+    return _namedSQLMap;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public List<IdentifierBundleWithDates> getAllIdentifiers() {
@@ -285,7 +311,15 @@ public abstract class DbHistoricalTimeSeriesMaster
     return identifier.getScheme().getName() + "-" + identifier.getValue() + "-" + GUIDGenerator.generate().toString();
   }
 
-  private void insertDataPoints(LocalDateDoubleTimeSeries sqlDateDoubleTimeSeries, long tsKey) {
+  //-------------------------------------------------------------------------
+  // data point storage, overridden by masters with a different physical layout
+  /**
+   * Inserts the data points of a series.
+   * 
+   * @param sqlDateDoubleTimeSeries  the points to insert, not null
+   * @param tsKey  the time-series key
+   */
+  protected void insertDataPoints(LocalDateDoubleTimeSeries sqlDateDoubleTimeSeries, long tsKey) {
     String insertSQL = _namedSQLMap.get(INSERT_TIME_SERIES);
     String insertDelta = _namedSQLMap.get(INSERT_TIME_SERIES_DELTA_I);
     
@@ -531,7 +565,12 @@ public abstract class DbHistoricalTimeSeriesMaster
     return result;
   }
   
-  private void deleteDataPoints(long tsId) {
+  /**
+   * Deletes all the data points of a series.
+   * 
+   * @param tsId  the time-series key
+   */
+  protected void deleteDataPoints(long tsId) {
     
     s_logger.debug("deleting timeseries with id = {}", tsId);
     
@@ -571,7 +610,15 @@ public abstract class DbHistoricalTimeSeriesMaster
     
   }
     
-  private LocalDateDoubleTimeSeries loadTimeSeries(long timeSeriesKey, LocalDate start, LocalDate end) {
+  /**
+   * Loads the data points of a series, optionally restricted to a date range.
+   * 
+   * @param timeSeriesKey  the time-series key
+   * @param start  the inclusive start date, null for the earliest
+   * @param end  the inclusive end date, null for the latest
+   * @return the time-series, not null
+   */
+  protected LocalDateDoubleTimeSeries loadTimeSeries(long timeSeriesKey, LocalDate start, LocalDate end) {
     String sql = _namedSQLMap.get(LOAD_TIME_SERIES_WITH_DATES);
     MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("timeSeriesKey", timeSeriesKey, Types.INTEGER);
     
@@ -603,7 +650,70 @@ public abstract class DbHistoricalTimeSeriesMaster
     return getTimeSeries(dates, values);
   }
 
-  private void updateDataPoint(LocalDate date, Double value, long tsID) {
+  /**
+   * Loads the data points of several series, optionally restricted to a date range.
+   * <p>
+   * The series are read with one query per {@link #MAX_KEYS_PER_QUERY} keys,
+   * rather than one query per series.
+   * 
+   * @param timeSeriesKeys  the time-series keys, not null
+   * @param start  the inclusive start date, null for the earliest
+   * @param end  the inclusive end date, null for the latest
+   * @return the time-series keyed by time-series key, one entry per key, not null
+   */
+  protected Map<Long, LocalDateDoubleTimeSeries> loadTimeSeries(Collection<Long> timeSeriesKeys, LocalDate start, LocalDate end) {
+    String sql = _namedSQLMap.get(LOAD_TIME_SERIES_WITH_DATES_BY_IDS);
+    MapSqlParameterSource parameters = new MapSqlParameterSource();
+    
+    if (start != null) {
+      sql += " AND ts_date >= :startDate";
+      parameters.addValue("startDate", getSqlDate(start), getSqlDateType());
+    }
+    
+    if (end != null) {
+      sql += " AND ts_date <= :endDate";
+      parameters.addValue("endDate", getSqlDate(end), getSqlDateType());
+    }
+    
+    sql += " ORDER BY meta_data_id, ts_date";
+    
+    final Map<Long, List<LocalDate>> dates = new HashMap<Long, List<LocalDate>>();
+    final Map<Long, List<Double>> values = new HashMap<Long, List<Double>>();
+    for (Long timeSeriesKey : timeSeriesKeys) {
+      dates.put(timeSeriesKey, new ArrayList<LocalDate>());
+      values.put(timeSeriesKey, new ArrayList<Double>());
+    }
+    
+    NamedParameterJdbcOperations parameterJdbcOperations = getJdbcTemplate().getNamedParameterJdbcOperations();
+    List<Long> keys = new ArrayList<Long>(dates.keySet());
+    for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_QUERY) {
+      parameters.addValue("timeSeriesKeys", keys.subList(from, Math.min(keys.size(), from + MAX_KEYS_PER_QUERY)));
+      parameterJdbcOperations.query(sql, parameters, new RowCallbackHandler() {
+        
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+          long timeSeriesKey = rs.getLong("meta_data_id");
+          dates.get(timeSeriesKey).add(getDate(rs, "ts_date"));
+          values.get(timeSeriesKey).add(rs.getDouble("value"));
+        }
+      });
+    }
+    
+    Map<Long, LocalDateDoubleTimeSeries> result = new HashMap<Long, LocalDateDoubleTimeSeries>();
+    for (Long timeSeriesKey : keys) {
+      result.put(timeSeriesKey, getTimeSeries(dates.get(timeSeriesKey), values.get(timeSeriesKey)));
+    }
+    return result;
+  }
+
+  /**
+   * Corrects the value of an existing data point.
+   * 
+   * @param date  the date of the point, not null
+   * @param value  the new value, not null
+   * @param tsID  the time-series key
+   */
+  protected void updateDataPoint(LocalDate date, Double value, long tsID) {
     String selectSQL = _namedSQLMap.get(FIND_DATA_POINT_BY_DATE_AND_ID);
     
     MapSqlParameterSource parameters = new MapSqlParameterSource()
@@ -627,7 +737,13 @@ public abstract class DbHistoricalTimeSeriesMaster
     getJdbcTemplate().update(updateSql, parameters);
   }
   
-  private void removeDataPoint(long tsID, LocalDate date) {
+  /**
+   * Removes an existing data point.
+   * 
+   * @param tsID  the time-series key
+   * @param date  the date of the point, not null
+   */
+  protected void removeDataPoint(long tsID, LocalDate date) {
     String selectTSSQL = _namedSQLMap.get(FIND_DATA_POINT_BY_DATE_AND_ID);
     MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("tsID", tsID, Types.INTEGER);
     parameters.addValue("date", getSqlDate(date), getSqlDateType());
@@ -703,7 +819,7 @@ public abstract class DbHistoricalTimeSeriesMaster
     }
   }
 
-  private void checkSQLQuery(String key, Map<String, String> namedSQLMap) {
+  protected void checkSQLQuery(String key, Map<String, String> namedSQLMap) {
     if (StringUtils.isBlank(namedSQLMap.get(key))) {
       s_logger.warn(key + " query is missing from injected SQLMap when creating " + getClass());
       throw new IllegalArgumentException(key + " query is missing from injected SQLMap when creating " + getClass());
@@ -1075,6 +1191,14 @@ public abstract class DbHistoricalTimeSeriesMaster
     String sqlApplyPaging = getDbSource().getDialect().sqlApplyPaging(metaDataSql, StringUtils.EMPTY, request.getPagingRequest());
     
     List<Info> tsInfoList = getJdbcTemplate().query(sqlApplyPaging, rowMapper, parameters);
+    Map<Long, LocalDateDoubleTimeSeries> timeSeriesMap = Collections.emptyMap();
+    if (request.isLoadTimeSeries() && !tsInfoList.isEmpty()) {
+      List<Long> timeSeriesKeys = new ArrayList<Long>(tsInfoList.size());
+      for (Info info : tsInfoList) {
+        timeSeriesKeys.add(info.getHistoricalTimeSeriesId());
+      }
+      timeSeriesMap = loadTimeSeries(timeSeriesKeys, request.getStart(), request.getEnd());
+    }
     for (Info info : tsInfoList) {
       ManageableHistoricalTimeSeries series = new ManageableHistoricalTimeSeries();
       HistoricalTimeSeriesDocument document = new HistoricalTimeSeriesDocument(series);
@@ -1094,8 +1218,7 @@ public abstract class DbHistoricalTimeSeriesMaster
         document.setLatest(info.getLatestDate());
       }
       if (request.isLoadTimeSeries()) {
-        LocalDateDoubleTimeSeries loadTimeSeries = loadTimeSeries(timeSeriesKey, request.getStart(), request.getEnd());
-        series.setTimeSeries(loadTimeSeries);
+        series.setTimeSeries(timeSeriesMap.get(timeSeriesKey));
       }
       result.getDocuments().add(document);
     }
@@ -1244,22 +1367,7 @@ public abstract class DbHistoricalTimeSeriesMaster
     ArgumentChecker.notNull(document.getDate(), "data point date");
     ArgumentChecker.notNull(document.getValue(), "data point value");
     long tsId = validateId(document.getHistoricalTimeSeriesId());
-    
-    String insertSQL = _namedSQLMap.get(INSERT_TIME_SERIES);
-    String insertDelta = _namedSQLMap.get(INSERT_TIME_SERIES_DELTA_I);
-    
-    Date now = new Date(System.currentTimeMillis());
-    
-    MapSqlParameterSource parameterSource = new MapSqlParameterSource();
-    parameterSource.addValue("timeSeriesID", tsId, Types.BIGINT);
-    parameterSource.addValue("date", getSqlDate(document.getDate()), getSqlDateType());
-    parameterSource.addValue("value", document.getValue(), Types.DOUBLE);
-    parameterSource.addValue("timeStamp", now, Types.TIMESTAMP);
-    
-    if (!isTriggerSupported()) {
-      getJdbcTemplate().update(insertDelta, parameterSource);
-    } 
-    getJdbcTemplate().update(insertSQL, parameterSource);
+    insertDataPoint(tsId, document.getDate(), document.getValue());
     String uniqueId = new StringBuilder(String.valueOf(tsId)).append("/").append(printDate(document.getDate())).toString();
     document.setDataPointId(UniqueIdentifier.of(getIdentifierScheme(), uniqueId));
     return document;
@@ -1281,22 +1389,60 @@ public abstract class DbHistoricalTimeSeriesMaster
     Long tsId = tsIdDatePair.getFirst();
     LocalDate date = tsIdDatePair.getSecond();
     
+    DataPointDocument result = new DataPointDocument();
+    result.setDate(tsIdDatePair.getSecond());
+    result.setHistoricalTimeSeriesId(createObjectIdentifier(tsId));
+    result.setDataPointId(dataPointId);
+    result.setValue(findDataPointValue(tsId, date));
+    return result;
+  }
+
+  /**
+   * Inserts a single data point.
+   * 
+   * @param tsId  the time-series key
+   * @param date  the date of the point, not null
+   * @param value  the value, not null
+   */
+  protected void insertDataPoint(long tsId, LocalDate date, Double value) {
+    String insertSQL = _namedSQLMap.get(INSERT_TIME_SERIES);
+    String insertDelta = _namedSQLMap.get(INSERT_TIME_SERIES_DELTA_I);
+    
+    Date now = new Date(System.currentTimeMillis());
+    
+    MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+    parameterSource.addValue("timeSeriesID", tsId, Types.BIGINT);
+    parameterSource.addValue("date", getSqlDate(date), getSqlDateType());
+    parameterSource.addValue("value", value, Types.DOUBLE);
+    parameterSource.addValue("timeStamp", now, Types.TIMESTAMP);
+    
+    if (!isTriggerSupported()) {
+      getJdbcTemplate().update(insertDelta, parameterSource);
+    } 
+    getJdbcTemplate().update(insertSQL, parameterSource);
+  }
+
+  /**
+   * Finds the value of a single data point.
+   * 
+   * @param tsId  the time-series key
+   * @param date  the date of the point, not null
+   * @return the value, null if there is no point at the date
+   */
+  protected Double findDataPointValue(long tsId, LocalDate date) {
     NamedParameterJdbcOperations jdbcOperations = getJdbcTemplate().getNamedParameterJdbcOperations();
     MapSqlParameterSource paramSource = new MapSqlParameterSource();
     paramSource.addValue("tsID", tsId, Types.BIGINT);
     paramSource.addValue("date", getSqlDate(date), getSqlDateType());
     
-    final DataPointDocument result = new DataPointDocument();
-    result.setDate(tsIdDatePair.getSecond());
-    result.setHistoricalTimeSeriesId(createObjectIdentifier(tsId));
-    result.setDataPointId(dataPointId);
+    final Double[] result = new Double[1];
     jdbcOperations.query(_namedSQLMap.get(FIND_DATA_POINT_BY_DATE_AND_ID), paramSource, new RowCallbackHandler() {
       @Override
       public void processRow(ResultSet rs) throws SQLException {
-        result.setValue(rs.getDouble("value"));
+        result[0] = rs.getDouble("value");
       }
     });
-    return result;
+    return result[0];
   }
 
   private ObjectsPair<Long, LocalDate> validateAndGetDataPointId(UniqueIdentifier uniqueId) {
@@ -1494,7 +1640,16 @@ public abstract class DbHistoricalTimeSeriesMaster
   @Override
   public void removeDataPoints(UniqueIdentifier timeSeriesUid, LocalDate firstDateToRetain) {
     long tsId = validateId(timeSeriesUid);
-    
+    removeDataPointsBefore(tsId, firstDateToRetain);
+  }
+
+  /**
+   * Removes the data points before a date.
+   * 
+   * @param tsId  the time-series key
+   * @param firstDateToRetain  the earliest date to keep, not null
+   */
+  protected void removeDataPointsBefore(long tsId, LocalDate firstDateToRetain) {
     if (!isTriggerSupported()) {
       
       // this may be rather slow if there are lots of points to be removed
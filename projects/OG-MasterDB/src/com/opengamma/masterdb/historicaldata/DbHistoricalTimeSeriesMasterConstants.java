@@ -141,6 +141,10 @@ public final class DbHistoricalTimeSeriesMasterConstants {
    * key name  for loadTimeSeriesWithDates SQL
    */
   public static final String LOAD_TIME_SERIES_WITH_DATES = "loadTimeSeriesWithDates";
+  /**
+   * key name  for loadTimeSeriesWithDatesByIDs SQL
+   */
+  public static final String LOAD_TIME_SERIES_WITH_DATES_BY_IDS = "loadTimeSeriesWithDatesByIDs";
   /**
    * key name  for selectDataFieldID SQL
    */
@@ -189,6 +193,42 @@ public final class DbHistoricalTimeSeriesMasterConstants {
    * key name  for getActiveMetaDataByIdentifiers SQL
    */
   public static final String GET_ACTIVE_META_DATA_BY_IDENTIFIERS = "getActiveMetaDataByIdentifiers";
+  /**
+   * key name  for loadDataPointChunks SQL
+   */
+  public static final String LOAD_DATA_POINT_CHUNKS = "loadDataPointChunks";
+  /**
+   * key name  for loadDataPointChunksByIDs SQL
+   */
+  public static final String LOAD_DATA_POINT_CHUNKS_BY_IDS = "loadDataPointChunksByIDs";
+  /**
+   * key name  for loadPrecedingDataPointChunk SQL
+   */
+  public static final String LOAD_PRECEDING_DATA_POINT_CHUNK = "loadPrecedingDataPointChunk";
+  /**
+   * key name  for insertDataPointChunk SQL
+   */
+  public static final String INSERT_DATA_POINT_CHUNK = "insertDataPointChunk";
+  /**
+   * key name  for updateDataPointChunk SQL
+   */
+  public static final String UPDATE_DATA_POINT_CHUNK = "updateDataPointChunk";
+  /**
+   * key name  for deleteDataPointChunk SQL
+   */
+  public static final String DELETE_DATA_POINT_CHUNK = "deleteDataPointChunk";
+  /**
+   * key name  for deleteDataPointChunks SQL
+   */
+  public static final String DELETE_DATA_POINT_CHUNKS = "deleteDataPointChunks";
+  /**
+   * key name  for lockMetaData SQL
+   */
+  public static final String LOCK_META_DATA = "lockMetaData";
+  /**
+   * key name  for loadUnmigratedTimeSeriesIDs SQL
+   */
+  public static final String LOAD_UNMIGRATED_TIME_SERIES_IDS = "loadUnmigratedTimeSeriesIDs";
 
   
   //column names
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.batch;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
+import org.testng.annotations.Test;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.db.DbSource;
+import com.opengamma.util.db.HSQLDbHelper;
+
+/**
+ * Test AsynchronousRiskValueWriter.
+ */
+@Test
+public class AsynchronousRiskValueWriterTest {
+
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  private DbSource mockDbSource(final Answer<int[]> batchUpdate) {
+    SimpleJdbcTemplate jdbcTemplate = mock(SimpleJdbcTemplate.class);
+    when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenAnswer(batchUpdate);
+    DbSource dbSource = mock(DbSource.class);
+    when(dbSource.getDialect()).thenReturn(HSQLDbHelper.INSTANCE);
+    when(dbSource.getJdbcTemplate()).thenReturn(jdbcTemplate);
+    return dbSource;
+  }
+
+  private static final Answer<int[]> SUCCESS = new Answer<int[]>() {
+    @Override
+    public int[] answer(InvocationOnMock invocation) {
+      return success(invocation);
+    }
+  };
+
+  private static int[] success(InvocationOnMock invocation) {
+    int[] counts = new int[((SqlParameterSource[]) invocation.getArguments()[1]).length];
+    Arrays.fill(counts, 1);
+    return counts;
+  }
+
+  private static List<RiskValue> riskValues(int count) {
+    List<RiskValue> riskValues = new ArrayList<RiskValue>();
+    for (int i = 0; i < count; i++) {
+      RiskValue riskValue = new RiskValue();
+      riskValue.setId(i);
+      riskValue.setEvalInstant(new java.util.Date());
+      riskValues.add(riskValue);
+    }
+    return riskValues;
+  }
+
+  private static void write(AsynchronousRiskValueWriter writer, int count) {
+    writer.write(1, riskValues(count), Collections.<SqlParameterSource>emptyList(), Collections.<SqlParameterSource>emptyList());
+  }
+
+  private static Thread writeInBackground(final AsynchronousRiskValueWriter writer, final int count, final AtomicReference<Throwable> failure) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          write(writer, count);
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  //-------------------------------------------------------------------------
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void queueSmallerThanBatch() {
+    new AsynchronousRiskValueWriter(mockDbSource(SUCCESS), 10, 20, 1);
+  }
+
+  public void partlyFilledBatchWaitsForFlush() {
+    AsynchronousRiskValueWriter writer = new AsynchronousRiskValueWriter(mockDbSource(SUCCESS), 10, 5, 1);
+    write(writer, 3);
+    assertEquals(3, writer.getBacklog());
+    assertEquals(3, writer.getBacklog(1));
+    assertEquals(0, writer.getBacklog(2));
+    writer.close();
+    assertEquals(0, writer.getBacklog());
+    assertEquals(3, writer.getRowsWritten());
+    assertEquals(1, writer.getBatchesWritten());
+    assertTrue(writer.isClosed());
+  }
+
+  public void fullQueueBlocks() throws Exception {
+    final CountDownLatch released = new CountDownLatch(1);
+    AsynchronousRiskValueWriter writer = new AsynchronousRiskValueWriter(mockDbSource(new Answer<int[]>() {
+      @Override
+      public int[] answer(InvocationOnMock invocation) throws Throwable {
+        released.await();
+        return success(invocation);
+      }
+    }), 2, 2, 1);
+    // fills the queue, the write of which is held until released
+    write(writer, 2);
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread producer = writeInBackground(writer, 2, failure);
+    producer.join(200);
+    assertTrue(producer.isAlive());
+    released.countDown();
+    producer.join(TIMEOUT_MILLIS);
+    assertFalse(producer.isAlive());
+    assertNull(failure.get());
+    writer.close();
+    assertEquals(4, writer.getRowsWritten());
+    assertEquals(0, writer.getBacklog());
+  }
+
+  public void failureReleasesBlockedProducers() throws Exception {
+    final CountDownLatch released = new CountDownLatch(1);
+    AsynchronousRiskValueWriter writer = new AsynchronousRiskValueWriter(mockDbSource(new Answer<int[]>() {
+      @Override
+      public int[] answer(InvocationOnMock invocation) throws Throwable {
+        released.await();
+        throw new IllegalStateException("Test failure");
+      }
+    }), 2, 2, 1);
+    write(writer, 2);
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread producer = writeInBackground(writer, 2, failure);
+    producer.join(200);
+    assertTrue(producer.isAlive());
+    released.countDown();
+    producer.join(TIMEOUT_MILLIS);
+    assertFalse(producer.isAlive());
+    assertNotNull(failure.get());
+    try {
+      writer.flush();
+      fail();
+    } catch (OpenGammaRuntimeException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    try {
+      write(writer, 1);
+      fail();
+    } catch (OpenGammaRuntimeException e) {
+      // expected
+    }
+    assertEquals(0, writer.getBacklog());
+    assertEquals(0, writer.getRowsWritten());
+  }
+
+  public void errorIsRecordedAsFailure() {
+    AsynchronousRiskValueWriter writer = new AsynchronousRiskValueWriter(mockDbSource(new Answer<int[]>() {
+      @Override
+      public int[] answer(InvocationOnMock invocation) {
+        throw new AbstractMethodError("Test error");
+      }
+    }), 10, 5, 1);
+    write(writer, 3);
+    try {
+      writer.flush();
+      fail();
+    } catch (OpenGammaRuntimeException e) {
+      assertTrue(e.getCause() instanceof AbstractMethodError);
+    }
+    assertTrue(writer.getFailure() instanceof AbstractMethodError);
+    assertEquals(0, writer.getRowsWritten());
+  }
+
+  //-------------------------------------------------------------------------
+  public void copyText() {
+    RiskValue riskValue = new RiskValue();
+    riskValue.setId(1);
+    riskValue.setCalculationConfigurationId(2);
+    riskValue.setValueNameId(3);
+    riskValue.setFunctionUniqueId(4);
+    riskValue.setComputationTargetId(5);
+    riskValue.setRunId(6);
+    riskValue.setValue(7.5);
+    GregorianCalendar evalInstant = new GregorianCalendar(2011, 0, 2, 3, 4, 5);
+    evalInstant.add(GregorianCalendar.MILLISECOND, 6);
+    riskValue.setEvalInstant(evalInstant.getTime());
+    riskValue.setComputeNodeId(8);
+    assertEquals("1\t2\t3\t4\t5\t6\t7.5\t2011-01-02 03:04:05.006\t8\n" + "1\t2\t3\t4\t5\t6\t7.5\t2011-01-02 03:04:05.006\t8\n",
+        AsynchronousRiskValueWriter.toCopyText(Arrays.asList(riskValue, riskValue)));
+  }
+
+  public void escapeCopyText() {
+    String plain = "plain";
+    assertSame(plain, AsynchronousRiskValueWriter.escapeCopyText(plain));
+    assertEquals("a\\tb\\nc\\rd\\\\e", AsynchronousRiskValueWriter.escapeCopyText("a\tb\nc\rd\\e"));
+  }
+
+}
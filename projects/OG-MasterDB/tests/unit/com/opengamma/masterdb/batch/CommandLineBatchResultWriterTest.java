@@ -483,6 +483,35 @@ public class CommandLineBatchResultWriterTest extends HibernateTest {
     assertEquals(0, resultWriter.getNumRiskComputeFailureRows());
   }
   
+  @Test
+  public void functionWasSuccessfulAsynchronousWriter() {
+    CalculationJobResultItem item = new CalculationJobResultItem(_calcJob.getJobItems().get(0));
+    putOutputToCache();
+
+    CalculationJobResult result = new CalculationJobResult(
+        _calcJob.getSpecification(),
+        200,
+        Collections.singletonList(item),
+        "localhost");
+
+    CommandLineBatchResultWriter resultWriter = getSuccessResultWriter();
+    AsynchronousRiskValueWriter riskValueWriter = new AsynchronousRiskValueWriter(getDbSource(), 10, 5, 1);
+    resultWriter.setRiskValueWriter(riskValueWriter);
+    resultWriter.write(result, null);
+
+    // a partly filled batch waits for a flush
+    assertEquals(1, resultWriter.getRiskValueBacklog());
+    assertEquals(1, resultWriter.getRiskValueBacklog(CalculationNodeUtils.CALC_CONF_NAME));
+    assertEquals(0, resultWriter.getNumRiskRows());
+
+    riskValueWriter.close();
+
+    assertEquals(0, resultWriter.getRiskValueBacklog());
+    assertEquals(1, resultWriter.getNumRiskRows());
+    RiskValue value = getValueFromDb(resultWriter);
+    assertEquals(_mockFunction.getResult().getValue(), value.getValue());
+  }
+
   @Test
   public void nonScalarFunctionWasSuccessful() {
     CalculationJobResultItem item = new CalculationJobResultItem(_calcJob.getJobItems().get(0));
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.historicaldata;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+
+import com.opengamma.core.security.SecurityUtils;
+import com.opengamma.id.IdentifierBundleWithDates;
+import com.opengamma.master.historicaldata.HistoricalTimeSeriesDocument;
+import com.opengamma.master.historicaldata.ManageableHistoricalTimeSeries;
+import com.opengamma.util.test.DBTest;
+import com.opengamma.util.time.DateUtil;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+
+/**
+ * Test ChunkedLocalDateDbHistoricalTimeSeriesMaster, using a small chunk size so series span several chunks.
+ */
+@Test
+public class ChunkedDbHistoricalTimeSeriesMasterTest extends DbHistoricalTimeSeriesMasterTest {
+
+  private Map<String, String> _namedSQLMap;
+  private ChunkedLocalDateDbHistoricalTimeSeriesMaster _chunkedMaster;
+
+  /**
+   * Constructor.
+   * @param databaseType  the type of database
+   * @param databaseVersion  the database script version
+   */
+  @Factory(dataProvider = "databases", dataProviderClass = DBTest.class)
+  public ChunkedDbHistoricalTimeSeriesMasterTest(String databaseType, String databaseVersion) {
+    super(databaseType, databaseVersion);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  protected DbHistoricalTimeSeriesMaster getTimeSeriesMaster(Map<String, String> namedSQLMap) {
+    ChunkedLocalDateDbHistoricalTimeSeriesMaster master = new ChunkedLocalDateDbHistoricalTimeSeriesMaster(
+        getDbSource(), 
+        namedSQLMap,
+        false);
+    master.setMaxChunkSize(7);
+    _namedSQLMap = namedSQLMap;
+    _chunkedMaster = master;
+    return master;
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void migrateDataPoints() throws Exception {
+    LocalDateDbHistoricalTimeSeriesMaster rowMaster = new LocalDateDbHistoricalTimeSeriesMaster(getDbSource(), _namedSQLMap, false);
+    LocalDateDoubleTimeSeries timeSeries = makeRandomTimeSeries(DateUtil.previousWeekDay().minusDays(30), 30);
+    ManageableHistoricalTimeSeries series = new ManageableHistoricalTimeSeries();
+    series.setDataField("CLOSE");
+    series.setDataProvider("CMPL");
+    series.setDataSource("BLOOMBERG");
+    series.setObservationTime("LCLOSE");
+    series.setIdentifiers(IdentifierBundleWithDates.of(SecurityUtils.bloombergTickerSecurityId("migrated").toBundle()));
+    series.setTimeSeries(timeSeries);
+    HistoricalTimeSeriesDocument added = rowMaster.add(new HistoricalTimeSeriesDocument(series));
+    
+    assertTrue(_chunkedMaster.get(added.getUniqueId()).getSeries().getTimeSeries().isEmpty());
+    assertEquals(1, _chunkedMaster.migrateDataPoints());
+    assertEquals(timeSeries, _chunkedMaster.get(added.getUniqueId()).getSeries().getTimeSeries());
+    assertEquals(0, _chunkedMaster.migrateDataPoints());
+  }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.historicaldata;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test DataPointChunkCodec.
+ */
+@Test
+public class DataPointChunkCodecTest {
+
+  private static final int START = 14000;
+
+  public void roundTripWeekdays() {
+    int[] dates = weekdays(500);
+    double[] values = new double[dates.length];
+    Random random = new Random(1);
+    double value = 100d;
+    for (int i = 0; i < values.length; i++) {
+      value = Math.round((value + random.nextGaussian()) * 100d) / 100d;
+      values[i] = value;
+    }
+    byte[] chunk = DataPointChunkCodec.encode(dates, values, 0, dates.length);
+    assertTrue(chunk.length < dates.length * 12);
+    assertEquals(dates.length, DataPointChunkCodec.getPointCount(chunk));
+    assertDecoded(dates, values, 0, dates.length, chunk);
+  }
+
+  public void roundTripSubRange() {
+    int[] dates = weekdays(100);
+    double[] values = new double[dates.length];
+    Random random = new Random(2);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextDouble() * 1e6;
+    }
+    byte[] chunk = DataPointChunkCodec.encode(dates, values, 10, 60);
+    assertEquals(50, DataPointChunkCodec.getPointCount(chunk));
+    assertDecoded(dates, values, 10, 60, chunk);
+  }
+
+  public void roundTripSpecialValues() {
+    int[] dates = new int[] {-5, 0, 1, 400, 100000, 100001};
+    double[] values = new double[] {Double.NaN, 0d, -0d, Double.POSITIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE};
+    byte[] chunk = DataPointChunkCodec.encode(dates, values, 0, dates.length);
+    assertDecoded(dates, values, 0, dates.length, chunk);
+  }
+
+  public void roundTripConstant() {
+    int[] dates = weekdays(250);
+    double[] values = new double[dates.length];
+    Arrays.fill(values, 1.5d);
+    byte[] chunk = DataPointChunkCodec.encode(dates, values, 0, dates.length);
+    assertTrue(chunk.length < 200);
+    assertDecoded(dates, values, 0, dates.length, chunk);
+  }
+
+  public void decodeRange() {
+    int[] dates = weekdays(50);
+    double[] values = new double[dates.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    byte[] chunk = DataPointChunkCodec.encode(dates, values, 0, dates.length);
+    int[] decodedDates = new int[dates.length + 3];
+    double[] decodedValues = new double[dates.length + 3];
+    int count = DataPointChunkCodec.decode(chunk, dates[10], dates[19], decodedDates, decodedValues, 3);
+    assertEquals(10, count);
+    for (int i = 0; i < count; i++) {
+      assertEquals(dates[10 + i], decodedDates[3 + i]);
+      assertEquals(values[10 + i], decodedValues[3 + i], 0d);
+    }
+    assertEquals(0, DataPointChunkCodec.decode(chunk, dates[49] + 1, Integer.MAX_VALUE, decodedDates, decodedValues, 0));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void encodeUnorderedDates() {
+    DataPointChunkCodec.encode(new int[] {START, START}, new double[] {1d, 2d}, 0, 2);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void encodeEmpty() {
+    DataPointChunkCodec.encode(new int[0], new double[0], 0, 0);
+  }
+
+  //-------------------------------------------------------------------------
+  private static int[] weekdays(int size) {
+    int[] dates = new int[size];
+    int date = START;
+    for (int i = 0; i < size; i++) {
+      dates[i] = date;
+      date += (i % 5 == 4) ? 3 : 1;
+    }
+    return dates;
+  }
+
+  private static void assertDecoded(int[] dates, double[] values, int from, int to, byte[] chunk) {
+    int[] decodedDates = new int[to - from];
+    double[] decodedValues = new double[to - from];
+    assertEquals(to - from, DataPointChunkCodec.decode(chunk, decodedDates, decodedValues, 0));
+    for (int i = from; i < to; i++) {
+      assertEquals(dates[i], decodedDates[i - from]);
+      assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decodedValues[i - from]));
+    }
+  }
+
+}
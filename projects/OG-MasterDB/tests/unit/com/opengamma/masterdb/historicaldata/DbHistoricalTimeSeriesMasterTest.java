@@ -1351,6 +1351,33 @@ public class DbHistoricalTimeSeriesMasterTest extends DBTest {
     }
   }
 
+  @Test
+  public void searchMultipleWithTimeSeries() throws Exception {
+    List<HistoricalTimeSeriesDocument> tsList = addAndTestTimeSeries();
+    HistoricalTimeSeriesSearchRequest request = new HistoricalTimeSeriesSearchRequest();
+    for (HistoricalTimeSeriesDocument doc : tsList) {
+      for (IdentifierWithDates identifierWithDates : doc.getSeries().getIdentifiers()) {
+        request.addIdentifier(identifierWithDates.asIdentifier());
+      }
+    }
+    LocalDate start = DEFAULT_START.plusDays(2);
+    request.setStart(start);
+    request.setLoadTimeSeries(true);
+    
+    HistoricalTimeSeriesSearchResult searchResult = _master.search(request);
+    assertEquals(tsList.size(), searchResult.getDocuments().size());
+    Map<UniqueIdentifier, HistoricalTimeSeriesDocument> searchedDocs = new HashMap<UniqueIdentifier, HistoricalTimeSeriesDocument>();
+    for (HistoricalTimeSeriesDocument doc : searchResult.getDocuments()) {
+      searchedDocs.put(doc.getUniqueId(), doc);
+    }
+    for (HistoricalTimeSeriesDocument doc : tsList) {
+      HistoricalTimeSeriesDocument searchedDoc = searchedDocs.get(doc.getUniqueId());
+      assertNotNull(searchedDoc);
+      DoubleTimeSeries<LocalDate> expected = doc.getSeries().getTimeSeries().subSeries(start, true, null, false);
+      assertEquals(expected, searchedDoc.getSeries().getTimeSeries());
+    }
+  }
+
   private HistoricalTimeSeriesDocument getHistoricalTimeSeries(IdentifierBundleWithDates identifierBundleWithDates, String dataSource, String dataProvider, String dataField, LocalDate earliestDate, LocalDate latestDate) {
     HistoricalTimeSeriesSearchRequest request = new HistoricalTimeSeriesSearchRequest();
     request.setIdentifiers(identifierBundleWithDates.asIdentifierBundle());
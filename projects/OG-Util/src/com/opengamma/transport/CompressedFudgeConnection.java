@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A {@link FudgeConnection} that compresses messages sent over an underlying connection.
+ * <p>
+ * Repeated field names and strings are replaced by references to a dictionary built up over the life of the
+ * connection, sequences of integer identifiers are delta encoded and large messages are deflated. This suits
+ * connections carrying many similar messages, such as those between a view processor and remote calculation nodes.
+ * <p>
+ * The remote end must be a {@link CompressedFudgeConnectionReceiver}, which recognizes the first compressed message
+ * and wraps its end of the connection to match. Clients that don't compress can use the same receiver. If the
+ * underlying connection is reset, for example by a socket reconnecting, new dictionaries are started. Messages are
+ * sent one at a time so that a message written after a reset, such as one whose send caused the reconnection, can be
+ * encoded again with the new dictionaries; the copy encoded with the old ones is discarded by the remote end.
+ * <p>
+ * The connection must be closed when it is no longer needed to release the deflater and inflater it holds. The
+ * receiving end is closed automatically when its underlying connection fails.
+ */
+public class CompressedFudgeConnection implements FudgeConnection, FudgeConnectionStateListener {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CompressedFudgeConnection.class);
+
+  /**
+   * The default size of encoded message in bytes above which it will be deflated.
+   */
+  public static final int DEFAULT_DEFLATE_THRESHOLD = 4096;
+
+  private final FudgeConnection _underlying;
+  private final FudgeContext _fudgeContext;
+  private final FudgeConnectionReceiver _connectionReceiver;
+  private final int _deflateThreshold;
+  private final Object _sendLock = new Object();
+  private CompressedFudgeMsgEncoder _encoder;
+  private boolean _connected;
+  private boolean _closed;
+  private int _resets;
+  private volatile Receiver _underlyingReceiver;
+  private volatile FudgeMessageReceiver _receiver;
+  private volatile FudgeConnectionStateListener _stateListener;
+
+  private final FudgeMessageSender _sender = new FudgeMessageSender() {
+
+    @Override
+    public FudgeContext getFudgeContext() {
+      return _fudgeContext;
+    }
+
+    @Override
+    public void send(final FudgeMsg message) {
+      CompressedFudgeConnection.this.send(message);
+    }
+
+  };
+
+  /**
+   * Decodes messages from one underlying connection, so that messages arriving after a reset can't be confused
+   * with any still being delivered from before.
+   */
+  private final class Receiver implements FudgeMessageReceiver {
+
+    private final CompressedFudgeMsgDecoder _decoder = new CompressedFudgeMsgDecoder(_fudgeContext);
+
+    @Override
+    public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+      for (FudgeMsg message : _decoder.decode(msgEnvelope.getMessage())) {
+        dispatch(fudgeContext, new FudgeMsgEnvelope(message));
+      }
+    }
+
+    private void close() {
+      _decoder.close();
+    }
+
+  }
+
+  /**
+   * Creates a compressed connection, deflating messages above the default threshold.
+   *
+   * @param underlying the connection to the remote end, not null
+   */
+  public CompressedFudgeConnection(final FudgeConnection underlying) {
+    this(underlying, DEFAULT_DEFLATE_THRESHOLD);
+  }
+
+  /**
+   * Creates a compressed connection.
+   *
+   * @param underlying the connection to the remote end, not null
+   * @param deflateThreshold the encoded message size in bytes above which messages are deflated, or zero to never deflate
+   */
+  public CompressedFudgeConnection(final FudgeConnection underlying, final int deflateThreshold) {
+    this(underlying, null, deflateThreshold);
+  }
+
+  /**
+   * Creates the receiving end of a compressed connection.
+   *
+   * @param underlying the connection to the remote end, not null
+   * @param connectionReceiver the receiver for messages that arrive before a message receiver is set, null to discard them
+   * @param deflateThreshold the encoded message size in bytes above which messages are deflated, or zero to never deflate
+   */
+  /* package */CompressedFudgeConnection(final FudgeConnection underlying, final FudgeConnectionReceiver connectionReceiver, final int deflateThreshold) {
+    ArgumentChecker.notNull(underlying, "underlying");
+    ArgumentChecker.isTrue(deflateThreshold >= 0, "deflateThreshold must not be negative");
+    _underlying = underlying;
+    _fudgeContext = underlying.getFudgeMessageSender().getFudgeContext();
+    _connectionReceiver = connectionReceiver;
+    _deflateThreshold = deflateThreshold;
+    _encoder = new CompressedFudgeMsgEncoder(_fudgeContext, 0, deflateThreshold);
+    _underlyingReceiver = new Receiver();
+    underlying.setFudgeMessageReceiver(_underlyingReceiver);
+    underlying.setConnectionStateListener(this);
+  }
+
+  public FudgeConnection getUnderlying() {
+    return _underlying;
+  }
+
+  public int getDeflateThreshold() {
+    return _deflateThreshold;
+  }
+
+  /**
+   * Passes a message from the underlying connection to the decoder.
+   *
+   * @param fudgeContext the Fudge context
+   * @param msgEnvelope the message as received from the underlying connection
+   */
+  /* package */void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+    _underlyingReceiver.messageReceived(fudgeContext, msgEnvelope);
+  }
+
+  private void send(final FudgeMsg message) {
+    synchronized (_sendLock) {
+      FudgeMsg encoded;
+      int resets;
+      synchronized (this) {
+        if (_closed) {
+          throw new IllegalStateException("Connection " + this + " has been closed");
+        }
+        encoded = _encoder.encode(message);
+        resets = _resets;
+      }
+      do {
+        _underlying.getFudgeMessageSender().send(encoded);
+        synchronized (this) {
+          if ((_resets == resets) || _closed) {
+            return;
+          }
+          // The connection was reset, for example by reconnecting before the write, so the remote end will discard it
+          s_logger.debug("Encoding message again after reset of {}", _underlying);
+          encoded = _encoder.encode(message);
+          resets = _resets;
+        }
+      } while (true);
+    }
+  }
+
+  /**
+   * Releases the deflater and inflater. Messages can't be sent after this.
+   */
+  public void close() {
+    synchronized (this) {
+      if (_closed) {
+        return;
+      }
+      _closed = true;
+      _encoder.close();
+    }
+    _underlyingReceiver.close();
+  }
+
+  public synchronized boolean isClosed() {
+    return _closed;
+  }
+
+  private void dispatch(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+    final FudgeMessageReceiver receiver = _receiver;
+    if (receiver != null) {
+      receiver.messageReceived(fudgeContext, msgEnvelope);
+    } else if (_connectionReceiver != null) {
+      _connectionReceiver.connectionReceived(fudgeContext, msgEnvelope, this);
+    } else {
+      s_logger.debug("Discarding message received before receiver set on {}", this);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public FudgeMessageSender getFudgeMessageSender() {
+    return _sender;
+  }
+
+  @Override
+  public void setFudgeMessageReceiver(final FudgeMessageReceiver receiver) {
+    _receiver = receiver;
+  }
+
+  @Override
+  public void setConnectionStateListener(final FudgeConnectionStateListener listener) {
+    _stateListener = listener;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public void connectionReset(final FudgeConnection connection) {
+    Receiver previousReceiver = null;
+    synchronized (this) {
+      if (_closed) {
+        s_logger.debug("Ignoring reset of {} after close", connection);
+      } else if (_connected) {
+        // Messages encoded for the previous connection will be discarded by the remote end; any being sent are encoded again
+        s_logger.info("Starting new dictionaries after reset of {}", connection);
+        _encoder.close();
+        _encoder = new CompressedFudgeMsgEncoder(_fudgeContext, _encoder.getSequence(), getDeflateThreshold());
+        _resets++;
+        previousReceiver = _underlyingReceiver;
+        _underlyingReceiver = new Receiver();
+        _underlying.setFudgeMessageReceiver(_underlyingReceiver);
+      } else {
+        // First connection, so nothing has been sent with the current dictionaries
+        _connected = true;
+      }
+    }
+    if (previousReceiver != null) {
+      previousReceiver.close();
+    }
+    final FudgeConnectionStateListener listener = _stateListener;
+    if (listener != null) {
+      listener.connectionReset(this);
+    }
+  }
+
+  @Override
+  public void connectionFailed(final FudgeConnection connection, final Exception cause) {
+    if (_connectionReceiver != null) {
+      // The receiving end of a connection is never reset, so won't be used again
+      close();
+    }
+    final FudgeConnectionStateListener listener = _stateListener;
+    if (listener != null) {
+      listener.connectionFailed(this, cause);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Compressed " + _underlying;
+  }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Accepts connections from both {@link CompressedFudgeConnection} clients and ordinary clients. The first message
+ * on a connection decides which it is; compressed connections are wrapped so that the underlying receiver only sees
+ * the decoded messages, and replies to them are compressed in the same way.
+ */
+public class CompressedFudgeConnectionReceiver implements FudgeConnectionReceiver {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CompressedFudgeConnectionReceiver.class);
+
+  private final FudgeConnectionReceiver _underlying;
+  private int _deflateThreshold = CompressedFudgeConnection.DEFAULT_DEFLATE_THRESHOLD;
+
+  public CompressedFudgeConnectionReceiver(final FudgeConnectionReceiver underlying) {
+    ArgumentChecker.notNull(underlying, "underlying");
+    _underlying = underlying;
+  }
+
+  public FudgeConnectionReceiver getUnderlying() {
+    return _underlying;
+  }
+
+  public int getDeflateThreshold() {
+    return _deflateThreshold;
+  }
+
+  /**
+   * Sets the encoded message size above which messages sent to compressed clients are deflated.
+   *
+   * @param deflateThreshold the size in bytes, or zero to never deflate
+   */
+  public void setDeflateThreshold(final int deflateThreshold) {
+    ArgumentChecker.isTrue(deflateThreshold >= 0, "deflateThreshold must not be negative");
+    _deflateThreshold = deflateThreshold;
+  }
+
+  @Override
+  public void connectionReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope message, final FudgeConnection connection) {
+    if (CompressedFudgeMsgDecoder.isEncoded(message.getMessage())) {
+      s_logger.info("Compressed connection from {}", connection);
+      new CompressedFudgeConnection(connection, getUnderlying(), getDeflateThreshold()).messageReceived(fudgeContext, message);
+    } else {
+      getUnderlying().connectionReceived(fudgeContext, message, connection);
+    }
+  }
+
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport;
+
+import static com.opengamma.transport.CompressedFudgeMsgEncoder.DEFLATED_ORDINAL;
+import static com.opengamma.transport.CompressedFudgeMsgEncoder.INFLATED_SIZE_ORDINAL;
+import static com.opengamma.transport.CompressedFudgeMsgEncoder.RESET_ORDINAL;
+import static com.opengamma.transport.CompressedFudgeMsgEncoder.SEQUENCE_ORDINAL;
+import static com.opengamma.transport.CompressedFudgeMsgEncoder.STRUCTURE_ORDINAL;
+import static com.opengamma.transport.CompressedFudgeMsgEncoder.VALUES_ORDINAL;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeFieldType;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.types.IndicatorType;
+import org.fudgemsg.wire.types.FudgeWireType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Decodes messages written by a {@link CompressedFudgeMsgEncoder}.
+ * <p>
+ * Messages may be passed in any order, for example if the transport delivers them with an executor service. Any that
+ * arrive before their predecessors are held until they can be decoded. Messages from before the most recent reset,
+ * such as those sent over a previous connection, are discarded. The decoder should be closed when it is no longer
+ * expected to receive messages to release its inflater; any that do arrive after that are inflated with a temporary one.
+ */
+/* package */final class CompressedFudgeMsgDecoder {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(CompressedFudgeMsgDecoder.class);
+
+  private final FudgeContext _fudgeContext;
+  private final List<String> _names = new ArrayList<String>();
+  private final List<String> _strings = new ArrayList<String>();
+  private final SortedMap<Long, FudgeMsg> _pending = new TreeMap<Long, FudgeMsg>();
+  private final Inflater _inflater = new Inflater();
+  private long _sequence = -1;
+  private boolean _closed;
+
+  // Decoding state
+  private byte[] _structure;
+  private int _position;
+  private Iterator<FudgeField> _values;
+
+  public CompressedFudgeMsgDecoder(final FudgeContext fudgeContext) {
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    _fudgeContext = fudgeContext;
+  }
+
+  /**
+   * Tests whether a message looks like it was written by an encoder.
+   *
+   * @param message the message to test, not null
+   * @return true if the message is from an encoder
+   */
+  public static boolean isEncoded(final FudgeMsg message) {
+    if (message.getByOrdinal(SEQUENCE_ORDINAL) == null) {
+      return false;
+    }
+    for (FudgeField field : message.getAllFields()) {
+      if ((field.getName() != null) || (field.getOrdinal() == null)) {
+        return false;
+      }
+    }
+    return (message.getByOrdinal(STRUCTURE_ORDINAL) != null) || (message.getByOrdinal(DEFLATED_ORDINAL) != null);
+  }
+
+  /**
+   * Accepts a message from the encoder, returning it and any held messages that follow it once it can be decoded.
+   *
+   * @param message the message from the encoder, not null
+   * @return the decoded messages in the order they were encoded, not null
+   */
+  public synchronized List<FudgeMsg> decode(final FudgeMsg message) {
+    final long sequence = message.getLong(SEQUENCE_ORDINAL);
+    final Integer version = message.getInt(RESET_ORDINAL);
+    if ((_sequence >= 0) && (sequence < _sequence)) {
+      s_logger.debug("Discarding message {} from before reset at {}", sequence, _sequence);
+      return Collections.emptyList();
+    }
+    if (version != null) {
+      if (version != CompressedFudgeMsgEncoder.VERSION) {
+        throw new OpenGammaRuntimeException("Unsupported compressed message version " + version);
+      }
+      _names.clear();
+      _strings.clear();
+      _pending.headMap(sequence).clear();
+      _sequence = sequence;
+    } else if ((_sequence < 0) || (sequence > _sequence)) {
+      _pending.put(sequence, message);
+      return Collections.emptyList();
+    }
+    final List<FudgeMsg> result = new ArrayList<FudgeMsg>();
+    result.add(decodeMessage(message));
+    _sequence++;
+    FudgeMsg next = _pending.remove(_sequence);
+    while (next != null) {
+      result.add(decodeMessage(next));
+      _sequence++;
+      next = _pending.remove(_sequence);
+    }
+    return result;
+  }
+
+  /**
+   * Releases the inflater.
+   */
+  public synchronized void close() {
+    if (!_closed) {
+      _closed = true;
+      _inflater.end();
+    }
+  }
+
+  private FudgeMsg decodeMessage(FudgeMsg message) {
+    final FudgeField deflated = message.getByOrdinal(DEFLATED_ORDINAL);
+    if (deflated != null) {
+      message = _fudgeContext.deserialize(inflate((byte[]) deflated.getValue(), message.getInt(INFLATED_SIZE_ORDINAL))).getMessage();
+    }
+    _structure = (byte[]) message.getByOrdinal(STRUCTURE_ORDINAL).getValue();
+    _position = 0;
+    final FudgeField values = message.getByOrdinal(VALUES_ORDINAL);
+    _values = (values != null) ? ((FudgeMsg) values.getValue()).getAllFields().iterator() : null;
+    final MutableFudgeMsg result = _fudgeContext.newMessage();
+    readMessage(result);
+    _structure = null;
+    _values = null;
+    return result;
+  }
+
+  private byte[] inflate(final byte[] data, final int size) {
+    final Inflater inflater = _closed ? new Inflater() : _inflater;
+    inflater.reset();
+    inflater.setInput(data);
+    final byte[] result = new byte[size];
+    try {
+      int length = 0;
+      while (length < size) {
+        final int count = inflater.inflate(result, length, size - length);
+        if ((count == 0) && (inflater.finished() || inflater.needsInput())) {
+          throw new OpenGammaRuntimeException("Deflated message truncated at " + length + " of " + size + " bytes");
+        }
+        length += count;
+      }
+    } catch (DataFormatException e) {
+      throw new OpenGammaRuntimeException("Invalid deflated message", e);
+    } finally {
+      if (inflater != _inflater) {
+        inflater.end();
+      }
+    }
+    return result;
+  }
+
+  private void readMessage(final MutableFudgeMsg message) {
+    int fields = readVarint();
+    while (fields > 0) {
+      fields -= readField(message);
+    }
+  }
+
+  /**
+   * Reads the next field, or run of fields, into the message.
+   *
+   * @return the number of fields read
+   */
+  private int readField(final MutableFudgeMsg message) {
+    final int header = readVarint();
+    final String name;
+    final int nameToken = header >>> 1;
+    if (nameToken == CompressedFudgeMsgEncoder.NAME_NONE) {
+      name = null;
+    } else if (nameToken == CompressedFudgeMsgEncoder.NAME_NEW) {
+      name = readUTF8();
+      if (_names.size() < CompressedFudgeMsgEncoder.MAX_DICTIONARY_SIZE) {
+        _names.add(name);
+      }
+    } else {
+      name = _names.get(nameToken - CompressedFudgeMsgEncoder.NAME_REFERENCE);
+    }
+    final Integer ordinal = ((header & 1) != 0) ? unzigzag(readVarint()) : null;
+    final int kind = readByte();
+    switch (kind) {
+      case CompressedFudgeMsgEncoder.KIND_VALUE: {
+        final FudgeField value = _values.next();
+        message.add(name, ordinal, value.getType(), value.getValue());
+        return 1;
+      }
+      case CompressedFudgeMsgEncoder.KIND_STRING: {
+        final String value = readUTF8();
+        if ((_strings.size() < CompressedFudgeMsgEncoder.MAX_DICTIONARY_SIZE) && (value.length() <= CompressedFudgeMsgEncoder.MAX_DICTIONARY_STRING_LENGTH)) {
+          _strings.add(value);
+        }
+        message.add(name, ordinal, FudgeWireType.STRING, value);
+        return 1;
+      }
+      case CompressedFudgeMsgEncoder.KIND_STRING_REFERENCE:
+        message.add(name, ordinal, FudgeWireType.STRING, _strings.get(readVarint()));
+        return 1;
+      case CompressedFudgeMsgEncoder.KIND_INTEGER: {
+        final int typeId = readByte();
+        addInteger(message, name, ordinal, typeId, unzigzag(readVarlong()));
+        return 1;
+      }
+      case CompressedFudgeMsgEncoder.KIND_INTEGER_RUN: {
+        final int typeId = readByte();
+        final int count = readVarint();
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+          value += unzigzag(readVarlong());
+          addInteger(message, name, ordinal, typeId, value);
+        }
+        return count;
+      }
+      case CompressedFudgeMsgEncoder.KIND_LONG_ARRAY: {
+        final long[] array = new long[readVarint()];
+        long value = 0;
+        for (int i = 0; i < array.length; i++) {
+          value += unzigzag(readVarlong());
+          array[i] = value;
+        }
+        message.add(name, ordinal, FudgeWireType.LONG_ARRAY, array);
+        return 1;
+      }
+      case CompressedFudgeMsgEncoder.KIND_MESSAGE: {
+        final MutableFudgeMsg subMessage = _fudgeContext.newMessage();
+        readMessage(subMessage);
+        message.add(name, ordinal, FudgeWireType.SUB_MESSAGE, subMessage);
+        return 1;
+      }
+      case CompressedFudgeMsgEncoder.KIND_INDICATOR:
+        message.add(name, ordinal, FudgeWireType.INDICATOR, IndicatorType.INSTANCE);
+        return 1;
+      case CompressedFudgeMsgEncoder.KIND_TRUE:
+        message.add(name, ordinal, FudgeWireType.BOOLEAN, Boolean.TRUE);
+        return 1;
+      case CompressedFudgeMsgEncoder.KIND_FALSE:
+        message.add(name, ordinal, FudgeWireType.BOOLEAN, Boolean.FALSE);
+        return 1;
+      default:
+        throw new OpenGammaRuntimeException("Invalid field kind " + kind + " at offset " + (_position - 1));
+    }
+  }
+
+  private static void addInteger(final MutableFudgeMsg message, final String name, final Integer ordinal, final int typeId, final long value) {
+    final FudgeFieldType type;
+    final Object boxed;
+    switch (typeId) {
+      case FudgeWireType.BYTE_TYPE_ID:
+        type = FudgeWireType.BYTE;
+        boxed = (byte) value;
+        break;
+      case FudgeWireType.SHORT_TYPE_ID:
+        type = FudgeWireType.SHORT;
+        boxed = (short) value;
+        break;
+      case FudgeWireType.INT_TYPE_ID:
+        type = FudgeWireType.INT;
+        boxed = (int) value;
+        break;
+      case FudgeWireType.LONG_TYPE_ID:
+        type = FudgeWireType.LONG;
+        boxed = value;
+        break;
+      default:
+        throw new OpenGammaRuntimeException("Invalid integer type " + typeId);
+    }
+    message.add(name, ordinal, type, boxed);
+  }
+
+  private int readByte() {
+    return _structure[_position++] & 0xFF;
+  }
+
+  private int readVarint() {
+    return (int) readVarlong();
+  }
+
+  private long readVarlong() {
+    long value = 0;
+    int shift = 0;
+    int b = readByte();
+    while ((b & 0x80) != 0) {
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+      b = readByte();
+    }
+    return value | ((long) b << shift);
+  }
+
+  private static long unzigzag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static int unzigzag(final int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private String readUTF8() {
+    final int length = readVarint();
+    final String value = new String(_structure, _position, length, Charsets.UTF_8);
+    _position += length;
+    return value;
+  }
+
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.wire.FudgeSize;
+import org.fudgemsg.wire.types.FudgeWireType;
+
+import com.google.common.base.Charsets;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Encodes messages for one direction of a {@link CompressedFudgeConnection}.
+ * <p>
+ * The field structure of each message is written as a compact byte stream. Field names and string values are sent
+ * in full the first time and as an index into a dictionary shared with the {@link CompressedFudgeMsgDecoder} after
+ * that. Integers are written as variable length values, and runs of integer fields with the same name and sequences
+ * in {@code long[]} values are written as the difference from the previous value, so sorted identifiers take a byte
+ * or two each. Any other values are carried as ordinary Fudge fields. The result may then be deflated if it is large.
+ * <p>
+ * The dictionaries depend on every message being decoded in the order it was encoded, so each message carries a
+ * sequence number. The first message from an encoder tells the decoder to start with empty dictionaries.
+ * <p>
+ * This class is not thread-safe; the caller must encode one message at a time, and must {@link #close} the encoder
+ * when it is no longer needed to release the deflater.
+ */
+/* package */final class CompressedFudgeMsgEncoder {
+
+  /**
+   * Version of the encoding written in the reset field.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Wire message ordinal of the sequence number.
+   */
+  public static final int SEQUENCE_ORDINAL = 1;
+  /**
+   * Wire message ordinal of the version, present when the decoder must reset its dictionaries.
+   */
+  public static final int RESET_ORDINAL = 2;
+  /**
+   * Ordinal of the structure stream.
+   */
+  public static final int STRUCTURE_ORDINAL = 3;
+  /**
+   * Ordinal of the sub-message holding values that are not part of the structure stream.
+   */
+  public static final int VALUES_ORDINAL = 4;
+  /**
+   * Wire message ordinal of the deflated encoding of a message containing the structure and values.
+   */
+  public static final int DEFLATED_ORDINAL = 5;
+  /**
+   * Wire message ordinal of the size of the deflated data when inflated.
+   */
+  public static final int INFLATED_SIZE_ORDINAL = 6;
+
+  /**
+   * Maximum number of entries in each dictionary. Once full, new names and strings are always sent in full.
+   */
+  public static final int MAX_DICTIONARY_SIZE = 65536;
+  /**
+   * Longer strings are not added to the dictionary.
+   */
+  public static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+
+  // Field kinds in the structure stream
+  public static final int KIND_VALUE = 0;
+  public static final int KIND_STRING = 1;
+  public static final int KIND_STRING_REFERENCE = 2;
+  public static final int KIND_INTEGER = 3;
+  public static final int KIND_INTEGER_RUN = 4;
+  public static final int KIND_LONG_ARRAY = 5;
+  public static final int KIND_MESSAGE = 6;
+  public static final int KIND_INDICATOR = 7;
+  public static final int KIND_TRUE = 8;
+  public static final int KIND_FALSE = 9;
+
+  // Name tokens in the structure stream; a dictionary index is written as index + NAME_REFERENCE
+  public static final int NAME_NONE = 0;
+  public static final int NAME_NEW = 1;
+  public static final int NAME_REFERENCE = 2;
+
+  private final FudgeContext _fudgeContext;
+  private final int _deflateThreshold;
+  private final Map<String, Integer> _names = new HashMap<String, Integer>();
+  private final Map<String, Integer> _strings = new HashMap<String, Integer>();
+  private final ByteArrayOutputStream _structure = new ByteArrayOutputStream();
+  private final Deflater _deflater;
+  private long _sequence;
+  private boolean _reset = true;
+
+  /**
+   * @param fudgeContext the Fudge context, not null
+   * @param firstSequence the sequence number of the first message
+   * @param deflateThreshold the encoded size in bytes above which messages are deflated, or zero to never deflate
+   */
+  public CompressedFudgeMsgEncoder(final FudgeContext fudgeContext, final long firstSequence, final int deflateThreshold) {
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    _fudgeContext = fudgeContext;
+    _sequence = firstSequence;
+    _deflateThreshold = deflateThreshold;
+    _deflater = (deflateThreshold > 0) ? new Deflater(Deflater.BEST_SPEED) : null;
+  }
+
+  /**
+   * Returns the sequence number of the next message.
+   *
+   * @return the sequence number
+   */
+  public long getSequence() {
+    return _sequence;
+  }
+
+  /**
+   * Releases the deflater. The encoder must not be used after this is called.
+   */
+  public void close() {
+    if (_deflater != null) {
+      _deflater.end();
+    }
+  }
+
+  /**
+   * Encodes a message.
+   *
+   * @param message the message to encode, not null
+   * @return the message to send to the decoder
+   */
+  public FudgeMsg encode(final FudgeMsg message) {
+    final MutableFudgeMsg values = _fudgeContext.newMessage();
+    _structure.reset();
+    writeMessage(message, values);
+    final MutableFudgeMsg encoded = _fudgeContext.newMessage();
+    encoded.add(null, STRUCTURE_ORDINAL, FudgeWireType.BYTE_ARRAY, _structure.toByteArray());
+    if (!values.isEmpty()) {
+      encoded.add(null, VALUES_ORDINAL, FudgeWireType.SUB_MESSAGE, values);
+    }
+    final MutableFudgeMsg wire = _fudgeContext.newMessage();
+    wire.add(null, SEQUENCE_ORDINAL, _sequence++);
+    if (_reset) {
+      wire.add(null, RESET_ORDINAL, VERSION);
+      _reset = false;
+    }
+    if ((_deflater != null) && (FudgeSize.calculateMessageSize(encoded) >= _deflateThreshold)) {
+      final byte[] data = _fudgeContext.toByteArray(encoded);
+      final byte[] deflated = deflate(data);
+      if (deflated != null) {
+        wire.add(null, DEFLATED_ORDINAL, FudgeWireType.BYTE_ARRAY, deflated);
+        wire.add(null, INFLATED_SIZE_ORDINAL, data.length);
+        return wire;
+      }
+    }
+    for (FudgeField field : encoded.getAllFields()) {
+      wire.add(field);
+    }
+    return wire;
+  }
+
+  /**
+   * Deflates data, returning null if it doesn't get smaller.
+   */
+  private byte[] deflate(final byte[] data) {
+    _deflater.reset();
+    _deflater.setInput(data);
+    _deflater.finish();
+    final byte[] buffer = new byte[data.length];
+    int length = 0;
+    while (!_deflater.finished()) {
+      if (length == buffer.length) {
+        return null;
+      }
+      length += _deflater.deflate(buffer, length, buffer.length - length);
+    }
+    final byte[] result = new byte[length];
+    System.arraycopy(buffer, 0, result, 0, length);
+    return result;
+  }
+
+  private void writeMessage(final FudgeMsg message, final MutableFudgeMsg values) {
+    final List<FudgeField> fields = message.getAllFields();
+    writeVarint(fields.size());
+    int i = 0;
+    while (i < fields.size()) {
+      i += writeField(fields, i, values);
+    }
+  }
+
+  /**
+   * Writes the field at the given index, and any run of similar fields following it.
+   *
+   * @return the number of fields written
+   */
+  private int writeField(final List<FudgeField> fields, final int index, final MutableFudgeMsg values) {
+    final FudgeField field = fields.get(index);
+    writeHeader(field);
+    final Object value = field.getValue();
+    switch (field.getType().getTypeId()) {
+      case FudgeWireType.STRING_TYPE_ID:
+        if (value instanceof String) {
+          writeString((String) value);
+          return 1;
+        }
+        break;
+      case FudgeWireType.BYTE_TYPE_ID:
+      case FudgeWireType.SHORT_TYPE_ID:
+      case FudgeWireType.INT_TYPE_ID:
+      case FudgeWireType.LONG_TYPE_ID:
+        if (isInteger(value)) {
+          return writeIntegers(fields, index);
+        }
+        break;
+      case FudgeWireType.LONG_ARRAY_TYPE_ID:
+        if (value instanceof long[]) {
+          final long[] array = (long[]) value;
+          _structure.write(KIND_LONG_ARRAY);
+          writeVarint(array.length);
+          long previous = 0;
+          for (long element : array) {
+            writeVarlong(zigzag(element - previous));
+            previous = element;
+          }
+          return 1;
+        }
+        break;
+      case FudgeWireType.SUB_MESSAGE_TYPE_ID:
+        if (value instanceof FudgeMsg) {
+          _structure.write(KIND_MESSAGE);
+          writeMessage((FudgeMsg) value, values);
+          return 1;
+        }
+        break;
+      case FudgeWireType.INDICATOR_TYPE_ID:
+        _structure.write(KIND_INDICATOR);
+        return 1;
+      case FudgeWireType.BOOLEAN_TYPE_ID:
+        if (value instanceof Boolean) {
+          _structure.write(((Boolean) value) ? KIND_TRUE : KIND_FALSE);
+          return 1;
+        }
+        break;
+    }
+    _structure.write(KIND_VALUE);
+    values.add(null, null, field.getType(), value);
+    return 1;
+  }
+
+  private void writeHeader(final FudgeField field) {
+    final String name = field.getName();
+    final Integer ordinal = field.getOrdinal();
+    final int flag = (ordinal != null) ? 1 : 0;
+    if (name == null) {
+      writeVarint((NAME_NONE << 1) | flag);
+    } else {
+      final Integer index = _names.get(name);
+      if (index != null) {
+        writeVarint(((index + NAME_REFERENCE) << 1) | flag);
+      } else {
+        writeVarint((NAME_NEW << 1) | flag);
+        writeUTF8(name);
+        if (_names.size() < MAX_DICTIONARY_SIZE) {
+          _names.put(name, _names.size());
+        }
+      }
+    }
+    if (ordinal != null) {
+      writeVarint(zigzag(ordinal));
+    }
+  }
+
+  private void writeString(final String value) {
+    final Integer index = _strings.get(value);
+    if (index != null) {
+      _structure.write(KIND_STRING_REFERENCE);
+      writeVarint(index);
+    } else {
+      _structure.write(KIND_STRING);
+      writeUTF8(value);
+      if ((_strings.size() < MAX_DICTIONARY_SIZE) && (value.length() <= MAX_DICTIONARY_STRING_LENGTH)) {
+        _strings.put(value, _strings.size());
+      }
+    }
+  }
+
+  /**
+   * Writes an integer field, or a run of integer fields with the same name, ordinal and type as a first value and
+   * the differences between consecutive values.
+   */
+  private int writeIntegers(final List<FudgeField> fields, final int index) {
+    final FudgeField first = fields.get(index);
+    final int typeId = first.getType().getTypeId();
+    int end = index + 1;
+    while ((end < fields.size()) && isSameRun(first, fields.get(end), typeId)) {
+      end++;
+    }
+    final int count = end - index;
+    if (count == 1) {
+      _structure.write(KIND_INTEGER);
+      _structure.write(typeId);
+      writeVarlong(zigzag(((Number) first.getValue()).longValue()));
+      return 1;
+    }
+    _structure.write(KIND_INTEGER_RUN);
+    _structure.write(typeId);
+    writeVarint(count);
+    long previous = 0;
+    for (int i = index; i < end; i++) {
+      final long value = ((Number) fields.get(i).getValue()).longValue();
+      writeVarlong(zigzag(value - previous));
+      previous = value;
+    }
+    return count;
+  }
+
+  private static boolean isSameRun(final FudgeField first, final FudgeField field, final int typeId) {
+    if ((field.getType().getTypeId() != typeId) || !isInteger(field.getValue())) {
+      return false;
+    }
+    if ((first.getName() == null) ? (field.getName() != null) : !first.getName().equals(field.getName())) {
+      return false;
+    }
+    return (first.getOrdinal() == null) ? (field.getOrdinal() == null) : first.getOrdinal().equals(field.getOrdinal());
+  }
+
+  private static boolean isInteger(final Object value) {
+    return (value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte);
+  }
+
+  private static long zigzag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static int zigzag(final int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private void writeVarint(final int value) {
+    writeVarlong(value & 0xFFFFFFFFL);
+  }
+
+  private void writeVarlong(long value) {
+    while ((value & ~0x7FL) != 0) {
+      _structure.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    _structure.write((int) value);
+  }
+
+  private void writeUTF8(final String value) {
+    final byte[] bytes = value.getBytes(Charsets.UTF_8);
+    writeVarint(bytes.length);
+    _structure.write(bytes, 0, bytes.length);
+  }
+
+}
@@ -24,6 +24,8 @@ public class FudgeConnectionFactoryBean extends SingletonFactoryBean<FudgeConnec
   private FudgeContext _fudgeContext;
   private ExecutorService _executorService;
   private EndPointDescriptionProvider _endPointDescriptionProvider;
+  private boolean _compressed;
+  private int _deflateThreshold = CompressedFudgeConnection.DEFAULT_DEFLATE_THRESHOLD;
 
   public void setFudgeContext(final FudgeContext fudgeContext) {
     _fudgeContext = fudgeContext;
@@ -49,6 +51,28 @@ public class FudgeConnectionFactoryBean extends SingletonFactoryBean<FudgeConnec
     return _endPointDescriptionProvider;
   }
 
+  /**
+   * Sets whether to compress messages with a {@link CompressedFudgeConnection}. The server must be using a
+   * {@link CompressedFudgeConnectionReceiver}.
+   * 
+   * @param compressed true to compress messages
+   */
+  public void setCompressed(final boolean compressed) {
+    _compressed = compressed;
+  }
+
+  public boolean isCompressed() {
+    return _compressed;
+  }
+
+  public void setDeflateThreshold(final int deflateThreshold) {
+    _deflateThreshold = deflateThreshold;
+  }
+
+  public int getDeflateThreshold() {
+    return _deflateThreshold;
+  }
+
   private FudgeMsg resolveEndPointDescription() {
     if (_endPointDescriptionProvider != null) {
       ArgumentChecker.notNull(getFudgeContext(), "fudgeContext");
@@ -65,7 +89,7 @@ public class FudgeConnectionFactoryBean extends SingletonFactoryBean<FudgeConnec
     if (AbstractServerSocketProcess.TYPE_VALUE.equals(endPoint.getString(AbstractServerSocketProcess.TYPE_KEY))) {
       final SocketFudgeConnection connection = (getExecutorService() != null) ? new SocketFudgeConnection(getFudgeContext(), getExecutorService()) : new SocketFudgeConnection(getFudgeContext());
       connection.setServer(endPoint);
-      return connection;
+      return isCompressed() ? new CompressedFudgeConnection(connection, getDeflateThreshold()) : connection;
     }
     throw new IllegalArgumentException("Don't know how to create end-point " + endPoint);
   }
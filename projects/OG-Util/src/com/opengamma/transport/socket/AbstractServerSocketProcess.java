@@ -176,7 +176,7 @@ public abstract class AbstractServerSocketProcess implements Lifecycle, EndPoint
    */
   public static final String PORT_KEY = "port";
 
-  private void loadInterfaceAddress(final NetworkInterface iface, final MutableFudgeMsg message) {
+  private static void loadInterfaceAddress(final NetworkInterface iface, final MutableFudgeMsg message) {
     final Enumeration<NetworkInterface> ni = iface.getSubInterfaces();
     while (ni.hasMoreElements()) {
       loadInterfaceAddress(ni.nextElement(), message);
@@ -193,11 +193,17 @@ public abstract class AbstractServerSocketProcess implements Lifecycle, EndPoint
     }
   }
 
-  @Override
-  public FudgeMsg getEndPointDescription(final FudgeContext fudgeContext) {
+  /**
+   * Describes a server socket bound to an address and port.
+   * 
+   * @param fudgeContext the Fudge context
+   * @param addr the address the socket is bound to, null if not bound
+   * @param port the port the socket is bound to
+   * @return the end-point description
+   */
+  /* package */static FudgeMsg getEndPointDescription(final FudgeContext fudgeContext, final InetAddress addr, final int port) {
     final MutableFudgeMsg desc = fudgeContext.newMessage();
     desc.add(TYPE_KEY, TYPE_VALUE);
-    final InetAddress addr = _serverSocket.getInetAddress();
     if (addr != null) {
       if (addr.isAnyLocalAddress()) {
         try {
@@ -212,8 +218,13 @@ public abstract class AbstractServerSocketProcess implements Lifecycle, EndPoint
         desc.add(ADDRESS_KEY, addr.getHostAddress());
       }
     }
-    desc.add(PORT_KEY, _serverSocket.getLocalPort());
+    desc.add(PORT_KEY, port);
     return desc;
   }
 
+  @Override
+  public FudgeMsg getEndPointDescription(final FudgeContext fudgeContext) {
+    return getEndPointDescription(fudgeContext, _serverSocket.getInetAddress(), _serverSocket.getLocalPort());
+  }
+
 }
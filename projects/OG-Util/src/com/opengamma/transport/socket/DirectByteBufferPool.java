@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport.socket;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A pool of direct buffers of a fixed size.
+ * <p>
+ * Direct buffers avoid a copy on each channel operation but are expensive to allocate and only released by the
+ * garbage collector, so they are reused rather than allocated per operation. Connections only borrow one while they
+ * have data waiting to be written, so idle connections hold none.
+ */
+/* package */final class DirectByteBufferPool {
+
+  private final int _bufferSize;
+  private final int _maxPooled;
+  private final Queue<ByteBuffer> _buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicInteger _pooled = new AtomicInteger();
+
+  /**
+   * @param bufferSize the size of each buffer in bytes
+   * @param maxPooled the number of released buffers to keep for reuse
+   */
+  public DirectByteBufferPool(final int bufferSize, final int maxPooled) {
+    ArgumentChecker.isTrue(bufferSize > 0, "bufferSize must be positive");
+    _bufferSize = bufferSize;
+    _maxPooled = maxPooled;
+  }
+
+  public int getBufferSize() {
+    return _bufferSize;
+  }
+
+  /**
+   * Returns a cleared buffer, allocating one if none are pooled.
+   *
+   * @return the buffer
+   */
+  public ByteBuffer acquire() {
+    final ByteBuffer buffer = _buffers.poll();
+    if (buffer != null) {
+      _pooled.decrementAndGet();
+      return buffer;
+    }
+    return ByteBuffer.allocateDirect(_bufferSize);
+  }
+
+  /**
+   * Returns a buffer to the pool. The buffer must not be used by the caller afterwards.
+   *
+   * @param buffer a buffer from {@link #acquire}
+   */
+  public void release(final ByteBuffer buffer) {
+    buffer.clear();
+    if (_pooled.incrementAndGet() <= _maxPooled) {
+      _buffers.add(buffer);
+    } else {
+      _pooled.decrementAndGet();
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ThreadUtils;
+
+/**
+ * A single thread multiplexing I/O for many channels with a {@link Selector}.
+ * <p>
+ * Channels are registered with a {@link Handler} which is called on the loop's thread when the channel is ready.
+ * Other threads pass work to the loop, such as changing the operations a channel is interested in, with
+ * {@link #execute}. The loop owns a direct buffer that handlers may read into, as only one is reading at a time.
+ */
+/* package */final class SelectorLoop implements Runnable {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(SelectorLoop.class);
+
+  /**
+   * Handles readiness of a channel registered with the loop.
+   */
+  /* package */interface Handler {
+
+    /**
+     * Called on the loop's thread when the channel is ready for one of the operations it is interested in.
+     *
+     * @param key the selection key of the channel
+     */
+    void selected(SelectionKey key);
+
+    /**
+     * Called on the loop's thread when the loop stops, while the channel is still registered.
+     */
+    void loopStopped();
+
+  }
+
+  private final String _name;
+  private final Selector _selector;
+  private final ByteBuffer _readBuffer;
+  private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+  private volatile boolean _running;
+  private volatile Thread _thread;
+
+  /**
+   * @param name the name of the loop's thread
+   * @param readBufferSize the size of the shared read buffer in bytes
+   */
+  public SelectorLoop(final String name, final int readBufferSize) {
+    _name = name;
+    try {
+      _selector = Selector.open();
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Unable to open selector", e);
+    }
+    _readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+  }
+
+  public void start() {
+    _running = true;
+    final Thread thread = new Thread(this, _name);
+    thread.setDaemon(true);
+    _thread = thread;
+    thread.start();
+  }
+
+  public void stop() {
+    _running = false;
+    _selector.wakeup();
+    final Thread thread = _thread;
+    if ((thread != null) && (thread != Thread.currentThread())) {
+      ThreadUtils.safeJoin(thread, 60 * 1000L);
+    }
+  }
+
+  /**
+   * Runs a task on the loop's thread, before it next waits for channels to be ready.
+   *
+   * @param task the task
+   */
+  public void execute(final Runnable task) {
+    _tasks.add(task);
+    _selector.wakeup();
+  }
+
+  /**
+   * Registers a channel with the loop. Must be called on the loop's thread.
+   *
+   * @param channel the channel, in non-blocking mode
+   * @param ops the operations the channel is interested in
+   * @param handler the handler for the channel
+   * @return the selection key
+   * @throws ClosedChannelException if the channel has been closed
+   */
+  public SelectionKey register(final SelectableChannel channel, final int ops, final Handler handler) throws ClosedChannelException {
+    return channel.register(_selector, ops, handler);
+  }
+
+  /**
+   * Returns the buffer handlers read into. Must only be used on the loop's thread, and not kept between calls.
+   *
+   * @return the read buffer
+   */
+  public ByteBuffer getReadBuffer() {
+    return _readBuffer;
+  }
+
+  @Override
+  public void run() {
+    while (_running) {
+      try {
+        _selector.select();
+      } catch (IOException e) {
+        s_logger.warn("Select failed", e);
+      }
+      runTasks();
+      final Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        final SelectionKey key = keys.next();
+        keys.remove();
+        if (key.isValid()) {
+          try {
+            ((Handler) key.attachment()).selected(key);
+          } catch (RuntimeException e) {
+            s_logger.error("Error handling " + key.attachment(), e);
+          }
+        }
+      }
+    }
+    runTasks();
+    final List<SelectionKey> keys = new ArrayList<SelectionKey>(_selector.keys());
+    for (SelectionKey key : keys) {
+      try {
+        ((Handler) key.attachment()).loopStopped();
+      } catch (RuntimeException e) {
+        s_logger.error("Error stopping " + key.attachment(), e);
+      }
+    }
+    try {
+      _selector.close();
+    } catch (IOException e) {
+      s_logger.warn("Unable to close selector", e);
+    }
+    _thread = null;
+  }
+
+  private void runTasks() {
+    Runnable task = _tasks.poll();
+    while (task != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        s_logger.error("Error running " + task, e);
+      }
+      task = _tasks.poll();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return _name;
+  }
+
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport.socket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.transport.EndPointDescriptionProvider;
+import com.opengamma.transport.FudgeConnectionReceiver;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+
+/**
+ * Listens on a server socket channel and passes {@link SocketChannelFudgeConnection}s to an underlying
+ * {@link FudgeConnectionReceiver}.
+ * <p>
+ * This is a drop-in replacement for {@link ServerSocketFudgeConnectionReceiver} that does not need a thread for each
+ * connection. Accepted connections are spread over a small number of {@link SelectorLoop}s, and messages are
+ * delivered to the receivers by an executor. The end-point description and the wire format are the same, so clients
+ * continue to use {@link SocketFudgeConnection}.
+ * <p>
+ * Each connection uses at most one executor thread at a time, and a message receiver that blocks, including one
+ * sending a reply that waits for space in the outgoing queue, holds on to its thread. The default executor therefore
+ * creates threads as needed, at most one per connection. An executor with a fixed number of threads should only be
+ * supplied if the receivers never block, as otherwise one blocked connection can stall delivery to the others.
+ */
+public class ServerSocketChannelFudgeConnectionReceiver implements Lifecycle, EndPointDescriptionProvider {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ServerSocketChannelFudgeConnectionReceiver.class);
+
+  /**
+   * The default size of the read and write buffers in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  /**
+   * The default amount of outgoing data that can be queued on a connection before senders block.
+   */
+  public static final long DEFAULT_MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+  /**
+   * The default number of incoming messages that can be waiting on a connection before it stops reading.
+   */
+  public static final int DEFAULT_MAX_QUEUED_MESSAGES = 1024;
+  /**
+   * The default size of the largest incoming message accepted on a connection, in bytes.
+   */
+  public static final int DEFAULT_MAX_MESSAGE_SIZE = 32 * 1024 * 1024;
+
+  private final FudgeContext _fudgeContext;
+  private final FudgeConnectionReceiver _underlying;
+  private final ExecutorService _executorService;
+  private final boolean _ownExecutorService;
+
+  private int _portNumber;
+  private InetAddress _bindAddress;
+  private int _selectorCount = 1;
+  private int _bufferSize = DEFAULT_BUFFER_SIZE;
+  private long _maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+  private int _maxQueuedMessages = DEFAULT_MAX_QUEUED_MESSAGES;
+  private int _maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+  private ServerSocketChannel _serverChannel;
+  private SelectorLoop[] _loops;
+  private DirectByteBufferPool _bufferPool;
+  private int _nextLoop;
+  private boolean _started;
+
+  /**
+   * Creates a receiver that delivers messages with its own pool of daemon threads, created as needed.
+   *
+   * @param fudgeContext the Fudge context, not null
+   * @param underlying the receiver for new connections, not null
+   */
+  public ServerSocketChannelFudgeConnectionReceiver(final FudgeContext fudgeContext, final FudgeConnectionReceiver underlying) {
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    ArgumentChecker.notNull(underlying, "underlying");
+    _fudgeContext = fudgeContext;
+    _underlying = underlying;
+    _executorService = Executors.newCachedThreadPool(new NamedThreadPoolFactory("FudgeConnectionDispatch", true));
+    _ownExecutorService = true;
+  }
+
+  /**
+   * Creates a receiver that delivers messages with the given executor service.
+   *
+   * @param fudgeContext the Fudge context, not null
+   * @param underlying the receiver for new connections, not null
+   * @param executorService the executor service to deliver messages with, not null; see the class description if it
+   *  has a fixed number of threads
+   */
+  public ServerSocketChannelFudgeConnectionReceiver(final FudgeContext fudgeContext, final FudgeConnectionReceiver underlying,
+      final ExecutorService executorService) {
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    ArgumentChecker.notNull(underlying, "underlying");
+    ArgumentChecker.notNull(executorService, "executorService");
+    _fudgeContext = fudgeContext;
+    _underlying = underlying;
+    _executorService = executorService;
+    _ownExecutorService = false;
+  }
+
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  public FudgeConnectionReceiver getUnderlying() {
+    return _underlying;
+  }
+
+  public int getPortNumber() {
+    return _portNumber;
+  }
+
+  public void setPortNumber(final int portNumber) {
+    _portNumber = portNumber;
+  }
+
+  public InetAddress getBindAddress() {
+    return _bindAddress;
+  }
+
+  public void setBindAddress(final InetAddress bindAddress) {
+    _bindAddress = bindAddress;
+  }
+
+  public int getSelectorCount() {
+    return _selectorCount;
+  }
+
+  /**
+   * Sets the number of threads multiplexing the connections. One is usually enough, as the threads only move bytes;
+   * messages are decoded and delivered on the executor service.
+   *
+   * @param selectorCount the number of selector threads
+   */
+  public void setSelectorCount(final int selectorCount) {
+    ArgumentChecker.isTrue(selectorCount > 0, "selectorCount must be positive");
+    _selectorCount = selectorCount;
+  }
+
+  public int getBufferSize() {
+    return _bufferSize;
+  }
+
+  public void setBufferSize(final int bufferSize) {
+    ArgumentChecker.isTrue(bufferSize > 0, "bufferSize must be positive");
+    _bufferSize = bufferSize;
+  }
+
+  public long getMaxQueuedBytes() {
+    return _maxQueuedBytes;
+  }
+
+  public void setMaxQueuedBytes(final long maxQueuedBytes) {
+    ArgumentChecker.isTrue(maxQueuedBytes > 0, "maxQueuedBytes must be positive");
+    _maxQueuedBytes = maxQueuedBytes;
+  }
+
+  public int getMaxQueuedMessages() {
+    return _maxQueuedMessages;
+  }
+
+  public void setMaxQueuedMessages(final int maxQueuedMessages) {
+    ArgumentChecker.isTrue(maxQueuedMessages > 0, "maxQueuedMessages must be positive");
+    _maxQueuedMessages = maxQueuedMessages;
+  }
+
+  public int getMaxMessageSize() {
+    return _maxMessageSize;
+  }
+
+  /**
+   * Sets the size of the largest incoming message accepted. A connection is closed if its peer sends anything larger.
+   *
+   * @param maxMessageSize the maximum message size in bytes, including the envelope header
+   */
+  public void setMaxMessageSize(final int maxMessageSize) {
+    ArgumentChecker.isTrue(maxMessageSize > 0, "maxMessageSize must be positive");
+    _maxMessageSize = maxMessageSize;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public synchronized boolean isRunning() {
+    return _started;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (_started) {
+      return;
+    }
+    s_logger.info("Binding to {}:{}", getBindAddress(), getPortNumber());
+    try {
+      _serverChannel = ServerSocketChannel.open();
+      _serverChannel.configureBlocking(false);
+      // NOTE: Backlog of 50 as for ServerSocketFudgeConnectionReceiver
+      _serverChannel.socket().bind(new InetSocketAddress(getBindAddress(), getPortNumber()), 50);
+      if (getPortNumber() == 0) {
+        s_logger.info("Received inbound port {}", _serverChannel.socket().getLocalPort());
+      }
+      setPortNumber(_serverChannel.socket().getLocalPort());
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Unable to bind to " + getBindAddress() + " port " + getPortNumber(), e);
+    }
+    _bufferPool = new DirectByteBufferPool(getBufferSize(), 4 * getSelectorCount());
+    _loops = new SelectorLoop[getSelectorCount()];
+    for (int i = 0; i < _loops.length; i++) {
+      _loops[i] = new SelectorLoop("Socket Selector " + getPortNumber() + "-" + i, getBufferSize());
+      _loops[i].start();
+    }
+    final SelectorLoop acceptLoop = _loops[0];
+    acceptLoop.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          acceptLoop.register(_serverChannel, SelectionKey.OP_ACCEPT, new Acceptor());
+        } catch (IOException e) {
+          s_logger.error("Unable to accept connections on port " + getPortNumber(), e);
+        }
+      }
+    });
+    _started = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (!_started) {
+      return;
+    }
+    // Stopping the loops closes all of the connections
+    for (SelectorLoop loop : _loops) {
+      loop.stop();
+    }
+    _loops = null;
+    try {
+      _serverChannel.close();
+    } catch (IOException e) {
+      s_logger.warn("Unable to close server socket on lifecycle stop", e);
+    }
+    if (_ownExecutorService) {
+      _executorService.shutdown();
+    }
+    _started = false;
+  }
+
+  @Override
+  public FudgeMsg getEndPointDescription(final FudgeContext fudgeContext) {
+    return AbstractServerSocketProcess.getEndPointDescription(fudgeContext, _serverChannel.socket().getInetAddress(), _serverChannel.socket().getLocalPort());
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Accepts connections on the first loop and registers each one with the next loop in turn.
+   */
+  private final class Acceptor implements SelectorLoop.Handler {
+
+    @Override
+    public void selected(final SelectionKey key) {
+      while (true) {
+        final SocketChannel channel;
+        try {
+          channel = _serverChannel.accept();
+          if (channel == null) {
+            return;
+          }
+          channel.configureBlocking(false);
+          // Messages are written whole, so there is nothing to gain from delaying small packets
+          channel.socket().setTcpNoDelay(true);
+        } catch (IOException e) {
+          s_logger.warn("Unable to accept a new connection", e);
+          return;
+        }
+        s_logger.info("Opened socket to remote side {}", channel.socket().getRemoteSocketAddress());
+        final SelectorLoop loop = _loops[_nextLoop];
+        _nextLoop = (_nextLoop + 1) % _loops.length;
+        final SocketChannelFudgeConnection connection = new SocketChannelFudgeConnection(getFudgeContext(), channel, loop, _bufferPool,
+            _executorService, getUnderlying(), getMaxQueuedBytes(), getMaxQueuedMessages(), getMaxMessageSize());
+        loop.execute(new Runnable() {
+          @Override
+          public void run() {
+            connection.register();
+          }
+        });
+      }
+    }
+
+    @Override
+    public void loopStopped() {
+      // The server channel is closed by stop
+    }
+
+    @Override
+    public String toString() {
+      return "Acceptor on port " + getPortNumber();
+    }
+
+  }
+
+}
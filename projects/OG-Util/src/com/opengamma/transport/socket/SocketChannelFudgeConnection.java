@@ -0,0 +1,496 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.transport.FudgeConnection;
+import com.opengamma.transport.FudgeConnectionReceiver;
+import com.opengamma.transport.FudgeConnectionStateListener;
+import com.opengamma.transport.FudgeMessageReceiver;
+import com.opengamma.transport.FudgeMessageSender;
+
+/**
+ * A {@link FudgeConnection} over a non-blocking socket channel, multiplexed with other connections onto a
+ * {@link SelectorLoop} rather than having a thread of its own.
+ * <p>
+ * The wire format is the same stream of Fudge envelopes used by {@link SocketFudgeConnection}. Incoming envelopes are
+ * framed on the loop's thread using the size in the envelope header and passed, in order, to the receiver by a task
+ * on an executor; the connection stops reading if too many are waiting for the receiver, and resumes once it has
+ * caught up. Outgoing messages are encoded by the sending thread, which writes them straight to the socket if nothing
+ * else is waiting; otherwise they are queued and written by the loop, as many at a time as fit in a pooled direct
+ * buffer. A sender blocks if too much data is already queued, so a slow peer holds up its own senders rather than
+ * exhausting memory. An incoming envelope larger than the maximum message size closes the connection before any
+ * space is allocated for it.
+ */
+public class SocketChannelFudgeConnection implements FudgeConnection {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(SocketChannelFudgeConnection.class);
+
+  /**
+   * The size of a Fudge envelope header. The last four bytes are the size of the envelope including the header.
+   */
+  private static final int HEADER_SIZE = 8;
+
+  private final FudgeContext _fudgeContext;
+  private final SocketChannel _channel;
+  private final SelectorLoop _loop;
+  private final DirectByteBufferPool _bufferPool;
+  private final ExecutorService _executorService;
+  private final FudgeConnectionReceiver _connectionReceiver;
+  private final long _maxQueuedBytes;
+  private final int _maxQueuedMessages;
+  private final int _maxMessageSize;
+  private final String _description;
+
+  private volatile FudgeMessageReceiver _receiver;
+  private volatile FudgeConnectionStateListener _stateListener;
+  private volatile boolean _closed;
+  private SelectionKey _key;
+
+  // Framing state, only used by the loop's thread
+  private final byte[] _header = new byte[HEADER_SIZE];
+  private int _headerBytes;
+  private byte[] _frame;
+  private int _frameBytes;
+
+  // Envelopes waiting for the receiver, guarded by _inbound
+  private final Queue<byte[]> _inbound = new LinkedList<byte[]>();
+  private boolean _dispatching;
+  private boolean _readSuspended;
+
+  // Messages waiting to be written, guarded by _outbound
+  private final Queue<byte[]> _outbound = new LinkedList<byte[]>();
+  private byte[] _current;
+  private int _currentOffset;
+  private long _queuedBytes;
+  private ByteBuffer _out;
+  private boolean _writeInterest;
+
+  private final FudgeMessageSender _sender = new FudgeMessageSender() {
+
+    @Override
+    public FudgeContext getFudgeContext() {
+      return _fudgeContext;
+    }
+
+    @Override
+    public void send(final FudgeMsg message) {
+      SocketChannelFudgeConnection.this.send(_fudgeContext.toByteArray(message));
+    }
+
+    @Override
+    public String toString() {
+      return _description;
+    }
+
+  };
+
+  private final SelectorLoop.Handler _handler = new SelectorLoop.Handler() {
+
+    @Override
+    public void selected(final SelectionKey key) {
+      if (key.isReadable()) {
+        readable();
+      }
+      if (key.isValid() && key.isWritable()) {
+        writable();
+      }
+    }
+
+    @Override
+    public void loopStopped() {
+      close(null);
+    }
+
+    @Override
+    public String toString() {
+      return SocketChannelFudgeConnection.this.toString();
+    }
+
+  };
+
+  private final Runnable _dispatcher = new Runnable() {
+    @Override
+    public void run() {
+      dispatchInbound();
+    }
+  };
+
+  private final Runnable _enableWrite = new Runnable() {
+    @Override
+    public void run() {
+      if (_key.isValid()) {
+        _key.interestOps(_key.interestOps() | SelectionKey.OP_WRITE);
+      }
+    }
+  };
+
+  private final Runnable _resumeRead = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (_inbound) {
+        if (!_readSuspended && _key.isValid()) {
+          _key.interestOps(_key.interestOps() | SelectionKey.OP_READ);
+        }
+      }
+    }
+  };
+
+  /**
+   * Creates a connection for an accepted channel. It does nothing until it has been registered with its loop.
+   *
+   * @param fudgeContext the Fudge context
+   * @param channel the channel, in non-blocking mode
+   * @param loop the loop to multiplex the channel on
+   * @param bufferPool the pool of buffers to write with
+   * @param executorService the executor to deliver messages to the receiver with
+   * @param connectionReceiver the receiver for messages that arrive before a message receiver is set, null to discard them
+   * @param maxQueuedBytes the amount of outgoing data that can be queued before senders block
+   * @param maxQueuedMessages the number of incoming messages that can be waiting for the receiver before the
+   * connection stops reading
+   * @param maxMessageSize the largest incoming envelope accepted, in bytes, before the connection is closed
+   */
+  /* package */SocketChannelFudgeConnection(final FudgeContext fudgeContext, final SocketChannel channel, final SelectorLoop loop,
+      final DirectByteBufferPool bufferPool, final ExecutorService executorService, final FudgeConnectionReceiver connectionReceiver,
+      final long maxQueuedBytes, final int maxQueuedMessages, final int maxMessageSize) {
+    _fudgeContext = fudgeContext;
+    _channel = channel;
+    _loop = loop;
+    _bufferPool = bufferPool;
+    _executorService = executorService;
+    _connectionReceiver = connectionReceiver;
+    _maxQueuedBytes = maxQueuedBytes;
+    _maxQueuedMessages = maxQueuedMessages;
+    _maxMessageSize = maxMessageSize;
+    _description = String.valueOf(channel.socket().getRemoteSocketAddress());
+  }
+
+  /**
+   * Registers the connection with its loop. Must be called on the loop's thread.
+   */
+  /* package */void register() {
+    try {
+      _key = _loop.register(_channel, SelectionKey.OP_READ, _handler);
+    } catch (ClosedChannelException e) {
+      close(e);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Note that a send only blocks if the peer is not keeping up. Successful completion of a
+   * {@link FudgeMessageSender#send} does not guarantee that the message has been passed to the transport.
+   *
+   * @return the Fudge message sender component of the connection
+   */
+  @Override
+  public FudgeMessageSender getFudgeMessageSender() {
+    return _sender;
+  }
+
+  @Override
+  public void setFudgeMessageReceiver(final FudgeMessageReceiver receiver) {
+    _receiver = receiver;
+  }
+
+  @Override
+  public void setConnectionStateListener(final FudgeConnectionStateListener listener) {
+    _stateListener = listener;
+  }
+
+  public boolean isClosed() {
+    return _closed;
+  }
+
+  /**
+   * Closes the connection. The state listener is told the connection has failed.
+   */
+  public void close() {
+    close(null);
+  }
+
+  //-------------------------------------------------------------------------
+  private void send(final byte[] message) {
+    IOException failure = null;
+    synchronized (_outbound) {
+      while ((_queuedBytes >= _maxQueuedBytes) && !_closed) {
+        try {
+          _outbound.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new OpenGammaRuntimeException("Interrupted waiting to send to " + _description, e);
+        }
+      }
+      if (_closed) {
+        throw new OpenGammaRuntimeException("Connection to " + _description + " closed - message not sent");
+      }
+      _outbound.add(message);
+      _queuedBytes += message.length;
+      if (_writeInterest) {
+        // The loop will write it
+        return;
+      }
+      try {
+        if (flush()) {
+          return;
+        }
+        _writeInterest = true;
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      s_logger.warn("I/O exception during send - {} - closing connection to {}", failure.getMessage(), _description);
+      close(failure);
+      throw new OpenGammaRuntimeException("Unable to write message to " + _description, failure);
+    }
+    _loop.execute(_enableWrite);
+  }
+
+  /**
+   * Copies queued messages into the output buffer.
+   */
+  private void fill() {
+    while (_out.hasRemaining()) {
+      if (_current == null) {
+        _current = _outbound.poll();
+        if (_current == null) {
+          return;
+        }
+        _currentOffset = 0;
+      }
+      final int bytes = Math.min(_out.remaining(), _current.length - _currentOffset);
+      _out.put(_current, _currentOffset, bytes);
+      _currentOffset += bytes;
+      _queuedBytes -= bytes;
+      if (_currentOffset == _current.length) {
+        _current = null;
+      }
+    }
+  }
+
+  /**
+   * Writes as much queued data as the socket will take. Must be called holding the outbound lock.
+   *
+   * @return true if all queued data was written
+   */
+  private boolean flush() throws IOException {
+    if (_out == null) {
+      _out = _bufferPool.acquire();
+    }
+    while (true) {
+      fill();
+      _out.flip();
+      if (!_out.hasRemaining()) {
+        _bufferPool.release(_out);
+        _out = null;
+        return true;
+      }
+      _channel.write(_out);
+      final boolean written = !_out.hasRemaining();
+      _out.compact();
+      if (!written) {
+        return false;
+      }
+    }
+  }
+
+  private void writable() {
+    IOException failure = null;
+    synchronized (_outbound) {
+      if (_closed) {
+        return;
+      }
+      try {
+        if (flush()) {
+          _writeInterest = false;
+          _key.interestOps(_key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+      } catch (IOException e) {
+        failure = e;
+      }
+      _outbound.notifyAll();
+    }
+    if (failure != null) {
+      s_logger.warn("I/O exception during send - {} - closing connection to {}", failure.getMessage(), _description);
+      close(failure);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  private void readable() {
+    final ByteBuffer buffer = _loop.getReadBuffer();
+    buffer.clear();
+    final int bytes;
+    try {
+      bytes = _channel.read(buffer);
+    } catch (IOException e) {
+      s_logger.warn("I/O exception during recv - {} - closing connection to {}", e.getMessage(), _description);
+      close(e);
+      return;
+    }
+    if (bytes < 0) {
+      s_logger.info("End of stream from {} - closing connection", _description);
+      close(null);
+      return;
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      if (_frame == null) {
+        final int headerBytes = Math.min(buffer.remaining(), HEADER_SIZE - _headerBytes);
+        buffer.get(_header, _headerBytes, headerBytes);
+        _headerBytes += headerBytes;
+        if (_headerBytes < HEADER_SIZE) {
+          return;
+        }
+        final int size = ((_header[4] & 0xFF) << 24) | ((_header[5] & 0xFF) << 16) | ((_header[6] & 0xFF) << 8) | (_header[7] & 0xFF);
+        if (size < HEADER_SIZE) {
+          s_logger.warn("Invalid envelope size {} from {} - closing connection", size, _description);
+          close(new IOException("Invalid envelope size " + size));
+          return;
+        }
+        if (size > _maxMessageSize) {
+          s_logger.warn("Envelope size {} from {} exceeds maximum of {} - closing connection", new Object[] {size, _description, _maxMessageSize});
+          close(new IOException("Envelope size " + size + " exceeds maximum of " + _maxMessageSize));
+          return;
+        }
+        _frame = new byte[size];
+        System.arraycopy(_header, 0, _frame, 0, HEADER_SIZE);
+        _frameBytes = HEADER_SIZE;
+        _headerBytes = 0;
+      }
+      final int frameBytes = Math.min(buffer.remaining(), _frame.length - _frameBytes);
+      buffer.get(_frame, _frameBytes, frameBytes);
+      _frameBytes += frameBytes;
+      if (_frameBytes == _frame.length) {
+        received(_frame);
+        _frame = null;
+      }
+    }
+  }
+
+  private void received(final byte[] envelope) {
+    final boolean dispatch;
+    synchronized (_inbound) {
+      _inbound.add(envelope);
+      if (!_readSuspended && (_inbound.size() >= _maxQueuedMessages)) {
+        // Stop reading until the receiver catches up; TCP flow control then pushes back on the peer
+        _readSuspended = true;
+        _key.interestOps(_key.interestOps() & ~SelectionKey.OP_READ);
+      }
+      dispatch = !_dispatching;
+      _dispatching = true;
+    }
+    if (dispatch) {
+      try {
+        _executorService.execute(_dispatcher);
+      } catch (RejectedExecutionException e) {
+        s_logger.warn("Unable to dispatch messages from {} - closing connection", _description);
+        close(e);
+      }
+    }
+  }
+
+  private void dispatchInbound() {
+    while (true) {
+      final byte[] envelope;
+      boolean resume = false;
+      synchronized (_inbound) {
+        envelope = _inbound.poll();
+        if (envelope == null) {
+          _dispatching = false;
+          return;
+        }
+        if (_readSuspended && (_inbound.size() <= _maxQueuedMessages / 2)) {
+          _readSuspended = false;
+          resume = true;
+        }
+      }
+      if (resume) {
+        _loop.execute(_resumeRead);
+      }
+      dispatch(envelope);
+    }
+  }
+
+  private void dispatch(final byte[] data) {
+    final FudgeMsgEnvelope envelope;
+    try {
+      envelope = _fudgeContext.deserialize(data);
+    } catch (RuntimeException e) {
+      s_logger.warn("Unable to decode message from " + _description, e);
+      return;
+    }
+    final FudgeMessageReceiver receiver = _receiver;
+    if (receiver != null) {
+      try {
+        receiver.messageReceived(_fudgeContext, envelope);
+      } catch (Exception e) {
+        s_logger.warn("Unable to dispatch message to receiver", e);
+      }
+    } else if (_connectionReceiver != null) {
+      try {
+        _connectionReceiver.connectionReceived(_fudgeContext, envelope, this);
+      } catch (Exception e) {
+        s_logger.warn("Unable to dispatch connection to receiver", e);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  private void close(final Exception cause) {
+    synchronized (_outbound) {
+      if (_closed) {
+        return;
+      }
+      _closed = true;
+      if (_out != null) {
+        _bufferPool.release(_out);
+        _out = null;
+      }
+      _outbound.clear();
+      _current = null;
+      _queuedBytes = 0;
+      _outbound.notifyAll();
+    }
+    try {
+      // Closing the channel also cancels its registration with the loop
+      _channel.close();
+    } catch (IOException e) {
+      s_logger.warn("Unable to close connection to " + _description, e);
+    }
+    final FudgeConnectionStateListener listener = _stateListener;
+    if (listener != null) {
+      try {
+        listener.connectionFailed(this, cause);
+      } catch (Exception e) {
+        s_logger.warn("Error notifying state listener of connection failure", e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FudgeConnection from " + _description;
+  }
+
+}
@@ -8,6 +8,9 @@ package com.opengamma.util.ehcache;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.DiskStoreConfiguration;
 import net.sf.ehcache.event.RegisteredEventListeners;
 import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 
@@ -37,6 +40,29 @@ public final class EHCacheUtils {
     }
   }
 
+  /**
+   * Creates a cache manager of its own, rather than the shared singleton, that keeps the disk stores of its caches
+   * in the given directory. The caller must shut it down when it is no longer needed.
+   * @param diskStorePath  the directory for the disk stores, not null
+   * @return the cache manager, not null
+   */
+  public static CacheManager createCacheManager(final String diskStorePath) {
+    ArgumentChecker.notNull(diskStorePath, "diskStorePath");
+    final Configuration configuration = new Configuration();
+    final DiskStoreConfiguration diskStore = new DiskStoreConfiguration();
+    diskStore.setPath(diskStorePath);
+    configuration.addDiskStore(diskStore);
+    final CacheConfiguration defaultCache = new CacheConfiguration();
+    defaultCache.setMaxElementsInMemory(0);
+    defaultCache.setEternal(false);
+    configuration.setDefaultCacheConfiguration(defaultCache);
+    try {
+      return new CacheManager(configuration);
+    } catch (CacheException ex) {
+      throw new OpenGammaRuntimeException("Unable to create CacheManager for " + diskStorePath, ex);
+    }
+  }
+
   /**
    * Adds a cache to the cache manager if necessary.
    * @param manager  the cache manager, not null
@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.wire.FudgeSize;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the CompressedFudgeConnection, CompressedFudgeConnectionReceiver and the message encoding.
+ */
+@Test
+public class CompressedFudgeConnectionTest {
+
+  private static final FudgeContext s_fudgeContext = FudgeContext.GLOBAL_DEFAULT;
+
+  private static FudgeMsg createMessage(final int id) {
+    final MutableFudgeMsg message = s_fudgeContext.newMessage();
+    message.add(null, 0, "com.opengamma.Example");
+    message.add("id", id);
+    for (long identifier = 1000000000L; identifier < 1000000100L; identifier += 3) {
+      message.add("identifier", identifier);
+    }
+    message.add("inputs", new long[] {5000000000L, 5000000001L, 5000000005L, 4999999999L });
+    for (int i = 0; i < 10; i++) {
+      final MutableFudgeMsg value = s_fudgeContext.newMessage();
+      value.add("function", "CurrencyAwareFunction");
+      value.add("property", "USD");
+      value.add("value", 1.5 * i);
+      value.add("negative", -i);
+      value.add("flag", (i & 1) == 0);
+      value.add("blob", new byte[] {1, 2, 3 });
+      message.add("item", value);
+    }
+    return message;
+  }
+
+  private static void assertDecoded(final int id, final FudgeMsg message) {
+    assertEquals("com.opengamma.Example", message.getString(0));
+    assertEquals(id, message.getInt("id").intValue());
+    final List<FudgeField> identifiers = message.getAllByName("identifier");
+    assertEquals(34, identifiers.size());
+    long expected = 1000000000L;
+    for (FudgeField identifier : identifiers) {
+      assertEquals(expected, ((Number) identifier.getValue()).longValue());
+      expected += 3;
+    }
+    assertTrue(Arrays.equals(new long[] {5000000000L, 5000000001L, 5000000005L, 4999999999L }, (long[]) message.getByName("inputs").getValue()));
+    final List<FudgeField> items = message.getAllByName("item");
+    assertEquals(10, items.size());
+    for (int i = 0; i < 10; i++) {
+      final FudgeMsg value = (FudgeMsg) items.get(i).getValue();
+      assertEquals("CurrencyAwareFunction", value.getString("function"));
+      assertEquals("USD", value.getString("property"));
+      assertEquals(1.5 * i, value.getDouble("value"), 0);
+      assertEquals(-i, value.getInt("negative").intValue());
+      assertEquals((i & 1) == 0, value.getBoolean("flag").booleanValue());
+      assertTrue(Arrays.equals(new byte[] {1, 2, 3 }, (byte[]) value.getByName("blob").getValue()));
+    }
+  }
+
+  public void testEncodeDecode() {
+    final CompressedFudgeMsgEncoder encoder = new CompressedFudgeMsgEncoder(s_fudgeContext, 0, 0);
+    final CompressedFudgeMsgDecoder decoder = new CompressedFudgeMsgDecoder(s_fudgeContext);
+    final FudgeMsg original = createMessage(1);
+    final FudgeMsg first = encoder.encode(original);
+    final FudgeMsg second = encoder.encode(createMessage(2));
+    assertTrue(CompressedFudgeMsgDecoder.isEncoded(first));
+    assertTrue(CompressedFudgeMsgDecoder.isEncoded(second));
+    assertTrue(!CompressedFudgeMsgDecoder.isEncoded(original));
+    // The second message can refer to names and strings sent with the first
+    assertTrue(FudgeSize.calculateMessageSize(first) < FudgeSize.calculateMessageSize(original));
+    assertTrue(FudgeSize.calculateMessageSize(second) < FudgeSize.calculateMessageSize(first));
+    List<FudgeMsg> decoded = decoder.decode(first);
+    assertEquals(1, decoded.size());
+    assertDecoded(1, decoded.get(0));
+    decoded = decoder.decode(second);
+    assertEquals(1, decoded.size());
+    assertDecoded(2, decoded.get(0));
+  }
+
+  public void testDeflate() {
+    final CompressedFudgeMsgEncoder encoder = new CompressedFudgeMsgEncoder(s_fudgeContext, 0, 64);
+    final CompressedFudgeMsgDecoder decoder = new CompressedFudgeMsgDecoder(s_fudgeContext);
+    final FudgeMsg encoded = encoder.encode(createMessage(1));
+    assertNotNull(encoded.getByOrdinal(CompressedFudgeMsgEncoder.DEFLATED_ORDINAL));
+    assertNull(encoded.getByOrdinal(CompressedFudgeMsgEncoder.STRUCTURE_ORDINAL));
+    assertDecoded(1, decoder.decode(encoded).get(0));
+  }
+
+  public void testOutOfOrderDecode() {
+    final CompressedFudgeMsgEncoder encoder = new CompressedFudgeMsgEncoder(s_fudgeContext, 0, 0);
+    final CompressedFudgeMsgDecoder decoder = new CompressedFudgeMsgDecoder(s_fudgeContext);
+    final List<FudgeMsg> encoded = new ArrayList<FudgeMsg>();
+    for (int i = 0; i < 4; i++) {
+      encoded.add(encoder.encode(createMessage(i)));
+    }
+    assertEquals(0, decoder.decode(encoded.get(2)).size());
+    assertEquals(0, decoder.decode(encoded.get(1)).size());
+    List<FudgeMsg> decoded = decoder.decode(encoded.get(0));
+    assertEquals(3, decoded.size());
+    for (int i = 0; i < 3; i++) {
+      assertDecoded(i, decoded.get(i));
+    }
+    decoded = decoder.decode(encoded.get(3));
+    assertEquals(1, decoded.size());
+    assertDecoded(3, decoded.get(0));
+  }
+
+  public void testDiscardBeforeReset() {
+    final CompressedFudgeMsgEncoder encoder1 = new CompressedFudgeMsgEncoder(s_fudgeContext, 0, 0);
+    final FudgeMsg stale = encoder1.encode(createMessage(0));
+    final CompressedFudgeMsgEncoder encoder2 = new CompressedFudgeMsgEncoder(s_fudgeContext, encoder1.getSequence(), 0);
+    final CompressedFudgeMsgDecoder decoder = new CompressedFudgeMsgDecoder(s_fudgeContext);
+    final List<FudgeMsg> decoded = decoder.decode(encoder2.encode(createMessage(1)));
+    assertEquals(1, decoded.size());
+    assertDecoded(1, decoded.get(0));
+    assertEquals(0, decoder.decode(stale).size());
+  }
+
+  private static FudgeConnectionReceiver echoReceiver() {
+    return new FudgeConnectionReceiver() {
+      @Override
+      public void connectionReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope message, final FudgeConnection connection) {
+        connection.getFudgeMessageSender().send(message.getMessage());
+        connection.setFudgeMessageReceiver(new FudgeMessageReceiver() {
+          @Override
+          public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+            connection.getFudgeMessageSender().send(msgEnvelope.getMessage());
+          }
+        });
+      }
+    };
+  }
+
+  public void testCompressedConnection() {
+    final DirectFudgeConnection conduit = new DirectFudgeConnection(s_fudgeContext);
+    conduit.connectEnd2(new CompressedFudgeConnectionReceiver(echoReceiver()));
+    final CompressedFudgeConnection client = new CompressedFudgeConnection(conduit.getEnd1(), 1024);
+    final CollectingFudgeMessageReceiver replies = new CollectingFudgeMessageReceiver();
+    client.setFudgeMessageReceiver(replies);
+    for (int i = 0; i < 3; i++) {
+      client.getFudgeMessageSender().send(createMessage(i));
+    }
+    final List<FudgeMsgEnvelope> received = replies.getMessages();
+    assertEquals(3, received.size());
+    for (int i = 0; i < 3; i++) {
+      assertDecoded(i, received.get(i).getMessage());
+    }
+  }
+
+  /**
+   * Underlying connection that connects, or reconnects after {@link #disconnect}, when a message is sent.
+   */
+  private static final class ReconnectingFudgeConnection implements FudgeConnection {
+
+    private final List<FudgeMsg> _sent = new ArrayList<FudgeMsg>();
+    private FudgeConnectionStateListener _listener;
+    private boolean _connected;
+
+    private final FudgeMessageSender _sender = new FudgeMessageSender() {
+
+      @Override
+      public FudgeContext getFudgeContext() {
+        return s_fudgeContext;
+      }
+
+      @Override
+      public void send(final FudgeMsg message) {
+        if (!_connected) {
+          _connected = true;
+          _listener.connectionReset(ReconnectingFudgeConnection.this);
+        }
+        _sent.add(message);
+      }
+
+    };
+
+    public void disconnect() {
+      _connected = false;
+    }
+
+    @Override
+    public FudgeMessageSender getFudgeMessageSender() {
+      return _sender;
+    }
+
+    @Override
+    public void setFudgeMessageReceiver(final FudgeMessageReceiver receiver) {
+    }
+
+    @Override
+    public void setConnectionStateListener(final FudgeConnectionStateListener listener) {
+      _listener = listener;
+    }
+
+  }
+
+  public void testResetDuringSend() {
+    final ReconnectingFudgeConnection underlying = new ReconnectingFudgeConnection();
+    final CompressedFudgeConnection client = new CompressedFudgeConnection(underlying, 1024);
+    client.getFudgeMessageSender().send(createMessage(0));
+    assertEquals(1, underlying._sent.size());
+    underlying.disconnect();
+    client.getFudgeMessageSender().send(createMessage(1));
+    // The copy encoded before reconnecting is followed by one encoded with the new dictionaries
+    assertEquals(3, underlying._sent.size());
+    final CompressedFudgeMsgDecoder decoder = new CompressedFudgeMsgDecoder(s_fudgeContext);
+    assertEquals(0, decoder.decode(underlying._sent.get(1)).size());
+    final List<FudgeMsg> decoded = decoder.decode(underlying._sent.get(2));
+    assertEquals(1, decoded.size());
+    assertDecoded(1, decoded.get(0));
+    decoder.close();
+    client.close();
+    assertTrue(client.isClosed());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testSendAfterClose() {
+    final CompressedFudgeConnection client = new CompressedFudgeConnection(new ReconnectingFudgeConnection());
+    client.close();
+    client.getFudgeMessageSender().send(createMessage(0));
+  }
+
+  public void testDecodeAfterClose() {
+    final CompressedFudgeMsgEncoder encoder = new CompressedFudgeMsgEncoder(s_fudgeContext, 0, 64);
+    final CompressedFudgeMsgDecoder decoder = new CompressedFudgeMsgDecoder(s_fudgeContext);
+    final FudgeMsg encoded = encoder.encode(createMessage(1));
+    encoder.close();
+    decoder.close();
+    assertDecoded(1, decoder.decode(encoded).get(0));
+  }
+
+  public void testPlainConnection() {
+    final DirectFudgeConnection conduit = new DirectFudgeConnection(s_fudgeContext);
+    conduit.connectEnd2(new CompressedFudgeConnectionReceiver(echoReceiver()));
+    final CollectingFudgeMessageReceiver replies = new CollectingFudgeMessageReceiver();
+    conduit.getEnd1().setFudgeMessageReceiver(replies);
+    final FudgeMsg message = createMessage(0);
+    conduit.getEnd1().getFudgeMessageSender().send(message);
+    final List<FudgeMsgEnvelope> received = replies.getMessages();
+    assertEquals(1, received.size());
+    assertEquals(message, received.get(0).getMessage());
+  }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport.socket;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.transport.FudgeConnection;
+import com.opengamma.transport.FudgeConnectionReceiver;
+import com.opengamma.transport.FudgeMessageReceiver;
+
+/**
+ * Compares the thread-per-connection and selector-based servers for round-trip latency and for throughput with many
+ * clients. Not run as part of the build.
+ */
+@Test(enabled = false)
+public class FudgeConnectionReceiverPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(FudgeConnectionReceiverPerformanceTest.class);
+
+  private static final int ROUND_TRIPS = 20000;
+  private static final int CLIENTS = 200;
+  private static final int MESSAGES_PER_CLIENT = 2000;
+
+  private static final FudgeConnectionReceiver ECHO = new FudgeConnectionReceiver() {
+    @Override
+    public void connectionReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope message, final FudgeConnection connection) {
+      connection.getFudgeMessageSender().send(message.getMessage());
+      connection.setFudgeMessageReceiver(new FudgeMessageReceiver() {
+        @Override
+        public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+          connection.getFudgeMessageSender().send(msgEnvelope.getMessage());
+        }
+      });
+    }
+  };
+
+  private static MutableFudgeMsg createMessage(final int i) {
+    final MutableFudgeMsg message = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    message.add("i", i);
+    message.add("payload", new byte[256]);
+    return message;
+  }
+
+  private static SocketFudgeConnection createClient(final int port) throws Exception {
+    final SocketFudgeConnection client = new SocketFudgeConnection(FudgeContext.GLOBAL_DEFAULT);
+    client.setInetAddress(InetAddress.getLocalHost());
+    client.setPortNumber(port);
+    return client;
+  }
+
+  private void roundTrip(final String name, final int port) throws Exception {
+    final SocketFudgeConnection client = createClient(port);
+    final Object signal = new Object();
+    final int[] received = new int[1];
+    client.setFudgeMessageReceiver(new FudgeMessageReceiver() {
+      @Override
+      public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+        synchronized (signal) {
+          received[0]++;
+          signal.notify();
+        }
+      }
+    });
+    long start = 0;
+    for (int i = 0; i < ROUND_TRIPS * 2; i++) {
+      if (i == ROUND_TRIPS) {
+        // First half is warm-up
+        start = System.nanoTime();
+      }
+      synchronized (signal) {
+        client.getFudgeMessageSender().send(createMessage(i));
+        while (received[0] <= i) {
+          signal.wait();
+        }
+      }
+    }
+    final long time = System.nanoTime() - start;
+    s_logger.info("{} round trip {}us", name, (double) time / ROUND_TRIPS / 1000d);
+    client.stop();
+  }
+
+  private void throughput(final String name, final int port) throws Exception {
+    final CountDownLatch done = new CountDownLatch(CLIENTS * MESSAGES_PER_CLIENT);
+    final SocketFudgeConnection[] clients = new SocketFudgeConnection[CLIENTS];
+    for (int i = 0; i < CLIENTS; i++) {
+      clients[i] = createClient(port);
+      clients[i].setFudgeMessageReceiver(new FudgeMessageReceiver() {
+        @Override
+        public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+          done.countDown();
+        }
+      });
+    }
+    final long start = System.nanoTime();
+    for (int j = 0; j < MESSAGES_PER_CLIENT; j++) {
+      for (int i = 0; i < CLIENTS; i++) {
+        clients[i].getFudgeMessageSender().send(createMessage(j));
+      }
+    }
+    if (!done.await(5, TimeUnit.MINUTES)) {
+      s_logger.warn("{} timed out with {} messages outstanding", name, done.getCount());
+    }
+    final long time = System.nanoTime() - start;
+    s_logger.info("{} {} clients {} messages/s", new Object[] {name, CLIENTS, (double) CLIENTS * MESSAGES_PER_CLIENT * 1e9 / time });
+    for (SocketFudgeConnection client : clients) {
+      client.stop();
+    }
+  }
+
+  public void threadPerConnection() throws Exception {
+    final ServerSocketFudgeConnectionReceiver server = new ServerSocketFudgeConnectionReceiver(FudgeContext.GLOBAL_DEFAULT, ECHO);
+    server.start();
+    try {
+      roundTrip("ServerSocketFudgeConnectionReceiver", server.getPortNumber());
+      throughput("ServerSocketFudgeConnectionReceiver", server.getPortNumber());
+    } finally {
+      server.stop();
+    }
+  }
+
+  public void selector() throws Exception {
+    final ServerSocketChannelFudgeConnectionReceiver server = new ServerSocketChannelFudgeConnectionReceiver(FudgeContext.GLOBAL_DEFAULT, ECHO);
+    server.start();
+    try {
+      roundTrip("ServerSocketChannelFudgeConnectionReceiver", server.getPortNumber());
+      throughput("ServerSocketChannelFudgeConnectionReceiver", server.getPortNumber());
+    } finally {
+      server.stop();
+    }
+  }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.transport.socket;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.FudgeMsgEnvelope;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.transport.CollectingFudgeMessageReceiver;
+import com.opengamma.transport.FudgeConnection;
+import com.opengamma.transport.FudgeConnectionReceiver;
+import com.opengamma.transport.FudgeConnectionStateListener;
+import com.opengamma.transport.FudgeMessageReceiver;
+import com.opengamma.util.test.Timeout;
+
+/**
+ * Tests the ServerSocketChannelFudgeConnectionReceiver class with SocketFudgeConnection clients.
+ */
+@Test
+public class SocketChannelFudgeConnectionConduitTest {
+
+  private final AtomicInteger _uid = new AtomicInteger();
+
+  private FudgeMsg createMessage() {
+    final MutableFudgeMsg message = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    message.add("uid", _uid.incrementAndGet());
+    return message;
+  }
+
+  private SocketFudgeConnection createClient(final ServerSocketChannelFudgeConnectionReceiver server) throws Exception {
+    final SocketFudgeConnection client = new SocketFudgeConnection(FudgeContext.GLOBAL_DEFAULT);
+    client.setInetAddress(InetAddress.getLocalHost());
+    client.setPortNumber(server.getPortNumber());
+    return client;
+  }
+
+  public void simpleTest() throws Exception {
+    final FudgeMsg testMessage1 = createMessage();
+    final FudgeMsg testMessage2 = createMessage();
+    // receiver will respond to testMessage1 with testMessage2
+    final FudgeConnectionReceiver serverReceiver = new FudgeConnectionReceiver() {
+      @Override
+      public void connectionReceived(FudgeContext fudgeContext, FudgeMsgEnvelope message, FudgeConnection connection) {
+        assertEquals(testMessage1, message.getMessage());
+        connection.getFudgeMessageSender().send(testMessage2);
+      }
+    };
+    final ServerSocketChannelFudgeConnectionReceiver server = new ServerSocketChannelFudgeConnectionReceiver(FudgeContext.GLOBAL_DEFAULT, serverReceiver);
+    server.start();
+    final SocketFudgeConnection client = createClient(server);
+    final CollectingFudgeMessageReceiver clientReceiver = new CollectingFudgeMessageReceiver();
+    client.setFudgeMessageReceiver(clientReceiver);
+    client.getFudgeMessageSender().send(testMessage1);
+    final FudgeMsgEnvelope envelope = clientReceiver.waitForMessage(Timeout.standardTimeoutMillis());
+    assertNotNull(envelope);
+    assertEquals(testMessage2, envelope.getMessage());
+    client.stop();
+    server.stop();
+  }
+
+  public void messagesDeliveredInOrder() throws Exception {
+    final int numMessages = 10000;
+    final CollectingFudgeMessageReceiver serverMessages = new CollectingFudgeMessageReceiver();
+    // receiver will echo every message back and collect all but the first
+    final FudgeConnectionReceiver serverReceiver = new FudgeConnectionReceiver() {
+      @Override
+      public void connectionReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope message, final FudgeConnection connection) {
+        connection.getFudgeMessageSender().send(message.getMessage());
+        connection.setFudgeMessageReceiver(new FudgeMessageReceiver() {
+          @Override
+          public void messageReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope msgEnvelope) {
+            serverMessages.messageReceived(fudgeContext, msgEnvelope);
+            connection.getFudgeMessageSender().send(msgEnvelope.getMessage());
+          }
+        });
+      }
+    };
+    final ServerSocketChannelFudgeConnectionReceiver server = new ServerSocketChannelFudgeConnectionReceiver(FudgeContext.GLOBAL_DEFAULT, serverReceiver);
+    // Small buffers and queues so that messages are split over reads and back-pressure is exercised
+    server.setBufferSize(64);
+    server.setMaxQueuedBytes(256);
+    server.setMaxQueuedMessages(4);
+    server.start();
+    final SocketFudgeConnection client = createClient(server);
+    final CollectingFudgeMessageReceiver clientReceiver = new CollectingFudgeMessageReceiver();
+    client.setFudgeMessageReceiver(clientReceiver);
+    final int first = _uid.get() + 1;
+    for (int i = 0; i < numMessages; i++) {
+      client.getFudgeMessageSender().send(createMessage());
+    }
+    final long timeout = System.currentTimeMillis() + Timeout.standardTimeoutMillis() * 10L;
+    while ((clientReceiver.getMessages().size() < numMessages) && (System.currentTimeMillis() < timeout)) {
+      Thread.sleep(10);
+    }
+    final List<FudgeMsgEnvelope> echoed = clientReceiver.getMessages();
+    assertEquals(numMessages, echoed.size());
+    int expected = first;
+    for (FudgeMsgEnvelope envelope : echoed) {
+      assertEquals(expected++, envelope.getMessage().getInt("uid").intValue());
+    }
+    assertEquals(numMessages - 1, serverMessages.getMessages().size());
+    client.stop();
+    server.stop();
+  }
+
+  public void connectionFailedWhenClientStops() throws Exception {
+    final CountDownLatch failed = new CountDownLatch(1);
+    final FudgeConnectionReceiver serverReceiver = new FudgeConnectionReceiver() {
+      @Override
+      public void connectionReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope message, final FudgeConnection connection) {
+        connection.setConnectionStateListener(new FudgeConnectionStateListener() {
+          @Override
+          public void connectionReset(final FudgeConnection connection) {
+          }
+
+          @Override
+          public void connectionFailed(final FudgeConnection connection, final Exception cause) {
+            failed.countDown();
+          }
+        });
+        connection.getFudgeMessageSender().send(message.getMessage());
+      }
+    };
+    final ServerSocketChannelFudgeConnectionReceiver server = new ServerSocketChannelFudgeConnectionReceiver(FudgeContext.GLOBAL_DEFAULT, serverReceiver);
+    server.start();
+    final SocketFudgeConnection client = createClient(server);
+    final CollectingFudgeMessageReceiver clientReceiver = new CollectingFudgeMessageReceiver();
+    client.setFudgeMessageReceiver(clientReceiver);
+    client.getFudgeMessageSender().send(createMessage());
+    assertNotNull(clientReceiver.waitForMessage(Timeout.standardTimeoutMillis()));
+    client.stop();
+    assertTrue(failed.await(Timeout.standardTimeoutMillis(), TimeUnit.MILLISECONDS));
+    server.stop();
+  }
+
+  public void oversizedMessageClosesConnection() throws Exception {
+    final CollectingFudgeMessageReceiver serverMessages = new CollectingFudgeMessageReceiver();
+    final FudgeConnectionReceiver serverReceiver = new FudgeConnectionReceiver() {
+      @Override
+      public void connectionReceived(final FudgeContext fudgeContext, final FudgeMsgEnvelope message, final FudgeConnection connection) {
+        serverMessages.messageReceived(fudgeContext, message);
+      }
+    };
+    final ServerSocketChannelFudgeConnectionReceiver server = new ServerSocketChannelFudgeConnectionReceiver(FudgeContext.GLOBAL_DEFAULT, serverReceiver);
+    server.setMaxMessageSize(1024);
+    server.start();
+    final Socket socket = new Socket(InetAddress.getLocalHost(), server.getPortNumber());
+    try {
+      socket.setSoTimeout((int) Timeout.standardTimeoutMillis());
+      final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      // Envelope header claiming a body far larger than the limit
+      out.writeInt(0);
+      out.writeInt(Integer.MAX_VALUE);
+      out.flush();
+      assertEquals(-1, socket.getInputStream().read());
+    } finally {
+      socket.close();
+    }
+    assertTrue(serverMessages.getMessages().isEmpty());
+    server.stop();
+  }
+
+}
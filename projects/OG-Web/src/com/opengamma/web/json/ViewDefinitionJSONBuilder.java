@@ -40,6 +40,7 @@ public final class ViewDefinitionJSONBuilder extends AbstractJSONBuilder<ViewDef
   private static final String MAX_DELTA_CALC_PERIOD_FIELD = "maxDeltaCalcPeriod";
   private static final String MIN_FULL_CALC_PERIOD_FIELD = "minFullCalcPeriod";
   private static final String MAX_FULL_CALC_PERIOD_FIELD = "maxFullCalcPeriod";
+  private static final String TARGET_RESULT_LATENCY_FIELD = "targetResultLatency";
   private static final String RESULT_MODEL_DEFINITION_FIELD = "resultModelDefinition";
   private static final String CALCULATION_CONFIGURATION_FIELD = "calculationConfiguration";
   private static final String PORTFOLIO_REQUIREMENTS_BY_SECURITY_TYPE_FIELD = "portfolioRequirementsBySecurityType";
@@ -93,6 +94,9 @@ public final class ViewDefinitionJSONBuilder extends AbstractJSONBuilder<ViewDef
       if (viewJSON.opt(MAX_FULL_CALC_PERIOD_FIELD) != null) {
         viewDefinition.setMaxFullCalculationPeriod(viewJSON.getLong(MAX_FULL_CALC_PERIOD_FIELD));
       }
+      if (viewJSON.opt(TARGET_RESULT_LATENCY_FIELD) != null) {
+        viewDefinition.setTargetResultLatency(viewJSON.getLong(TARGET_RESULT_LATENCY_FIELD));
+      }
       if (viewJSON.opt(CALCULATION_CONFIGURATION_FIELD) != null) {
         JSONArray calConfigs = viewJSON.getJSONArray(CALCULATION_CONFIGURATION_FIELD);
         for (int i = 0; i < calConfigs.length(); i++) {
@@ -174,6 +178,9 @@ public final class ViewDefinitionJSONBuilder extends AbstractJSONBuilder<ViewDef
       if (viewDefinition.getMaxFullCalculationPeriod() != null) {
         jsonObject.put(MAX_FULL_CALC_PERIOD_FIELD, viewDefinition.getMaxFullCalculationPeriod());
       }
+      if (viewDefinition.getTargetResultLatency() != null) {
+        jsonObject.put(TARGET_RESULT_LATENCY_FIELD, viewDefinition.getTargetResultLatency());
+      }
       Map<String, ViewCalculationConfiguration> calculationConfigurations = viewDefinition.getAllCalculationConfigurationsByName();
       List<JSONObject> calConfigJSONList = Lists.newArrayList();
       for (ViewCalculationConfiguration calcConfig : calculationConfigurations.values()) {
@@ -25,4 +25,14 @@ public class ViewDefintionJSONBuilderTest {
     assertEquals(testViewDefinition, fromJSON);    
   }
 
+  @Test
+  public void test_encode_decode_cycle_targetResultLatency() {
+    ViewDefinition testViewDefinition = TestViewDefinitionProvider.getTestViewDefinition();
+    testViewDefinition.setTargetResultLatency(250L);
+    
+    ViewDefinition fromJSON = _jsonBuilder.fromJSON(_jsonBuilder.toJSON(testViewDefinition));
+    assertEquals(Long.valueOf(250L), fromJSON.getTargetResultLatency());
+    assertEquals(testViewDefinition, fromJSON);
+  }
+
 }